@@ -0,0 +1,65 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.benchmarks;
+
+import com.greenenergycorp.openfmb.simulator.DailyInterpolatedData;
+import com.greenenergycorp.openfmb.simulator.Interpolation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interpolating the daily profile, as the solar simulator does on every tick, for hourly, minute and
+ * second profiles.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DailyInterpolatedDataBenchmark {
+
+    @Param({"24", "1440", "86400"})
+    private int points;
+
+    @Param({"linear", "spline"})
+    private String interpolation;
+
+    private DailyInterpolatedData data;
+    private long start;
+    private int offset = 0;
+
+    @Setup
+    public void setup() {
+        final double[] values = new double[points];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.max(0.0, Math.sin((24.0 * i / points - 6) * Math.PI / 12));
+        }
+        data = new DailyInterpolatedData(values, Interpolation.fromString(interpolation));
+        start = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public double atTime() {
+        // stays within about a minute of the start, so every lookup after the first is in the cached day
+        offset = (offset + 1) & 0xFFFF;
+        return data.atTime(start + offset);
+    }
+}
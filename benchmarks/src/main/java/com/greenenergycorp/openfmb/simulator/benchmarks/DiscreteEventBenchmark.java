@@ -0,0 +1,131 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.benchmarks;
+
+import com.greenenergycorp.openfmb.simulator.DailyInterpolatedData;
+import com.greenenergycorp.openfmb.simulator.TimeUtil;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine;
+import com.greenenergycorp.openfmb.simulator.discrete.DiscreteEventScheduler;
+import com.greenenergycorp.openfmb.simulator.discrete.SimulatedMicrogrid;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a simulated microgrid on the DiscreteEventScheduler as fast as it will go, islanding it for
+ * part of each day, and prints the simulated time covered and events executed per second of real
+ * time. The run is repeated with the same seed to check that it ends in exactly the same state.
+ *
+ * -Dbench.solarSources, -Dbench.intervalMs (per device), -Dbench.latencyMs (delivery),
+ * -Dbench.days, -Dbench.seed, -Dbench.islandHour and -Dbench.islandHours control the run.
+ */
+public class DiscreteEventBenchmark {
+
+    // a clear summer day, as a fraction of rated output per hour
+    private static final double[] SOLAR_PROFILE = {
+            0, 0, 0, 0, 0, 0.02, 0.10, 0.25, 0.42, 0.58, 0.71, 0.80,
+            0.83, 0.80, 0.71, 0.58, 0.42, 0.25, 0.10, 0.02, 0, 0, 0, 0
+    };
+
+    // 2016-06-01, so every run covers the same days
+    private static final long START = TimeUtil.getStartOfDay(1464782400000L);
+
+    public static void main(String[] args) throws Exception {
+        final int solarSources = Integer.getInteger("bench.solarSources", 100);
+        final long intervalMs = Long.getLong("bench.intervalMs", 2000);
+        final long latencyMs = Long.getLong("bench.latencyMs", 5);
+        final int days = Integer.getInteger("bench.days", 7);
+        final long seed = Long.getLong("bench.seed", 1);
+        final int islandHour = Integer.getInteger("bench.islandHour", 17);
+        final int islandHours = Integer.getInteger("bench.islandHours", 4);
+
+        System.out.println("solarSources=" + solarSources + " intervalMs=" + intervalMs + " latencyMs=" + latencyMs
+                + " days=" + days + " seed=" + seed + " island=" + islandHour + ":00+" + islandHours + "h");
+        System.out.println(String.format("%-6s %12s %14s %14s %12s %10s %-18s",
+                "run", "wall ms", "events", "events/s", "sim/real", "soc %", "mode"));
+
+        final Result first = run(1, solarSources, intervalMs, latencyMs, days, seed, islandHour, islandHours);
+        final Result second = run(2, solarSources, intervalMs, latencyMs, days, seed, islandHour, islandHours);
+
+        System.out.println("reproducible=" + first.equals(second));
+        if (!first.equals(second)) {
+            System.exit(1);
+        }
+    }
+
+    private static Result run(final int run, final int solarSources, final long intervalMs, final long latencyMs,
+                              final int days, final long seed, final int islandHour, final int islandHours) {
+        final DiscreteEventScheduler scheduler = new DiscreteEventScheduler(START, seed);
+        final BatteryMachine.BatterySpec spec = new BatteryMachine.BatterySpec(250, 250, 250, 237.5, 37.5, 0.8, 277, 60);
+        final SimulatedMicrogrid grid = new SimulatedMicrogrid(scheduler, latencyMs, "battery", spec, intervalMs, 277, 60, intervalMs);
+
+        final DailyInterpolatedData profile = new DailyInterpolatedData(SOLAR_PROFILE);
+        for (int i = 0; i < solarSources; i++) {
+            grid.addSolar("solar " + i, profile, 5.0, 0.0, 0.1, 0.05, intervalMs);
+        }
+
+        for (int day = 0; day < days; day++) {
+            final long islandStart = START + TimeUnit.DAYS.toMillis(day) + TimeUnit.HOURS.toMillis(islandHour);
+            grid.openRecloserAt(islandStart);
+            grid.closeRecloserAt(islandStart + TimeUnit.HOURS.toMillis(islandHours));
+        }
+
+        final long end = START + TimeUnit.DAYS.toMillis(days);
+        final long wallStart = System.nanoTime();
+        final long events = scheduler.runUntil(end);
+        final long wallNanos = System.nanoTime() - wallStart;
+
+        final double wallSec = wallNanos / 1e9;
+        System.out.println(String.format("%-6d %12d %14d %14.0f %12.0f %10.2f %-18s",
+                run, TimeUnit.NANOSECONDS.toMillis(wallNanos), events, events / wallSec,
+                (end - START) / 1000.0 / wallSec, grid.getBatteryStateOfCharge(), grid.getBatteryMode().getDescription()));
+
+        return new Result(events, grid.getBatteryStateOfCharge(), grid.getBatteryPower(), grid.getRecloserPower());
+    }
+
+    private static class Result {
+        private final long events;
+        private final double soc;
+        private final double batteryPower;
+        private final double recloserPower;
+
+        public Result(long events, double soc, double batteryPower, double recloserPower) {
+            this.events = events;
+            this.soc = soc;
+            this.batteryPower = batteryPower;
+            this.recloserPower = recloserPower;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Result)) {
+                return false;
+            }
+            final Result other = (Result) o;
+            return events == other.events
+                    && Double.compare(soc, other.soc) == 0
+                    && Double.compare(batteryPower, other.batteryPower) == 0
+                    && Double.compare(recloserPower, other.recloserPower) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (events ^ Double.doubleToLongBits(soc));
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.benchmarks;
+
+import com.greenenergycorp.openfmb.mapping.adapter.MessageObserver;
+import com.greenenergycorp.openfmb.mapping.adapter.PayloadObserver;
+import com.greenenergycorp.openfmb.simulator.metrics.LatencyHistogram;
+import com.greenenergycorp.openfmb.simulator.xml.batch.BatchPayloadObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stands in for the MQTT broker and client in a single process. Published messages are queued and
+ * delivered, like MQTT client callbacks, on one delivery thread to every subscription whose filter
+ * matches "profile/logicalDeviceId". Subscriptions must all be made before start().
+ *
+ * Each message carries the time of the publish that started its causal chain: a message published
+ * while another is being delivered inherits that message's origin. Latency from the origin is
+ * recorded for messages delivered on the traced topic filter, which gives the end-to-end latency
+ * from a source reading to the control it causes.
+ */
+public class InMemoryBroker implements MessageObserver {
+    private final static Logger logger = LoggerFactory.getLogger(InMemoryBroker.class);
+
+    private static class Message {
+        private final String topic;
+        private final byte[] bytes;
+        private final long originNanos;
+        private final long publishNanos;
+
+        Message(String topic, byte[] bytes, long originNanos, long publishNanos) {
+            this.topic = topic;
+            this.bytes = bytes;
+            this.originNanos = originNanos;
+            this.publishNanos = publishNanos;
+        }
+    }
+
+    private static class Subscription {
+        private final String filter;
+        private final PayloadObserver observer;
+
+        Subscription(String filter, PayloadObserver observer) {
+            this.filter = filter;
+            this.observer = observer;
+        }
+    }
+
+    private static class Route {
+        private final List<Subscription> subscriptions = new ArrayList<Subscription>();
+        private boolean traced = false;
+    }
+
+    private static final Message STOP = new Message("", new byte[0], 0, 0);
+
+    private final BlockingQueue<Message> queue = new LinkedBlockingQueue<Message>();
+    private final List<Subscription> subscriptions = new ArrayList<Subscription>();
+    private final String tracedFilter;
+
+    // origin of the message being delivered, set only on the delivery thread
+    private volatile Thread deliveryThread = null;
+    private long currentOriginNanos = 0;
+
+    private final AtomicLong published = new AtomicLong(0);
+    private final AtomicLong publishedBytes = new AtomicLong(0);
+    private final AtomicLong delivered = new AtomicLong(0);
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+    private final LatencyHistogram endToEndLatency = new LatencyHistogram();
+
+    /**
+     * @param tracedFilter topic filter of the messages whose latency from their origin is recorded
+     */
+    public InMemoryBroker(String tracedFilter) {
+        this.tracedFilter = tracedFilter;
+    }
+
+    public void subscribe(final Map<String, PayloadObserver> subs) {
+        for (final Map.Entry<String, PayloadObserver> entry : subs.entrySet()) {
+            subscriptions.add(new Subscription(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    public void publish(final byte[] bytes, final String profile, final String logicalDeviceId) {
+        final long now = System.nanoTime();
+        final long origin = (Thread.currentThread() == deliveryThread) ? currentOriginNanos : now;
+        published.incrementAndGet();
+        publishedBytes.addAndGet(bytes.length);
+        queue.add(new Message(profile + "/" + logicalDeviceId, bytes, origin, now));
+    }
+
+    public void start() {
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                deliver();
+            }
+        }, "in-memory broker");
+        thread.setDaemon(true);
+        deliveryThread = thread;
+        thread.start();
+    }
+
+    public void shutdown() throws InterruptedException {
+        final Thread thread = deliveryThread;
+        if (thread != null) {
+            queue.add(STOP);
+            thread.join();
+        }
+    }
+
+    public Thread getDeliveryThread() {
+        return deliveryThread;
+    }
+
+    public long getPublished() {
+        return published.get();
+    }
+
+    public long getPublishedBytes() {
+        return publishedBytes.get();
+    }
+
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return time from publish until every matching subscriber has handled the message
+     */
+    public LatencyHistogram getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+    /**
+     * @return time from the origin publish until a message on the traced filter is handled
+     */
+    public LatencyHistogram getEndToEndLatency() {
+        return endToEndLatency;
+    }
+
+    private void deliver() {
+        final Map<String, Route> routes = new HashMap<String, Route>();
+        while (true) {
+            final Message message;
+            try {
+                message = queue.take();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (message == STOP) {
+                return;
+            }
+
+            currentOriginNanos = message.originNanos;
+
+            Route route = routes.get(message.topic);
+            if (route == null) {
+                route = new Route();
+                for (final Subscription subscription : subscriptions) {
+                    if (BatchPayloadObserver.matches(subscription.filter, message.topic)) {
+                        route.subscriptions.add(subscription);
+                    }
+                }
+                route.traced = BatchPayloadObserver.matches(tracedFilter, message.topic);
+                routes.put(message.topic, route);
+            }
+            for (final Subscription subscription : route.subscriptions) {
+                try {
+                    subscription.observer.handle(message.bytes);
+                } catch (Throwable ex) {
+                    logger.warn("Error delivering " + message.topic + ": " + ex);
+                }
+            }
+
+            final long now = System.nanoTime();
+            delivered.incrementAndGet();
+            deliveryLatency.record(now - message.publishNanos);
+            if (route.traced) {
+                endToEndLatency.record(now - message.originNanos);
+            }
+        }
+    }
+}
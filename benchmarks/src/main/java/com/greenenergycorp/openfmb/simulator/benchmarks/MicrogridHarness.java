@@ -0,0 +1,248 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.benchmarks;
+
+import com.greenenergycorp.openfmb.mapping.adapter.PayloadObserver;
+import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.balance.BalancingMachine;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine;
+import com.greenenergycorp.openfmb.simulator.recloser.RecloserMachine;
+import com.greenenergycorp.openfmb.simulator.schedule.OverrunPolicy;
+import com.greenenergycorp.openfmb.simulator.schedule.ThreadMode;
+import com.greenenergycorp.openfmb.simulator.schedule.TickScheduler;
+import com.greenenergycorp.openfmb.simulator.schedule.Tickable;
+import com.greenenergycorp.openfmb.simulator.xml.InboundDispatcher;
+import com.greenenergycorp.openfmb.simulator.xml.ModelCommon;
+import com.greenenergycorp.openfmb.simulator.xml.PowerReadings;
+import com.greenenergycorp.openfmb.simulator.xml.balance.BalancerRecloserSubscriber;
+import com.greenenergycorp.openfmb.simulator.xml.balance.BatteryControlPublisher;
+import com.greenenergycorp.openfmb.simulator.xml.battery.BatteryPublisher;
+import com.greenenergycorp.openfmb.simulator.xml.battery.BatterySimPayloadObserver;
+import com.greenenergycorp.openfmb.simulator.xml.battery.MarshallingBatteryEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.codec.SniffingPayloadCodec;
+import com.greenenergycorp.openfmb.simulator.xml.recloser.MarshallingRecloserEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.recloser.RecloserPublisher;
+import com.greenenergycorp.openfmb.simulator.xml.recloser.SystemSubscribers;
+import com.greenenergycorp.openfmb.simulator.xml.solar.MarshallingSolarEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.solar.SolarPublisher;
+import com.greenenergycorp.openfmb.xml.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the whole microgrid in one process without a broker: solar and load sources publish
+ * readings, the recloser and balancer take them in, and the balancer's setpoints are handled by the
+ * battery. The real publishers, encoders, dispatchers and subscribers are wired through an
+ * InMemoryBroker, which delivers on a single thread as an MQTT client would.
+ *
+ * Once the warmup is over the recloser is opened, so the balancer answers every reading with a
+ * setpoint, and the run is measured. It prints the sustained message rate, the latency from
+ * publish to delivery, the end-to-end latency from a source reading to the battery handling the
+ * setpoint it caused, and the CPU time spent per delivered message.
+ *
+ * -Dbench.solarSources, -Dbench.loadSources, -Dbench.intervalMs (per source), -Dbench.durationSec,
+ * -Dbench.warmupSec, -Dbench.threads and -Dbench.payloadCodec (xml or binary) control the run.
+ */
+public class MicrogridHarness {
+
+    private static final String SOLAR_READ_TOPIC = "openfmb/solarmodule/SolarReadingProfile";
+    private static final String SOLAR_EVENT_TOPIC = "openfmb/solarmodule/SolarEventProfile";
+    private static final String RESOURCE_READ_TOPIC = "openfmb/resourcemodule/ResourceReadingProfile";
+    private static final String BATTERY_READ_TOPIC = "openfmb/batterymodule/BatteryReadingProfile";
+    private static final String BATTERY_EVENT_TOPIC = "openfmb/batterymodule/BatteryEventProfile";
+    private static final String BATTERY_CONTROL_TOPIC = "openfmb/batterymodule/BatteryControlProfile";
+    private static final String RECLOSER_READ_TOPIC = "openfmb/reclosermodule/RecloserReadingProfile";
+    private static final String RECLOSER_EVENT_TOPIC = "openfmb/reclosermodule/RecloserEventProfile";
+    private static final String RECLOSER_CONTROL_TOPIC = "openfmb/reclosermodule/RecloserControlProfile";
+
+    public static void main(String[] args) throws Exception {
+        final int solarSources = Integer.getInteger("bench.solarSources", 1000);
+        final int loadSources = Integer.getInteger("bench.loadSources", 100);
+        final long intervalMs = Long.getLong("bench.intervalMs", 1000);
+        final long durationSec = Long.getLong("bench.durationSec", 30);
+        final long warmupSec = Long.getLong("bench.warmupSec", 10);
+        final int threads = Integer.getInteger("bench.threads", Runtime.getRuntime().availableProcessors());
+        final String codecName = System.getProperty("bench.payloadCodec", "xml");
+
+        final double offeredRate = (solarSources + loadSources) * (1000.0 / intervalMs);
+        System.out.println("solarSources=" + solarSources + " loadSources=" + loadSources + " intervalMs=" + intervalMs
+                + " offered=" + String.format("%.0f", offeredRate) + " readings/s durationSec=" + durationSec
+                + " warmupSec=" + warmupSec + " threads=" + threads + " payloadCodec=" + codecName);
+
+        final OpenFmbXmlMarshaller marshaller = new OpenFmbXmlMarshaller();
+        final SniffingPayloadCodec codec = SniffingPayloadCodec.forName(codecName, marshaller);
+        final InMemoryBroker broker = new InMemoryBroker(BATTERY_CONTROL_TOPIC + "/#");
+
+        final DeviceId batteryId = new DeviceId("DEMO.MGRID.BATTERY.1", "DEMO.MGRID.BATTERY.1", "Battery", "Battery");
+        final DeviceId recloserId = new DeviceId("DEMO.MGRID.RECLOSER.1", "DEMO.MGRID.RECLOSER.1", "Recloser", "Recloser");
+
+        // battery
+        final BatteryMachine.BatterySpec spec = new BatteryMachine.BatterySpec(250, 250, 250, 237.5, 37.5, 0.8, 277, 60);
+        final BatteryPublisher batteryPublisher = new BatteryPublisher(broker, batteryId, new MarshallingBatteryEncoder(batteryId, codec), BATTERY_READ_TOPIC, BATTERY_EVENT_TOPIC);
+        final BatteryMachine battery = new BatteryMachine(batteryId.getLogicalDeviceId(), batteryPublisher, intervalMs, spec);
+        broker.subscribe(Collections.<String, PayloadObserver>singletonMap(BATTERY_CONTROL_TOPIC + "/" + batteryId.getLogicalDeviceId(),
+                new BatterySimPayloadObserver(codec, batteryId.getLogicalDeviceId(), battery)));
+
+        // recloser
+        final RecloserPublisher recloserPublisher = new RecloserPublisher(broker, recloserId, new MarshallingRecloserEncoder(recloserId, codec), RECLOSER_READ_TOPIC, RECLOSER_EVENT_TOPIC);
+        final RecloserMachine recloser = new RecloserMachine(recloserPublisher, 277, 60, 0.0);
+        final InboundDispatcher recloserDispatcher = new InboundDispatcher(codec);
+        recloserDispatcher.registerForDevice(RECLOSER_CONTROL_TOPIC, recloserId.getLogicalDeviceId(), RecloserControlProfile.class,
+                new SystemSubscribers.RecloserControlSubscriber(recloser, codec, recloserId.getLogicalDeviceId()));
+        registerPowerReadings(recloserDispatcher, new SystemSubscribers.PowerReadSubscriber(recloser, PowerReadings.Kind.BATTERY),
+                new SystemSubscribers.PowerReadSubscriber(recloser, PowerReadings.Kind.SOLAR),
+                new SystemSubscribers.PowerReadSubscriber(recloser, PowerReadings.Kind.RESOURCE));
+        broker.subscribe(recloserDispatcher.getSubscriptions());
+
+        // balancer
+        final BatteryControlPublisher controlPublisher = new BatteryControlPublisher(broker, batteryId, codec, BATTERY_CONTROL_TOPIC);
+        final BalancingMachine balancer = new BalancingMachine(batteryId.getLogicalDeviceId(), controlPublisher);
+        final InboundDispatcher balancerDispatcher = new InboundDispatcher(codec);
+        balancerDispatcher.registerForDevice(RECLOSER_EVENT_TOPIC, recloserId.getLogicalDeviceId(), RecloserEventProfile.class,
+                new BalancerRecloserSubscriber(balancer, codec, recloserId.getLogicalDeviceId()));
+        registerPowerReadings(balancerDispatcher, new SystemSubscribers.PowerReadSubscriber(balancer, PowerReadings.Kind.BATTERY),
+                new SystemSubscribers.PowerReadSubscriber(balancer, PowerReadings.Kind.SOLAR),
+                new SystemSubscribers.PowerReadSubscriber(balancer, PowerReadings.Kind.RESOURCE));
+        broker.subscribe(balancerDispatcher.getSubscriptions());
+
+        broker.start();
+
+        final TickScheduler scheduler = new TickScheduler(threads, "harness tick", OverrunPolicy.SKIP, ThreadMode.SCHEDULER);
+        scheduler.register(batteryId.getLogicalDeviceId(), battery, intervalMs);
+        scheduler.register(recloserId.getLogicalDeviceId(), recloser, intervalMs);
+        for (int i = 0; i < solarSources; i++) {
+            final DeviceId id = new DeviceId("DEMO.MGRID.SOLAR." + i, "DEMO.MGRID.SOLAR." + i, "Solar", "Solar");
+            final SolarPublisher publisher = new SolarPublisher(broker, id, new MarshallingSolarEncoder(id, codec), SOLAR_READ_TOPIC, SOLAR_EVENT_TOPIC);
+            scheduler.register(id.getLogicalDeviceId(), solarSource(publisher, i), intervalMs, (intervalMs * i) / solarSources);
+        }
+        for (int i = 0; i < loadSources; i++) {
+            final String id = "DEMO.MGRID.LOAD." + i;
+            scheduler.register(id, loadSource(broker, codec, id, i), intervalMs, (intervalMs * i) / Math.max(1, loadSources));
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSec));
+
+        broker.publish(codec.encode(buildTrip(recloserId.getLogicalDeviceId())), RECLOSER_CONTROL_TOPIC, recloserId.getLogicalDeviceId());
+        Thread.sleep(500);
+
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        final long publishedBefore = broker.getPublished();
+        final long bytesBefore = broker.getPublishedBytes();
+        final long deliveredBefore = broker.getDelivered();
+        final long cpuBefore = totalCpuNanos(threadBean);
+        final long deliveryCpuBefore = threadBean.getThreadCpuTime(broker.getDeliveryThread().getId());
+        broker.getDeliveryLatency().reset();
+        broker.getEndToEndLatency().reset();
+        final long start = System.nanoTime();
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSec));
+
+        final double elapsedSec = (System.nanoTime() - start) / 1e9;
+        final long published = broker.getPublished() - publishedBefore;
+        final long bytes = broker.getPublishedBytes() - bytesBefore;
+        final long delivered = broker.getDelivered() - deliveredBefore;
+        final long cpuNanos = totalCpuNanos(threadBean) - cpuBefore;
+        final long deliveryCpuNanos = threadBean.getThreadCpuTime(broker.getDeliveryThread().getId()) - deliveryCpuBefore;
+        final int backlog = broker.getQueueDepth();
+
+        scheduler.shutdown();
+        broker.shutdown();
+
+        System.out.println(String.format("published %.0f msg/s (%.2f MB/s), delivered %.0f msg/s, backlog %d%s",
+                published / elapsedSec, bytes / elapsedSec / (1024 * 1024), delivered / elapsedSec, backlog,
+                backlog > delivered / elapsedSec ? " (not sustained: delivery is falling behind)" : ""));
+        System.out.println("publish to delivery: " + broker.getDeliveryLatency().summary(TimeUnit.MICROSECONDS));
+        System.out.println("reading to battery setpoint: " + broker.getEndToEndLatency().summary(TimeUnit.MICROSECONDS));
+        System.out.println(String.format("cpu %.2f cores, %.1f us per delivered message (%.1f us on the delivery thread)",
+                cpuNanos / 1e9 / elapsedSec,
+                delivered == 0 ? 0.0 : cpuNanos / 1000.0 / delivered,
+                delivered == 0 ? 0.0 : deliveryCpuNanos / 1000.0 / delivered));
+        System.out.println(balancer.getIslandingLatency().getSummary());
+        System.exit(0);
+    }
+
+    private static void registerPowerReadings(final InboundDispatcher dispatcher,
+                                              final SystemSubscribers.PowerReadSubscriber battery,
+                                              final SystemSubscribers.PowerReadSubscriber solar,
+                                              final SystemSubscribers.PowerReadSubscriber resource) {
+        dispatcher.register(BATTERY_READ_TOPIC + "/#", PowerReadings.class, battery);
+        dispatcher.register(SOLAR_READ_TOPIC + "/#", PowerReadings.class, solar);
+        dispatcher.register(RESOURCE_READ_TOPIC + "/#", PowerReadings.class, resource);
+    }
+
+    private static Tickable solarSource(final SolarPublisher publisher, final int seed) {
+        final Random random = new Random(seed);
+        return new Tickable() {
+            public void tick() {
+                try {
+                    publisher.solarReadUpdate(random.nextDouble() * 5.0);
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        };
+    }
+
+    private static Tickable loadSource(final InMemoryBroker broker, final SniffingPayloadCodec codec, final String logicalDeviceId, final int seed) {
+        final Random random = new Random(seed);
+        return new Tickable() {
+            public void tick() {
+                try {
+                    final long now = System.currentTimeMillis();
+                    final ResourceReadingProfile profile = new ResourceReadingProfile();
+                    profile.setLogicalDeviceID(logicalDeviceId);
+                    profile.setTimestamp(ModelCommon.xmlTimeFor(now));
+                    profile.getReadings().add(ModelCommon.buildReading(-random.nextDouble() * 50.0, now,
+                            UnitSymbolKind.W, UnitMultiplierKind.KILO, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN));
+                    broker.publish(codec.encode(profile), RESOURCE_READ_TOPIC, logicalDeviceId);
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        };
+    }
+
+    private static RecloserControlProfile buildTrip(final String logicalDeviceId) throws Exception {
+        final RecloserControlProfile profile = new RecloserControlProfile();
+        profile.setLogicalDeviceID(logicalDeviceId);
+        profile.setTimestamp(ModelCommon.xmlTimeFor(System.currentTimeMillis()));
+        final EndDeviceControlType controlType = new EndDeviceControlType();
+        controlType.setAction("trip");
+        final RecloserControl control = new RecloserControl();
+        control.setEndDeviceControlType(controlType);
+        profile.setRecloserControl(control);
+        return profile;
+    }
+
+    private static long totalCpuNanos(final ThreadMXBean threadBean) {
+        long total = 0;
+        for (final long id : threadBean.getAllThreadIds()) {
+            final long cpu = threadBean.getThreadCpuTime(id);
+            if (cpu > 0) {
+                total += cpu;
+            }
+        }
+        return total;
+    }
+}
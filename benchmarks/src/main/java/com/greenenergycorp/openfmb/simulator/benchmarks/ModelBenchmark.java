@@ -0,0 +1,73 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.benchmarks;
+
+import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.xml.ModelCommon;
+import com.greenenergycorp.openfmb.simulator.xml.battery.BatteryModel;
+import com.greenenergycorp.openfmb.simulator.xml.solar.SolarModel;
+import com.greenenergycorp.openfmb.xml.*;
+import org.openjdk.jmh.annotations.*;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building profiles, and marshalling them as the publishers do on every tick.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ModelBenchmark {
+
+    private OpenFmbXmlMarshaller marshaller;
+    private DeviceId deviceId;
+    private long time;
+
+    @Setup
+    public void setup() throws Exception {
+        marshaller = new OpenFmbXmlMarshaller();
+        deviceId = new DeviceId("DEMO.MGRID.SOLAR.1", "DEMO.MGRID.SOLAR.1", "Solar", "Solar");
+        time = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public XMLGregorianCalendar xmlTimeFor() throws Exception {
+        return ModelCommon.xmlTimeFor(time++);
+    }
+
+    @Benchmark
+    public Reading buildReading() throws Exception {
+        return ModelCommon.buildReading(125.5, time++, UnitSymbolKind.W, UnitMultiplierKind.KILO, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN);
+    }
+
+    @Benchmark
+    public byte[] buildSolarReadAndMarshal() throws Exception {
+        return marshaller.marshal(SolarModel.buildSolarRead(deviceId, 3.25, time++));
+    }
+
+    @Benchmark
+    public byte[] buildBatteryEventAndMarshal() throws Exception {
+        return marshaller.marshal(BatteryModel.buildBatteryEvent(deviceId, true, false, "Standby", 55.5, time++));
+    }
+}
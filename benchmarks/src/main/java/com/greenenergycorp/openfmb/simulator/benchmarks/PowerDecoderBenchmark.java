@@ -0,0 +1,110 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.benchmarks;
+
+import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.xml.PowerReadingDecoder;
+import com.greenenergycorp.openfmb.simulator.xml.PowerReadings;
+import com.greenenergycorp.openfmb.simulator.xml.battery.MarshallingBatteryEncoder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Decodes the same BatteryReadingProfile payload with OpenFmbXmlMarshaller.unmarshal and with the
+ * streaming PowerReadingDecoder, and prints throughput and bytes allocated per decode for each.
+ *
+ * -Dbench.iterations and -Dbench.rounds control the run.
+ */
+public class PowerDecoderBenchmark {
+
+    private interface Decode {
+        Object decode(byte[] bytes) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int iterations = Integer.getInteger("bench.iterations", 50000);
+        final int rounds = Integer.getInteger("bench.rounds", 5);
+
+        final OpenFmbXmlMarshaller marshaller = new OpenFmbXmlMarshaller();
+        final PowerReadingDecoder decoder = new PowerReadingDecoder();
+
+        final DeviceId deviceId = new DeviceId("DEMO.MGRID.BATTERY.1", "MRID", "Battery", "Battery");
+        final byte[] payload = new MarshallingBatteryEncoder(deviceId, marshaller).encodeRead(System.currentTimeMillis(), 125.5, 277.0, 60.0);
+
+        final PowerReadings expected = PowerReadings.fromProfile(marshaller.unmarshal(payload));
+        final PowerReadings actual = decoder.decode(payload);
+        if (actual == null || !actual.getLogicalDeviceId().equals(expected.getLogicalDeviceId())
+                || !java.util.Arrays.equals(actual.getPowers(), expected.getPowers())) {
+            throw new IllegalStateException("Streaming decoder does not match unmarshal for the benchmark payload");
+        }
+
+        final Decode unmarshal = new Decode() {
+            public Object decode(byte[] bytes) throws Exception {
+                return PowerReadings.fromProfile(marshaller.unmarshal(bytes));
+            }
+        };
+        final Decode streaming = new Decode() {
+            public Object decode(byte[] bytes) throws Exception {
+                return decoder.decode(bytes);
+            }
+        };
+
+        System.out.println("payload bytes=" + payload.length + " iterations=" + iterations + " rounds=" + rounds);
+        System.out.println(String.format("%-10s %6s %14s %14s", "decoder", "round", "decodes/s", "bytes/decode"));
+
+        for (int round = 1; round <= rounds; round++) {
+            run("unmarshal", round, unmarshal, payload, iterations);
+            run("streaming", round, streaming, payload, iterations);
+        }
+    }
+
+    private static void run(final String name, final int round, final Decode decode, final byte[] payload, final int iterations) throws Exception {
+        final long allocatedBefore = allocatedBytes();
+        final long start = System.nanoTime();
+
+        int found = 0;
+        for (int i = 0; i < iterations; i++) {
+            if (decode.decode(payload) != null) {
+                found++;
+            }
+        }
+
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = allocatedBytes() - allocatedBefore;
+
+        if (found != iterations) {
+            throw new IllegalStateException(name + " failed to decode the payload");
+        }
+
+        System.out.println(String.format("%-10s %6d %14.0f %14s", name, round,
+                iterations / (elapsed / 1e9),
+                allocated < 0 ? "n/a" : Long.toString(allocated / iterations)));
+    }
+
+    // HotSpot exposes per-thread allocation through its own ThreadMXBean extension
+    private static long allocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
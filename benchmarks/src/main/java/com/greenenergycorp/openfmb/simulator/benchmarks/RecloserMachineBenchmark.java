@@ -0,0 +1,87 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.benchmarks;
+
+import com.greenenergycorp.openfmb.simulator.recloser.RecloserMachine;
+import com.greenenergycorp.openfmb.simulator.recloser.RecloserObserver;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The recloser's update with a growing number of sources feeding the system power. push() runs the
+ * same update as a tick, and updateSource() a reading arriving from one of the sources.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RecloserMachineBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int sources;
+
+    /**
+     * Keeps the last published values so the update cannot be optimized away.
+     */
+    public static class Sink implements RecloserObserver {
+        public double power;
+        public boolean closed;
+
+        public void recloserReadUpdate(double power, double voltage, double frequency, double kvars) {
+            this.power = power;
+        }
+
+        public void recloserEventUpdate(boolean isClosed, boolean isBlocked) {
+            this.closed = isClosed;
+        }
+    }
+
+    private final Sink sink = new Sink();
+
+    private RecloserMachine machine;
+    private String[] ids;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        machine = new RecloserMachine(sink, 277.0, 60.0, 0.0);
+        ids = new String[sources];
+        for (int i = 0; i < sources; i++) {
+            ids[i] = "DEMO.MGRID.SOLAR.1." + i;
+            machine.updateSolarPower(ids[i], 1.0);
+        }
+    }
+
+    @Benchmark
+    public Sink push() {
+        machine.push();
+        return sink;
+    }
+
+    @Benchmark
+    public Sink updateSource() {
+        final int index = next;
+        next = (index + 1 == ids.length) ? 0 : index + 1;
+        machine.updateSolarPower(ids[index], index);
+        return sink;
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.benchmarks;
+
+import com.greenenergycorp.openfmb.mapping.adapter.PayloadObserver;
+import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryControlObserver;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine;
+import com.greenenergycorp.openfmb.simulator.recloser.RecloserControlObserver;
+import com.greenenergycorp.openfmb.simulator.recloser.SystemPowerObserver;
+import com.greenenergycorp.openfmb.simulator.xml.InboundDispatcher;
+import com.greenenergycorp.openfmb.simulator.xml.ModelCommon;
+import com.greenenergycorp.openfmb.simulator.xml.PowerReadings;
+import com.greenenergycorp.openfmb.simulator.xml.battery.BatteryModel;
+import com.greenenergycorp.openfmb.simulator.xml.battery.BatterySimPayloadObserver;
+import com.greenenergycorp.openfmb.simulator.xml.battery.MarshallingBatteryEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.codec.SniffingPayloadCodec;
+import com.greenenergycorp.openfmb.simulator.xml.recloser.SystemSubscribers;
+import com.greenenergycorp.openfmb.simulator.xml.solar.MarshallingSolarEncoder;
+import com.greenenergycorp.openfmb.xml.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inbound XML payloads handed to the subscribers, from the raw bytes to the call on the machine.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SubscriberBenchmark {
+
+    /**
+     * Stands in for the machines, keeping what it is given so the handlers cannot be optimized away.
+     */
+    public static class Sink implements BatteryControlObserver, SystemPowerObserver, RecloserControlObserver {
+        public double total = 0;
+        public int calls = 0;
+
+        public void setPowerSetpoint(double v) {
+            total += v;
+        }
+
+        public void setModeControl(BatteryMachine.BatteryMode nextMode) {
+            calls++;
+        }
+
+        public void updateBatteryPower(String id, double power) {
+            total += power;
+        }
+
+        public void updateLoadPower(String id, double power) {
+            total += power;
+        }
+
+        public void updateSolarPower(String id, double power) {
+            total += power;
+        }
+
+        public void handleOpen() {
+            calls++;
+        }
+
+        public void handleClose() {
+            calls++;
+        }
+    }
+
+    private final Sink sink = new Sink();
+
+    private BatterySimPayloadObserver batteryControl;
+    private SystemSubscribers.RecloserControlSubscriber recloserControl;
+    private SystemSubscribers.BatteryReadSubscriber batteryRead;
+    private SystemSubscribers.SolarReadSubscriber solarRead;
+    private SystemSubscribers.ResourceReadSubscriber resourceRead;
+    private PayloadObserver dispatchedBatteryRead;
+
+    private byte[] batteryControlPayload;
+    private byte[] recloserControlPayload;
+    private byte[] batteryReadPayload;
+    private byte[] solarReadPayload;
+    private byte[] resourceReadPayload;
+
+    @Setup
+    public void setup() throws Exception {
+        final OpenFmbXmlMarshaller marshaller = new OpenFmbXmlMarshaller();
+        final SniffingPayloadCodec codec = SniffingPayloadCodec.xml(marshaller);
+        final long now = System.currentTimeMillis();
+
+        final DeviceId battery = new DeviceId("DEMO.MGRID.BATTERY.1", "DEMO.MGRID.BATTERY.1", "Battery", "Battery");
+        final DeviceId solar = new DeviceId("DEMO.MGRID.SOLAR.1", "DEMO.MGRID.SOLAR.1", "Solar", "Solar");
+        final String recloserId = "DEMO.MGRID.RECLOSER.1";
+
+        batteryControl = new BatterySimPayloadObserver(codec, battery.getLogicalDeviceId(), sink);
+        recloserControl = new SystemSubscribers.RecloserControlSubscriber(sink, codec, recloserId);
+        batteryRead = new SystemSubscribers.BatteryReadSubscriber(sink, codec);
+        solarRead = new SystemSubscribers.SolarReadSubscriber(sink, codec);
+        resourceRead = new SystemSubscribers.ResourceReadSubscriber(sink, codec);
+
+        final InboundDispatcher dispatcher = new InboundDispatcher(codec);
+        dispatcher.register("battery/#", PowerReadings.class, new SystemSubscribers.PowerReadSubscriber(sink, PowerReadings.Kind.BATTERY));
+        dispatchedBatteryRead = dispatcher.getSubscriptions().get("battery/#");
+
+        batteryControlPayload = marshaller.marshal(BatteryModel.buildBatteryControlPowerSetpoint(battery, -20.0, now));
+        batteryReadPayload = new MarshallingBatteryEncoder(battery, marshaller).encodeRead(now, 125.5, 277.0, 60.0);
+        solarReadPayload = new MarshallingSolarEncoder(solar, marshaller).encodeRead(now, 3.25);
+
+        final RecloserControlProfile recloserControlProfile = new RecloserControlProfile();
+        recloserControlProfile.setLogicalDeviceID(recloserId);
+        recloserControlProfile.setTimestamp(ModelCommon.xmlTimeFor(now));
+        final RecloserControl control = new RecloserControl();
+        final EndDeviceControlType controlType = new EndDeviceControlType();
+        controlType.setAction("trip");
+        control.setEndDeviceControlType(controlType);
+        recloserControlProfile.setRecloserControl(control);
+        recloserControlPayload = marshaller.marshal(recloserControlProfile);
+
+        final ResourceReadingProfile resourceReadingProfile = new ResourceReadingProfile();
+        resourceReadingProfile.setLogicalDeviceID("DEMO.MGRID.LOAD.1");
+        resourceReadingProfile.setTimestamp(ModelCommon.xmlTimeFor(now));
+        resourceReadingProfile.getReadings().add(ModelCommon.buildReading(-40.0, now, UnitSymbolKind.W, UnitMultiplierKind.KILO, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN));
+        resourceReadPayload = marshaller.marshal(resourceReadingProfile);
+    }
+
+    @Benchmark
+    public Sink batterySimPayloadObserver() {
+        batteryControl.handle(batteryControlPayload);
+        return sink;
+    }
+
+    @Benchmark
+    public Sink recloserControlSubscriber() {
+        recloserControl.handle(recloserControlPayload);
+        return sink;
+    }
+
+    @Benchmark
+    public Sink batteryReadSubscriber() {
+        batteryRead.handle(batteryReadPayload);
+        return sink;
+    }
+
+    @Benchmark
+    public Sink solarReadSubscriber() {
+        solarRead.handle(solarReadPayload);
+        return sink;
+    }
+
+    @Benchmark
+    public Sink resourceReadSubscriber() {
+        resourceRead.handle(resourceReadPayload);
+        return sink;
+    }
+
+    /**
+     * The path the recloser and balancer take for readings, through the streaming power decoder.
+     */
+    @Benchmark
+    public Sink dispatchedPowerReadSubscriber() {
+        dispatchedBatteryRead.handle(batteryReadPayload);
+        return sink;
+    }
+}
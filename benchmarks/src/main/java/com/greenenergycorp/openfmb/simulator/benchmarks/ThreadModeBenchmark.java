@@ -0,0 +1,111 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.benchmarks;
+
+import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryObserver;
+import com.greenenergycorp.openfmb.simulator.schedule.OverrunPolicy;
+import com.greenenergycorp.openfmb.simulator.schedule.ThreadMode;
+import com.greenenergycorp.openfmb.simulator.schedule.TickScheduler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a fleet of BatteryMachines whose publishes block for a fixed time (standing in for a blocking
+ * MQTT publish) under each ThreadMode, and prints how many of the expected ticks each mode delivered.
+ *
+ * -Dbench.devices, -Dbench.intervalMs, -Dbench.publishLatencyMs, -Dbench.durationSec, -Dbench.threads
+ * and -Dbench.modes (comma separated) control the run.
+ */
+public class ThreadModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final int devices = Integer.getInteger("bench.devices", 2000);
+        final long intervalMs = Long.getLong("bench.intervalMs", 1000);
+        final long publishLatencyMs = Long.getLong("bench.publishLatencyMs", 5);
+        final long durationSec = Long.getLong("bench.durationSec", 30);
+        final int threads = Integer.getInteger("bench.threads", Runtime.getRuntime().availableProcessors());
+        final String modes = System.getProperty("bench.modes", "scheduler,platform,virtual");
+
+        System.out.println("devices=" + devices + " intervalMs=" + intervalMs + " publishLatencyMs=" + publishLatencyMs
+                + " durationSec=" + durationSec + " schedulerThreads=" + threads + " virtualThreadsAvailable=" + ThreadMode.virtualThreadsAvailable());
+        System.out.println(String.format("%-10s %10s %12s %10s %10s %10s %12s %12s %10s",
+                "mode", "setup ms", "ticks/s", "% target", "overruns", "skipped", "worst ms", "peak thrds", "heap MB"));
+
+        for (final String modeName : modes.split(",")) {
+            final ThreadMode mode = ThreadMode.fromString(modeName);
+            run(mode, devices, intervalMs, publishLatencyMs, durationSec, threads);
+            System.gc();
+            Thread.sleep(1000);
+        }
+        System.exit(0);
+    }
+
+    private static void run(final ThreadMode mode, final int devices, final long intervalMs, final long publishLatencyMs, final long durationSec, final int threads) throws Exception {
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        threadBean.resetPeakThreadCount();
+
+        final AtomicLong publishes = new AtomicLong(0);
+        final BatteryObserver observer = new BatteryObserver() {
+            public void batteryReadUpdate(double power, double volts, double frequency) throws Exception {
+                Thread.sleep(publishLatencyMs);
+                publishes.incrementAndGet();
+            }
+
+            public void batteryEventUpdate(boolean isConnected, boolean isCharging, String mode, double stateOfCharge) throws Exception {
+                publishes.incrementAndGet();
+            }
+        };
+
+        final BatteryMachine.BatterySpec spec = new BatteryMachine.BatterySpec(250, 250, 250, 237.5, 37.5, 0.8, 277, 60);
+
+        final long setupStart = System.nanoTime();
+        final TickScheduler scheduler = new TickScheduler(threads, "bench " + mode.name().toLowerCase(), OverrunPolicy.SKIP, mode);
+        for (int i = 0; i < devices; i++) {
+            scheduler.register("battery " + i, new BatteryMachine(observer, intervalMs, spec), intervalMs, (intervalMs * i) / devices);
+        }
+        final long setupMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - setupStart);
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSec));
+
+        long ticks = 0;
+        long overruns = 0;
+        long skipped = 0;
+        long worstMs = 0;
+        for (final TickScheduler.TickHandle handle : scheduler.getHandles()) {
+            ticks += handle.getPacer().getTicks();
+            overruns += handle.getPacer().getOverruns();
+            skipped += handle.getPacer().getSkipped();
+            worstMs = Math.max(worstMs, handle.getPacer().getMaxLatenessMs());
+        }
+        final int peakThreads = threadBean.getPeakThreadCount();
+        final long heapMb = (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / (1024 * 1024);
+
+        scheduler.shutdown();
+
+        final double ticksPerSec = (double) ticks / durationSec;
+        final double target = devices * (1000.0 / intervalMs);
+
+        System.out.println(String.format("%-10s %10d %12.1f %10.1f %10d %10d %12d %12d %10d",
+                mode.name().toLowerCase(), setupMs, ticksPerSec, 100.0 * ticksPerSec / target, overruns, skipped, worstMs, peakThreads, heapMb));
+    }
+}
@@ -18,25 +18,202 @@
  */
 package com.greenenergycorp.openfmb.simulator;
 
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * A daily profile of evenly spaced points, starting at local midnight: 24 points are hourly, 1440
+ * are a minute apart and 86400 a second apart. The profile wraps from the last point back to the
+ * first. Points are placed by wall-clock time, so on days when the clocks change an hour of the
+ * profile is skipped or repeated.
+ *
+ * Each segment's polynomial is computed up front, and the bounds of the current day are cached and
+ * only recomputed when a time falls outside them, so a lookup does a constant amount of work and
+ * does not allocate.
+ */
 public class DailyInterpolatedData {
-    private final double[] values;
+
+    private static final long MILLIS_IN_A_DAY = 24 * TimeUtil.millisecondsInAnHour;
+
+    private final int points;
+    private final double pointsPerMilli;
+    // a, b, c and d for each segment, evaluated as a + b*f + c*f^2 + d*f^3 for the fraction f through it
+    private final double[] coefficients;
+
+    private volatile Day day = new Day(Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, 0);
 
     public DailyInterpolatedData(double[] values) {
-        this.values = values;
+        this(values, Interpolation.LINEAR);
+    }
+
+    public DailyInterpolatedData(double[] values, Interpolation interpolation) {
+        if (values.length == 0) {
+            throw new IllegalArgumentException("A daily profile needs at least one value");
+        }
+        this.points = values.length;
+        this.pointsPerMilli = (double) values.length / MILLIS_IN_A_DAY;
+        this.coefficients = (interpolation == Interpolation.SPLINE && values.length >= 3) ?
+                splineCoefficients(values) :
+                linearCoefficients(values);
+    }
+
+    /**
+     * Shares the profile of another instance, with its own cache of the current day. For a thread
+     * that simulates different days from the other users of the profile.
+     */
+    public DailyInterpolatedData(DailyInterpolatedData other) {
+        this.points = other.points;
+        this.pointsPerMilli = other.pointsPerMilli;
+        this.coefficients = other.coefficients;
+    }
+
+    public int getPoints() {
+        return points;
     }
 
     public double atTime(long time) {
-        final long elapsedInDay = time - TimeUtil.getStartOfCurrentDay();
+        Day current = day;
+        if (time < current.start || time >= current.end) {
+            current = Day.containing(time);
+            day = current;
+        }
+
+        long elapsedInDay = time - current.start;
+        if (time >= current.transition) {
+            elapsedInDay += current.shift;
+        }
+        if (elapsedInDay < 0) {
+            elapsedInDay = 0;
+        } else if (elapsedInDay >= MILLIS_IN_A_DAY) {
+            elapsedInDay = MILLIS_IN_A_DAY - 1;
+        }
+
+        final double position = elapsedInDay * pointsPerMilli;
+        int index = (int) position;
+        if (index >= points) {
+            index = points - 1;
+        }
+        final double fraction = position - index;
+
+        final int i = index * 4;
+        return coefficients[i] + fraction * (coefficients[i + 1] + fraction * (coefficients[i + 2] + fraction * coefficients[i + 3]));
+    }
+
+    private static double[] linearCoefficients(final double[] values) {
+        final int n = values.length;
+        final double[] coefficients = new double[n * 4];
+        for (int i = 0; i < n; i++) {
+            coefficients[i * 4] = values[i];
+            coefficients[i * 4 + 1] = values[(i + 1) % n] - values[i];
+        }
+        return coefficients;
+    }
+
+    // periodic cubic spline with unit spacing: m[i-1] + 4 m[i] + m[i+1] = 6 (y[i+1] - 2 y[i] + y[i-1]),
+    // a cyclic tridiagonal system for the second derivatives m, solved with Sherman-Morrison
+    private static double[] splineCoefficients(final double[] y) {
+        final int n = y.length;
+        final double[] rhs = new double[n];
+        for (int i = 0; i < n; i++) {
+            rhs[i] = 6.0 * (y[(i + 1) % n] - 2.0 * y[i] + y[(i + n - 1) % n]);
+        }
+
+        // A = T + u v^T, where T is tridiagonal with the corners folded into its first and last diagonal entries
+        final double gamma = -4.0;
+        final double[] diagonal = new double[n];
+        for (int i = 0; i < n; i++) {
+            diagonal[i] = 4.0;
+        }
+        diagonal[0] -= gamma;
+        diagonal[n - 1] -= 1.0 / gamma;
+
+        final double[] u = new double[n];
+        u[0] = gamma;
+        u[n - 1] = 1.0;
+
+        final double[] x = solveTridiagonal(diagonal, rhs);
+        final double[] z = solveTridiagonal(diagonal, u);
+        final double factor = (x[0] + x[n - 1] / gamma) / (1.0 + z[0] + z[n - 1] / gamma);
+
+        final double[] m = new double[n];
+        for (int i = 0; i < n; i++) {
+            m[i] = x[i] - factor * z[i];
+        }
+
+        final double[] coefficients = new double[n * 4];
+        for (int i = 0; i < n; i++) {
+            final int next = (i + 1) % n;
+            coefficients[i * 4] = y[i];
+            coefficients[i * 4 + 1] = (y[next] - y[i]) - (2.0 * m[i] + m[next]) / 6.0;
+            coefficients[i * 4 + 2] = m[i] / 2.0;
+            coefficients[i * 4 + 3] = (m[next] - m[i]) / 6.0;
+        }
+        return coefficients;
+    }
+
+    // Thomas algorithm for a symmetric tridiagonal system with ones off the diagonal
+    private static double[] solveTridiagonal(final double[] diagonal, final double[] rhs) {
+        final int n = diagonal.length;
+        final double[] c = new double[n];
+        final double[] d = new double[n];
+        c[0] = 1.0 / diagonal[0];
+        d[0] = rhs[0] / diagonal[0];
+        for (int i = 1; i < n; i++) {
+            final double denominator = diagonal[i] - c[i - 1];
+            c[i] = 1.0 / denominator;
+            d[i] = (rhs[i] - d[i - 1]) / denominator;
+        }
+        final double[] x = new double[n];
+        x[n - 1] = d[n - 1];
+        for (int i = n - 2; i >= 0; i--) {
+            x[i] = d[i] - c[i] * x[i + 1];
+        }
+        return x;
+    }
 
-        final double hourFractional = (double) elapsedInDay / (double) TimeUtil.millisecondsInAnHour;
+    /**
+     * A local day from midnight to midnight. If the clocks change during it, times from the
+     * transition on are shifted by the change to give the wall-clock time of day.
+     */
+    private static class Day {
+        private final long start;
+        private final long end;
+        private final long transition;
+        private final long shift;
 
-        final int hourIndex = (int) Math.floor(hourFractional);
+        public Day(long start, long end, long transition, long shift) {
+            this.start = start;
+            this.end = end;
+            this.transition = transition;
+            this.shift = shift;
+        }
 
-        final double fraction = hourFractional - hourIndex;
+        public static Day containing(final long time) {
+            final long start = TimeUtil.getStartOfDay(time);
+            final Calendar c = Calendar.getInstance();
+            c.setTimeInMillis(start);
+            c.add(Calendar.DATE, 1);
+            final long end = c.getTimeInMillis();
 
-        final double below = values[hourIndex];
-        final double above = values[(hourIndex + 1) % 24];
+            final TimeZone zone = c.getTimeZone();
+            final int startOffset = zone.getOffset(start);
+            final int endOffset = zone.getOffset(end - 1);
+            if (startOffset == endOffset) {
+                return new Day(start, end, Long.MAX_VALUE, 0);
+            }
 
-        return below + fraction * (above - below);
+            // the first millisecond at the new offset
+            long low = start;
+            long high = end - 1;
+            while (low < high) {
+                final long mid = low + (high - low) / 2;
+                if (zone.getOffset(mid) == startOffset) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return new Day(start, end, low, endOffset - startOffset);
+        }
     }
 }
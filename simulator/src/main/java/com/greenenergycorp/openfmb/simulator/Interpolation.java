@@ -0,0 +1,41 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator;
+
+public enum Interpolation {
+    /**
+     * Straight lines between adjacent points.
+     */
+    LINEAR,
+
+    /**
+     * A periodic cubic spline through the points, smooth across midnight. Can overshoot around
+     * sharp changes.
+     */
+    SPLINE;
+
+    public static Interpolation fromString(final String s) {
+        for (final Interpolation i : Interpolation.values()) {
+            if (i.name().equalsIgnoreCase(s.trim())) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown interpolation: " + s);
+    }
+}
@@ -19,7 +19,9 @@
 package com.greenenergycorp.openfmb.simulator;
 
 import java.io.FileInputStream;
+import java.util.LinkedHashSet;
 import java.util.Properties;
+import java.util.Set;
 
 public class PropertyUtil {
 
@@ -70,6 +72,17 @@ public class PropertyUtil {
         }
     }
 
+    public static Set<String> propSetOrThrow(final Properties properties, final String key) {
+        final Set<String> values = new LinkedHashSet<String>();
+        for (final String raw : propOrThrow(properties, key).split(",")) {
+            final String value = raw.trim();
+            if (!value.isEmpty()) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
     public static String systemPropOrThrow(final String key) {
         return propOrThrow(System.getProperties(), key);
     }
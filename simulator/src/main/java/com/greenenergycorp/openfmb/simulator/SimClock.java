@@ -0,0 +1,128 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time the simulation runs at. Battery state of charge, solar profiles and profile timestamps
+ * all read it, so a scaled clock runs a whole simulated day in minutes while the scheduler still
+ * ticks in real time.
+ *
+ * Tick intervals, publish intervals and latency measurements stay on real time.
+ */
+public abstract class SimClock {
+    private final static Logger logger = LoggerFactory.getLogger(SimClock.class);
+
+    /**
+     * The system clock.
+     */
+    public static final SimClock WALL = new WallClock();
+
+    /**
+     * @return the current simulated time, in epoch milliseconds
+     */
+    public abstract long currentTimeMillis();
+
+    /**
+     * @return simulated milliseconds per real millisecond
+     */
+    public abstract double getScale();
+
+    /**
+     * A clock that starts at the simulated time of originMillis scaled up to now, then runs scale
+     * times faster than real time. Two processes with the same origin and scale agree on the time,
+     * whenever each was started.
+     *
+     * @param originMillis the epoch time at which simulated and real time coincide
+     */
+    public static SimClock scaled(final double scale, final long originMillis) {
+        if (scale <= 0) {
+            throw new IllegalArgumentException("Clock scale must be positive: " + scale);
+        }
+        if (scale == 1.0) {
+            return WALL;
+        }
+        return new ScaledClock(scale, originMillis);
+    }
+
+    /**
+     * Reads &lt;prefix&gt;clockScale, 1 (real time) by default, and &lt;prefix&gt;clockOrigin, the epoch
+     * milliseconds at which simulated and real time coincide. The origin defaults to the start of
+     * the current day, so processes started on the same day and scale share a clock.
+     */
+    public static SimClock fromProperties(final Properties props, final String prefix) {
+        final double scale = Double.parseDouble(props.getProperty(prefix + "clockScale", "1").trim());
+        final String origin = props.getProperty(prefix + "clockOrigin");
+        final long originMillis = (origin == null) ? TimeUtil.getStartOfCurrentDay() : Long.parseLong(origin.trim());
+        final SimClock clock = scaled(scale, originMillis);
+        if (clock != WALL) {
+            logger.info("Running simulated time at " + scale + "x from " + new Date(originMillis) + ", now " + new Date(clock.currentTimeMillis()));
+        }
+        return clock;
+    }
+
+    private static class WallClock extends SimClock {
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        public double getScale() {
+            return 1.0;
+        }
+
+        @Override
+        public String toString() {
+            return "wall clock";
+        }
+    }
+
+    // runs off System.nanoTime() once started, so the simulated time never steps back if the system
+    // clock is adjusted
+    private static class ScaledClock extends SimClock {
+        private final double scale;
+        private final long startMillis;
+        private final long startNanos;
+
+        public ScaledClock(double scale, long originMillis) {
+            this.scale = scale;
+            this.startNanos = System.nanoTime();
+            this.startMillis = originMillis + (long) ((System.currentTimeMillis() - originMillis) * scale);
+        }
+
+        public long currentTimeMillis() {
+            final long elapsedNanos = System.nanoTime() - startNanos;
+            return startMillis + (long) (elapsedNanos * scale / TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        public double getScale() {
+            return scale;
+        }
+
+        @Override
+        public String toString() {
+            return scale + "x clock";
+        }
+    }
+}
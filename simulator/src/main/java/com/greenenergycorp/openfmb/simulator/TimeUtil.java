@@ -25,10 +25,19 @@ public class TimeUtil {
     public static long millisecondsInAnHour = 1000 * 60 * 60;
 
     public static long getStartOfCurrentDay() {
+        return getStartOfDay(System.currentTimeMillis());
+    }
+
+    /**
+     * @return local midnight at the start of the day that contains time
+     */
+    public static long getStartOfDay(final long time) {
         final Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(time);
         final int year = c.get(Calendar.YEAR);
         final int month = c.get(Calendar.MONTH);
         final int day = c.get(Calendar.DATE);
+        c.clear();
         c.set(year, month, day, 0, 0, 0);
         return c.getTimeInMillis();
     }
@@ -18,39 +18,76 @@
  */
 package com.greenenergycorp.openfmb.simulator.balance;
 
+import com.greenenergycorp.openfmb.simulator.SimClock;
+import com.greenenergycorp.openfmb.simulator.recloser.PowerAggregator;
 import com.greenenergycorp.openfmb.simulator.recloser.SystemPowerObserver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class BalancingMachine implements SystemPowerObserver, RecloserStatusObserver {
+public class BalancingMachine implements SystemPowerObserver, TimedRecloserStatusObserver {
     private final static Logger logger = LoggerFactory.getLogger(BalancingMachine.class);
 
     private final String sourceLogicalDeviceId;
     private final BatteryControlIssuer publisher;
 
-    private boolean isClosed = true;
-    private final Map<String, Double> batteries = new HashMap<String, Double>();
-    private final Map<String, Double> loads = new HashMap<String, Double>();
-    private final Map<String, Double> solars = new HashMap<String, Double>();
+    private volatile boolean isClosed = true;
+    private final PowerAggregator power = new PowerAggregator();
 
-    private final Object mutex = new Object();
+    private final Lock mutex = new ReentrantLock();
+
+    private final IslandingLatency islandingLatency;
+    private final SimClock clock;
 
     public BalancingMachine(String sourceLogicalDeviceId, BatteryControlIssuer publisher) {
+        this(sourceLogicalDeviceId, publisher, new IslandingLatency());
+    }
+
+    public BalancingMachine(String sourceLogicalDeviceId, BatteryControlIssuer publisher, IslandingLatency islandingLatency) {
+        this(sourceLogicalDeviceId, publisher, islandingLatency, SimClock.WALL);
+    }
+
+    /**
+     * @param clock the clock recloser event timestamps are on
+     */
+    public BalancingMachine(String sourceLogicalDeviceId, BatteryControlIssuer publisher, IslandingLatency islandingLatency, SimClock clock) {
         this.sourceLogicalDeviceId = sourceLogicalDeviceId;
         this.publisher = publisher;
+        this.islandingLatency = islandingLatency;
+        this.clock = clock;
+    }
+
+    public IslandingLatency getIslandingLatency() {
+        return islandingLatency;
     }
 
     public void updateRecloserStatus(final boolean nextIsClosed) {
-        synchronized (mutex) {
+        updateRecloserStatus(nextIsClosed, System.nanoTime(), 0, 0);
+    }
+
+    public void updateRecloserStatus(final boolean nextIsClosed, final long receivedNanos, final long decodeNanos, final long eventTimeMillis) {
+        final long lockStart = System.nanoTime();
+        mutex.lock();
+        try {
+            final long locked = System.nanoTime();
             if (isClosed && !nextIsClosed) {
                 isClosed = false;
                 try {
-                    logger.info("Detected islanding...");
-                    publisher.setPowerSetpoint(totalPower());
+                    final double setpoint = totalPower();
+                    final long computed = System.nanoTime();
+                    publisher.setPowerSetpoint(setpoint);
                     publisher.setIslanded();
+                    final long published = System.nanoTime();
+
+                    // logged after publishing so the log write is not part of the response
+                    // event timestamps are in simulated time, so the delay is scaled back to real time
+                    final long publishedTimeMillis = eventTimeMillis + (long) ((clock.currentTimeMillis() - eventTimeMillis) / clock.getScale());
+                    islandingLatency.record(decodeNanos, locked - lockStart, computed - locked, published - computed,
+                            published - receivedNanos, eventTimeMillis, publishedTimeMillis);
+                    logger.info("Detected islanding, responded in " + TimeUnit.NANOSECONDS.toMicros(published - receivedNanos) + " us");
                 } catch (Throwable ex) {
                     logger.error("Could not respond to islanding: " + ex);
                 }
@@ -63,46 +100,43 @@ public class BalancingMachine implements SystemPowerObserver, RecloserStatusObse
                     logger.error("Could not respond to de-islanding: " + ex);
                 }
             }
+        } finally {
+            mutex.unlock();
         }
     }
 
     public void updateBatteryPower(final String id, final double power) {
-        synchronized (mutex) {
-            if (!id.equals(sourceLogicalDeviceId)) {
-                batteries.put(id, power);
-                computeUpdate();
-            }
+        if (!id.equals(sourceLogicalDeviceId)) {
+            this.power.update(PowerAggregator.Category.BATTERY, id, power);
+            powerChanged();
         }
     }
 
     public void updateLoadPower(final String id, final double power) {
-        synchronized (mutex) {
-            loads.put(id, power);
-            computeUpdate();
-        }
+        this.power.update(PowerAggregator.Category.LOAD, id, power);
+        powerChanged();
     }
 
     public void updateSolarPower(final String id, final double power) {
-        synchronized (mutex) {
-            solars.put(id, power);
-            computeUpdate();
-        }
+        this.power.update(PowerAggregator.Category.SOLAR, id, power);
+        powerChanged();
     }
 
     private double totalPower() {
-        double total = 0.0;
-        for (final Double v : loads.values()) {
-            total += v;
-        }
-        for (final Double v : batteries.values()) {
-            total += v;
-        }
-        for (final Double v : solars.values()) {
-            total += v;
-        }
-        return total;
+        return power.getTotal();
     }
 
+    // setpoints are only issued while islanded, so updates while connected never take the lock
+    private void powerChanged() {
+        if (!isClosed) {
+            mutex.lock();
+            try {
+                computeUpdate();
+            } finally {
+                mutex.unlock();
+            }
+        }
+    }
 
     private void computeUpdate() {
         try {
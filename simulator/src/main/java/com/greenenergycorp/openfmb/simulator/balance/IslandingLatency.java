@@ -0,0 +1,129 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.balance;
+
+import com.greenenergycorp.openfmb.simulator.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long the balancer takes to respond once the recloser opens, from receiving the recloser event
+ * to publishing the setpoint and islanded commands. The response is split into decoding the event
+ * (including any wait for the handler thread), waiting for the machine lock, computing the setpoint
+ * and publishing the commands.
+ *
+ * The time from the event's own timestamp to the commands being published is recorded separately.
+ * It has millisecond resolution and includes the transport and any clock difference between the
+ * recloser and the balancer.
+ */
+public class IslandingLatency {
+    private final static Logger logger = LoggerFactory.getLogger(IslandingLatency.class);
+
+    private final LatencyHistogram decode = new LatencyHistogram();
+    private final LatencyHistogram lockWait = new LatencyHistogram();
+    private final LatencyHistogram compute = new LatencyHistogram();
+    private final LatencyHistogram publish = new LatencyHistogram();
+    private final LatencyHistogram response = new LatencyHistogram();
+    private final LatencyHistogram eventToCommand = new LatencyHistogram();
+
+    private ScheduledExecutorService reporter = null;
+
+    /**
+     * @param eventTimeMillis the event's timestamp, or 0 if not known
+     */
+    public void record(final long decodeNanos, final long lockWaitNanos, final long computeNanos, final long publishNanos,
+                       final long responseNanos, final long eventTimeMillis, final long publishedTimeMillis) {
+        decode.record(decodeNanos);
+        lockWait.record(lockWaitNanos);
+        compute.record(computeNanos);
+        publish.record(publishNanos);
+        response.record(responseNanos);
+        if (eventTimeMillis > 0) {
+            eventToCommand.record(TimeUnit.MILLISECONDS.toNanos(publishedTimeMillis - eventTimeMillis));
+        }
+    }
+
+    public LatencyHistogram getDecode() {
+        return decode;
+    }
+
+    public LatencyHistogram getLockWait() {
+        return lockWait;
+    }
+
+    public LatencyHistogram getCompute() {
+        return compute;
+    }
+
+    public LatencyHistogram getPublish() {
+        return publish;
+    }
+
+    /**
+     * @return from receiving the recloser event to the commands being published
+     */
+    public LatencyHistogram getResponse() {
+        return response;
+    }
+
+    public LatencyHistogram getEventToCommand() {
+        return eventToCommand;
+    }
+
+    public String getSummary() {
+        return "Islanding response: " + response.summary(TimeUnit.MICROSECONDS)
+                + "\n  decode: " + decode.summary(TimeUnit.MICROSECONDS)
+                + "\n  lock wait: " + lockWait.summary(TimeUnit.MICROSECONDS)
+                + "\n  compute: " + compute.summary(TimeUnit.MICROSECONDS)
+                + "\n  publish: " + publish.summary(TimeUnit.MICROSECONDS)
+                + "\n  event timestamp to command: " + eventToCommand.summary(TimeUnit.MILLISECONDS);
+    }
+
+    public void logSummary() {
+        if (response.getCount() > 0) {
+            logger.info(getSummary());
+        }
+    }
+
+    /**
+     * Logs the summary at a fixed interval on a daemon thread, once there has been an islanding.
+     */
+    public synchronized void startReporting(final long reportIntervalMs) {
+        if (reporter != null) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "islanding latency report");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reporter.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                logSummary();
+            }
+        }, reportIntervalMs, reportIntervalMs, TimeUnit.MILLISECONDS);
+    }
+}
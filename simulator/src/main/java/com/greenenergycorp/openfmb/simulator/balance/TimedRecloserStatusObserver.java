@@ -0,0 +1,31 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.balance;
+
+/**
+ * A RecloserStatusObserver that is also told when the status arrived, so it can time its response.
+ */
+public interface TimedRecloserStatusObserver extends RecloserStatusObserver {
+    /**
+     * @param receivedNanos   System.nanoTime() when the status payload arrived
+     * @param decodeNanos     time from arrival until the payload was decoded, including any hand-off to a handler thread
+     * @param eventTimeMillis timestamp of the status event, or 0 if not known
+     */
+    void updateRecloserStatus(final boolean nextIsClosed, final long receivedNanos, final long decodeNanos, final long eventTimeMillis);
+}
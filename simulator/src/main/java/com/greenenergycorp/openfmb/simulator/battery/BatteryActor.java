@@ -0,0 +1,237 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.battery;
+
+import com.greenenergycorp.openfmb.simulator.schedule.FixedRatePacer;
+import com.greenenergycorp.openfmb.simulator.schedule.OverrunPolicy;
+import com.greenenergycorp.openfmb.simulator.schedule.TickScheduler;
+import com.greenenergycorp.openfmb.simulator.schedule.Tickable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a BatteryMachine on a single owner thread. Control commands from any thread are queued and
+ * the caller returns immediately; the owner thread applies them in order between periodic ticks, so
+ * the machine is only ever touched by one thread.
+ *
+ * A run of queued power setpoints with nothing between them is applied as the last one, since each
+ * would overwrite the one before it. Commands that arrive before the loop starts are held until it does.
+ *
+ * Alternatively the actor can be scheduled on a shared TickScheduler, so that large fleets do not need a
+ * thread per battery. Ticks then run on the scheduler and commands are drained by a task submitted to
+ * its pool, with a lock keeping the two apart.
+ */
+public class BatteryActor implements BatteryControlObserver {
+    private final static Logger logger = LoggerFactory.getLogger(BatteryActor.class);
+
+    private final BatteryMachine machine;
+    private volatile FixedRatePacer pacer = null;
+
+    // bounds the work between deadline checks so a flood of commands cannot hold off ticks
+    private static final int MAX_DRAIN = 1024;
+
+    private final ConcurrentLinkedQueue<Command> commands = new ConcurrentLinkedQueue<Command>();
+
+    private volatile Thread owner = null;
+    private volatile boolean running = true;
+
+    private volatile TickScheduler scheduler = null;
+    private volatile TickScheduler.TickHandle handle = null;
+    private final AtomicBoolean drainPending = new AtomicBoolean(false);
+    private final Object machineLock = new Object();
+
+    private volatile long commandsApplied = 0;
+    private volatile long setpointsCollapsed = 0;
+    private volatile long maxCommandLatencyNanos = 0;
+
+    public BatteryActor(BatteryMachine machine) {
+        this.machine = machine;
+    }
+
+    public void setPowerSetpoint(final double v) {
+        enqueue(new Command(v, null));
+    }
+
+    public void setModeControl(final BatteryMachine.BatteryMode nextMode) {
+        enqueue(new Command(0.0, nextMode));
+    }
+
+    private void enqueue(final Command command) {
+        commands.offer(command);
+        final Thread thread = owner;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        final TickScheduler shared = scheduler;
+        if (shared != null) {
+            requestDrain(shared);
+        }
+    }
+
+    private void requestDrain(final TickScheduler shared) {
+        if (running && drainPending.compareAndSet(false, true)) {
+            shared.execute(new Runnable() {
+                public void run() {
+                    drainPending.set(false);
+                    synchronized (machineLock) {
+                        drainCommands();
+                    }
+                    if (!commands.isEmpty()) {
+                        requestDrain(shared);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs ticks on the scheduler and drains commands on its pool instead of on an owner thread.
+     */
+    public void schedule(final TickScheduler shared, final String name, final long initialDelayMs) {
+        handle = shared.register(name, new Tickable() {
+            public void tick() {
+                synchronized (machineLock) {
+                    drainCommands();
+                    machine.tick();
+                }
+            }
+        }, machine.getIntervalMs(), initialDelayMs);
+        pacer = handle.getPacer();
+        scheduler = shared;
+        if (!commands.isEmpty()) {
+            requestDrain(shared);
+        }
+    }
+
+    /**
+     * Starts the event loop on a new owner thread.
+     */
+    public Thread start(final OverrunPolicy policy, final long initialDelayMs, final ThreadFactory threadFactory) {
+        final Thread thread = threadFactory.newThread(new Runnable() {
+            public void run() {
+                BatteryActor.this.run(policy, initialDelayMs);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Runs the event loop on the calling thread until stopped or interrupted.
+     */
+    public void run(final OverrunPolicy policy, final long initialDelayMs) {
+        final long start = System.nanoTime();
+        pacer = new FixedRatePacer(machine.getIntervalMs(), policy, start + TimeUnit.MILLISECONDS.toNanos(initialDelayMs));
+        owner = Thread.currentThread();
+
+        long deadline = start + pacer.delayToFirstTick(start);
+
+        while (running && !Thread.currentThread().isInterrupted()) {
+            drainCommands();
+
+            final long now = System.nanoTime();
+            if (now - deadline >= 0) {
+                machine.tick();
+                final long done = System.nanoTime();
+                deadline = done + pacer.completeTick(done);
+            } else if (commands.isEmpty()) {
+                // an enqueue after the isEmpty() check leaves a permit, so park returns at once
+                LockSupport.parkNanos(this, deadline - now);
+            }
+        }
+
+        owner = null;
+        logger.debug("Battery event loop stopped");
+    }
+
+    public void stop() {
+        running = false;
+        final Thread thread = owner;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        final TickScheduler.TickHandle scheduled = handle;
+        if (scheduled != null) {
+            scheduled.cancel();
+        }
+    }
+
+    private void drainCommands() {
+        Command command;
+        int drained = 0;
+        while (drained++ < MAX_DRAIN && (command = commands.poll()) != null) {
+            if (command.mode == null) {
+                final Command next = commands.peek();
+                if (next != null && next.mode == null) {
+                    setpointsCollapsed++;
+                    continue;
+                }
+                machine.setPowerSetpoint(command.setpoint);
+            } else {
+                machine.setModeControl(command.mode);
+            }
+
+            commandsApplied++;
+            final long latency = System.nanoTime() - command.enqueuedNanos;
+            if (latency > maxCommandLatencyNanos) {
+                maxCommandLatencyNanos = latency;
+            }
+        }
+    }
+
+    public BatteryMachine getMachine() {
+        return machine;
+    }
+
+    /**
+     * @return the tick schedule, or null if the loop has not started
+     */
+    public FixedRatePacer getPacer() {
+        return pacer;
+    }
+
+    public long getCommandsApplied() {
+        return commandsApplied;
+    }
+
+    public long getSetpointsCollapsed() {
+        return setpointsCollapsed;
+    }
+
+    public long getMaxCommandLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxCommandLatencyNanos);
+    }
+
+    private static class Command {
+        private final double setpoint;
+        private final BatteryMachine.BatteryMode mode;
+        private final long enqueuedNanos = System.nanoTime();
+
+        Command(double setpoint, BatteryMachine.BatteryMode mode) {
+            this.setpoint = setpoint;
+            this.mode = mode;
+        }
+    }
+}
@@ -18,21 +18,31 @@
  */
 package com.greenenergycorp.openfmb.simulator.battery;
 
+import com.greenenergycorp.openfmb.simulator.SimClock;
 import com.greenenergycorp.openfmb.simulator.TimeUtil;
+import com.greenenergycorp.openfmb.simulator.jfr.BatteryTickEvent;
+import com.greenenergycorp.openfmb.simulator.schedule.FixedRatePacer;
+import com.greenenergycorp.openfmb.simulator.schedule.OverrunPolicy;
+import com.greenenergycorp.openfmb.simulator.schedule.Tickable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Random;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class BatteryMachine implements BatteryControlObserver {
+public class BatteryMachine implements BatteryControlObserver, Tickable {
     private final static Logger logger = LoggerFactory.getLogger(BatteryMachine.class);
 
+    private final String logicalDeviceId;
     private final BatteryObserver updateObserver;
 
     private final long intervalMs;
 
     private final BatterySpec batterySpec;
 
+    private final SimClock clock;
+
     private double soc;
     private double power;
     private double volts;
@@ -44,14 +54,38 @@ public class BatteryMachine implements BatteryControlObserver {
 
     private Long lastSocUpdateTime = null;
 
-    private final Random random = new Random();
+    private final Random random;
 
-    private final Object mutex = new Object();
+    private final Lock mutex = new ReentrantLock();
 
     public BatteryMachine(BatteryObserver updateObserver, long intervalMs, BatterySpec batterySpec) {
+        this("", updateObserver, intervalMs, batterySpec);
+    }
+
+    /**
+     * @param logicalDeviceId identifies the battery in flight recorder events
+     */
+    public BatteryMachine(String logicalDeviceId, BatteryObserver updateObserver, long intervalMs, BatterySpec batterySpec) {
+        this(logicalDeviceId, updateObserver, intervalMs, batterySpec, SimClock.WALL);
+    }
+
+    /**
+     * @param clock the time the state of charge is integrated over
+     */
+    public BatteryMachine(String logicalDeviceId, BatteryObserver updateObserver, long intervalMs, BatterySpec batterySpec, SimClock clock) {
+        this(logicalDeviceId, updateObserver, intervalMs, batterySpec, clock, new Random());
+    }
+
+    /**
+     * @param random drives the voltage and frequency jitter; seed it for a reproducible run
+     */
+    public BatteryMachine(String logicalDeviceId, BatteryObserver updateObserver, long intervalMs, BatterySpec batterySpec, SimClock clock, Random random) {
+        this.logicalDeviceId = logicalDeviceId;
         this.updateObserver = updateObserver;
         this.intervalMs = intervalMs;
         this.batterySpec = batterySpec;
+        this.clock = clock;
+        this.random = random;
 
         this.currentSetpoint = 0.0;
         this.mode = BatteryMode.MAINTAIN_STANDBY;
@@ -62,33 +96,52 @@ public class BatteryMachine implements BatteryControlObserver {
     }
 
     public void run() throws InterruptedException {
+        final FixedRatePacer pacer = new FixedRatePacer(intervalMs, OverrunPolicy.SKIP);
         while (true) {
-            synchronized (mutex) {
-                updateSoc();
-                checkStandby();
-                jitter();
-                publishState();
-            }
-            Thread.sleep(intervalMs);
+            tick();
+            pacer.awaitNextTick();
         }
     }
 
+    public void tick() {
+        final BatteryTickEvent event = new BatteryTickEvent();
+        event.begin();
+        mutex.lock();
+        try {
+            updateSoc();
+            checkStandby();
+            jitter();
+            publishState();
+            event.record(logicalDeviceId, mode.getDescription(), soc * 100, power);
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
     public void setPowerSetpoint(final double v) {
         logger.debug("Set power: " + v);
         final double clamped = clampSetpointValue(v);
-        synchronized (mutex) {
+        mutex.lock();
+        try {
             currentSetpoint = clamped;
             if (mode == BatteryMode.PROGRAM_PQ || mode == BatteryMode.ISLANDED) {
                 updateSoc();
                 power = clamped;
                 publishState();
             }
+        } finally {
+            mutex.unlock();
         }
     }
 
     public void setModeControl(final BatteryMode nextMode) {
         logger.debug("Set mode: " + nextMode);
-        synchronized (mutex) {
+        mutex.lock();
+        try {
             if (mode == BatteryMode.MAINTAIN_STANDBY) {
                 if (nextMode == BatteryMode.PROGRAM_PQ || nextMode == BatteryMode.ISLANDED) {
                     transitionToSetpointDrivenMode(nextMode);
@@ -110,6 +163,8 @@ public class BatteryMachine implements BatteryControlObserver {
                     logger.warn("Transition from state " + mode.getDescription() + " to " + nextMode.getDescription() + " not supported.");
                 }
             }
+        } finally {
+            mutex.unlock();
         }
     }
 
@@ -131,18 +186,19 @@ public class BatteryMachine implements BatteryControlObserver {
         publishState();
     }
 
+    // positive power charges, as in updateSoc
     private double clampSetpointValue(final double v) {
-        if (v < -batterySpec.getMaxChargeRatekW()) {
-            return -batterySpec.getMaxChargeRatekW();
-        } else if (v > batterySpec.getMaxDischargeRatekW()) {
-            return batterySpec.getMaxDischargeRatekW();
+        if (v < -batterySpec.getMaxDischargeRatekW()) {
+            return -batterySpec.getMaxDischargeRatekW();
+        } else if (v > batterySpec.getMaxChargeRatekW()) {
+            return batterySpec.getMaxChargeRatekW();
         } else {
             return v;
         }
     }
 
     private void updateSoc() {
-        final long now = System.currentTimeMillis();
+        final long now = clock.currentTimeMillis();
 
         if (lastSocUpdateTime != null) {
             final long last = lastSocUpdateTime;
@@ -275,5 +331,14 @@ public class BatteryMachine implements BatteryControlObserver {
             }
             return null;
         }
+
+        public static BatteryMode fromDescription(final String description) {
+            for (final BatteryMode m: BatteryMode.values()) {
+                if (m.getDescription().equals(description)) {
+                    return m;
+                }
+            }
+            return null;
+        }
     }
 }
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.discrete;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes each series to its own file in a directory as raw big-endian values, so a column can be
+ * loaded straight into an array: time.i64 (epoch milliseconds), solar_kw.f64, battery_kw.f64,
+ * battery_soc_pct.f64, battery_mode.i32 (the mode number), recloser_closed.i8 (1 when closed) and
+ * recloser_kw.f64.
+ */
+public class ColumnarTimeSeriesWriter implements TimeSeriesWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Column time;
+    private final Column solarPower;
+    private final Column batteryPower;
+    private final Column batterySoc;
+    private final Column batteryMode;
+    private final Column recloserClosed;
+    private final Column recloserPower;
+
+    public ColumnarTimeSeriesWriter(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        this.time = new Column(new File(directory, "time.i64"));
+        this.solarPower = new Column(new File(directory, "solar_kw.f64"));
+        this.batteryPower = new Column(new File(directory, "battery_kw.f64"));
+        this.batterySoc = new Column(new File(directory, "battery_soc_pct.f64"));
+        this.batteryMode = new Column(new File(directory, "battery_mode.i32"));
+        this.recloserClosed = new Column(new File(directory, "recloser_closed.i8"));
+        this.recloserPower = new Column(new File(directory, "recloser_kw.f64"));
+    }
+
+    public void write(final long timeMillis, final SimulatedMicrogrid grid) throws IOException {
+        time.reserve(8).putLong(timeMillis);
+        solarPower.reserve(8).putDouble(grid.getSolarPower());
+        batteryPower.reserve(8).putDouble(grid.getBatteryPower());
+        batterySoc.reserve(8).putDouble(grid.getBatteryStateOfCharge());
+        batteryMode.reserve(4).putInt(grid.getBatteryMode().getNumber());
+        recloserClosed.reserve(1).put(grid.isRecloserClosed() ? (byte) 1 : (byte) 0);
+        recloserPower.reserve(8).putDouble(grid.getRecloserPower());
+    }
+
+    public void close() throws IOException {
+        IOException failure = null;
+        for (final Column column : new Column[] { time, solarPower, batteryPower, batterySoc, batteryMode, recloserClosed, recloserPower }) {
+            try {
+                column.close();
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static class Column {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        public Column(File file) throws IOException {
+            this.channel = new FileOutputStream(file).getChannel();
+        }
+
+        public ByteBuffer reserve(final int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain();
+            }
+            return buffer;
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        public void close() throws IOException {
+            try {
+                drain();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.discrete;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes samples as comma separated lines with a header. Lines are built in a reused StringBuilder
+ * and copied into a buffer that is written to the file channel when full.
+ */
+public class CsvTimeSeriesWriter implements TimeSeriesWriter {
+
+    public static final String HEADER = "time,solar_kw,battery_kw,battery_soc_pct,battery_mode,recloser_closed,recloser_kw";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder line = new StringBuilder(128);
+
+    public CsvTimeSeriesWriter(File file) throws IOException {
+        this.channel = new FileOutputStream(file).getChannel();
+        line.append(HEADER).append('\n');
+        append(line);
+    }
+
+    public void write(final long timeMillis, final SimulatedMicrogrid grid) throws IOException {
+        line.setLength(0);
+        line.append(timeMillis).append(',')
+                .append(grid.getSolarPower()).append(',')
+                .append(grid.getBatteryPower()).append(',')
+                .append(grid.getBatteryStateOfCharge()).append(',')
+                .append(grid.getBatteryMode().getDescription()).append(',')
+                .append(grid.isRecloserClosed()).append(',')
+                .append(grid.getRecloserPower()).append('\n');
+        append(line);
+    }
+
+    // the header and values are all ASCII
+    private void append(final CharSequence chars) throws IOException {
+        final int length = chars.length();
+        for (int i = 0; i < length; i++) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) chars.charAt(i));
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.discrete;
+
+import com.greenenergycorp.openfmb.simulator.SimClock;
+import com.greenenergycorp.openfmb.simulator.schedule.Tickable;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Runs a simulation as a sequence of timestamped events on the calling thread, as fast as the
+ * events can be executed. Before each event the clock is set to the event's time, so machines
+ * built on getClock() see simulated time only.
+ *
+ * Events at the same time run in the order they were scheduled, and every source of randomness is
+ * derived from one seed, so a run with the same seed and the same setup executes the same events
+ * in the same order. Not thread safe: events must be scheduled from the running thread.
+ */
+public class DiscreteEventScheduler {
+
+    private final ManualClock clock;
+    private final Random seeds;
+    private final PriorityQueue<Event> queue = new PriorityQueue<Event>();
+
+    private long sequence = 0;
+    private long executed = 0;
+
+    public DiscreteEventScheduler(long startMillis, long seed) {
+        this.clock = new ManualClock(startMillis);
+        this.seeds = new Random(seed);
+    }
+
+    public SimClock getClock() {
+        return clock;
+    }
+
+    public long now() {
+        return clock.currentTimeMillis();
+    }
+
+    /**
+     * @return a generator seeded from the scheduler's seed. Generators handed out in the same order
+     * produce the same sequences from run to run.
+     */
+    public Random newRandom() {
+        return new Random(seeds.nextLong());
+    }
+
+    public void schedule(final long timeMillis, final Runnable action) {
+        if (timeMillis < now()) {
+            throw new IllegalArgumentException("Cannot schedule an event in the past: " + timeMillis + " < " + now());
+        }
+        queue.add(new Event(timeMillis, sequence++, action));
+    }
+
+    public void scheduleAfter(final long delayMs, final Runnable action) {
+        schedule(now() + delayMs, action);
+    }
+
+    /**
+     * Ticks every periodMs of simulated time, starting after initialDelayMs. The next tick is
+     * scheduled once the current one has run.
+     */
+    public void schedulePeriodic(final Tickable tickable, final long periodMs, final long initialDelayMs) {
+        if (periodMs <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + periodMs);
+        }
+        scheduleAfter(initialDelayMs, new Runnable() {
+            public void run() {
+                tickable.tick();
+                scheduleAfter(periodMs, this);
+            }
+        });
+    }
+
+    /**
+     * Runs the next event, if there is one.
+     *
+     * @return false if no events are pending
+     */
+    public boolean step() {
+        final Event event = queue.poll();
+        if (event == null) {
+            return false;
+        }
+        clock.setTime(event.timeMillis);
+        executed++;
+        event.action.run();
+        return true;
+    }
+
+    /**
+     * Runs every event up to and including endMillis, then leaves the clock at endMillis.
+     *
+     * @return the number of events run
+     */
+    public long runUntil(final long endMillis) {
+        final long before = executed;
+        while (!queue.isEmpty() && queue.peek().timeMillis <= endMillis) {
+            step();
+        }
+        if (endMillis > now()) {
+            clock.setTime(endMillis);
+        }
+        return executed - before;
+    }
+
+    public long getExecuted() {
+        return executed;
+    }
+
+    public int getPending() {
+        return queue.size();
+    }
+
+    private static class Event implements Comparable<Event> {
+        private final long timeMillis;
+        private final long sequence;
+        private final Runnable action;
+
+        public Event(long timeMillis, long sequence, Runnable action) {
+            this.timeMillis = timeMillis;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        public int compareTo(final Event other) {
+            if (timeMillis != other.timeMillis) {
+                return timeMillis < other.timeMillis ? -1 : 1;
+            }
+            if (sequence != other.sequence) {
+                return sequence < other.sequence ? -1 : 1;
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.discrete;
+
+import com.greenenergycorp.openfmb.simulator.SimClock;
+
+/**
+ * A clock that only moves when it is set, by the event scheduler before each event runs.
+ */
+public class ManualClock extends SimClock {
+    private long now;
+
+    public ManualClock(long startMillis) {
+        this.now = startMillis;
+    }
+
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    public double getScale() {
+        return 1.0;
+    }
+
+    public void setTime(final long timeMillis) {
+        if (timeMillis < now) {
+            throw new IllegalArgumentException("Clock cannot go back from " + now + " to " + timeMillis);
+        }
+        now = timeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "manual clock";
+    }
+}
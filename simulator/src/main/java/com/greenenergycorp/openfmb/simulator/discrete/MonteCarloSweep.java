@@ -0,0 +1,385 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.discrete;
+
+import com.greenenergycorp.openfmb.simulator.DailyInterpolatedData;
+import com.greenenergycorp.openfmb.simulator.Interpolation;
+import com.greenenergycorp.openfmb.simulator.LineValueDataLoader;
+import com.greenenergycorp.openfmb.simulator.PropertyUtil;
+import com.greenenergycorp.openfmb.simulator.TimeUtil;
+import com.greenenergycorp.openfmb.simulator.balance.BalancingMachine;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine;
+import com.greenenergycorp.openfmb.simulator.schedule.Tickable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers battery sizing questions such as how often a random islanding drains the battery. Every
+ * combination of the battery fields listed in sweep.properties is run many times. Each run is a
+ * separate SimulatedMicrogrid with one solar source and one load. The island start, solar scale,
+ * jitter and load are drawn at random for each run.
+ *
+ * Runs are spread over a fork-join pool. Each task splits its SplittableRandom when it forks, and
+ * each run splits its own stream from its task's. The streams depend only on the seed and the
+ * number of runs, so the results do not depend on the number of threads.
+ */
+public class MonteCarloSweep {
+
+    private final static Logger logger = LoggerFactory.getLogger(MonteCarloSweep.class);
+
+    private static final String[] BATTERY_FIELDS = {
+            "maxChargeRatekW", "maxDischargeRatekW", "energyRatingkWh", "energyMaxkWh", "energyMinkWh", "efficiencyRatio"
+    };
+
+    private static final int RUNS_PER_TASK = 8;
+
+    private static final DailyInterpolatedData FLAT = new DailyInterpolatedData(flatProfile());
+
+    private final List<BatteryMachine.BatterySpec> specs;
+    private final int runsPerSpec;
+    private final long startMillis;
+    private final long periodMs;
+    private final long islandMs;
+    private final long warmupMs;
+    private final long intervalMs;
+    private final long latencyMs;
+    private final double recloserVoltage;
+    private final double recloserHertz;
+    private final DailyInterpolatedData solarData;
+    private final double[] solarScale;
+    private final double solarOffset;
+    private final double[] jitterChance;
+    private final double[] jitterPercent;
+    private final double[] loadkW;
+
+    public MonteCarloSweep(List<BatteryMachine.BatterySpec> specs, int runsPerSpec,
+                           long startMillis, long periodMs, long islandMs, long warmupMs,
+                           long intervalMs, long latencyMs, double recloserVoltage, double recloserHertz,
+                           DailyInterpolatedData solarData, double[] solarScale, double solarOffset,
+                           double[] jitterChance, double[] jitterPercent, double[] loadkW) {
+        this.specs = specs;
+        this.runsPerSpec = runsPerSpec;
+        this.startMillis = startMillis;
+        this.periodMs = periodMs;
+        this.islandMs = islandMs;
+        this.warmupMs = warmupMs;
+        this.intervalMs = intervalMs;
+        this.latencyMs = latencyMs;
+        this.recloserVoltage = recloserVoltage;
+        this.recloserHertz = recloserHertz;
+        this.solarData = solarData;
+        this.solarScale = solarScale;
+        this.solarOffset = solarOffset;
+        this.jitterChance = jitterChance;
+        this.jitterPercent = jitterPercent;
+        this.loadkW = loadkW;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        final Properties sweepProps = PropertyUtil.optionallyLoad(System.getProperty("config.sweep.path", "sweep.properties"), System.getProperties());
+        final Properties solarProps = PropertyUtil.optionallyLoad(System.getProperty("config.solar.path", "solarsim.properties"), System.getProperties());
+        final Properties batteryProps = PropertyUtil.optionallyLoad(System.getProperty("config.battery.path", "batterysim.properties"), System.getProperties());
+        final Properties recloserProps = PropertyUtil.optionallyLoad(System.getProperty("config.recloser.path", "reclosersim.properties"), System.getProperties());
+
+        // every run islands, and the balancer logs each islanding at info; slf4j-simple reads a logger's
+        // level from the system properties when the logger is created, so this must come before any run
+        final String balancerLogKey = "org.slf4j.simpleLogger.log." + BalancingMachine.class.getName();
+        if (System.getProperty(balancerLogKey) == null) {
+            System.setProperty(balancerLogKey, sweepProps.getProperty("sweep.balancerLogLevel", "warn").trim());
+        }
+
+        final long seed = Long.parseLong(sweepProps.getProperty("sweep.seed", "1").trim());
+        final int runs = Integer.parseInt(sweepProps.getProperty("sweep.runs", "1000").trim());
+        final int threads = Integer.parseInt(sweepProps.getProperty("sweep.threads", Integer.toString(Runtime.getRuntime().availableProcessors())).trim());
+        final String start = sweepProps.getProperty("sweep.start");
+        final long startMillis = (start == null) ? TimeUtil.getStartOfCurrentDay() : ScenarioRunner.parseTime(start, "yyyy-MM-dd");
+        final int days = Integer.parseInt(sweepProps.getProperty("sweep.days", "365").trim());
+        final double islandHours = Double.parseDouble(sweepProps.getProperty("sweep.islandHours", "4").trim());
+        final double warmupHours = Double.parseDouble(sweepProps.getProperty("sweep.warmupHours", "1").trim());
+        final long intervalMs = Long.parseLong(sweepProps.getProperty("sweep.intervalMs", "10000").trim());
+        final long latencyMs = Long.parseLong(sweepProps.getProperty("sweep.latencyMs", "5").trim());
+
+        final double[] solarScale = range(sweepProps, "sweep.solarScale", PropertyUtil.propOrThrow(solarProps, "value.scale"));
+        final double[] jitterChance = range(sweepProps, "sweep.jitterChance", PropertyUtil.propOrThrow(solarProps, "value.jitterChance"));
+        final double[] jitterPercent = range(sweepProps, "sweep.jitterPercent", PropertyUtil.propOrThrow(solarProps, "value.jitterPercent"));
+        final double[] loadkW = range(sweepProps, "sweep.loadkW", "50");
+        final double solarOffset = PropertyUtil.propDoubleOrThrow(solarProps, "value.offset");
+        final Interpolation interpolation = Interpolation.fromString(solarProps.getProperty("data.interpolation", "linear"));
+        final DailyInterpolatedData solarData = new DailyInterpolatedData(LineValueDataLoader.load(PropertyUtil.propOrThrow(solarProps, "data.file")), interpolation);
+
+        final List<BatteryMachine.BatterySpec> specs = batterySpecs(sweepProps, batteryProps);
+
+        final MonteCarloSweep sweep = new MonteCarloSweep(specs, runs,
+                startMillis, ScenarioRunner.addDays(startMillis, days) - startMillis,
+                (long) (islandHours * TimeUtil.millisecondsInAnHour), (long) (warmupHours * TimeUtil.millisecondsInAnHour),
+                intervalMs, latencyMs,
+                PropertyUtil.propDoubleOrThrow(recloserProps, "recloser.voltage"),
+                PropertyUtil.propDoubleOrThrow(recloserProps, "recloser.hertz"),
+                solarData, solarScale, solarOffset, jitterChance, jitterPercent, loadkW);
+
+        logger.info("Running " + runs + " " + islandHours + " hour islands for each of " + specs.size()
+                + " battery configurations on " + threads + " threads, seed " + seed);
+
+        final long wallStart = System.nanoTime();
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final SweepStats[] stats;
+        try {
+            stats = sweep.run(pool, seed);
+        } finally {
+            pool.shutdown();
+        }
+        final double wallSec = (System.nanoTime() - wallStart) / 1e9;
+
+        System.out.println(String.format("%10s %10s %10s %10s %10s %8s %8s %8s %10s %10s %12s",
+                "charge kW", "disch kW", "rating kWh", "max kWh", "min kWh", "runs", "drained", "% drain", "mean soc", "worst soc", "hrs to drain"));
+        for (int i = 0; i < specs.size(); i++) {
+            final BatteryMachine.BatterySpec spec = specs.get(i);
+            final SweepStats s = stats[i];
+            System.out.println(String.format("%10.1f %10.1f %10.1f %10.1f %10.1f %8d %8d %8.1f %10.2f %10.2f %12.2f",
+                    spec.getMaxChargeRatekW(), spec.getMaxDischargeRatekW(), spec.getEnergyRatingkWh(),
+                    spec.getEnergyMaxkWh(), spec.getEnergyMinkWh(), s.getRuns(), s.getDrained(),
+                    100.0 * s.getDrainedFraction(), s.getMeanMinSoc(), s.getWorstMinSoc(), s.getMeanHoursToDrain()));
+        }
+        final long total = (long) runs * specs.size();
+        System.out.println(String.format("%d runs in %.1f s, %.1f runs/s on %d threads", total, wallSec, total / wallSec, threads));
+    }
+
+    /**
+     * Runs every configuration runsPerSpec times.
+     *
+     * @return the aggregated results, in the order of the specs
+     */
+    public SweepStats[] run(final ForkJoinPool pool, final long seed) {
+        return pool.invoke(new SweepTask(0, specs.size() * runsPerSpec, new SplittableRandom(seed)));
+    }
+
+    private RunResult runOnce(final BatteryMachine.BatterySpec spec, final SplittableRandom random) {
+        final long islandStart = startMillis + (random.nextLong(periodMs) / 60000L) * 60000L;
+        final double scale = draw(random, solarScale);
+        final double chance = draw(random, jitterChance);
+        final double percent = draw(random, jitterPercent);
+        final double load = draw(random, loadkW);
+
+        final DiscreteEventScheduler scheduler = new DiscreteEventScheduler(islandStart - warmupMs, random.nextLong());
+        final SimulatedMicrogrid grid = new SimulatedMicrogrid(scheduler, latencyMs, "battery", spec, intervalMs,
+                recloserVoltage, recloserHertz, intervalMs);
+        // runs on other threads are on other days, so each run keeps its own cache of the day
+        grid.addSolar("solar", new DailyInterpolatedData(solarData), scale, solarOffset, chance, percent, intervalMs);
+        grid.addLoad("load", new DailyInterpolatedData(FLAT), load, 0.0, chance, percent, intervalMs);
+        grid.openRecloserAt(islandStart);
+        grid.closeRecloserAt(islandStart + islandMs);
+
+        final double minSocPercent = 100.0 * spec.getEnergyMinkWh() / spec.getEnergyRatingkWh();
+        final RunResult result = new RunResult();
+        scheduler.schedulePeriodic(new Tickable() {
+            public void tick() {
+                final double soc = grid.getBatteryStateOfCharge();
+                result.minSoc = Math.min(result.minSoc, soc);
+                if (result.drainedAfterMs < 0 && soc <= minSocPercent + 1e-6) {
+                    result.drainedAfterMs = scheduler.now() - islandStart;
+                }
+            }
+        }, intervalMs, warmupMs);
+
+        scheduler.runUntil(islandStart + islandMs);
+        return result;
+    }
+
+    private class SweepTask extends RecursiveTask<SweepStats[]> {
+        private final int from;
+        private final int to;
+        private final SplittableRandom random;
+
+        public SweepTask(int from, int to, SplittableRandom random) {
+            this.from = from;
+            this.to = to;
+            this.random = random;
+        }
+
+        @Override
+        protected SweepStats[] compute() {
+            if (to - from <= RUNS_PER_TASK) {
+                final SweepStats[] stats = newStats();
+                for (int run = from; run < to; run++) {
+                    final int spec = run / runsPerSpec;
+                    stats[spec].add(runOnce(specs.get(spec), random.split()));
+                }
+                return stats;
+            }
+
+            final int mid = (from + to) >>> 1;
+            final SweepTask left = new SweepTask(from, mid, random.split());
+            final SweepTask right = new SweepTask(mid, to, random);
+            left.fork();
+            final SweepStats[] stats = right.compute();
+            final SweepStats[] leftStats = left.join();
+            for (int i = 0; i < stats.length; i++) {
+                stats[i].merge(leftStats[i]);
+            }
+            return stats;
+        }
+    }
+
+    private SweepStats[] newStats() {
+        final SweepStats[] stats = new SweepStats[specs.size()];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new SweepStats();
+        }
+        return stats;
+    }
+
+    private static class RunResult {
+        private double minSoc = Double.MAX_VALUE;
+        private long drainedAfterMs = -1;
+    }
+
+    /**
+     * Results for one battery configuration, merged across runs.
+     */
+    public static class SweepStats {
+        private long runs = 0;
+        private long drained = 0;
+        private double sumMinSoc = 0.0;
+        private double worstMinSoc = Double.MAX_VALUE;
+        private long sumDrainedAfterMs = 0;
+
+        private void add(final RunResult result) {
+            runs++;
+            sumMinSoc += result.minSoc;
+            worstMinSoc = Math.min(worstMinSoc, result.minSoc);
+            if (result.drainedAfterMs >= 0) {
+                drained++;
+                sumDrainedAfterMs += result.drainedAfterMs;
+            }
+        }
+
+        private void merge(final SweepStats other) {
+            runs += other.runs;
+            drained += other.drained;
+            sumMinSoc += other.sumMinSoc;
+            worstMinSoc = Math.min(worstMinSoc, other.worstMinSoc);
+            sumDrainedAfterMs += other.sumDrainedAfterMs;
+        }
+
+        public long getRuns() {
+            return runs;
+        }
+
+        public long getDrained() {
+            return drained;
+        }
+
+        public double getDrainedFraction() {
+            return (runs == 0) ? 0.0 : (double) drained / runs;
+        }
+
+        /**
+         * @return the mean of each run's lowest state of charge during the island, in percent
+         */
+        public double getMeanMinSoc() {
+            return (runs == 0) ? Double.NaN : sumMinSoc / runs;
+        }
+
+        public double getWorstMinSoc() {
+            return (runs == 0) ? Double.NaN : worstMinSoc;
+        }
+
+        /**
+         * @return the mean time from islanding to the battery reaching its minimum energy, over the
+         * runs that drained it
+         */
+        public double getMeanHoursToDrain() {
+            return (drained == 0) ? Double.NaN : TimeUtil.millisecondsToHours(sumDrainedAfterMs / drained);
+        }
+    }
+
+    // every combination of the listed battery fields; the others come from the battery properties,
+    // and energy limits that are not listed keep their fraction of the energy rating
+    private static List<BatteryMachine.BatterySpec> batterySpecs(final Properties sweepProps, final Properties batteryProps) {
+        final double[][] values = new double[BATTERY_FIELDS.length][];
+        for (int i = 0; i < BATTERY_FIELDS.length; i++) {
+            final String listed = sweepProps.getProperty("sweep.battery." + BATTERY_FIELDS[i]);
+            values[i] = (listed == null) ?
+                    new double[] { PropertyUtil.propDoubleOrThrow(batteryProps, "battery." + BATTERY_FIELDS[i]) } :
+                    parseList(listed);
+        }
+        final double baseRating = PropertyUtil.propDoubleOrThrow(batteryProps, "battery.energyRatingkWh");
+        final boolean scaleMax = sweepProps.getProperty("sweep.battery.energyMaxkWh") == null;
+        final boolean scaleMin = sweepProps.getProperty("sweep.battery.energyMinkWh") == null;
+        final double voltage = PropertyUtil.propDoubleOrThrow(batteryProps, "battery.voltage");
+        final double hertz = PropertyUtil.propDoubleOrThrow(batteryProps, "battery.hertz");
+
+        final List<BatteryMachine.BatterySpec> specs = new ArrayList<BatteryMachine.BatterySpec>();
+        final int[] index = new int[BATTERY_FIELDS.length];
+        while (true) {
+            final double rating = values[2][index[2]];
+            final double max = scaleMax ? values[3][index[3]] * rating / baseRating : values[3][index[3]];
+            final double min = scaleMin ? values[4][index[4]] * rating / baseRating : values[4][index[4]];
+            specs.add(new BatteryMachine.BatterySpec(values[0][index[0]], values[1][index[1]], rating, max, min,
+                    values[5][index[5]], voltage, hertz));
+
+            int field = BATTERY_FIELDS.length - 1;
+            while (field >= 0 && ++index[field] == values[field].length) {
+                index[field] = 0;
+                field--;
+            }
+            if (field < 0) {
+                return specs;
+            }
+        }
+    }
+
+    // a single value, or min,max to draw uniformly
+    private static double[] range(final Properties props, final String key, final String defaultValue) {
+        final double[] values = parseList(props.getProperty(key, defaultValue));
+        if (values.length > 2) {
+            throw new IllegalArgumentException(key + " must be a value or min,max: " + Arrays.toString(values));
+        }
+        return values;
+    }
+
+    private static double draw(final SplittableRandom random, final double[] range) {
+        return (range.length == 1 || range[0] == range[1]) ? range[0] : random.nextDouble(range[0], range[1]);
+    }
+
+    private static double[] parseList(final String list) {
+        final String[] parts = list.split(",");
+        final double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i].trim());
+        }
+        return values;
+    }
+
+    private static double[] flatProfile() {
+        final double[] values = new double[24];
+        Arrays.fill(values, 1.0);
+        return values;
+    }
+}
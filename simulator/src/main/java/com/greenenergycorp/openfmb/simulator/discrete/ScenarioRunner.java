@@ -0,0 +1,189 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.discrete;
+
+import com.greenenergycorp.openfmb.simulator.DailyInterpolatedData;
+import com.greenenergycorp.openfmb.simulator.Interpolation;
+import com.greenenergycorp.openfmb.simulator.LineValueDataLoader;
+import com.greenenergycorp.openfmb.simulator.PropertyUtil;
+import com.greenenergycorp.openfmb.simulator.TimeUtil;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine;
+import com.greenenergycorp.openfmb.simulator.schedule.Tickable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the microgrid offline in simulated time, with no broker, and writes its state to disk at a
+ * fixed sample interval. The devices are configured from the same properties files as the MQTT
+ * simulators; scenario.properties sets the period, the islanding schedule and the output.
+ */
+public class ScenarioRunner {
+
+    private final static Logger logger = LoggerFactory.getLogger(ScenarioRunner.class);
+
+    public static void main(String[] args) throws Exception {
+
+        final Properties scenarioProps = PropertyUtil.optionallyLoad(System.getProperty("config.scenario.path", "scenario.properties"), System.getProperties());
+        final Properties solarProps = PropertyUtil.optionallyLoad(System.getProperty("config.solar.path", "solarsim.properties"), System.getProperties());
+        final Properties batteryProps = PropertyUtil.optionallyLoad(System.getProperty("config.battery.path", "batterysim.properties"), System.getProperties());
+        final Properties recloserProps = PropertyUtil.optionallyLoad(System.getProperty("config.recloser.path", "reclosersim.properties"), System.getProperties());
+
+        final String start = scenarioProps.getProperty("scenario.start");
+        final long startMillis = (start == null) ? TimeUtil.getStartOfCurrentDay() : parseTime(start, "yyyy-MM-dd");
+        final int days = Integer.parseInt(scenarioProps.getProperty("scenario.days", "365").trim());
+        final long seed = Long.parseLong(scenarioProps.getProperty("scenario.seed", "1").trim());
+        final long latencyMs = Long.parseLong(scenarioProps.getProperty("scenario.latencyMs", "5").trim());
+        final long sampleMs = Long.parseLong(scenarioProps.getProperty("scenario.sampleMs", "60000").trim());
+        final int solarSources = Integer.parseInt(scenarioProps.getProperty("scenario.solarSources", "1").trim());
+        final String intervalOverride = scenarioProps.getProperty("scenario.intervalMs");
+        final String format = scenarioProps.getProperty("scenario.format", "csv").trim();
+        final String output = scenarioProps.getProperty("scenario.output", format.equals("columns") ? "scenario" : "scenario.csv").trim();
+
+        final long solarIntervalMs = (intervalOverride != null) ? Long.parseLong(intervalOverride.trim()) : PropertyUtil.propLongOrThrow(solarProps, "config.intervalMs");
+        final long batteryIntervalMs = (intervalOverride != null) ? Long.parseLong(intervalOverride.trim()) : PropertyUtil.propLongOrThrow(batteryProps, "config.intervalMs");
+        final long recloserIntervalMs = (intervalOverride != null) ? Long.parseLong(intervalOverride.trim()) : PropertyUtil.propLongOrThrow(recloserProps, "config.intervalMs");
+
+        final String solarId = PropertyUtil.propOrThrow(solarProps, "device.logicalDeviceID");
+        final double scale = PropertyUtil.propDoubleOrThrow(solarProps, "value.scale");
+        final double offset = PropertyUtil.propDoubleOrThrow(solarProps, "value.offset");
+        final double jitterChance = PropertyUtil.propDoubleOrThrow(solarProps, "value.jitterChance");
+        final double jitterPercent = PropertyUtil.propDoubleOrThrow(solarProps, "value.jitterPercent");
+        final Interpolation interpolation = Interpolation.fromString(solarProps.getProperty("data.interpolation", "linear"));
+        final DailyInterpolatedData dataSource = new DailyInterpolatedData(LineValueDataLoader.load(PropertyUtil.propOrThrow(solarProps, "data.file")), interpolation);
+
+        final String batteryId = PropertyUtil.propOrThrow(batteryProps, "device.logicalDeviceID");
+        final BatteryMachine.BatterySpec batterySpec = new BatteryMachine.BatterySpec(
+                PropertyUtil.propDoubleOrThrow(batteryProps, "battery.maxChargeRatekW"),
+                PropertyUtil.propDoubleOrThrow(batteryProps, "battery.maxDischargeRatekW"),
+                PropertyUtil.propDoubleOrThrow(batteryProps, "battery.energyRatingkWh"),
+                PropertyUtil.propDoubleOrThrow(batteryProps, "battery.energyMaxkWh"),
+                PropertyUtil.propDoubleOrThrow(batteryProps, "battery.energyMinkWh"),
+                PropertyUtil.propDoubleOrThrow(batteryProps, "battery.efficiencyRatio"),
+                PropertyUtil.propDoubleOrThrow(batteryProps, "battery.voltage"),
+                PropertyUtil.propDoubleOrThrow(batteryProps, "battery.hertz"));
+
+        final double recloserVoltage = PropertyUtil.propDoubleOrThrow(recloserProps, "recloser.voltage");
+        final double recloserHertz = PropertyUtil.propDoubleOrThrow(recloserProps, "recloser.hertz");
+
+        final DiscreteEventScheduler scheduler = new DiscreteEventScheduler(startMillis, seed);
+        final SimulatedMicrogrid grid = new SimulatedMicrogrid(scheduler, latencyMs,
+                batteryId, batterySpec, batteryIntervalMs, recloserVoltage, recloserHertz, recloserIntervalMs);
+
+        for (int i = 0; i < solarSources; i++) {
+            final String id = (solarSources == 1) ? solarId : solarId + "." + i;
+            grid.addSolar(id, dataSource, scale, offset, jitterChance, jitterPercent, solarIntervalMs);
+        }
+
+        final long endMillis = addDays(startMillis, days);
+
+        int islands = 0;
+        final String dailyIsland = scenarioProps.getProperty("scenario.dailyIsland");
+        if (dailyIsland != null && !dailyIsland.trim().isEmpty()) {
+            final String[] window = splitWindow(dailyIsland);
+            final String[] hourMinute = window[0].split(":");
+            for (int day = 0; day < days; day++) {
+                final Calendar c = Calendar.getInstance();
+                c.setTimeInMillis(addDays(startMillis, day));
+                c.set(Calendar.HOUR_OF_DAY, Integer.parseInt(hourMinute[0].trim()));
+                c.set(Calendar.MINUTE, (hourMinute.length > 1) ? Integer.parseInt(hourMinute[1].trim()) : 0);
+                scheduleIsland(grid, c.getTimeInMillis(), hoursToMillis(window[1]));
+                islands++;
+            }
+        }
+        final String listedIslands = scenarioProps.getProperty("scenario.islands");
+        if (listedIslands != null) {
+            for (final String island : listedIslands.split(",")) {
+                if (!island.trim().isEmpty()) {
+                    final String[] window = splitWindow(island);
+                    scheduleIsland(grid, parseTime(window[0], "yyyy-MM-dd'T'HH:mm"), hoursToMillis(window[1]));
+                    islands++;
+                }
+            }
+        }
+
+        final TimeSeriesWriter writer = format.equals("columns") ?
+                new ColumnarTimeSeriesWriter(new File(output)) :
+                new CsvTimeSeriesWriter(new File(output));
+
+        scheduler.schedulePeriodic(new Tickable() {
+            public void tick() {
+                try {
+                    writer.write(scheduler.now(), grid);
+                } catch (IOException ex) {
+                    throw new IllegalStateException("Could not write to " + output + ": " + ex, ex);
+                }
+            }
+        }, sampleMs, 0);
+
+        logger.info("Simulating " + days + " days with " + solarSources + " solar sources and " + islands + " islanding periods, seed " + seed);
+
+        final long wallStart = System.nanoTime();
+        try {
+            scheduler.runUntil(endMillis);
+        } finally {
+            writer.close();
+        }
+        final long wallMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - wallStart);
+
+        logger.info("Ran " + scheduler.getExecuted() + " events in " + wallMs + " ms, wrote " + output);
+    }
+
+    private static void scheduleIsland(final SimulatedMicrogrid grid, final long openMillis, final long durationMs) {
+        grid.openRecloserAt(openMillis);
+        grid.closeRecloserAt(openMillis + durationMs);
+    }
+
+    // <start>/<hours>
+    private static String[] splitWindow(final String window) {
+        final String[] parts = window.trim().split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Islanding period must be <start>/<hours>: " + window);
+        }
+        return parts;
+    }
+
+    private static long hoursToMillis(final String hours) {
+        return (long) (Double.parseDouble(hours.trim()) * TimeUtil.millisecondsInAnHour);
+    }
+
+    static long addDays(final long startMillis, final int days) {
+        final Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(startMillis);
+        c.add(Calendar.DATE, days);
+        return c.getTimeInMillis();
+    }
+
+    static long parseTime(final String value, final String pattern) {
+        final SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setLenient(false);
+        try {
+            return format.parse(value.trim()).getTime();
+        } catch (ParseException ex) {
+            throw new IllegalArgumentException("Could not parse " + value + " as " + pattern);
+        }
+    }
+}
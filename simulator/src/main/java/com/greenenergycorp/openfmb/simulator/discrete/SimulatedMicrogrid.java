@@ -0,0 +1,283 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.discrete;
+
+import com.greenenergycorp.openfmb.simulator.DailyInterpolatedData;
+import com.greenenergycorp.openfmb.simulator.balance.BalancingMachine;
+import com.greenenergycorp.openfmb.simulator.balance.BatteryControlIssuer;
+import com.greenenergycorp.openfmb.simulator.balance.IslandingLatency;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine.BatteryMode;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine.BatterySpec;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryObserver;
+import com.greenenergycorp.openfmb.simulator.recloser.RecloserMachine;
+import com.greenenergycorp.openfmb.simulator.recloser.RecloserObserver;
+import com.greenenergycorp.openfmb.simulator.solar.SolarObserver;
+import com.greenenergycorp.openfmb.simulator.solar.SolarSimLoop;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The microgrid's machines wired to each other through their observer interfaces and driven by a
+ * DiscreteEventScheduler. Solar and load sources, the battery and the recloser tick on the scheduler, and
+ * every reading, event and control they produce is handed to its receivers as a separate event
+ * after a fixed delivery latency, in place of the broker.
+ *
+ * The balancer controls the one battery, as in a deployment. The recloser publishes on every power
+ * update, since coalescing is timed in real time.
+ */
+public class SimulatedMicrogrid {
+
+    private final DiscreteEventScheduler scheduler;
+    private final long latencyMs;
+
+    private final String batteryId;
+    private final BatteryMachine battery;
+    private final RecloserMachine recloser;
+    private final BalancingMachine balancer;
+
+    private final List<SolarOutput> solars = new ArrayList<SolarOutput>();
+    private int loadCount = 0;
+
+    private double batteryPower;
+    private double batterySoc;
+    private BatteryMode batteryMode = BatteryMode.MAINTAIN_STANDBY;
+    private double recloserPower;
+    private boolean recloserClosed = true;
+
+    /**
+     * @param latencyMs delay between a machine publishing and the receivers handling it
+     */
+    public SimulatedMicrogrid(DiscreteEventScheduler scheduler, long latencyMs,
+                              String batteryId, BatterySpec batterySpec, long batteryIntervalMs,
+                              double recloserVoltage, double recloserHertz, long recloserIntervalMs) {
+        this.scheduler = scheduler;
+        this.latencyMs = latencyMs;
+        this.batteryId = batteryId;
+
+        this.battery = new BatteryMachine(batteryId, new BatteryOutput(), batteryIntervalMs, batterySpec,
+                scheduler.getClock(), scheduler.newRandom());
+        this.recloser = new RecloserMachine(new RecloserOutput(), recloserVoltage, recloserHertz, 0.0, 0,
+                scheduler.newRandom());
+        this.balancer = new BalancingMachine(batteryId, new BatteryControls(), new IslandingLatency(),
+                scheduler.getClock());
+
+        scheduler.schedulePeriodic(battery, batteryIntervalMs, 0);
+        scheduler.schedulePeriodic(recloser, recloserIntervalMs, 0);
+    }
+
+    public DiscreteEventScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public void addSolar(final String id, DailyInterpolatedData data, double scale, double offset,
+                         double jitterChance, double jitterPercent, long intervalMs) {
+        final SolarOutput output = new SolarOutput(id);
+        final SolarSimLoop solar = new SolarSimLoop(id, output, data, scale, offset, jitterChance, jitterPercent,
+                scheduler.getClock(), scheduler.newRandom());
+
+        // spread the sources over the interval rather than ticking them all at once
+        final long initialDelayMs = (solars.size() * 7919L) % intervalMs;
+        solars.add(output);
+        scheduler.schedulePeriodic(solar, intervalMs, initialDelayMs);
+    }
+
+    /**
+     * Adds a load that follows a daily profile. It is driven like a solar source, but publishes
+     * value * scale + offset as consumption.
+     */
+    public void addLoad(final String id, DailyInterpolatedData data, double scale, double offset,
+                        double jitterChance, double jitterPercent, long intervalMs) {
+        final SolarSimLoop load = new SolarSimLoop(id, new LoadOutput(id), data, -scale, offset, jitterChance, jitterPercent,
+                scheduler.getClock(), scheduler.newRandom());
+
+        final long initialDelayMs = (loadCount * 6151L) % intervalMs;
+        loadCount++;
+        scheduler.schedulePeriodic(load, intervalMs, initialDelayMs);
+    }
+
+    public int getSolarCount() {
+        return solars.size();
+    }
+
+    /**
+     * @return the sum of the last power published by each solar source
+     */
+    public double getSolarPower() {
+        double total = 0.0;
+        for (final SolarOutput solar : solars) {
+            total += solar.power;
+        }
+        return total;
+    }
+
+    public void openRecloserAt(final long timeMillis) {
+        scheduler.schedule(timeMillis, new Runnable() {
+            public void run() {
+                recloser.handleOpen();
+            }
+        });
+    }
+
+    public void closeRecloserAt(final long timeMillis) {
+        scheduler.schedule(timeMillis, new Runnable() {
+            public void run() {
+                recloser.handleClose();
+            }
+        });
+    }
+
+    public String getBatteryId() {
+        return batteryId;
+    }
+
+    /**
+     * @return the battery's last published power, in kW
+     */
+    public double getBatteryPower() {
+        return batteryPower;
+    }
+
+    /**
+     * @return the battery's last published state of charge, in percent
+     */
+    public double getBatteryStateOfCharge() {
+        return batterySoc;
+    }
+
+    public BatteryMode getBatteryMode() {
+        return batteryMode;
+    }
+
+    /**
+     * @return the power last published through the recloser, zero while it is open
+     */
+    public double getRecloserPower() {
+        return recloserPower;
+    }
+
+    public boolean isRecloserClosed() {
+        return recloserClosed;
+    }
+
+    private void deliver(final Runnable delivery) {
+        scheduler.scheduleAfter(latencyMs, delivery);
+    }
+
+    private class SolarOutput implements SolarObserver {
+        private final String id;
+        private double power;
+
+        public SolarOutput(String id) {
+            this.id = id;
+        }
+
+        public void solarReadUpdate(final double outputPower) {
+            power = outputPower;
+            deliver(new Runnable() {
+                public void run() {
+                    recloser.updateSolarPower(id, outputPower);
+                    balancer.updateSolarPower(id, outputPower);
+                }
+            });
+        }
+
+        public void solarEventUpdate() {
+        }
+    }
+
+    private class LoadOutput implements SolarObserver {
+        private final String id;
+
+        public LoadOutput(String id) {
+            this.id = id;
+        }
+
+        public void solarReadUpdate(final double outputPower) {
+            deliver(new Runnable() {
+                public void run() {
+                    recloser.updateLoadPower(id, outputPower);
+                    balancer.updateLoadPower(id, outputPower);
+                }
+            });
+        }
+
+        public void solarEventUpdate() {
+        }
+    }
+
+    private class BatteryOutput implements BatteryObserver {
+        public void batteryReadUpdate(final double power, final double volts, final double frequency) {
+            batteryPower = power;
+            deliver(new Runnable() {
+                public void run() {
+                    recloser.updateBatteryPower(batteryId, power);
+                    balancer.updateBatteryPower(batteryId, power);
+                }
+            });
+        }
+
+        public void batteryEventUpdate(final boolean isConnected, final boolean isCharging, final String mode, final double stateOfCharge) {
+            batteryMode = BatteryMode.fromDescription(mode);
+            batterySoc = stateOfCharge;
+        }
+    }
+
+    private class RecloserOutput implements RecloserObserver {
+        public void recloserReadUpdate(final double power, final double voltage, final double frequency, final double kvars) {
+            recloserPower = power;
+        }
+
+        public void recloserEventUpdate(final boolean isClosed, final boolean isBlocked) {
+            recloserClosed = isClosed;
+            deliver(new Runnable() {
+                public void run() {
+                    balancer.updateRecloserStatus(isClosed);
+                }
+            });
+        }
+    }
+
+    private class BatteryControls implements BatteryControlIssuer {
+        public void setIslanded() {
+            deliver(new Runnable() {
+                public void run() {
+                    battery.setModeControl(BatteryMode.ISLANDED);
+                }
+            });
+        }
+
+        public void setPowerSetpoint(final double power) {
+            deliver(new Runnable() {
+                public void run() {
+                    battery.setPowerSetpoint(power);
+                }
+            });
+        }
+
+        public void leaveIslanded() {
+            deliver(new Runnable() {
+                public void run() {
+                    battery.setModeControl(BatteryMode.LEAVING_ISLANDED);
+                }
+            });
+        }
+    }
+}
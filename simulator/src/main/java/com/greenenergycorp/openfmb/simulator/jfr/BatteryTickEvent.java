@@ -0,0 +1,64 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One tick of a battery: integrating the state of charge, the standby check, jitter and publishing
+ * the reading and event.
+ */
+@Name("com.greenenergycorp.openfmb.simulator.BatteryTick")
+@Label("Battery Tick")
+@Category({"OpenFMB Simulator", "Device"})
+@StackTrace(false)
+public class BatteryTickEvent extends Event {
+
+    @Label("Logical Device ID")
+    private String logicalDeviceId;
+
+    @Label("Mode")
+    private String mode;
+
+    @Label("State of Charge")
+    @Description("Percent")
+    private double stateOfCharge;
+
+    @Label("Power")
+    @Description("kW, positive when charging")
+    private double power;
+
+    /**
+     * Commits the event if it is enabled and ran past its threshold.
+     */
+    public void record(final String logicalDeviceId, final String mode, final double stateOfCharge, final double power) {
+        if (shouldCommit()) {
+            this.logicalDeviceId = logicalDeviceId;
+            this.mode = mode;
+            this.stateOfCharge = stateOfCharge;
+            this.power = power;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Applying one control command to a device, including any update the device publishes in response.
+ */
+@Name("com.greenenergycorp.openfmb.simulator.Control")
+@Label("Control Command")
+@Category({"OpenFMB Simulator", "Device"})
+public class ControlEvent extends Event {
+
+    @Label("Logical Device ID")
+    private String logicalDeviceId;
+
+    @Label("Command")
+    private String command;
+
+    @Label("Value")
+    @Description("NaN for commands without a value")
+    private double value;
+
+    /**
+     * Commits the event if it is enabled and ran past its threshold.
+     */
+    public void record(final String logicalDeviceId, final String command, final double value) {
+        if (shouldCommit()) {
+            this.logicalDeviceId = logicalDeviceId;
+            this.command = command;
+            this.value = value;
+            commit();
+        }
+    }
+}
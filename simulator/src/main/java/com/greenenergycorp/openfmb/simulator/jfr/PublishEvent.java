@@ -0,0 +1,62 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Handing one payload to the message observer, which for MQTT means queueing it with the client.
+ */
+@Name("com.greenenergycorp.openfmb.simulator.Publish")
+@Label("Publish")
+@Category({"OpenFMB Simulator", "Messaging"})
+@StackTrace(false)
+public class PublishEvent extends Event {
+
+    @Label("Profile")
+    private String profile;
+
+    @Label("Logical Device ID")
+    private String logicalDeviceId;
+
+    @Label("Size")
+    @DataAmount
+    private int size;
+
+    @Label("Failed")
+    private boolean failed;
+
+    /**
+     * Commits the event if it is enabled and ran past its threshold.
+     */
+    public void record(final String profile, final String logicalDeviceId, final byte[] payload, final boolean failed) {
+        if (shouldCommit()) {
+            this.profile = profile;
+            this.logicalDeviceId = logicalDeviceId;
+            this.size = (payload == null) ? 0 : payload.length;
+            this.failed = failed;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.jfr;
+
+import com.greenenergycorp.openfmb.mapping.adapter.MessageObserver;
+
+/**
+ * Records a PublishEvent for every message handed to the wrapped observer.
+ */
+public class RecordingMessageObserver implements MessageObserver {
+    private final MessageObserver observer;
+
+    public RecordingMessageObserver(MessageObserver observer) {
+        this.observer = observer;
+    }
+
+    public void publish(final byte[] payload, final String profile, final String logicalDeviceId) {
+        final PublishEvent event = new PublishEvent();
+        event.begin();
+        boolean failed = true;
+        try {
+            observer.publish(payload, profile, logicalDeviceId);
+            failed = false;
+        } finally {
+            event.record(profile, logicalDeviceId, payload, failed);
+        }
+    }
+}
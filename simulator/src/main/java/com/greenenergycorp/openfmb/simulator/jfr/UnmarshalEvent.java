@@ -0,0 +1,59 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Decoding one payload, as XML, binary or on the streaming power reading path. The profile is empty
+ * when the streaming decoder gives up on a payload and leaves it to a full unmarshal.
+ */
+@Name("com.greenenergycorp.openfmb.simulator.Unmarshal")
+@Label("Unmarshal")
+@Category({"OpenFMB Simulator", "Codec"})
+@StackTrace(false)
+public class UnmarshalEvent extends Event {
+
+    @Label("Format")
+    private String format;
+
+    @Label("Profile")
+    private String profile;
+
+    @Label("Size")
+    @DataAmount
+    private int size;
+
+    /**
+     * Commits the event if it is enabled and ran past its threshold.
+     */
+    public void record(final String format, final Object profile, final byte[] bytes) {
+        if (shouldCommit()) {
+            this.format = format;
+            this.profile = (profile == null) ? null : profile.getClass().getSimpleName();
+            this.size = (bytes == null) ? 0 : bytes.length;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.metrics;
+
+import com.greenenergycorp.openfmb.mapping.adapter.MessageObserver;
+import com.greenenergycorp.openfmb.mapping.adapter.PayloadObserver;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryObserver;
+import com.greenenergycorp.openfmb.simulator.recloser.RecloserObserver;
+import com.greenenergycorp.openfmb.simulator.xml.codec.PayloadCodec;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decorators that record what passes through the simulators' observers in a MetricsRegistry.
+ * Metrics are looked up once per topic, type or device and kept, so the hot path only updates
+ * striped counters.
+ */
+public class MeteredObservers {
+
+    /**
+     * Counts messages and bytes published per profile topic, and publishes that throw.
+     */
+    public static class MeteredMessageObserver implements MessageObserver {
+        private final MessageObserver observer;
+        private final MetricsRegistry registry;
+        private final LongAdder bytes;
+        private final ConcurrentHashMap<String, LongAdder> published = new ConcurrentHashMap<String, LongAdder>();
+        private final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<String, LongAdder>();
+
+        public MeteredMessageObserver(MessageObserver observer, MetricsRegistry registry) {
+            this.observer = observer;
+            this.registry = registry;
+            this.bytes = registry.counter("published_bytes");
+        }
+
+        public void publish(final byte[] payload, final String profile, final String logicalDeviceId) {
+            try {
+                observer.publish(payload, profile, logicalDeviceId);
+            } catch (RuntimeException ex) {
+                counterFor(registry, errors, "publish_errors", "topic", profile).increment();
+                throw ex;
+            }
+            counterFor(registry, published, "published", "topic", profile).increment();
+            bytes.add(payload.length);
+        }
+    }
+
+    /**
+     * Counts and times the payloads handled per subscription.
+     */
+    public static class MeteredPayloadObserver implements PayloadObserver {
+        private final PayloadObserver observer;
+        private final LongAdder received;
+        private final MetricsRegistry.Timer handled;
+
+        public MeteredPayloadObserver(PayloadObserver observer, MetricsRegistry registry, String topic) {
+            this.observer = observer;
+            this.received = registry.counter("received", "topic", topic);
+            this.handled = registry.timer("handle", "topic", topic);
+        }
+
+        public void handle(final byte[] bytes) {
+            received.increment();
+            final long start = System.nanoTime();
+            try {
+                observer.handle(bytes);
+            } finally {
+                handled.recordSince(start);
+            }
+        }
+    }
+
+    /**
+     * Times encoding and decoding per profile type, and counts failures.
+     */
+    public static class MeteredPayloadCodec implements PayloadCodec {
+        private final PayloadCodec codec;
+        private final MetricsRegistry registry;
+        private final LongAdder encodeErrors;
+        private final LongAdder decodeErrors;
+        private final ConcurrentHashMap<Class<?>, MetricsRegistry.Timer> encodeTimers = new ConcurrentHashMap<Class<?>, MetricsRegistry.Timer>();
+        private final ConcurrentHashMap<Class<?>, MetricsRegistry.Timer> decodeTimers = new ConcurrentHashMap<Class<?>, MetricsRegistry.Timer>();
+
+        public MeteredPayloadCodec(PayloadCodec codec, MetricsRegistry registry) {
+            this.codec = codec;
+            this.registry = registry;
+            this.encodeErrors = registry.counter("encode_errors");
+            this.decodeErrors = registry.counter("decode_errors");
+        }
+
+        public byte[] encode(final Object profile) throws Exception {
+            final long start = System.nanoTime();
+            final byte[] bytes;
+            try {
+                bytes = codec.encode(profile);
+            } catch (Exception ex) {
+                encodeErrors.increment();
+                throw ex;
+            }
+            timerFor(encodeTimers, "encode", profile.getClass()).recordSince(start);
+            return bytes;
+        }
+
+        public Object decode(final byte[] bytes) throws Exception {
+            final long start = System.nanoTime();
+            final Object profile;
+            try {
+                profile = codec.decode(bytes);
+            } catch (Exception ex) {
+                decodeErrors.increment();
+                throw ex;
+            }
+            timerFor(decodeTimers, "decode", profile.getClass()).recordSince(start);
+            return profile;
+        }
+
+        private MetricsRegistry.Timer timerFor(final ConcurrentHashMap<Class<?>, MetricsRegistry.Timer> timers, final String name, final Class<?> type) {
+            MetricsRegistry.Timer timer = timers.get(type);
+            if (timer == null) {
+                timer = registry.timer(name, "profile", type.getSimpleName());
+                timers.putIfAbsent(type, timer);
+            }
+            return timer;
+        }
+    }
+
+    /**
+     * Keeps the last power, state of charge, mode and charging state of a battery as gauges, and
+     * counts updates that fail to publish. battery_mode is the number of the BatteryMode.
+     */
+    public static class MeteredBatteryObserver implements BatteryObserver {
+        private final BatteryObserver observer;
+        private final LongAdder errors;
+
+        private volatile double power = 0;
+        private volatile double stateOfCharge = 0;
+        private volatile int mode = 0;
+        private volatile boolean isCharging = false;
+
+        public MeteredBatteryObserver(BatteryObserver observer, MetricsRegistry registry, String logicalDeviceId) {
+            this.observer = observer;
+            this.errors = registry.counter("update_errors", "device", logicalDeviceId);
+            registry.gauge("battery_power_kw", "device", logicalDeviceId, new MetricsRegistry.Gauge() {
+                public double getValue() {
+                    return power;
+                }
+            });
+            registry.gauge("battery_soc_percent", "device", logicalDeviceId, new MetricsRegistry.Gauge() {
+                public double getValue() {
+                    return stateOfCharge;
+                }
+            });
+            registry.gauge("battery_mode", "device", logicalDeviceId, new MetricsRegistry.Gauge() {
+                public double getValue() {
+                    return mode;
+                }
+            });
+            registry.gauge("battery_charging", "device", logicalDeviceId, new MetricsRegistry.Gauge() {
+                public double getValue() {
+                    return isCharging ? 1 : 0;
+                }
+            });
+        }
+
+        public void batteryReadUpdate(final double power, final double volts, final double frequency) throws Exception {
+            this.power = power;
+            try {
+                observer.batteryReadUpdate(power, volts, frequency);
+            } catch (Exception ex) {
+                errors.increment();
+                throw ex;
+            }
+        }
+
+        public void batteryEventUpdate(final boolean isConnected, final boolean isCharging, final String mode, final double stateOfCharge) throws Exception {
+            this.isCharging = isCharging;
+            this.stateOfCharge = stateOfCharge;
+            this.mode = modeNumber(mode);
+            try {
+                observer.batteryEventUpdate(isConnected, isCharging, mode, stateOfCharge);
+            } catch (Exception ex) {
+                errors.increment();
+                throw ex;
+            }
+        }
+
+        private static int modeNumber(final String description) {
+            for (final BatteryMachine.BatteryMode mode : BatteryMachine.BatteryMode.values()) {
+                if (mode.getDescription().equals(description)) {
+                    return mode.getNumber();
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Keeps the last power and switch state of a recloser as gauges, and counts updates that fail to
+     * publish.
+     */
+    public static class MeteredRecloserObserver implements RecloserObserver {
+        private final RecloserObserver observer;
+        private final LongAdder errors;
+
+        private volatile double power = 0;
+        private volatile boolean isClosed = true;
+
+        public MeteredRecloserObserver(RecloserObserver observer, MetricsRegistry registry, String logicalDeviceId) {
+            this.observer = observer;
+            this.errors = registry.counter("update_errors", "device", logicalDeviceId);
+            registry.gauge("recloser_power_kw", "device", logicalDeviceId, new MetricsRegistry.Gauge() {
+                public double getValue() {
+                    return power;
+                }
+            });
+            registry.gauge("recloser_closed", "device", logicalDeviceId, new MetricsRegistry.Gauge() {
+                public double getValue() {
+                    return isClosed ? 1 : 0;
+                }
+            });
+        }
+
+        public void recloserReadUpdate(final double power, final double voltage, final double frequency, final double kvars) throws Exception {
+            this.power = power;
+            try {
+                observer.recloserReadUpdate(power, voltage, frequency, kvars);
+            } catch (Exception ex) {
+                errors.increment();
+                throw ex;
+            }
+        }
+
+        public void recloserEventUpdate(final boolean isClosed, final boolean isBlocked) throws Exception {
+            this.isClosed = isClosed;
+            try {
+                observer.recloserEventUpdate(isClosed, isBlocked);
+            } catch (Exception ex) {
+                errors.increment();
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * @return the subscriptions, each counted and timed under its topic filter
+     */
+    public static Map<String, PayloadObserver> subscriptions(final Map<String, PayloadObserver> subscriptions, final MetricsRegistry registry) {
+        final Map<String, PayloadObserver> metered = new HashMap<String, PayloadObserver>();
+        for (final Map.Entry<String, PayloadObserver> entry : subscriptions.entrySet()) {
+            metered.put(entry.getKey(), new MeteredPayloadObserver(entry.getValue(), registry, entry.getKey()));
+        }
+        return metered;
+    }
+
+    private static LongAdder counterFor(final MetricsRegistry registry, final ConcurrentHashMap<String, LongAdder> counters,
+                                        final String name, final String label, final String value) {
+        LongAdder counter = counters.get(value);
+        if (counter == null) {
+            counter = registry.counter(name, label, value);
+            counters.putIfAbsent(value, counter);
+        }
+        return counter;
+    }
+}
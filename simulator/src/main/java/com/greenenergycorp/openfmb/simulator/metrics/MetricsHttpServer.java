@@ -0,0 +1,89 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Serves a MetricsRegistry as plain text on http://127.0.0.1:&lt;port&gt;/metrics, one "key value" line
+ * per value, in a form Prometheus can scrape. Only the loopback interface is bound.
+ *
+ * The server's own dispatcher thread is not a daemon, so a process that wants to exit must call stop().
+ */
+public class MetricsHttpServer {
+    private final static Logger logger = LoggerFactory.getLogger(MetricsHttpServer.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final HttpServer server;
+
+    public MetricsHttpServer(final MetricsRegistry registry, final int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/metrics", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    final StringBuilder sb = new StringBuilder();
+                    for (final Map.Entry<String, Number> entry : registry.snapshot().entrySet()) {
+                        sb.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+                    }
+                    final byte[] body = sb.toString().getBytes(UTF8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    final OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.setExecutor(Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "metrics http");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }));
+    }
+
+    public void start() {
+        server.start();
+        logger.info("Serving metrics on http://127.0.0.1:" + server.getAddress().getPort() + "/metrics");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exposes the values of a MetricsRegistry under one label value over JMX, as read-only attributes
+ * named after the metrics. Values are only read when a JMX client reads an attribute.
+ */
+public class MetricsMBean implements DynamicMBean {
+    private final static Logger logger = LoggerFactory.getLogger(MetricsMBean.class);
+
+    private final MetricsRegistry registry;
+    private final String label;
+    private final String value;
+    private final String description;
+
+    /**
+     * @param label the label of the values to expose, or null for the unlabelled values
+     */
+    public MetricsMBean(MetricsRegistry registry, String label, String value, String description) {
+        this.registry = registry;
+        this.label = label;
+        this.value = value;
+        this.description = description;
+    }
+
+    /**
+     * Registers the unlabelled values with the platform MBean server as
+     * com.greenenergycorp.openfmb.simulator:type=Metrics,name=&lt;name&gt;, and the values under each label
+     * value, as it comes into use, with the label as an extra key, e.g. name=&lt;name&gt;,device=battery1.
+     * A label named type or name is given the key label_type or label_name.
+     *
+     * @return the name of the unlabelled values
+     */
+    public static ObjectName register(final MetricsRegistry registry, final String name) throws Exception {
+        final String baseName = "com.greenenergycorp.openfmb.simulator:type=Metrics,name=" + ObjectName.quote(name);
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        registry.addListener(new MetricsRegistry.Listener() {
+            public void labelAdded(String label, String value) {
+                try {
+                    final ObjectName objectName = (label == null) ? new ObjectName(baseName) :
+                            new ObjectName(baseName + "," + key(label) + "=" + ObjectName.quote(value));
+                    server.registerMBean(new MetricsMBean(registry, label, value, "Metrics for " + name), objectName);
+                } catch (Exception ex) {
+                    logger.warn("Could not register metrics for " + label + "=" + value + ": " + ex);
+                }
+            }
+        });
+        return new ObjectName(baseName);
+    }
+
+    private static String key(final String label) {
+        return (label.equals("type") || label.equals("name")) ? "label_" + label : label;
+    }
+
+    public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+        final Number number = registry.value(attribute, label, value);
+        if (number == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return number;
+    }
+
+    public AttributeList getAttributes(final String[] attributes) {
+        final AttributeList list = new AttributeList();
+        for (final String attribute : attributes) {
+            final Number number = registry.value(attribute, label, value);
+            if (number != null) {
+                list.add(new Attribute(attribute, number));
+            }
+        }
+        return list;
+    }
+
+    public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    public AttributeList setAttributes(final AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    public Object invoke(final String actionName, final Object[] params, final String[] signature) throws MBeanException, ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    public MBeanInfo getMBeanInfo() {
+        final List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+        for (final Map.Entry<String, Class<? extends Number>> entry : registry.names(label, value).entrySet()) {
+            attributes.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getName(), entry.getKey(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), description, attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null, null);
+    }
+}
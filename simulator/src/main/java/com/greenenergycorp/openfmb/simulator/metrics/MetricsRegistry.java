@@ -0,0 +1,257 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named counters, timers and gauges for a simulator process. Each metric has a name and at most one
+ * label, e.g. published{topic="openfmb/solarmodule/SolarReadingProfile"}.
+ *
+ * Counters and timers are striped LongAdders, so updating them from many threads does not contend.
+ * Looking a metric up goes through a map, so hot paths should look it up once and keep it. Values
+ * are only collected when the registry is read, by JMX or the HTTP endpoint.
+ */
+public class MetricsRegistry {
+
+    public interface Gauge {
+        double getValue();
+    }
+
+    /**
+     * Told the first time a metric is added under a label value, or without a label, in which case the
+     * label and value are null.
+     */
+    public interface Listener {
+        void labelAdded(String label, String value);
+    }
+
+    public static class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong(0);
+
+        public void record(final long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        public void recordSince(final long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getTotalMicros() {
+            return totalNanos.sum() / 1000.0;
+        }
+
+        public double getMaxMicros() {
+            return maxNanos.get() / 1000.0;
+        }
+    }
+
+    private static final String[] TIMER_SUFFIXES = { "_count", "_sum_us", "_max_us" };
+
+    private static class Entry {
+        private final String name;
+        private final String labels;
+        private final Object metric;
+
+        Entry(String name, String labels, Object metric) {
+            this.name = name;
+            this.labels = labels;
+            this.metric = metric;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    // label and value of each label seen, by its labels string; guards listeners
+    private final ConcurrentHashMap<String, String[]> labelValues = new ConcurrentHashMap<String, String[]>();
+    private final List<Listener> listeners = new ArrayList<Listener>();
+
+    public LongAdder counter(final String name) {
+        return counter(name, null, null);
+    }
+
+    public LongAdder counter(final String name, final String label, final String value) {
+        return (LongAdder) getOrAdd(name, label, value, LongAdder.class);
+    }
+
+    public Timer timer(final String name) {
+        return timer(name, null, null);
+    }
+
+    public Timer timer(final String name, final String label, final String value) {
+        return (Timer) getOrAdd(name, label, value, Timer.class);
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge already registered under the same name and label.
+     */
+    public void gauge(final String name, final Gauge gauge) {
+        gauge(name, null, null, gauge);
+    }
+
+    public void gauge(final String name, final String label, final String value, final Gauge gauge) {
+        final String labels = labels(label, value);
+        entries.put(name + labels, new Entry(name, labels, gauge));
+        addLabel(labels, label, value);
+    }
+
+    /**
+     * Adds a listener and tells it about every label already in use.
+     */
+    public void addListener(final Listener listener) {
+        synchronized (labelValues) {
+            listeners.add(listener);
+            for (final String[] labelValue : labelValues.values()) {
+                listener.labelAdded(labelValue[0], labelValue[1]);
+            }
+        }
+    }
+
+    /**
+     * @return the names and types of the values under a label value, sorted, with each timer expanded
+     * as in snapshot(). Nothing is read.
+     */
+    public SortedMap<String, Class<? extends Number>> names(final String label, final String value) {
+        final String labels = labels(label, value);
+        final SortedMap<String, Class<? extends Number>> names = new TreeMap<String, Class<? extends Number>>();
+        for (final Entry entry : entries.values()) {
+            if (!entry.labels.equals(labels)) {
+                continue;
+            }
+            if (entry.metric instanceof LongAdder) {
+                names.put(entry.name, Long.class);
+            } else if (entry.metric instanceof Timer) {
+                names.put(entry.name + "_count", Long.class);
+                names.put(entry.name + "_sum_us", Double.class);
+                names.put(entry.name + "_max_us", Double.class);
+            } else {
+                names.put(entry.name, Double.class);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @param name one of the names returned by names(label, value)
+     * @return the current value, or null if there is none
+     */
+    public Number value(final String name, final String label, final String value) {
+        final String labels = labels(label, value);
+        final Entry entry = entries.get(name + labels);
+        if (entry != null && entry.metric instanceof LongAdder) {
+            return ((LongAdder) entry.metric).sum();
+        } else if (entry != null && entry.metric instanceof Gauge) {
+            return ((Gauge) entry.metric).getValue();
+        }
+        for (final String suffix : TIMER_SUFFIXES) {
+            if (name.endsWith(suffix)) {
+                final Entry timerEntry = entries.get(name.substring(0, name.length() - suffix.length()) + labels);
+                if (timerEntry != null && timerEntry.metric instanceof Timer) {
+                    final Timer timer = (Timer) timerEntry.metric;
+                    if (suffix.equals("_count")) {
+                        return timer.getCount();
+                    } else if (suffix.equals("_sum_us")) {
+                        return timer.getTotalMicros();
+                    } else {
+                        return timer.getMaxMicros();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return every value by key, sorted, with each timer expanded into its _count, _sum_us and
+     * _max_us values
+     */
+    public SortedMap<String, Number> snapshot() {
+        final SortedMap<String, Number> values = new TreeMap<String, Number>();
+        for (final Map.Entry<String, Entry> item : entries.entrySet()) {
+            final Entry entry = item.getValue();
+            if (entry.metric instanceof LongAdder) {
+                values.put(item.getKey(), ((LongAdder) entry.metric).sum());
+            } else if (entry.metric instanceof Timer) {
+                final Timer timer = (Timer) entry.metric;
+                values.put(entry.name + "_count" + entry.labels, timer.getCount());
+                values.put(entry.name + "_sum_us" + entry.labels, timer.getTotalMicros());
+                values.put(entry.name + "_max_us" + entry.labels, timer.getMaxMicros());
+            } else {
+                values.put(item.getKey(), ((Gauge) entry.metric).getValue());
+            }
+        }
+        return values;
+    }
+
+    private Object getOrAdd(final String name, final String label, final String value, final Class<?> type) {
+        final String labels = labels(label, value);
+        final String key = name + labels;
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            final Entry added = new Entry(name, labels, (type == Timer.class) ? new Timer() : new LongAdder());
+            entry = entries.putIfAbsent(key, added);
+            if (entry == null) {
+                entry = added;
+                addLabel(labels, label, value);
+            }
+        }
+        if (entry.metric.getClass() != type) {
+            throw new IllegalArgumentException("Metric " + key + " is already registered as a " + entry.metric.getClass().getSimpleName());
+        }
+        return entry.metric;
+    }
+
+    private void addLabel(final String labels, final String label, final String value) {
+        if (labelValues.containsKey(labels)) {
+            return;
+        }
+        synchronized (labelValues) {
+            if (labelValues.putIfAbsent(labels, new String[] { label, value }) == null) {
+                for (final Listener listener : listeners) {
+                    listener.labelAdded(label, value);
+                }
+            }
+        }
+    }
+
+    private static String labels(final String label, final String value) {
+        if (label == null) {
+            return "";
+        }
+        return "{" + label + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.metrics;
+
+import com.greenenergycorp.openfmb.simulator.publish.PublishPipeline;
+import com.greenenergycorp.openfmb.simulator.schedule.TickScheduler;
+
+import java.util.Properties;
+
+/**
+ * Sets up the metrics of a simulator process from its properties.
+ */
+public class SimulatorMetrics {
+
+    /**
+     * Creates a registry and exposes it: over JMX unless &lt;prefix&gt;jmx is false, and over HTTP on
+     * localhost if &lt;prefix&gt;metricsPort is set.
+     *
+     * @param name names the MBean, e.g. the simulator and its logical device ID
+     */
+    public static MetricsRegistry export(final Properties props, final String prefix, final String name) throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry();
+        if (Boolean.parseBoolean(props.getProperty(prefix + "jmx", "true").trim())) {
+            MetricsMBean.register(registry, name);
+        }
+        final int port = Integer.parseInt(props.getProperty(prefix + "metricsPort", "0").trim());
+        if (port > 0) {
+            new MetricsHttpServer(registry, port).start();
+        }
+        return registry;
+    }
+
+    public static void registerScheduler(final MetricsRegistry registry, final TickScheduler scheduler) {
+        registry.gauge("tick_overruns", new MetricsRegistry.Gauge() {
+            public double getValue() {
+                return scheduler.getTotalOverruns();
+            }
+        });
+        registry.gauge("ticks_skipped", new MetricsRegistry.Gauge() {
+            public double getValue() {
+                return scheduler.getTotalSkipped();
+            }
+        });
+    }
+
+    /**
+     * Registers the count and the p50, p99 and max of a histogram, in microseconds.
+     */
+    public static void registerLatency(final MetricsRegistry registry, final String name, final LatencyHistogram histogram) {
+        registry.gauge(name + "_count", new MetricsRegistry.Gauge() {
+            public double getValue() {
+                return histogram.getCount();
+            }
+        });
+        registry.gauge(name + "_p50_us", new MetricsRegistry.Gauge() {
+            public double getValue() {
+                return histogram.getPercentileNanos(50) / 1000.0;
+            }
+        });
+        registry.gauge(name + "_p99_us", new MetricsRegistry.Gauge() {
+            public double getValue() {
+                return histogram.getPercentileNanos(99) / 1000.0;
+            }
+        });
+        registry.gauge(name + "_max_us", new MetricsRegistry.Gauge() {
+            public double getValue() {
+                return histogram.getMaxNanos() / 1000.0;
+            }
+        });
+    }
+
+    /**
+     * @param pipeline may be null, in which case nothing is registered
+     */
+    public static void registerPipeline(final MetricsRegistry registry, final PublishPipeline pipeline) {
+        if (pipeline == null) {
+            return;
+        }
+        registry.gauge("pipeline_queue_depth", new MetricsRegistry.Gauge() {
+            public double getValue() {
+                return pipeline.getQueueDepth();
+            }
+        });
+        registry.gauge("pipeline_published", new MetricsRegistry.Gauge() {
+            public double getValue() {
+                return pipeline.getPublished();
+            }
+        });
+        registry.gauge("pipeline_dropped", new MetricsRegistry.Gauge() {
+            public double getValue() {
+                return pipeline.getDropped();
+            }
+        });
+        registry.gauge("pipeline_failed", new MetricsRegistry.Gauge() {
+            public double getValue() {
+                return pipeline.getFailed();
+            }
+        });
+        registry.gauge("pipeline_blocked", new MetricsRegistry.Gauge() {
+            public double getValue() {
+                return pipeline.getBlocked();
+            }
+        });
+    }
+}
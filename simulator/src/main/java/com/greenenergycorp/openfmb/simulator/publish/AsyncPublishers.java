@@ -0,0 +1,168 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.publish;
+
+import com.greenenergycorp.openfmb.simulator.balance.BatteryControlIssuer;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryObserver;
+import com.greenenergycorp.openfmb.simulator.recloser.RecloserObserver;
+import com.greenenergycorp.openfmb.simulator.solar.SolarObserver;
+import com.greenenergycorp.openfmb.simulator.xml.balance.BatteryControlPublisher;
+import com.greenenergycorp.openfmb.simulator.xml.battery.BatteryPublisher;
+import com.greenenergycorp.openfmb.simulator.xml.recloser.RecloserPublisher;
+import com.greenenergycorp.openfmb.simulator.xml.solar.SolarPublisher;
+
+/**
+ * Observers that snapshot each update, including the time it was made, and hand it to a
+ * PublishPipeline to be encoded and published on a worker thread. The profile carries the
+ * timestamp of the update rather than the time the worker got to it. The time is read from the
+ * publisher's clock.
+ *
+ * Battery control commands are submitted as not droppable, so a full queue never discards them.
+ */
+public class AsyncPublishers {
+
+    public static class AsyncSolarObserver implements SolarObserver {
+        private final PublishPipeline pipeline;
+        private final String key;
+        private final SolarPublisher publisher;
+
+        public AsyncSolarObserver(PublishPipeline pipeline, String key, SolarPublisher publisher) {
+            this.pipeline = pipeline;
+            this.key = key;
+            this.publisher = publisher;
+        }
+
+        public void solarReadUpdate(final double outputPower) {
+            final long now = publisher.getClock().currentTimeMillis();
+            pipeline.submit(key, new PublishPipeline.PublishTask() {
+                public void publish() throws Exception {
+                    publisher.solarReadUpdate(now, outputPower);
+                }
+            });
+        }
+
+        public void solarEventUpdate() {
+            final long now = publisher.getClock().currentTimeMillis();
+            pipeline.submit(key, new PublishPipeline.PublishTask() {
+                public void publish() throws Exception {
+                    publisher.solarEventUpdate(now);
+                }
+            });
+        }
+    }
+
+    public static class AsyncBatteryObserver implements BatteryObserver {
+        private final PublishPipeline pipeline;
+        private final String key;
+        private final BatteryPublisher publisher;
+
+        public AsyncBatteryObserver(PublishPipeline pipeline, String key, BatteryPublisher publisher) {
+            this.pipeline = pipeline;
+            this.key = key;
+            this.publisher = publisher;
+        }
+
+        public void batteryReadUpdate(final double power, final double volts, final double frequency) {
+            final long now = publisher.getClock().currentTimeMillis();
+            pipeline.submit(key, new PublishPipeline.PublishTask() {
+                public void publish() throws Exception {
+                    publisher.batteryReadUpdate(now, power, volts, frequency);
+                }
+            });
+        }
+
+        public void batteryEventUpdate(final boolean isConnected, final boolean isCharging, final String mode, final double stateOfCharge) {
+            final long now = publisher.getClock().currentTimeMillis();
+            pipeline.submit(key, new PublishPipeline.PublishTask() {
+                public void publish() throws Exception {
+                    publisher.batteryEventUpdate(now, isConnected, isCharging, mode, stateOfCharge);
+                }
+            });
+        }
+    }
+
+    public static class AsyncRecloserObserver implements RecloserObserver {
+        private final PublishPipeline pipeline;
+        private final String key;
+        private final RecloserPublisher publisher;
+
+        public AsyncRecloserObserver(PublishPipeline pipeline, String key, RecloserPublisher publisher) {
+            this.pipeline = pipeline;
+            this.key = key;
+            this.publisher = publisher;
+        }
+
+        public void recloserReadUpdate(final double power, final double voltage, final double frequency, final double kvars) {
+            final long now = publisher.getClock().currentTimeMillis();
+            pipeline.submit(key, new PublishPipeline.PublishTask() {
+                public void publish() throws Exception {
+                    publisher.recloserReadUpdate(now, power, voltage, frequency, kvars);
+                }
+            });
+        }
+
+        public void recloserEventUpdate(final boolean isClosed, final boolean isBlocked) {
+            final long now = publisher.getClock().currentTimeMillis();
+            pipeline.submit(key, new PublishPipeline.PublishTask() {
+                public void publish() throws Exception {
+                    publisher.recloserEventUpdate(now, isClosed, isBlocked);
+                }
+            });
+        }
+    }
+
+    public static class AsyncBatteryControlIssuer implements BatteryControlIssuer {
+        private final PublishPipeline pipeline;
+        private final String key;
+        private final BatteryControlPublisher publisher;
+
+        public AsyncBatteryControlIssuer(PublishPipeline pipeline, String key, BatteryControlPublisher publisher) {
+            this.pipeline = pipeline;
+            this.key = key;
+            this.publisher = publisher;
+        }
+
+        public void setIslanded() {
+            final long now = publisher.getClock().currentTimeMillis();
+            pipeline.submit(key, new PublishPipeline.PublishTask() {
+                public void publish() throws Exception {
+                    publisher.setIslanded(now);
+                }
+            }, false);
+        }
+
+        public void setPowerSetpoint(final double power) {
+            final long now = publisher.getClock().currentTimeMillis();
+            pipeline.submit(key, new PublishPipeline.PublishTask() {
+                public void publish() throws Exception {
+                    publisher.setPowerSetpoint(now, power);
+                }
+            }, false);
+        }
+
+        public void leaveIslanded() {
+            final long now = publisher.getClock().currentTimeMillis();
+            pipeline.submit(key, new PublishPipeline.PublishTask() {
+                public void publish() throws Exception {
+                    publisher.leaveIslanded(now);
+                }
+            }, false);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.publish;
+
+/**
+ * What a PublishPipeline does when the queue for a device is full.
+ */
+public enum FullQueuePolicy {
+    /** Wait for space; the caller is held up but nothing is lost. */
+    BLOCK,
+    /** Discard the update being submitted, unless it must not be dropped, in which case wait. */
+    DROP_NEWEST,
+    /** Discard the oldest queued update that may be dropped to make room; wait if there is none. */
+    DROP_OLDEST,
+    /** Wait until the updates already queued are published, then publish on the caller's thread. */
+    CALLER_RUNS;
+
+    public static FullQueuePolicy fromString(final String s) {
+        final String normalized = s.trim().replace('-', '_');
+        for (final FullQueuePolicy p : FullQueuePolicy.values()) {
+            if (p.name().equalsIgnoreCase(normalized)) {
+                return p;
+            }
+        }
+        throw new IllegalArgumentException("Unknown full queue policy: " + s);
+    }
+}
@@ -0,0 +1,460 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.publish;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves encoding and publishing off the threads that produce state updates. Callers submit a task
+ * that has already captured the values to publish, and return once it is queued; worker threads
+ * run the tasks.
+ *
+ * Each worker owns a bounded queue, and a device is always handled by the same worker, so updates
+ * for one device are published in the order they were submitted. When a queue is full the
+ * FullQueuePolicy decides whether the caller waits, an update is dropped, or the caller publishes.
+ * Tasks submitted as not droppable, such as control commands, are never discarded by either drop
+ * policy; the caller waits for space instead.
+ */
+public class PublishPipeline {
+    private final static Logger logger = LoggerFactory.getLogger(PublishPipeline.class);
+
+    public interface PublishTask {
+        void publish() throws Exception;
+    }
+
+    private final FullQueuePolicy policy;
+    private final Worker[] workers;
+
+    private final AtomicLong submitted = new AtomicLong(0);
+    private final AtomicLong published = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+    private final AtomicLong callerRuns = new AtomicLong(0);
+    private final AtomicLong failed = new AtomicLong(0);
+    private final AtomicLong maxDepth = new AtomicLong(0);
+    private final AtomicLong totalWaitNanos = new AtomicLong(0);
+    private final AtomicLong maxWaitNanos = new AtomicLong(0);
+    private final AtomicLong blocked = new AtomicLong(0);
+    private final AtomicLong totalBlockedNanos = new AtomicLong(0);
+    private final AtomicLong maxBlockedNanos = new AtomicLong(0);
+
+    private volatile boolean running = true;
+    private static final Item STOP = new Item(null, false);
+
+    // how often a waiting caller re-checks that the pipeline is still running
+    private static final long WAIT_CHECK_MS = 100;
+    private ScheduledExecutorService reporter = null;
+
+    public PublishPipeline(final int workerCount, final int queueCapacity, final FullQueuePolicy policy, final ThreadFactory threadFactory) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Publish pipeline needs at least one worker");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Publish queue capacity must be positive");
+        }
+        this.policy = policy;
+        this.workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(queueCapacity);
+        }
+        for (final Worker worker : workers) {
+            worker.thread = threadFactory.newThread(worker);
+            worker.thread.start();
+        }
+    }
+
+    /**
+     * Queues a task for the given device. Tasks with the same key are published in submission order.
+     */
+    public void submit(final String key, final PublishTask task) {
+        submit(key, task, true);
+    }
+
+    /**
+     * @param droppable false if the task must not be discarded when the queue is full
+     */
+    public void submit(final String key, final PublishTask task, final boolean droppable) {
+        final Worker worker = workers[(key.hashCode() & 0x7fffffff) % workers.length];
+        final Item item = new Item(task, droppable);
+        submitted.incrementAndGet();
+
+        if (!running) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        if (!worker.offer(item)) {
+            // time the caller is held up is reported on its own, not as time the task spent queued
+            final long blockedFrom = System.nanoTime();
+            switch (policy) {
+                case BLOCK:
+                    if (!offerWhileRunning(worker, item)) {
+                        return;
+                    }
+                    recordBlocked(blockedFrom);
+                    break;
+                case DROP_NEWEST:
+                    if (droppable) {
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                    if (!offerWhileRunning(worker, item)) {
+                        return;
+                    }
+                    recordBlocked(blockedFrom);
+                    break;
+                case DROP_OLDEST:
+                    while (!worker.offer(item)) {
+                        if (!evictOldest(worker)) {
+                            if (!offerWhileRunning(worker, item)) {
+                                return;
+                            }
+                            recordBlocked(blockedFrom);
+                            break;
+                        }
+                    }
+                    break;
+                case CALLER_RUNS:
+                    // everything already queued on the worker, including earlier tasks for this key, goes first
+                    if (!worker.awaitFinished(worker.enqueued.get())) {
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                    recordBlocked(blockedFrom);
+                    callerRuns.incrementAndGet();
+                    run(item);
+                    return;
+            }
+        }
+
+        updateMax(maxDepth, worker.queue.size());
+    }
+
+    // a plain put could wait forever if shutdown stops the worker while the queue is still full
+    private boolean offerWhileRunning(final Worker worker, final Item item) {
+        try {
+            while (running) {
+                if (worker.offer(item, WAIT_CHECK_MS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * @return false if every queued task is one that must not be dropped
+     */
+    private boolean evictOldest(final Worker worker) {
+        for (final Item queued : worker.queue) {
+            if (queued.droppable && worker.queue.remove(queued)) {
+                worker.finished.incrementAndGet();
+                dropped.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void recordBlocked(final long fromNanos) {
+        final long nanos = System.nanoTime() - fromNanos;
+        blocked.incrementAndGet();
+        totalBlockedNanos.addAndGet(nanos);
+        updateMax(maxBlockedNanos, nanos);
+    }
+
+    private void run(final Item item) {
+        // a task run by its caller, or taken by the worker before it was stamped, did not wait in the queue
+        final long enqueuedNanos = item.enqueuedNanos;
+        final long wait = (enqueuedNanos == Item.NOT_QUEUED) ? 0 : System.nanoTime() - enqueuedNanos;
+        totalWaitNanos.addAndGet(wait);
+        updateMax(maxWaitNanos, wait);
+        try {
+            item.task.publish();
+            published.incrementAndGet();
+        } catch (Exception ex) {
+            failed.incrementAndGet();
+            logger.warn("Could not publish update: " + ex);
+        }
+    }
+
+    private static void updateMax(final AtomicLong max, final long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    public FullQueuePolicy getPolicy() {
+        return policy;
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getPublished() {
+        return published.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getCallerRuns() {
+        return callerRuns.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return the number of tasks currently queued across all workers
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (final Worker worker : workers) {
+            depth += worker.queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return the deepest any single worker queue has been after a submit
+     */
+    public long getMaxQueueDepth() {
+        return maxDepth.get();
+    }
+
+    /**
+     * @return the mean time tasks spent queued before being published, in microseconds
+     */
+    public long getAverageWaitMicros() {
+        final long runs = published.get() + failed.get();
+        return runs == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.get() / runs);
+    }
+
+    public long getMaxWaitMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get());
+    }
+
+    /**
+     * @return the number of submits that found the queue full and held up the caller
+     */
+    public long getBlocked() {
+        return blocked.get();
+    }
+
+    /**
+     * @return the mean time a held up caller waited for space or for the worker, in microseconds
+     */
+    public long getAverageBlockedMicros() {
+        final long count = blocked.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalBlockedNanos.get() / count);
+    }
+
+    public long getMaxBlockedMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxBlockedNanos.get());
+    }
+
+    public synchronized void startReporting(final long reportIntervalMs) {
+        if (reporter != null) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "publish pipeline report");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reporter.scheduleWithFixedDelay(new Runnable() {
+            private long lastDropped = 0;
+
+            public void run() {
+                final long drops = getDropped();
+                final String summary = "Publish pipeline: " + getPublished() + " published, depth " + getQueueDepth()
+                        + " (max " + getMaxQueueDepth() + "), wait avg " + getAverageWaitMicros() + " us, max " + getMaxWaitMicros() + " us, "
+                        + getBlocked() + " submits held up (avg " + getAverageBlockedMicros() + " us, max " + getMaxBlockedMicros() + " us), "
+                        + drops + " dropped, " + getCallerRuns() + " run by caller";
+                if (drops > lastDropped) {
+                    logger.warn((drops - lastDropped) + " updates dropped in the last " + reportIntervalMs + " ms. " + summary);
+                } else {
+                    logger.info(summary);
+                }
+                lastDropped = drops;
+            }
+        }, reportIntervalMs, reportIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops accepting tasks and waits for the workers to publish what is already queued.
+     */
+    public void shutdown(final long timeoutMs) throws InterruptedException {
+        running = false;
+        synchronized (this) {
+            if (reporter != null) {
+                reporter.shutdownNow();
+            }
+        }
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        for (final Worker worker : workers) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !worker.queue.offer(STOP, remaining, TimeUnit.NANOSECONDS)) {
+                worker.thread.interrupt();
+            }
+        }
+        for (final Worker worker : workers) {
+            final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining > 0) {
+                worker.thread.join(remaining);
+            }
+        }
+        // anything queued behind STOP by a submit that raced with shutdown is never published
+        for (final Worker worker : workers) {
+            if (!worker.thread.isAlive()) {
+                Item left;
+                while ((left = worker.queue.poll()) != null) {
+                    if (left != STOP) {
+                        dropped.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a pipeline configured by {@code <prefix>publishThreads}, {@code <prefix>publishQueueCapacity} and
+     * {@code <prefix>publishQueuePolicy}, or null if publishThreads is zero or unset
+     */
+    public static PublishPipeline fromProperties(final Properties props, final String prefix, final ThreadFactory threadFactory) {
+        final int threads = Integer.parseInt(props.getProperty(prefix + "publishThreads", "0"));
+        if (threads <= 0) {
+            return null;
+        }
+        final int capacity = Integer.parseInt(props.getProperty(prefix + "publishQueueCapacity", "1024"));
+        final FullQueuePolicy policy = FullQueuePolicy.fromString(props.getProperty(prefix + "publishQueuePolicy", "block"));
+        logger.info("Publishing on " + threads + " worker thread(s), queue capacity " + capacity + ", " + policy + " when full");
+        return new PublishPipeline(threads, capacity, policy, threadFactory);
+    }
+
+    private static class Item {
+        private static final long NOT_QUEUED = Long.MIN_VALUE;
+
+        private final PublishTask task;
+        private final boolean droppable;
+        // set when the item is placed in a queue, so a caller held up by a full queue is not counted
+        private volatile long enqueuedNanos = NOT_QUEUED;
+
+        Item(PublishTask task, boolean droppable) {
+            this.task = task;
+            this.droppable = droppable;
+        }
+    }
+
+    private class Worker implements Runnable {
+        private final BlockingQueue<Item> queue;
+        private Thread thread;
+
+        // tasks queued, and tasks published or evicted; a caller waiting for the queue to drain compares the two
+        private final AtomicLong enqueued = new AtomicLong(0);
+        private final AtomicLong finished = new AtomicLong(0);
+        private final AtomicInteger waiting = new AtomicInteger(0);
+
+        Worker(int capacity) {
+            this.queue = new ArrayBlockingQueue<Item>(capacity);
+        }
+
+        boolean offer(final Item item) {
+            item.enqueuedNanos = System.nanoTime();
+            if (queue.offer(item)) {
+                enqueued.incrementAndGet();
+                return true;
+            }
+            item.enqueuedNanos = Item.NOT_QUEUED;
+            return false;
+        }
+
+        boolean offer(final Item item, final long timeoutMs) throws InterruptedException {
+            if (queue.offer(item, timeoutMs, TimeUnit.MILLISECONDS)) {
+                // the worker may already have taken it, in which case it waited no time at all
+                item.enqueuedNanos = System.nanoTime();
+                enqueued.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Waits until the first {@code target} queued tasks have been published or evicted.
+         *
+         * @return false if interrupted, or if the worker stopped first
+         */
+        boolean awaitFinished(final long target) {
+            waiting.incrementAndGet();
+            try {
+                synchronized (this) {
+                    while (finished.get() < target) {
+                        if (!thread.isAlive()) {
+                            return false;
+                        }
+                        wait(WAIT_CHECK_MS);
+                    }
+                }
+                return true;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+
+        public void run() {
+            try {
+                Item item;
+                while ((item = queue.take()) != STOP) {
+                    PublishPipeline.this.run(item);
+                    finished.incrementAndGet();
+                    if (waiting.get() > 0) {
+                        synchronized (this) {
+                            notifyAll();
+                        }
+                    }
+                }
+            } catch (InterruptedException ex) {
+                logger.warn("Publish worker interrupted with " + queue.size() + " updates queued");
+            }
+        }
+    }
+}
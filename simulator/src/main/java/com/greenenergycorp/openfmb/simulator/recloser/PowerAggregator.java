@@ -0,0 +1,137 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.recloser;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Running totals of the latest power reported by each battery, load and solar device.
+ *
+ * Logical device IDs are interned to dense slots the first time they are seen. Each slot holds the
+ * device's last value in fixed point, and an update adds the difference from the previous value to
+ * the category and overall totals, so updates are O(1) and take no lock once a device has a slot.
+ * Totals are single atomic values and can be read at any time without blocking writers; because they
+ * are kept in fixed point they do not drift however many updates are applied.
+ */
+public class PowerAggregator {
+
+    public enum Category {
+        BATTERY,
+        LOAD,
+        SOLAR
+    }
+
+    // values are kept in millionths of the reported unit
+    private static final double SCALE = 1000000.0;
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final Map<String, Integer>[] slotsByCategory;
+    private final AtomicLong[] categoryTotals;
+    private final AtomicLong total = new AtomicLong(0);
+
+    // grown under the allocation lock; existing chunks are carried over, never copied
+    private volatile AtomicLongArray[] chunks = new AtomicLongArray[0];
+    private int slotCount = 0;
+    private final Object allocationLock = new Object();
+
+    @SuppressWarnings("unchecked")
+    public PowerAggregator() {
+        final Category[] categories = Category.values();
+        slotsByCategory = new Map[categories.length];
+        categoryTotals = new AtomicLong[categories.length];
+        for (int i = 0; i < categories.length; i++) {
+            slotsByCategory[i] = new ConcurrentHashMap<String, Integer>();
+            categoryTotals[i] = new AtomicLong(0);
+        }
+    }
+
+    public void update(final Category category, final String logicalDeviceId, final double power) {
+        final int slot = slotFor(category, logicalDeviceId);
+        final long value = Math.round(power * SCALE);
+
+        final long previous = chunks[slot >>> CHUNK_BITS].getAndSet(slot & CHUNK_MASK, value);
+        final long delta = value - previous;
+        if (delta != 0) {
+            categoryTotals[category.ordinal()].addAndGet(delta);
+            total.addAndGet(delta);
+        }
+    }
+
+    public double getTotal() {
+        return total.get() / SCALE;
+    }
+
+    public double getTotal(final Category category) {
+        return categoryTotals[category.ordinal()].get() / SCALE;
+    }
+
+    /**
+     * @return the last power reported by the device, or 0 if it has not reported
+     */
+    public double getPower(final Category category, final String logicalDeviceId) {
+        final Integer slot = slotsByCategory[category.ordinal()].get(logicalDeviceId);
+        if (slot == null) {
+            return 0.0;
+        }
+        return chunks[slot >>> CHUNK_BITS].get(slot & CHUNK_MASK) / SCALE;
+    }
+
+    public int getDeviceCount() {
+        synchronized (allocationLock) {
+            return slotCount;
+        }
+    }
+
+    private int slotFor(final Category category, final String logicalDeviceId) {
+        final Integer slot = slotsByCategory[category.ordinal()].get(logicalDeviceId);
+        if (slot != null) {
+            return slot;
+        }
+        return allocate(category, logicalDeviceId);
+    }
+
+    private int allocate(final Category category, final String logicalDeviceId) {
+        synchronized (allocationLock) {
+            final Map<String, Integer> slots = slotsByCategory[category.ordinal()];
+            final Integer existing = slots.get(logicalDeviceId);
+            if (existing != null) {
+                return existing;
+            }
+
+            final int slot = slotCount++;
+            final int chunk = slot >>> CHUNK_BITS;
+            if (chunk >= chunks.length) {
+                final AtomicLongArray[] grown = new AtomicLongArray[chunk + 1];
+                System.arraycopy(chunks, 0, grown, 0, chunks.length);
+                grown[chunk] = new AtomicLongArray(CHUNK_SIZE);
+                chunks = grown;
+            }
+
+            // published only once the chunk holding it is visible
+            slots.put(logicalDeviceId, slot);
+            return slot;
+        }
+    }
+}
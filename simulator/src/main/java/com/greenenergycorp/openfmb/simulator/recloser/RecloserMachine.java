@@ -18,14 +18,16 @@
  */
 package com.greenenergycorp.openfmb.simulator.recloser;
 
+import com.greenenergycorp.openfmb.simulator.schedule.Tickable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class RecloserMachine implements SystemPowerObserver, RecloserControlObserver {
+public class RecloserMachine implements SystemPowerObserver, RecloserControlObserver, Tickable {
 
     private final static Logger logger = LoggerFactory.getLogger(RecloserMachine.class);
 
@@ -34,86 +36,151 @@ public class RecloserMachine implements SystemPowerObserver, RecloserControlObse
     private final double voltage;
     private final double frequency;
     private final double kvars;
+    private final long minPublishIntervalNanos;
 
     private boolean isClosed = true;
-    private final Map<String, Double> batteries = new HashMap<String, Double>();
-    private final Map<String, Double> loads = new HashMap<String, Double>();
-    private final Map<String, Double> solars = new HashMap<String, Double>();
+    private volatile boolean isDirty = false;
+    private volatile long lastPublishNanos;
+    private final PowerAggregator power = new PowerAggregator();
 
-    private final Object mutex = new Object();
+    private final Lock mutex = new ReentrantLock();
 
-    private final Random random = new Random();
+    private final Random random;
 
     public RecloserMachine(RecloserObserver observer, double voltage, double frequency, double kvars) {
+        this(observer, voltage, frequency, kvars, 0);
+    }
+
+    /**
+     * @param minPublishIntervalMs if greater than zero, power updates only mark the state dirty and are
+     *                             published at most once per interval; open and close are always
+     *                             published immediately. Zero publishes on every update.
+     */
+    public RecloserMachine(RecloserObserver observer, double voltage, double frequency, double kvars, long minPublishIntervalMs) {
+        this(observer, voltage, frequency, kvars, minPublishIntervalMs, new Random());
+    }
+
+    /**
+     * @param random drives the voltage and frequency jitter; seed it for a reproducible run
+     */
+    public RecloserMachine(RecloserObserver observer, double voltage, double frequency, double kvars, long minPublishIntervalMs, Random random) {
         this.observer = observer;
+        this.random = random;
         this.voltage = voltage;
         this.frequency = frequency;
         this.kvars = kvars;
+        this.minPublishIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minPublishIntervalMs);
+        this.lastPublishNanos = System.nanoTime() - minPublishIntervalNanos;
+    }
+
+    public boolean isCoalescing() {
+        return minPublishIntervalNanos > 0;
+    }
+
+    /**
+     * Publishes pending power updates once the minimum publish interval has passed. Registered with
+     * the scheduler at the minimum publish interval when coalescing.
+     */
+    public Tickable getFlusher() {
+        return new Tickable() {
+            public void tick() {
+                flush();
+            }
+        };
+    }
+
+    public void flush() {
+        mutex.lock();
+        try {
+            if (isDirty && intervalElapsed()) {
+                computeUpdate();
+            }
+        } finally {
+            mutex.unlock();
+        }
     }
 
     public void push() {
-        synchronized (mutex) {
+        mutex.lock();
+        try {
             computeUpdate();
+        } finally {
+            mutex.unlock();
         }
     }
 
+    public void tick() {
+        push();
+    }
+
     public void handleOpen() {
-        synchronized (mutex) {
+        mutex.lock();
+        try {
             if (isClosed) {
                 isClosed = false;
                 computeUpdate();
             }
+        } finally {
+            mutex.unlock();
         }
     }
 
     public void handleClose() {
-        synchronized (mutex) {
+        mutex.lock();
+        try {
             if (!isClosed) {
                 isClosed = true;
                 computeUpdate();
             }
+        } finally {
+            mutex.unlock();
         }
     }
 
     public void updateBatteryPower(final String id, final double power) {
-        synchronized (mutex) {
-            batteries.put(id, power);
-            computeUpdate();
-        }
+        this.power.update(PowerAggregator.Category.BATTERY, id, power);
+        powerChanged();
     }
 
     public void updateLoadPower(final String id, final double power) {
-        synchronized (mutex) {
-            loads.put(id, power);
-            computeUpdate();
-        }
+        this.power.update(PowerAggregator.Category.LOAD, id, power);
+        powerChanged();
     }
 
     public void updateSolarPower(final String id, final double power) {
-        synchronized (mutex) {
-            solars.put(id, power);
+        this.power.update(PowerAggregator.Category.SOLAR, id, power);
+        powerChanged();
+    }
+
+    private boolean intervalElapsed() {
+        return System.nanoTime() - lastPublishNanos >= minPublishIntervalNanos;
+    }
+
+    // the aggregate is updated before this is called, and computeUpdate clears the dirty flag before
+    // reading it, so a coalesced update is either in the publish that clears the flag or in the next one
+    private void powerChanged() {
+        if (isCoalescing() && !intervalElapsed()) {
+            isDirty = true;
+            return;
+        }
+
+        mutex.lock();
+        try {
             computeUpdate();
+        } finally {
+            mutex.unlock();
         }
     }
 
     private void computeUpdate() {
+        isDirty = false;
+        lastPublishNanos = System.nanoTime();
         try {
             final double freq = frequency + ((random.nextDouble() * 0.001 * frequency) - (frequency * 0.001 / 2));
             final double volts = voltage + ((random.nextDouble() * 0.001 * voltage) - (voltage * 0.001 / 2));
 
             if (isClosed) {
-                double total = 0.0;
-                for (final Double v : loads.values()) {
-                    total += v;
-                }
-                for (final Double v : batteries.values()) {
-                    total += v;
-                }
-                for (final Double v : solars.values()) {
-                    total += v;
-                }
-
-                observer.recloserReadUpdate(total, volts, freq, 0.0);
+                observer.recloserReadUpdate(power.getTotal(), volts, freq, 0.0);
                 observer.recloserEventUpdate(isClosed, false);
             } else {
                 observer.recloserReadUpdate(0.0, volts, freq, 0.0);
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.schedule;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks absolute tick deadlines for a fixed-rate loop so the period does not drift by the time spent
+ * doing work in each tick. Deadlines are kept on the System.nanoTime() timeline, so tick phase is
+ * unaffected by wall clock adjustments.
+ *
+ * Only the thread running the ticks may call completeTick()/awaitNextTick(); the counters may be read
+ * from any thread.
+ */
+public class FixedRatePacer {
+
+    private final long periodNanos;
+    private final OverrunPolicy policy;
+
+    private long nextDeadline;
+
+    private volatile long ticks = 0;
+    private volatile long overruns = 0;
+    private volatile long skipped = 0;
+    private volatile long maxLatenessNanos = 0;
+
+    public FixedRatePacer(long periodMs, OverrunPolicy policy) {
+        this(periodMs, policy, System.nanoTime());
+    }
+
+    public FixedRatePacer(long periodMs, OverrunPolicy policy, long firstDeadlineNanos) {
+        if (periodMs <= 0) {
+            throw new IllegalArgumentException("Tick period must be positive");
+        }
+        this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMs);
+        this.policy = policy;
+        this.nextDeadline = firstDeadlineNanos;
+    }
+
+    /**
+     * Records the end of a tick and advances the schedule.
+     *
+     * @return nanoseconds to wait before the next tick, zero if it is already due
+     */
+    public long completeTick(final long nowNanos) {
+        ticks++;
+        nextDeadline += periodNanos;
+
+        final long lateness = nowNanos - nextDeadline;
+        if (lateness > 0) {
+            overruns++;
+            if (lateness > maxLatenessNanos) {
+                maxLatenessNanos = lateness;
+            }
+            if (policy == OverrunPolicy.SKIP) {
+                final long missed = lateness / periodNanos + 1;
+                nextDeadline += missed * periodNanos;
+                skipped += missed;
+            }
+        }
+
+        return Math.max(0, nextDeadline - nowNanos);
+    }
+
+    public long delayToFirstTick(final long nowNanos) {
+        return Math.max(0, nextDeadline - nowNanos);
+    }
+
+    public void awaitFirstTick() throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(delayToFirstTick(System.nanoTime()));
+    }
+
+    public void awaitNextTick() throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(completeTick(System.nanoTime()));
+    }
+
+    public long getPeriodMs() {
+        return TimeUnit.NANOSECONDS.toMillis(periodNanos);
+    }
+
+    public OverrunPolicy getPolicy() {
+        return policy;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getOverruns() {
+        return overruns;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public long getMaxLatenessMs() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLatenessNanos);
+    }
+}
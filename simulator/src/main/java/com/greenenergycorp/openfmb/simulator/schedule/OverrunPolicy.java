@@ -0,0 +1,41 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.schedule;
+
+public enum OverrunPolicy {
+    /**
+     * Run missed ticks back to back until the schedule has caught up.
+     */
+    CATCH_UP,
+
+    /**
+     * Drop missed ticks and resume at the next deadline in phase with the original schedule.
+     */
+    SKIP;
+
+    public static OverrunPolicy fromString(final String s) {
+        final String normalized = s.trim().replace("-", "").replace("_", "");
+        for (final OverrunPolicy p : OverrunPolicy.values()) {
+            if (p.name().replace("_", "").equalsIgnoreCase(normalized)) {
+                return p;
+            }
+        }
+        throw new IllegalArgumentException("Unknown overrun policy: " + s);
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.schedule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public enum ThreadMode {
+    /**
+     * Ticks run on the shared scheduler pool; inbound messages are handled on the MQTT client thread.
+     */
+    SCHEDULER,
+
+    /**
+     * Each device loop and each inbound handler gets its own platform thread.
+     */
+    PLATFORM,
+
+    /**
+     * Each device loop and each inbound handler gets its own virtual thread (Java 21 or later).
+     */
+    VIRTUAL;
+
+    private final static Logger logger = LoggerFactory.getLogger(ThreadMode.class);
+
+    public boolean isThreadPerTask() {
+        return this != SCHEDULER;
+    }
+
+    public ThreadFactory threadFactory(final String name) {
+        if (this == VIRTUAL) {
+            final ThreadFactory virtualFactory = virtualThreadFactory(name);
+            if (virtualFactory != null) {
+                return virtualFactory;
+            }
+            logger.warn("Virtual threads are not available in this JVM, using platform threads");
+        }
+        final AtomicInteger count = new AtomicInteger(0);
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, name + " " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    public static boolean virtualThreadsAvailable() {
+        return virtualThreadFactory("probe") != null;
+    }
+
+    public static ThreadMode fromString(final String s) {
+        for (final ThreadMode m : ThreadMode.values()) {
+            if (m.name().equalsIgnoreCase(s.trim())) {
+                return m;
+            }
+        }
+        throw new IllegalArgumentException("Unknown thread mode: " + s);
+    }
+
+    // Thread.ofVirtual().name(name, 1).factory(), looked up reflectively so the build can target older JDKs
+    private static ThreadFactory virtualThreadFactory(final String name) {
+        try {
+            final Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            final Object builder = ofVirtual.invoke(null);
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Object named = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + " ", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(named);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+}
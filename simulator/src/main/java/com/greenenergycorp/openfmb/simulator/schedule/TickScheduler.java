@@ -0,0 +1,225 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.schedule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs any number of Tickables at fixed rates, either on a shared pool or, depending on the ThreadMode,
+ * as a blocking loop on a dedicated thread per registration. Each registration keeps its own
+ * FixedRatePacer, so a slow tick delays only that registration and is counted as an overrun rather
+ * than shifting its phase.
+ */
+public class TickScheduler {
+    private final static Logger logger = LoggerFactory.getLogger(TickScheduler.class);
+
+    private final ScheduledExecutorService executor;
+    private final OverrunPolicy policy;
+    private final ThreadMode threadMode;
+    private final ThreadFactory loopThreadFactory;
+
+    private final List<TickHandle> handles = new CopyOnWriteArrayList<TickHandle>();
+
+    public TickScheduler(ScheduledExecutorService executor, OverrunPolicy policy, ThreadMode threadMode, String name) {
+        this.executor = executor;
+        this.policy = policy;
+        this.threadMode = threadMode;
+        this.loopThreadFactory = threadMode.isThreadPerTask() ? threadMode.threadFactory(name) : null;
+    }
+
+    public TickScheduler(ScheduledExecutorService executor, OverrunPolicy policy) {
+        this(executor, policy, ThreadMode.SCHEDULER, "tick");
+    }
+
+    public TickScheduler(final int threads, final String name, final OverrunPolicy policy) {
+        this(threads, name, policy, ThreadMode.SCHEDULER);
+    }
+
+    public TickScheduler(final int threads, final String name, final OverrunPolicy policy, final ThreadMode threadMode) {
+        this(Executors.newScheduledThreadPool(threadMode.isThreadPerTask() ? 1 : threads, namedThreadFactory(name)), policy, threadMode, name);
+    }
+
+    public OverrunPolicy getPolicy() {
+        return policy;
+    }
+
+    public ThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    public TickHandle register(final String name, final Tickable tickable, final long periodMs) {
+        return register(name, tickable, periodMs, 0);
+    }
+
+    public TickHandle register(final String name, final Tickable tickable, final long periodMs, final long initialDelayMs) {
+        final FixedRatePacer pacer = new FixedRatePacer(periodMs, policy, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(initialDelayMs));
+        final TickHandle handle = new TickHandle(name, tickable, pacer);
+        handles.add(handle);
+        if (loopThreadFactory != null) {
+            loopThreadFactory.newThread(new Runnable() {
+                public void run() {
+                    handle.runLoop();
+                }
+            }).start();
+        } else {
+            executor.schedule(handle, initialDelayMs, TimeUnit.MILLISECONDS);
+        }
+        return handle;
+    }
+
+    /**
+     * Runs a one-off task on the shared pool.
+     */
+    public void execute(final Runnable task) {
+        executor.execute(task);
+    }
+
+    public List<TickHandle> getHandles() {
+        return new ArrayList<TickHandle>(handles);
+    }
+
+    public long getTotalOverruns() {
+        long total = 0;
+        for (final TickHandle handle : handles) {
+            total += handle.getPacer().getOverruns();
+        }
+        return total;
+    }
+
+    public long getTotalSkipped() {
+        long total = 0;
+        for (final TickHandle handle : handles) {
+            total += handle.getPacer().getSkipped();
+        }
+        return total;
+    }
+
+    public void startOverrunReporting(final long reportIntervalMs) {
+        executor.scheduleWithFixedDelay(new Runnable() {
+            private long lastOverruns = 0;
+
+            public void run() {
+                long overruns = 0;
+                long skipped = 0;
+                TickHandle worst = null;
+                for (final TickHandle handle : handles) {
+                    final FixedRatePacer pacer = handle.getPacer();
+                    overruns += pacer.getOverruns();
+                    skipped += pacer.getSkipped();
+                    if (worst == null || pacer.getMaxLatenessMs() > worst.getPacer().getMaxLatenessMs()) {
+                        worst = handle;
+                    }
+                }
+                if (overruns > lastOverruns) {
+                    logger.warn((overruns - lastOverruns) + " tick overruns in the last " + reportIntervalMs + " ms (" + overruns + " total, "
+                            + skipped + " ticks skipped, worst lateness " + worst.getPacer().getMaxLatenessMs() + " ms for " + worst.getName() + ")");
+                }
+                lastOverruns = overruns;
+            }
+        }, reportIntervalMs, reportIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void awaitTermination() throws InterruptedException {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    public void shutdown() {
+        for (final TickHandle handle : handles) {
+            handle.cancel();
+        }
+        executor.shutdown();
+    }
+
+    private static ThreadFactory namedThreadFactory(final String name) {
+        final AtomicInteger count = new AtomicInteger(0);
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                return new Thread(r, name + " " + count.incrementAndGet());
+            }
+        };
+    }
+
+    public class TickHandle implements Runnable {
+        private final String name;
+        private final Tickable tickable;
+        private final FixedRatePacer pacer;
+
+        private volatile boolean cancelled = false;
+
+        TickHandle(String name, Tickable tickable, FixedRatePacer pacer) {
+            this.name = name;
+            this.tickable = tickable;
+            this.pacer = pacer;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public FixedRatePacer getPacer() {
+            return pacer;
+        }
+
+        public void cancel() {
+            cancelled = true;
+            handles.remove(this);
+        }
+
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            tickOnce();
+            final long delay = pacer.completeTick(System.nanoTime());
+            if (!cancelled && !executor.isShutdown()) {
+                executor.schedule(this, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        void runLoop() {
+            try {
+                pacer.awaitFirstTick();
+                while (!cancelled && !executor.isShutdown()) {
+                    tickOnce();
+                    pacer.awaitNextTick();
+                }
+            } catch (InterruptedException ex) {
+                logger.debug("Tick loop for " + name + " interrupted");
+            }
+        }
+
+        private void tickOnce() {
+            try {
+                tickable.tick();
+            } catch (Throwable ex) {
+                logger.error("Error running tick for " + name + ": " + ex);
+            }
+        }
+    }
+}
@@ -19,14 +19,91 @@
 package com.greenenergycorp.openfmb.simulator.solar;
 
 import com.greenenergycorp.openfmb.simulator.DailyInterpolatedData;
+import com.greenenergycorp.openfmb.simulator.SimClock;
+import com.greenenergycorp.openfmb.simulator.jfr.SolarTickEvent;
+import com.greenenergycorp.openfmb.simulator.schedule.FixedRatePacer;
+import com.greenenergycorp.openfmb.simulator.schedule.OverrunPolicy;
+import com.greenenergycorp.openfmb.simulator.schedule.Tickable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Random;
 
-public class SolarSimLoop {
+public class SolarSimLoop implements Tickable {
     private final static Logger logger = LoggerFactory.getLogger(SolarSimLoop.class);
 
+    private final String logicalDeviceId;
+    private final SolarObserver publisher;
+    private final DailyInterpolatedData dataSource;
+    private final double scale;
+    private final double offset;
+    private final double jitterChance;
+    private final double jitterPercent;
+    private final SimClock clock;
+
+    private final Random random;
+
+    public SolarSimLoop(SolarObserver publisher, DailyInterpolatedData dataSource, double scale, double offset, double jitterChance, double jitterPercent) {
+        this("", publisher, dataSource, scale, offset, jitterChance, jitterPercent);
+    }
+
+    /**
+     * @param logicalDeviceId identifies the source in flight recorder events
+     */
+    public SolarSimLoop(String logicalDeviceId, SolarObserver publisher, DailyInterpolatedData dataSource, double scale, double offset, double jitterChance, double jitterPercent) {
+        this(logicalDeviceId, publisher, dataSource, scale, offset, jitterChance, jitterPercent, SimClock.WALL);
+    }
+
+    /**
+     * @param clock the time the profile is read at
+     */
+    public SolarSimLoop(String logicalDeviceId, SolarObserver publisher, DailyInterpolatedData dataSource, double scale, double offset, double jitterChance, double jitterPercent, SimClock clock) {
+        this(logicalDeviceId, publisher, dataSource, scale, offset, jitterChance, jitterPercent, clock, new Random());
+    }
+
+    /**
+     * @param random decides when and how much to jitter; seed it for a reproducible run
+     */
+    public SolarSimLoop(String logicalDeviceId, SolarObserver publisher, DailyInterpolatedData dataSource, double scale, double offset, double jitterChance, double jitterPercent, SimClock clock, Random random) {
+        this.logicalDeviceId = logicalDeviceId;
+        this.publisher = publisher;
+        this.dataSource = dataSource;
+        this.scale = scale;
+        this.offset = offset;
+        this.jitterChance = jitterChance;
+        this.jitterPercent = jitterPercent;
+        this.clock = clock;
+        this.random = random;
+    }
+
+    public void tick() {
+        final SolarTickEvent event = new SolarTickEvent();
+        event.begin();
+        final long now = clock.currentTimeMillis();
+
+        try {
+            final double inputValue = dataSource.atTime(now);
+            final double scaledValue = -1 * inputValue * scale + offset;
+
+            final double jitteredValue;
+            if (random.nextDouble() <= jitterChance) {
+                final double jitterRange = jitterPercent * scaledValue;
+                jitteredValue = scaledValue + ((jitterRange * random.nextDouble()) - (jitterRange / 2));
+            } else {
+                jitteredValue = scaledValue;
+            }
+
+            publisher.solarReadUpdate(jitteredValue);
+
+            publisher.solarEventUpdate();
+
+            event.record(logicalDeviceId, jitteredValue);
+
+        } catch (Exception ex) {
+            logger.error("Error publishing data: " + ex);
+        }
+    }
+
     public static void loop(
             final SolarObserver publisher,
             final DailyInterpolatedData dataSource,
@@ -36,33 +113,13 @@ public class SolarSimLoop {
             final double jitterChance,
             final double jitterPercent) throws InterruptedException {
 
-        final Random random = new Random(System.currentTimeMillis());
-
-        while (true) {
-            final long now = System.currentTimeMillis();
-
-            try {
-                final double inputValue = dataSource.atTime(now);
-                final double scaledValue = -1 * inputValue * scale + offset;
-
-                final double jitteredValue;
-                if (random.nextDouble() <= jitterChance) {
-                    final double jitterRange = jitterPercent * scaledValue;
-                    jitteredValue = scaledValue + ((jitterRange * random.nextDouble()) - (jitterRange / 2));
-                } else {
-                    jitteredValue = scaledValue;
-                }
+        final SolarSimLoop sim = new SolarSimLoop(publisher, dataSource, scale, offset, jitterChance, jitterPercent);
 
-                publisher.solarReadUpdate(jitteredValue);
+        final FixedRatePacer pacer = new FixedRatePacer(intervalMs, OverrunPolicy.SKIP);
 
-                publisher.solarEventUpdate();
-
-            } catch (Exception ex) {
-                logger.error("Error publishing data: " + ex);
-            }
-
-            Thread.sleep(intervalMs);
+        while (true) {
+            sim.tick();
+            pacer.awaitNextTick();
         }
-
     }
 }
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml;
+
+import com.greenenergycorp.openfmb.mapping.adapter.PayloadObserver;
+import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+import com.greenenergycorp.openfmb.simulator.schedule.ThreadMode;
+import com.greenenergycorp.openfmb.simulator.xml.codec.PayloadCodec;
+import com.greenenergycorp.openfmb.simulator.xml.codec.SniffingPayloadCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Routes inbound payloads to typed profile handlers. Each subscribed topic unmarshals a payload once,
+ * however many handlers are registered for it, and hands the profile to the handlers registered for
+ * its type.
+ *
+ * Handlers that only care about one device are registered on the device's own topic, so payloads
+ * for other devices are never delivered or parsed.
+ *
+ * Handlers registered for {@link PowerReadings} receive the power values of battery, solar and
+ * resource reading profiles. When every handler on a topic takes PowerReadings, XML payloads are decoded
+ * with the streaming {@link PowerReadingDecoder} and only fall back to a full unmarshal if it fails.
+ */
+public class InboundDispatcher {
+    private final static Logger logger = LoggerFactory.getLogger(InboundDispatcher.class);
+
+    private final PayloadCodec codec;
+    private final PowerReadingDecoder powerDecoder = new PowerReadingDecoder();
+    private final Map<String, TopicDispatch> topics = new LinkedHashMap<String, TopicDispatch>();
+
+    public InboundDispatcher(PayloadCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Creates a dispatcher that decodes both XML and binary payloads.
+     */
+    public InboundDispatcher(OpenFmbXmlMarshaller marshaller) {
+        this(SniffingPayloadCodec.xml(marshaller));
+    }
+
+    public interface ProfileHandler<T> {
+        void handleProfile(T profile) throws Exception;
+    }
+
+    /**
+     * A handler that is also told when its payload arrived and how long it took to decode, counted from
+     * arrival on the MQTT client thread.
+     */
+    public interface TimedProfileHandler<T> extends ProfileHandler<T> {
+        void handleProfile(T profile, long receivedNanos, long decodeNanos) throws Exception;
+    }
+
+    /**
+     * Registers a handler for every profile of the given type arriving on the topic filter.
+     */
+    public synchronized <T> void register(final String topic, final Class<T> type, final ProfileHandler<? super T> handler) {
+        TopicDispatch dispatch = topics.get(topic);
+        if (dispatch == null) {
+            dispatch = new TopicDispatch(topic);
+            topics.put(topic, dispatch);
+        }
+        dispatch.routes.add(new Route<T>(type, handler));
+    }
+
+    /**
+     * Registers a handler on the topic for a single logical device, i.e. "topic/logicalDeviceId".
+     */
+    public <T> void registerForDevice(final String topic, final String logicalDeviceId, final Class<T> type, final ProfileHandler<? super T> handler) {
+        register(topic + "/" + logicalDeviceId, type, handler);
+    }
+
+    public synchronized Map<String, PayloadObserver> getSubscriptions() {
+        return new HashMap<String, PayloadObserver>(topics);
+    }
+
+    /**
+     * @param queueCapacity payloads each handler thread can fall behind by before the client thread waits
+     * @return the subscriptions, each handled on its own thread if the thread mode calls for it
+     */
+    public synchronized Map<String, PayloadObserver> getSubscriptions(final ThreadMode threadMode, final ThreadFactory threadFactory, final int queueCapacity) {
+        final Map<String, PayloadObserver> subscriptions = new HashMap<String, PayloadObserver>();
+        for (final Map.Entry<String, TopicDispatch> entry : topics.entrySet()) {
+            subscriptions.put(entry.getKey(), ThreadedPayloadObserver.wrap(entry.getValue(), threadMode, threadFactory, queueCapacity));
+        }
+        return subscriptions;
+    }
+
+    private class TopicDispatch implements ThreadedPayloadObserver.TimedPayloadObserver {
+        private final String topic;
+        private final CopyOnWriteArrayList<Route<?>> routes = new CopyOnWriteArrayList<Route<?>>();
+
+        public TopicDispatch(String topic) {
+            this.topic = topic;
+        }
+
+        public void handle(byte[] bytes) {
+            handle(bytes, System.nanoTime());
+        }
+
+        public void handle(byte[] bytes, long receivedNanos) {
+            boolean powerOnly = true;
+            boolean anyPower = false;
+            for (final Route<?> route : routes) {
+                if (route.type == PowerReadings.class) {
+                    anyPower = true;
+                } else {
+                    powerOnly = false;
+                }
+            }
+
+            PowerReadings power = (powerOnly && SniffingPayloadCodec.isXml(bytes)) ? powerDecoder.decode(bytes) : null;
+            Object object = power;
+
+            if (power == null) {
+                try {
+                    object = codec.decode(bytes);
+                    if (anyPower) {
+                        power = PowerReadings.fromProfile(object);
+                    }
+                } catch (Throwable ex) {
+                    logger.warn("Error decoding payload on " + topic + ": " + ex);
+                    return;
+                }
+            }
+
+            final long decodeNanos = System.nanoTime() - receivedNanos;
+
+            for (final Route<?> route : routes) {
+                try {
+                    route.offer((route.type == PowerReadings.class) ? power : object, receivedNanos, decodeNanos);
+                } catch (Throwable ex) {
+                    logger.warn("Error handling " + object.getClass().getSimpleName() + " on " + topic + ": " + ex);
+                }
+            }
+        }
+    }
+
+    private static class Route<T> {
+        private final Class<T> type;
+        private final ProfileHandler<? super T> handler;
+
+        public Route(Class<T> type, ProfileHandler<? super T> handler) {
+            this.type = type;
+            this.handler = handler;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void offer(final Object object, final long receivedNanos, final long decodeNanos) throws Exception {
+            if (type.isInstance(object)) {
+                if (handler instanceof TimedProfileHandler) {
+                    ((TimedProfileHandler<? super T>) handler).handleProfile(type.cast(object), receivedNanos, decodeNanos);
+                } else {
+                    handler.handleProfile(type.cast(object));
+                }
+            }
+        }
+    }
+}
@@ -21,17 +21,12 @@ package com.greenenergycorp.openfmb.simulator.xml;
 import com.greenenergycorp.openfmb.xml.*;
 
 import javax.xml.datatype.DatatypeConfigurationException;
-import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
-import java.util.Date;
-import java.util.GregorianCalendar;
 
 public class ModelCommon {
 
     public static XMLGregorianCalendar xmlTimeFor(long time) throws DatatypeConfigurationException {
-        final GregorianCalendar c = new GregorianCalendar();
-        c.setTime(new Date());
-        return DatatypeFactory.newInstance().newXMLGregorianCalendar(c);
+        return XmlTimestamps.timeFor(time);
     }
 
     public static Reading buildReading(double v, long time, UnitSymbolKind unit, UnitMultiplierKind unitMultiplier, FlowDirectionKind flow, PhaseCodeKind phase) throws DatatypeConfigurationException {
@@ -55,4 +50,14 @@ public class ModelCommon {
 
         return reading;
     }
+
+    /**
+     * Updates a reading built by {@link #buildReading} in place, keeping its reading type and quality flags.
+     */
+    public static void updateReading(Reading reading, double v, XMLGregorianCalendar xmlTime) {
+        final DateTimeInterval dateTimeInterval = reading.getTimePeriod();
+        dateTimeInterval.setStart(xmlTime);
+        dateTimeInterval.setEnd(xmlTime);
+        reading.setValue((float)v);
+    }
 }
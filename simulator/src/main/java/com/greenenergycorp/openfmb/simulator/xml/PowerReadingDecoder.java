@@ -0,0 +1,181 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml;
+
+import com.greenenergycorp.openfmb.simulator.jfr.UnmarshalEvent;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+/**
+ * Pulls the logical device ID and W reading values out of a battery, solar or resource reading
+ * profile with a StAX reader, without building the JAXB object graph.
+ *
+ * Anything the decoder does not expect (another profile, a reading without a unit or value, a value
+ * that is not a number, malformed XML) makes it return null, and callers fall back to a full unmarshal.
+ *
+ * Each thread keeps its own factory so that, where the StAX implementation supports it, a closed
+ * reader and its buffers are reused for the next payload.
+ */
+public class PowerReadingDecoder {
+
+    // JDK (SJSXP) property that lets a factory hand back its last reader once that reader is closed
+    private static final String REUSE_INSTANCE = "reuse-instance";
+
+    private final ThreadLocal<XMLInputFactory> factories = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            final XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+            try {
+                factory.setProperty(REUSE_INSTANCE, true);
+            } catch (IllegalArgumentException ex) {
+                // other implementations create a reader per payload
+            }
+            return factory;
+        }
+    };
+
+    /**
+     * @return the power readings, or null if the payload could not be decoded on the fast path
+     */
+    public PowerReadings decode(final byte[] bytes) {
+        final UnmarshalEvent event = new UnmarshalEvent();
+        event.begin();
+        XMLStreamReader reader = null;
+        try {
+            reader = factories.get().createXMLStreamReader(new ByteArrayInputStream(bytes));
+            final PowerReadings readings = decodeProfile(reader);
+            event.record("xml-stream", readings, bytes);
+            return readings;
+        } catch (XMLStreamException ex) {
+            return null;
+        } catch (NumberFormatException ex) {
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ex) {
+                    // nothing held open beyond the byte array
+                }
+            }
+        }
+    }
+
+    private static PowerReadings decodeProfile(final XMLStreamReader reader) throws XMLStreamException {
+        reader.nextTag();
+        final PowerReadings.Kind kind = PowerReadings.Kind.forRootElement(reader.getLocalName());
+        if (kind == null) {
+            return null;
+        }
+
+        String logicalDeviceId = null;
+        double[] powers = new double[4];
+        int count = 0;
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            final String name = reader.getLocalName();
+            if (name.equals("logicalDeviceID")) {
+                logicalDeviceId = reader.getElementText();
+            } else if (name.equals("readings")) {
+                final Reading reading = decodeReading(reader);
+                if (reading == null) {
+                    return null;
+                }
+                if (reading.isPower) {
+                    if (count == powers.length) {
+                        powers = Arrays.copyOf(powers, count * 2);
+                    }
+                    powers[count++] = reading.value;
+                }
+            } else {
+                skipElement(reader);
+            }
+        }
+
+        if (logicalDeviceId == null) {
+            return null;
+        }
+
+        // the JDK reader only recycles its scanner buffers if the document was read to the end
+        while (reader.hasNext()) {
+            reader.next();
+        }
+
+        return new PowerReadings(kind, logicalDeviceId, Arrays.copyOf(powers, count));
+    }
+
+    private static Reading decodeReading(final XMLStreamReader reader) throws XMLStreamException {
+        String unit = null;
+        String value = null;
+
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            final String name = reader.getLocalName();
+            if (name.equals("readingType")) {
+                while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    if (reader.getLocalName().equals("unit")) {
+                        unit = reader.getElementText().trim();
+                    } else {
+                        skipElement(reader);
+                    }
+                }
+            } else if (name.equals("value")) {
+                value = reader.getElementText().trim();
+            } else {
+                skipElement(reader);
+            }
+        }
+
+        if (unit == null || value == null) {
+            return null;
+        }
+
+        // parsed as a float, as the profile stores it, so values match the unmarshalled path exactly
+        return new Reading(unit.equals("W"), (double) Float.parseFloat(value));
+    }
+
+    private static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static class Reading {
+        private final boolean isPower;
+        private final double value;
+
+        public Reading(boolean isPower, double value) {
+            this.isPower = isPower;
+            this.value = value;
+        }
+    }
+}
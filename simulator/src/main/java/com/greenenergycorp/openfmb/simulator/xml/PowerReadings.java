@@ -0,0 +1,116 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml;
+
+import com.greenenergycorp.openfmb.xml.*;
+
+import java.util.List;
+
+/**
+ * The parts of a battery, solar or resource reading profile the system observers use: the logical
+ * device ID and the values of the readings in watts.
+ */
+public class PowerReadings {
+
+    public enum Kind {
+        BATTERY("BatteryReadingProfile"),
+        SOLAR("SolarReadingProfile"),
+        RESOURCE("ResourceReadingProfile");
+
+        private final String rootElement;
+
+        Kind(String rootElement) {
+            this.rootElement = rootElement;
+        }
+
+        public static Kind forRootElement(final String localName) {
+            for (final Kind kind : Kind.values()) {
+                if (kind.rootElement.equals(localName)) {
+                    return kind;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Kind kind;
+    private final String logicalDeviceId;
+    private final double[] powers;
+
+    public PowerReadings(Kind kind, String logicalDeviceId, double[] powers) {
+        this.kind = kind;
+        this.logicalDeviceId = logicalDeviceId;
+        this.powers = powers;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getLogicalDeviceId() {
+        return logicalDeviceId;
+    }
+
+    /**
+     * @return the values of the W readings, in document order
+     */
+    public double[] getPowers() {
+        return powers;
+    }
+
+    /**
+     * @return the power readings of an unmarshalled profile, or null if it is not a reading profile
+     */
+    public static PowerReadings fromProfile(final Object object) {
+        if (object instanceof BatteryReadingProfile) {
+            final BatteryReadingProfile profile = (BatteryReadingProfile) object;
+            return new PowerReadings(Kind.BATTERY, profile.getLogicalDeviceID(), powersOf(profile.getReadings()));
+        } else if (object instanceof SolarReadingProfile) {
+            final SolarReadingProfile profile = (SolarReadingProfile) object;
+            return new PowerReadings(Kind.SOLAR, profile.getLogicalDeviceID(), powersOf(profile.getReadings()));
+        } else if (object instanceof ResourceReadingProfile) {
+            final ResourceReadingProfile profile = (ResourceReadingProfile) object;
+            return new PowerReadings(Kind.RESOURCE, profile.getLogicalDeviceID(), powersOf(profile.getReadings()));
+        } else {
+            return null;
+        }
+    }
+
+    private static double[] powersOf(final List<Reading> readings) {
+        int count = 0;
+        for (final Reading r : readings) {
+            if (isPower(r)) {
+                count++;
+            }
+        }
+        final double[] powers = new double[count];
+        int i = 0;
+        for (final Reading r : readings) {
+            if (isPower(r)) {
+                powers[i++] = (double) r.getValue();
+            }
+        }
+        return powers;
+    }
+
+    // a reading without a reading type has no unit, so it is not a power reading
+    private static boolean isPower(final Reading r) {
+        return r.getReadingType() != null && r.getReadingType().getUnit() == UnitSymbolKind.W;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml;
+
+import com.greenenergycorp.openfmb.mapping.adapter.PayloadObserver;
+import com.greenenergycorp.openfmb.simulator.schedule.ThreadMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands inbound payloads off the MQTT client thread to a dedicated thread per observer, preserving
+ * the order in which payloads arrive. An observer that implements TimedPayloadObserver is given the
+ * time each payload arrived on the client thread, so its timings include the hand-off.
+ *
+ * The queue is bounded. When it is full the client thread waits for space, so a slow handler holds
+ * up the client as it would if it ran on the client thread, rather than letting the queue grow.
+ */
+public class ThreadedPayloadObserver implements PayloadObserver {
+    private final static Logger logger = LoggerFactory.getLogger(ThreadedPayloadObserver.class);
+
+    /**
+     * A PayloadObserver that can be told when its payload arrived, if that was before it was called.
+     */
+    public interface TimedPayloadObserver extends PayloadObserver {
+        /**
+         * @param receivedNanos System.nanoTime() when the payload arrived
+         */
+        void handle(byte[] bytes, long receivedNanos);
+    }
+
+    // how often a waiting client thread re-checks that the observer is still open
+    private static final long WAIT_CHECK_MS = 100;
+
+    private final PayloadObserver observer;
+    private final BlockingQueue<Received> queue;
+    private final Thread thread;
+    private volatile boolean open = true;
+
+    /**
+     * @param capacity payloads that can wait for the handler thread before the client thread is held up
+     */
+    public ThreadedPayloadObserver(PayloadObserver observer, ThreadFactory threadFactory, int capacity) {
+        this.observer = observer;
+        this.queue = new ArrayBlockingQueue<Received>(capacity);
+        this.thread = threadFactory.newThread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        });
+        thread.start();
+    }
+
+    public static PayloadObserver wrap(final PayloadObserver observer, final ThreadMode mode, final ThreadFactory threadFactory, final int capacity) {
+        if (mode.isThreadPerTask()) {
+            return new ThreadedPayloadObserver(observer, threadFactory, capacity);
+        } else {
+            return observer;
+        }
+    }
+
+    public void handle(byte[] bytes) {
+        final Received received = new Received(bytes, System.nanoTime());
+        try {
+            while (open) {
+                if (queue.offer(received, WAIT_CHECK_MS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        logger.debug("Payload handler closed, dropping payload");
+    }
+
+    /**
+     * Stops the handler thread. Payloads still queued are discarded, and later payloads are dropped.
+     */
+    public void close() {
+        open = false;
+        thread.interrupt();
+        queue.clear();
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    private void drain() {
+        try {
+            while (open) {
+                final Received received = queue.take();
+                try {
+                    if (observer instanceof TimedPayloadObserver) {
+                        ((TimedPayloadObserver) observer).handle(received.bytes, received.nanos);
+                    } else {
+                        observer.handle(received.bytes);
+                    }
+                } catch (Throwable ex) {
+                    logger.warn("Error handling payload: " + ex);
+                }
+            }
+        } catch (InterruptedException ex) {
+            logger.debug("Payload handler thread interrupted");
+        }
+    }
+
+    private static class Received {
+        private final byte[] bytes;
+        private final long nanos;
+
+        Received(byte[] bytes, long nanos) {
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A marshalled profile split into literal byte segments and value slots. A template is compiled by
+ * marshalling a profile whose timestamp and values are set to sentinels, and then locating the
+ * sentinel text in the output. Rendering copies the literal segments and writes the text of the new
+ * values into the slots, producing the same bytes the marshaller would for those values.
+ *
+ * Slot 0 is always the profile timestamp; slots 1..n are float values.
+ *
+ * Each render returns a new array rather than a reused buffer, because publishers and the publish
+ * pipeline hold on to the payload after the encoder returns. The text of the values is kept in a
+ * buffer owned by the template, so a template must not be rendered from two threads at once; the
+ * encoders synchronize on themselves.
+ */
+public class XmlTemplate {
+    private final static Logger logger = LoggerFactory.getLogger(XmlTemplate.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // early in the year 1111, far from any time the simulators produce
+    private static final long SENTINEL_TIME = -27080138928889L;
+
+    private final byte[][] segments;
+    private final int[] slots;
+    private final int literalLength;
+    private final String[] valueText;
+
+    private XmlTemplate(byte[][] segments, int[] slots, int valueCount) {
+        this.segments = segments;
+        this.slots = slots;
+        this.valueText = new String[valueCount];
+        int length = 0;
+        for (final byte[] segment : segments) {
+            length += segment.length;
+        }
+        this.literalLength = length;
+    }
+
+    public interface Renderer {
+        byte[] marshal(long time, float[] values) throws Exception;
+    }
+
+    /**
+     * Compiles a template from the renderer's output for the sentinel time and values.
+     *
+     * @return the template, or null if the sentinels could not be located in the output
+     */
+    public static XmlTemplate build(final String name, final Renderer renderer, final int valueCount) {
+        try {
+            final float[] sentinels = new float[valueCount];
+            final String[] sentinelText = new String[valueCount + 1];
+            sentinelText[0] = timeText(SENTINEL_TIME);
+            for (int i = 0; i < valueCount; i++) {
+                sentinels[i] = -987654.0f - (i * 1111.0f);
+                sentinelText[i + 1] = floatText(sentinels[i]);
+            }
+
+            return compile(renderer.marshal(SENTINEL_TIME, sentinels), sentinelText);
+        } catch (Exception ex) {
+            logger.warn("Could not build template for " + name + ", using marshaller: " + ex);
+            return null;
+        }
+    }
+
+    public static XmlTemplate compile(final byte[] rendered, final String[] sentinelText) {
+        final List<int[]> matches = new ArrayList<int[]>();
+        for (int slot = 0; slot < sentinelText.length; slot++) {
+            final byte[] pattern = sentinelText[slot].getBytes(UTF8);
+            int found = 0;
+            for (int pos = indexOf(rendered, pattern, 0); pos >= 0; pos = indexOf(rendered, pattern, pos + pattern.length)) {
+                matches.add(new int[]{pos, pattern.length, slot});
+                found++;
+            }
+            if (found == 0) {
+                throw new IllegalArgumentException("Sentinel " + sentinelText[slot] + " not found in rendered profile");
+            }
+        }
+
+        Collections.sort(matches, new Comparator<int[]>() {
+            public int compare(int[] a, int[] b) {
+                return a[0] < b[0] ? -1 : (a[0] == b[0] ? 0 : 1);
+            }
+        });
+
+        final byte[][] segments = new byte[matches.size() + 1][];
+        final int[] slots = new int[matches.size()];
+        int start = 0;
+        for (int i = 0; i < matches.size(); i++) {
+            final int[] match = matches.get(i);
+            if (match[0] < start) {
+                throw new IllegalArgumentException("Overlapping sentinels in rendered profile");
+            }
+            segments[i] = Arrays.copyOfRange(rendered, start, match[0]);
+            slots[i] = match[2];
+            start = match[0] + match[1];
+        }
+        segments[matches.size()] = Arrays.copyOfRange(rendered, start, rendered.length);
+
+        return new XmlTemplate(segments, slots, sentinelText.length - 1);
+    }
+
+    /**
+     * @return the rendered profile, or null if a value cannot be rendered from the template
+     */
+    public byte[] render(final String timeText, final float[] values) {
+        if (values.length != valueText.length) {
+            throw new IllegalArgumentException("Template takes " + valueText.length + " values, not " + values.length);
+        }
+        int length = literalLength;
+        for (int i = 0; i < values.length; i++) {
+            if (Float.isNaN(values[i]) || Float.isInfinite(values[i])) {
+                return null;
+            }
+            valueText[i] = floatText(values[i]);
+        }
+        for (final int slot : slots) {
+            length += (slot == 0) ? timeText.length() : valueText[slot - 1].length();
+        }
+
+        final byte[] out = new byte[length];
+        int pos = 0;
+        for (int i = 0; i < slots.length; i++) {
+            System.arraycopy(segments[i], 0, out, pos, segments[i].length);
+            pos += segments[i].length;
+            pos = writeAscii((slots[i] == 0) ? timeText : valueText[slots[i] - 1], out, pos);
+        }
+        final byte[] last = segments[slots.length];
+        System.arraycopy(last, 0, out, pos, last.length);
+
+        return out;
+    }
+
+    public static String timeText(final long time) throws Exception {
+        return XmlTimestamps.textFor(time);
+    }
+
+    // the marshaller's lexical form for xs:float
+    public static String floatText(final float v) {
+        return String.valueOf(v);
+    }
+
+    private static int writeAscii(final String s, final byte[] out, final int pos) {
+        final int length = s.length();
+        for (int i = 0; i < length; i++) {
+            out[pos + i] = (byte) s.charAt(i);
+        }
+        return pos + length;
+    }
+
+    private static int indexOf(final byte[] data, final byte[] pattern, final int from) {
+        outer:
+        for (int i = from; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.util.GregorianCalendar;
+
+/**
+ * Per-thread conversion of epoch milliseconds to XMLGregorianCalendar. The DatatypeFactory lookup and
+ * the GregorianCalendar are done once per thread, and the last value is kept so calls in the same
+ * millisecond only copy it. Every call returns its own copy, since profiles may be modified after
+ * they are built.
+ */
+public class XmlTimestamps {
+
+    private static final ThreadLocal<XmlTimestamps> perThread = new ThreadLocal<XmlTimestamps>();
+
+    private final DatatypeFactory factory;
+    private final GregorianCalendar calendar = new GregorianCalendar();
+
+    private long lastTime = Long.MIN_VALUE;
+    private XMLGregorianCalendar lastValue = null;
+    private String lastText = null;
+
+    private XmlTimestamps(DatatypeFactory factory) {
+        this.factory = factory;
+    }
+
+    public static XMLGregorianCalendar timeFor(final long time) throws DatatypeConfigurationException {
+        return (XMLGregorianCalendar) current().convert(time).clone();
+    }
+
+    public static String textFor(final long time) throws DatatypeConfigurationException {
+        final XmlTimestamps timestamps = current();
+        final XMLGregorianCalendar value = timestamps.convert(time);
+        if (timestamps.lastText == null) {
+            timestamps.lastText = value.toXMLFormat();
+        }
+        return timestamps.lastText;
+    }
+
+    private static XmlTimestamps current() throws DatatypeConfigurationException {
+        XmlTimestamps timestamps = perThread.get();
+        if (timestamps == null) {
+            timestamps = new XmlTimestamps(DatatypeFactory.newInstance());
+            perThread.set(timestamps);
+        }
+        return timestamps;
+    }
+
+    private XMLGregorianCalendar convert(final long time) {
+        if (time != lastTime || lastValue == null) {
+            calendar.setTimeInMillis(time);
+            lastValue = factory.newXMLGregorianCalendar(calendar);
+            lastText = null;
+            lastTime = time;
+        }
+        return lastValue;
+    }
+}
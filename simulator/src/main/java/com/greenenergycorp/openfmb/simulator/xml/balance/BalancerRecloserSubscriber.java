@@ -18,42 +18,67 @@
  */
 package com.greenenergycorp.openfmb.simulator.xml.balance;
 
-import com.greenenergycorp.openfmb.mapping.adapter.PayloadObserver;
 import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
 import com.greenenergycorp.openfmb.simulator.balance.RecloserStatusObserver;
+import com.greenenergycorp.openfmb.simulator.balance.TimedRecloserStatusObserver;
+import com.greenenergycorp.openfmb.simulator.xml.InboundDispatcher;
+import com.greenenergycorp.openfmb.simulator.xml.ThreadedPayloadObserver;
+import com.greenenergycorp.openfmb.simulator.xml.codec.PayloadCodec;
+import com.greenenergycorp.openfmb.simulator.xml.codec.XmlPayloadCodec;
 import com.greenenergycorp.openfmb.xml.RecloserEventProfile;
 import com.greenenergycorp.openfmb.xml.SwitchStatusKind;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class BalancerRecloserSubscriber implements PayloadObserver {
+public class BalancerRecloserSubscriber implements ThreadedPayloadObserver.TimedPayloadObserver, InboundDispatcher.TimedProfileHandler<RecloserEventProfile> {
     private final static Logger logger = LoggerFactory.getLogger(BalancerRecloserSubscriber.class);
 
     private final RecloserStatusObserver observer;
-    private final OpenFmbXmlMarshaller marshaller;
+    private final PayloadCodec codec;
     private final String recloserId;
 
     public BalancerRecloserSubscriber(RecloserStatusObserver observer, OpenFmbXmlMarshaller marshaller, String recloserId) {
+        this(observer, new XmlPayloadCodec(marshaller), recloserId);
+    }
+
+    public BalancerRecloserSubscriber(RecloserStatusObserver observer, PayloadCodec codec, String recloserId) {
         this.observer = observer;
-        this.marshaller = marshaller;
+        this.codec = codec;
         this.recloserId = recloserId;
     }
 
     public void handle(byte[] bytes) {
-        try {
+        handle(bytes, System.nanoTime());
+    }
 
-            final Object object = marshaller.unmarshal(bytes);
+    public void handle(byte[] bytes, long receivedNanos) {
+        try {
+            final Object object = codec.decode(bytes);
             if (object instanceof RecloserEventProfile) {
-                final RecloserEventProfile profile = (RecloserEventProfile) object;
-
-                final String logicalDeviceId = profile.getLogicalDeviceID();
-
-                if (logicalDeviceId.equals(recloserId) && profile.getRecloserStatus() != null) {
-                    observer.updateRecloserStatus(profile.getRecloserStatus().getSwitchStatus() == SwitchStatusKind.CLOSED);
-                }
+                handleProfile((RecloserEventProfile) object, receivedNanos, System.nanoTime() - receivedNanos);
             }
         } catch (Throwable ex) {
             logger.warn("Error handling reading: " + ex);
         }
     }
+
+    public void handleProfile(RecloserEventProfile profile) {
+        handleProfile(profile, System.nanoTime(), 0);
+    }
+
+    public void handleProfile(RecloserEventProfile profile, long receivedNanos, long decodeNanos) {
+        final String logicalDeviceId = profile.getLogicalDeviceID();
+
+        if (logicalDeviceId.equals(recloserId) && profile.getRecloserStatus() != null) {
+            final boolean isClosed = profile.getRecloserStatus().getSwitchStatus() == SwitchStatusKind.CLOSED;
+            // the timestamp is only needed to time the response to an opening
+            final long eventTimeMillis = (!isClosed && profile.getTimestamp() != null) ?
+                    profile.getTimestamp().toGregorianCalendar().getTimeInMillis() : 0;
+            if (observer instanceof TimedRecloserStatusObserver) {
+                ((TimedRecloserStatusObserver) observer).updateRecloserStatus(isClosed, receivedNanos, decodeNanos, eventTimeMillis);
+            } else {
+                observer.updateRecloserStatus(isClosed);
+            }
+        }
+    }
 }
@@ -21,47 +21,77 @@ package com.greenenergycorp.openfmb.simulator.xml.balance;
 import com.greenenergycorp.openfmb.mapping.adapter.MessageObserver;
 import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
 import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.SimClock;
 import com.greenenergycorp.openfmb.simulator.balance.BatteryControlIssuer;
 import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine;
 import com.greenenergycorp.openfmb.simulator.xml.battery.BatteryModel;
+import com.greenenergycorp.openfmb.simulator.xml.codec.PayloadCodec;
+import com.greenenergycorp.openfmb.simulator.xml.codec.XmlPayloadCodec;
 import com.greenenergycorp.openfmb.xml.BatteryControlProfile;
 
-import javax.xml.bind.JAXBException;
-
 public class BatteryControlPublisher implements BatteryControlIssuer {
 
     private final MessageObserver messageObserver;
     private final DeviceId deviceId;
-    private final OpenFmbXmlMarshaller marshaller;
+    private final PayloadCodec codec;
     private final String batteryControlTopic;
+    private final SimClock clock;
 
-    public BatteryControlPublisher(MessageObserver messageObserver, DeviceId deviceId, OpenFmbXmlMarshaller marshaller, String batteryControlTopic) {
+    public BatteryControlPublisher(MessageObserver messageObserver, DeviceId deviceId, PayloadCodec codec, String batteryControlTopic) {
+        this(messageObserver, deviceId, codec, batteryControlTopic, SimClock.WALL);
+    }
+
+    /**
+     * @param clock timestamps the commands
+     */
+    public BatteryControlPublisher(MessageObserver messageObserver, DeviceId deviceId, PayloadCodec codec, String batteryControlTopic, SimClock clock) {
         this.messageObserver = messageObserver;
         this.deviceId = deviceId;
-        this.marshaller = marshaller;
+        this.codec = codec;
         this.batteryControlTopic = batteryControlTopic;
+        this.clock = clock;
+    }
+
+    public BatteryControlPublisher(MessageObserver messageObserver, DeviceId deviceId, OpenFmbXmlMarshaller marshaller, String batteryControlTopic) {
+        this(messageObserver, deviceId, new XmlPayloadCodec(marshaller), batteryControlTopic);
+    }
+
+    public SimClock getClock() {
+        return clock;
     }
 
     public void setIslanded() throws Exception {
-        final BatteryControlProfile profile = BatteryModel.buildBatteryControlIsIslanded(deviceId);
+        setIslanded(clock.currentTimeMillis());
+    }
+
+    public void setPowerSetpoint(final double power) throws Exception {
+        setPowerSetpoint(clock.currentTimeMillis(), power);
+    }
+
+    public void leaveIslanded() throws Exception {
+        leaveIslanded(clock.currentTimeMillis());
+    }
+
+    public void setIslanded(final long now) throws Exception {
+        final BatteryControlProfile profile = BatteryModel.buildBatteryControlIsIslanded(deviceId, now);
 
         publish(profile);
     }
 
-    public void setPowerSetpoint(final double power) throws Exception {
-        final BatteryControlProfile profile = BatteryModel.buildBatteryControlPowerSetpoint(deviceId, power);
+    public void setPowerSetpoint(final long now, final double power) throws Exception {
+        final BatteryControlProfile profile = BatteryModel.buildBatteryControlPowerSetpoint(deviceId, power, now);
 
         publish(profile);
     }
 
-    public void leaveIslanded() throws Exception {
-        final BatteryControlProfile profile = BatteryModel.buildBatteryControlModeSetpoint(deviceId, BatteryMachine.BatteryMode.LEAVING_ISLANDED.getNumber());
+    public void leaveIslanded(final long now) throws Exception {
+        final BatteryControlProfile profile = BatteryModel.buildBatteryControlModeSetpoint(deviceId, BatteryMachine.BatteryMode.LEAVING_ISLANDED.getNumber(), now);
 
         publish(profile);
     }
 
-    private void publish(final BatteryControlProfile profile) throws JAXBException {
-        final byte[] payloadBytes = marshaller.marshal(profile);
+    private void publish(final BatteryControlProfile profile) throws Exception {
+        final byte[] payloadBytes = codec.encode(profile);
         messageObserver.publish(payloadBytes, batteryControlTopic, deviceId.getLogicalDeviceId());
     }
 }
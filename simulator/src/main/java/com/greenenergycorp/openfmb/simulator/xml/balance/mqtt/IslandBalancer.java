@@ -24,17 +24,32 @@ import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
 import com.greenenergycorp.openfmb.mapping.mqtt.*;
 import com.greenenergycorp.openfmb.simulator.DeviceId;
 import com.greenenergycorp.openfmb.simulator.PropertyUtil;
+import com.greenenergycorp.openfmb.simulator.SimClock;
 import com.greenenergycorp.openfmb.simulator.balance.BalancingMachine;
 import com.greenenergycorp.openfmb.simulator.balance.BatteryControlIssuer;
+import com.greenenergycorp.openfmb.simulator.balance.IslandingLatency;
+import com.greenenergycorp.openfmb.simulator.jfr.RecordingMessageObserver;
+import com.greenenergycorp.openfmb.simulator.metrics.MeteredObservers;
+import com.greenenergycorp.openfmb.simulator.metrics.MetricsRegistry;
+import com.greenenergycorp.openfmb.simulator.metrics.SimulatorMetrics;
+import com.greenenergycorp.openfmb.simulator.publish.AsyncPublishers;
+import com.greenenergycorp.openfmb.simulator.publish.PublishPipeline;
+import com.greenenergycorp.openfmb.simulator.schedule.ThreadMode;
+import com.greenenergycorp.openfmb.simulator.xml.InboundDispatcher;
+import com.greenenergycorp.openfmb.simulator.xml.PowerReadings;
+import com.greenenergycorp.openfmb.simulator.xml.batch.BatchPayloadObserver;
+import com.greenenergycorp.openfmb.simulator.xml.codec.PayloadCodec;
+import com.greenenergycorp.openfmb.simulator.xml.codec.SniffingPayloadCodec;
 import com.greenenergycorp.openfmb.simulator.xml.balance.BalancerRecloserSubscriber;
 import com.greenenergycorp.openfmb.simulator.xml.balance.BatteryControlPublisher;
 import com.greenenergycorp.openfmb.simulator.xml.recloser.SystemSubscribers;
+import com.greenenergycorp.openfmb.xml.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ThreadFactory;
 
 public class IslandBalancer {
 
@@ -63,7 +78,15 @@ public class IslandBalancer {
 
         final String batteryControlTopic = PropertyUtil.propOrThrow(simProps, "topic.BatteryControlProfile");
 
+        final ThreadMode threadMode = ThreadMode.fromString(simProps.getProperty("config.threadMode", "scheduler"));
+        final SimClock clock = SimClock.fromProperties(simProps, "config.");
+        final String batchTopic = simProps.getProperty("config.batchTopic");
+
         final OpenFmbXmlMarshaller openFmbXmlMarshaller = new OpenFmbXmlMarshaller();
+        final SniffingPayloadCodec payloadCodec = SniffingPayloadCodec.fromProperties(simProps, openFmbXmlMarshaller);
+        payloadCodec.getCompressionStats().startReporting(60000);
+        final MetricsRegistry metrics = SimulatorMetrics.export(simProps, "config.", "balancer " + logicalDeviceId);
+        final PayloadCodec meteredCodec = new MeteredObservers.MeteredPayloadCodec(payloadCodec, metrics);
 
         final String mqttConfigPath = System.getProperty("config.mqtt.path", "mqtt.properties");
 
@@ -73,7 +96,7 @@ public class IslandBalancer {
 
         final MqttObserver mqttObserver = mqttAdapterManager.getMessageObserver();
 
-        final MessageObserver messageObserver = new MessageObserverAdapter(mqttObserver, new SimpleTopicMapping());
+        final MessageObserver messageObserver = new MeteredObservers.MeteredMessageObserver(new RecordingMessageObserver(new MessageObserverAdapter(mqttObserver, new SimpleTopicMapping())), metrics);
 
         final Thread mqttThread = new Thread(new Runnable() {
             public void run() {
@@ -81,17 +104,36 @@ public class IslandBalancer {
             }
         }, "mqtt publisher");
 
-        final BatteryControlIssuer publisher = new BatteryControlPublisher(messageObserver, deviceId, openFmbXmlMarshaller, batteryControlTopic);
-
-        final BalancingMachine machine = new BalancingMachine(logicalDeviceId, publisher);
-
-        final Map<String, PayloadObserver> controlHandlerMap = new HashMap<String, PayloadObserver>();
-        controlHandlerMap.put(recloserEventTopic + "/" + recloserLogicalDeviceId, new BalancerRecloserSubscriber(machine, openFmbXmlMarshaller, recloserLogicalDeviceId));
-        controlHandlerMap.put(batteryReadTopic + "/#", new SystemSubscribers.BatteryReadSubscriber(machine, openFmbXmlMarshaller));
-        controlHandlerMap.put(solarReadTopic + "/#", new SystemSubscribers.SolarReadSubscriber(machine, openFmbXmlMarshaller));
-        controlHandlerMap.put(resourceReadTopic + "/#", new SystemSubscribers.ResourceReadSubscriber(machine, openFmbXmlMarshaller));
-
-        mqttAdapterManager.subscribe(controlHandlerMap);
+        final BatteryControlPublisher controlPublisher = new BatteryControlPublisher(messageObserver, deviceId, meteredCodec, batteryControlTopic, clock);
+
+        final PublishPipeline publishPipeline = PublishPipeline.fromProperties(simProps, "config.", threadMode.threadFactory("balancer publish"));
+        final BatteryControlIssuer publisher = (publishPipeline == null) ? controlPublisher :
+                new AsyncPublishers.AsyncBatteryControlIssuer(publishPipeline, logicalDeviceId, controlPublisher);
+        if (publishPipeline != null) {
+            publishPipeline.startReporting(60000);
+        }
+        SimulatorMetrics.registerPipeline(metrics, publishPipeline);
+
+        final BalancingMachine machine = new BalancingMachine(logicalDeviceId, publisher, new IslandingLatency(), clock);
+        machine.getIslandingLatency().startReporting(60000);
+        SimulatorMetrics.registerLatency(metrics, "islanding_response", machine.getIslandingLatency().getResponse());
+
+        final ThreadFactory handlerThreads = threadMode.threadFactory("balancer handler");
+        final int handlerQueueCapacity = Integer.parseInt(simProps.getProperty("config.handlerQueueCapacity", "1024").trim());
+
+        final InboundDispatcher dispatcher = new InboundDispatcher(meteredCodec);
+        dispatcher.registerForDevice(recloserEventTopic, recloserLogicalDeviceId, RecloserEventProfile.class, new BalancerRecloserSubscriber(machine, meteredCodec, recloserLogicalDeviceId));
+        dispatcher.register(batteryReadTopic + "/#", PowerReadings.class, new SystemSubscribers.PowerReadSubscriber(machine, PowerReadings.Kind.BATTERY));
+        dispatcher.register(solarReadTopic + "/#", PowerReadings.class, new SystemSubscribers.PowerReadSubscriber(machine, PowerReadings.Kind.SOLAR));
+        dispatcher.register(resourceReadTopic + "/#", PowerReadings.class, new SystemSubscribers.PowerReadSubscriber(machine, PowerReadings.Kind.RESOURCE));
+
+        final Map<String, PayloadObserver> subscriptions = MeteredObservers.subscriptions(dispatcher.getSubscriptions(threadMode, handlerThreads, handlerQueueCapacity), metrics);
+        if (batchTopic != null) {
+            logger.info("Unpacking batched profiles from " + batchTopic);
+            mqttAdapterManager.subscribe(BatchPayloadObserver.withBatchTopic(subscriptions, batchTopic));
+        } else {
+            mqttAdapterManager.subscribe(subscriptions);
+        }
 
         mqttThread.start();
 
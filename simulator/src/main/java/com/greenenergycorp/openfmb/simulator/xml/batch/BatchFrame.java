@@ -0,0 +1,150 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.batch;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format for a batch of profiles published as one message. Each entry keeps the topic and
+ * logical device ID it would have been published with on its own, so a receiver can route it to
+ * the same subscribers.
+ *
+ * <pre>
+ * int   magic ("OFB" followed by the version byte)
+ * int   entry count
+ * entry:
+ *   short  topic length,   UTF-8 topic
+ *   short  id length,      UTF-8 logical device ID
+ *   int    payload length, payload
+ * </pre>
+ */
+public class BatchFrame {
+
+    public static final int MAGIC = 0x4F464201;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static class Entry {
+        private final String topic;
+        private final String logicalDeviceId;
+        private final byte[] payload;
+
+        public Entry(String topic, String logicalDeviceId, byte[] payload) {
+            this.topic = topic;
+            this.logicalDeviceId = logicalDeviceId;
+            this.payload = payload;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public String getLogicalDeviceId() {
+            return logicalDeviceId;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        // upper bound, as a char never takes more than three bytes in UTF-8
+        int encodedSize() {
+            return 2 + topic.length() * 3 + 2 + logicalDeviceId.length() * 3 + 4 + payload.length;
+        }
+    }
+
+    public static byte[] encode(final List<Entry> entries) {
+        int bound = 8;
+        for (final Entry entry : entries) {
+            bound += entry.encodedSize();
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(bound);
+        buffer.putInt(MAGIC);
+        buffer.putInt(entries.size());
+        for (final Entry entry : entries) {
+            putString(buffer, entry.topic);
+            putString(buffer, entry.logicalDeviceId);
+            buffer.putInt(entry.payload.length);
+            buffer.put(entry.payload);
+        }
+
+        final byte[] frame = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, frame, 0, frame.length);
+        return frame;
+    }
+
+    public static boolean isFrame(final byte[] bytes) {
+        return bytes.length >= 8 && ByteBuffer.wrap(bytes).getInt() == MAGIC;
+    }
+
+    public static List<Entry> decode(final byte[] bytes) throws IOException {
+        if (!isFrame(bytes)) {
+            throw new IOException("Not a batch frame");
+        }
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            buffer.getInt();
+            final int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / 8) {
+                throw new IOException("Bad entry count " + count);
+            }
+
+            final List<Entry> entries = new ArrayList<Entry>(count);
+            for (int i = 0; i < count; i++) {
+                final String topic = getString(buffer);
+                final String logicalDeviceId = getString(buffer);
+                final int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new IOException("Bad payload length " + length + " in entry " + i);
+                }
+                final byte[] payload = new byte[length];
+                buffer.get(payload);
+                entries.add(new Entry(topic, logicalDeviceId, payload));
+            }
+            return entries;
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("Truncated batch frame");
+        }
+    }
+
+    private static void putString(final ByteBuffer buffer, final String s) {
+        final byte[] bytes = s.getBytes(UTF8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String too long for batch frame: " + bytes.length + " bytes");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(final ByteBuffer buffer) throws IOException {
+        final int length = buffer.getShort() & 0xFFFF;
+        if (length > buffer.remaining()) {
+            throw new IOException("Bad string length " + length);
+        }
+        final String s = new String(buffer.array(), buffer.position(), length, UTF8);
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.batch;
+
+import com.greenenergycorp.openfmb.mapping.adapter.PayloadObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Unpacks BatchFrames received on a batch topic and hands each profile to the subscribers whose
+ * topic filter matches the topic the profile would have had if published on its own
+ * ({@code <topic>/<logicalDeviceId>}). Filters use MQTT wildcards, so the same subscription map
+ * given to the MQTT client can be reused here.
+ */
+public class BatchPayloadObserver implements PayloadObserver {
+    private final static Logger logger = LoggerFactory.getLogger(BatchPayloadObserver.class);
+
+    private static final PayloadObserver[] NONE = new PayloadObserver[0];
+
+    private final Map<String, PayloadObserver> subscriptions;
+    private final ConcurrentHashMap<String, PayloadObserver[]> routes = new ConcurrentHashMap<String, PayloadObserver[]>();
+
+    public BatchPayloadObserver(Map<String, PayloadObserver> subscriptions) {
+        this.subscriptions = new LinkedHashMap<String, PayloadObserver>(subscriptions);
+    }
+
+    /**
+     * @return a copy of the subscriptions with {@code <batchTopic>/#} added, unpacking batches into the
+     * other subscriptions
+     */
+    public static Map<String, PayloadObserver> withBatchTopic(final Map<String, PayloadObserver> subscriptions, final String batchTopic) {
+        final Map<String, PayloadObserver> result = new HashMap<String, PayloadObserver>(subscriptions);
+        result.put(batchTopic + "/#", new BatchPayloadObserver(subscriptions));
+        return result;
+    }
+
+    public void handle(final byte[] bytes) {
+        final List<BatchFrame.Entry> entries;
+        try {
+            entries = BatchFrame.decode(bytes);
+        } catch (Exception ex) {
+            logger.warn("Could not decode batch: " + ex);
+            return;
+        }
+
+        for (final BatchFrame.Entry entry : entries) {
+            for (final PayloadObserver observer : routeFor(entry.getTopic() + "/" + entry.getLogicalDeviceId())) {
+                try {
+                    observer.handle(entry.getPayload());
+                } catch (Throwable ex) {
+                    logger.warn("Error handling batched payload for " + entry.getLogicalDeviceId() + ": " + ex);
+                }
+            }
+        }
+    }
+
+    private PayloadObserver[] routeFor(final String topic) {
+        final PayloadObserver[] cached = routes.get(topic);
+        if (cached != null) {
+            return cached;
+        }
+
+        final List<PayloadObserver> matched = new ArrayList<PayloadObserver>();
+        for (final Map.Entry<String, PayloadObserver> subscription : subscriptions.entrySet()) {
+            if (matches(subscription.getKey(), topic)) {
+                matched.add(subscription.getValue());
+            }
+        }
+        final PayloadObserver[] route = matched.isEmpty() ? NONE : matched.toArray(new PayloadObserver[matched.size()]);
+        routes.put(topic, route);
+        return route;
+    }
+
+    /**
+     * MQTT topic filter matching: '+' matches one level and a trailing '#' matches any number of
+     * levels, including none.
+     */
+    public static boolean matches(final String filter, final String topic) {
+        final String[] filterLevels = filter.split("/", -1);
+        final String[] topicLevels = topic.split("/", -1);
+
+        for (int i = 0; i < filterLevels.length; i++) {
+            final String level = filterLevels[i];
+            if (level.equals("#")) {
+                return i == filterLevels.length - 1;
+            }
+            if (i >= topicLevels.length) {
+                return false;
+            }
+            if (!level.equals("+") && !level.equals(topicLevels[i])) {
+                return false;
+            }
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+}
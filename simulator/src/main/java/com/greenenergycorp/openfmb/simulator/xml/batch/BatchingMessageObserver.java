@@ -0,0 +1,160 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.batch;
+
+import com.greenenergycorp.openfmb.mapping.adapter.MessageObserver;
+import com.greenenergycorp.openfmb.simulator.schedule.Tickable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects profiles published on the batched topics and publishes them together as one BatchFrame
+ * on the batch topic. Profiles on any other topic are passed straight through.
+ *
+ * A batch is published when the flusher ticks, or sooner if adding a profile would take it past
+ * the entry or size limit. Profiles keep their publish order within and across batches.
+ */
+public class BatchingMessageObserver implements MessageObserver {
+    private final static Logger logger = LoggerFactory.getLogger(BatchingMessageObserver.class);
+
+    private final MessageObserver observer;
+    private final String batchTopic;
+    private final String sourceId;
+    private final Set<String> batchedTopics;
+    private final int maxEntries;
+    private final int maxBytes;
+
+    // always taken before publishMutex; publishMutex is acquired before mutex is released, so batches
+    // go out in the order they were filled while appends only wait when a batch is being handed off
+    private final Lock mutex = new ReentrantLock();
+    private final Lock publishMutex = new ReentrantLock();
+
+    private List<BatchFrame.Entry> pending = new ArrayList<BatchFrame.Entry>();
+    private int pendingBytes = 0;
+
+    private volatile long batchesPublished = 0;
+    private volatile long entriesPublished = 0;
+
+    /**
+     * @param batchTopic    topic the frames are published on, with sourceId as the logical device ID
+     * @param batchedTopics topics whose profiles are collected into batches
+     */
+    public BatchingMessageObserver(MessageObserver observer, String batchTopic, String sourceId, Set<String> batchedTopics, int maxEntries, int maxBytes) {
+        this.observer = observer;
+        this.batchTopic = batchTopic;
+        this.sourceId = sourceId;
+        this.batchedTopics = new HashSet<String>(batchedTopics);
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    public void publish(final byte[] bytes, final String topic, final String logicalDeviceId) {
+        if (!batchedTopics.contains(topic)) {
+            observer.publish(bytes, topic, logicalDeviceId);
+            return;
+        }
+
+        final BatchFrame.Entry entry = new BatchFrame.Entry(topic, logicalDeviceId, bytes);
+        final int size = entry.encodedSize();
+
+        List<BatchFrame.Entry> full = null;
+        mutex.lock();
+        try {
+            if (!pending.isEmpty() && (pending.size() >= maxEntries || pendingBytes + size > maxBytes)) {
+                full = takePending();
+                publishMutex.lock();
+            }
+            pending.add(entry);
+            pendingBytes += size;
+        } finally {
+            mutex.unlock();
+        }
+
+        if (full != null) {
+            try {
+                publishBatch(full);
+            } finally {
+                publishMutex.unlock();
+            }
+        }
+    }
+
+    /**
+     * Publishes the pending profiles, if any.
+     */
+    public void flush() {
+        final List<BatchFrame.Entry> batch;
+        mutex.lock();
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = takePending();
+            publishMutex.lock();
+        } finally {
+            mutex.unlock();
+        }
+
+        try {
+            publishBatch(batch);
+        } finally {
+            publishMutex.unlock();
+        }
+    }
+
+    public Tickable getFlusher() {
+        return new Tickable() {
+            public void tick() {
+                flush();
+            }
+        };
+    }
+
+    private List<BatchFrame.Entry> takePending() {
+        final List<BatchFrame.Entry> batch = pending;
+        pending = new ArrayList<BatchFrame.Entry>(batch.size());
+        pendingBytes = 0;
+        return batch;
+    }
+
+    private void publishBatch(final List<BatchFrame.Entry> batch) {
+        try {
+            observer.publish(BatchFrame.encode(batch), batchTopic, sourceId);
+            batchesPublished++;
+            entriesPublished += batch.size();
+        } catch (Exception ex) {
+            logger.warn("Could not publish batch of " + batch.size() + " profiles: " + ex);
+        }
+    }
+
+    public long getBatchesPublished() {
+        return batchesPublished;
+    }
+
+    public long getEntriesPublished() {
+        return entriesPublished;
+    }
+}
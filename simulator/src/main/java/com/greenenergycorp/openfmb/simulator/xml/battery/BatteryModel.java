@@ -18,8 +18,8 @@
  */
 package com.greenenergycorp.openfmb.simulator.xml.battery;
 
-import com.greenenergycorp.openfmb.mapping.data.xml.CommonMapping;
 import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.SimClock;
 import com.greenenergycorp.openfmb.simulator.xml.ModelCommon;
 import com.greenenergycorp.openfmb.xml.*;
 
@@ -39,7 +39,10 @@ public class BatteryModel {
     }
 
     public static BatteryReadingProfile buildBatteryRead(final DeviceId id, final List<Reading> readings) throws Exception {
-        final long now = System.currentTimeMillis();
+        return buildBatteryRead(id, readings, SimClock.WALL.currentTimeMillis());
+    }
+
+    public static BatteryReadingProfile buildBatteryRead(final DeviceId id, final List<Reading> readings, final long now) throws Exception {
 
         final BatteryReadingProfile profile = new BatteryReadingProfile();
 
@@ -60,8 +63,17 @@ public class BatteryModel {
             final boolean isCharging,
             final String mode,
             final double stateOfCharge) throws DatatypeConfigurationException {
+        return buildBatteryEvent(id, isConnected, isCharging, mode, stateOfCharge, SimClock.WALL.currentTimeMillis());
+    }
+
+    public static BatteryEventProfile buildBatteryEvent(
+            final DeviceId id,
+            final boolean isConnected,
+            final boolean isCharging,
+            final String mode,
+            final double stateOfCharge,
+            final long now) throws DatatypeConfigurationException {
 
-        final long now = System.currentTimeMillis();
         final XMLGregorianCalendar xmlTime = ModelCommon.xmlTimeFor(now);
 
         final BatteryEventProfile profile = new BatteryEventProfile();
@@ -88,9 +100,12 @@ public class BatteryModel {
 
 
     public static BatteryControlProfile buildBatteryControlIsIslanded(final DeviceId id) throws Exception {
+        return buildBatteryControlIsIslanded(id, SimClock.WALL.currentTimeMillis());
+    }
 
-        final long now = System.currentTimeMillis();
-        final XMLGregorianCalendar calendarNow = CommonMapping.xmlTimeFor(now);
+    public static BatteryControlProfile buildBatteryControlIsIslanded(final DeviceId id, final long now) throws Exception {
+
+        final XMLGregorianCalendar calendarNow = ModelCommon.xmlTimeFor(now);
 
         final BatteryControlProfile profile = new BatteryControlProfile();
         profile.setLogicalDeviceID(id.getLogicalDeviceId());
@@ -107,9 +122,12 @@ public class BatteryModel {
     }
 
     public static BatteryControlProfile buildBatteryControlPowerSetpoint(final DeviceId id, final double power) throws Exception {
+        return buildBatteryControlPowerSetpoint(id, power, SimClock.WALL.currentTimeMillis());
+    }
 
-        final long now = System.currentTimeMillis();
-        final XMLGregorianCalendar calendarNow = CommonMapping.xmlTimeFor(now);
+    public static BatteryControlProfile buildBatteryControlPowerSetpoint(final DeviceId id, final double power, final long now) throws Exception {
+
+        final XMLGregorianCalendar calendarNow = ModelCommon.xmlTimeFor(now);
 
         final BatteryControlProfile profile = new BatteryControlProfile();
         profile.setLogicalDeviceID(id.getLogicalDeviceId());
@@ -134,9 +152,12 @@ public class BatteryModel {
     }
 
     public static BatteryControlProfile buildBatteryControlModeSetpoint(final DeviceId id, final int mode) throws Exception {
+        return buildBatteryControlModeSetpoint(id, mode, SimClock.WALL.currentTimeMillis());
+    }
+
+    public static BatteryControlProfile buildBatteryControlModeSetpoint(final DeviceId id, final int mode, final long now) throws Exception {
 
-        final long now = System.currentTimeMillis();
-        final XMLGregorianCalendar calendarNow = CommonMapping.xmlTimeFor(now);
+        final XMLGregorianCalendar calendarNow = ModelCommon.xmlTimeFor(now);
 
         final BatteryControlProfile profile = new BatteryControlProfile();
         profile.setLogicalDeviceID(id.getLogicalDeviceId());
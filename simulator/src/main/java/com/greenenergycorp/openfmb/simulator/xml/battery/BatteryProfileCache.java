@@ -0,0 +1,74 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.battery;
+
+import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.xml.ModelCommon;
+import com.greenenergycorp.openfmb.xml.*;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.util.Arrays;
+
+/**
+ * Battery reading and event profiles for one device. Each call rewrites the power, voltage and frequency
+ * readings or the battery status of the same profile, which is only valid until the next call.
+ */
+public class BatteryProfileCache {
+    private final BatteryReadingProfile readProfile;
+    private final Reading powerReading;
+    private final Reading voltageReading;
+    private final Reading frequencyReading;
+
+    private final BatteryEventProfile eventProfile;
+
+    public BatteryProfileCache(DeviceId id) throws Exception {
+        final long now = System.currentTimeMillis();
+        this.powerReading = ModelCommon.buildReading(0.0, now, UnitSymbolKind.W, UnitMultiplierKind.KILO, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN);
+        this.voltageReading = ModelCommon.buildReading(0.0, now, UnitSymbolKind.V, UnitMultiplierKind.NO_MULTIPLIER, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN);
+        this.frequencyReading = ModelCommon.buildReading(0.0, now, UnitSymbolKind.HZ, UnitMultiplierKind.NO_MULTIPLIER, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN);
+        this.readProfile = BatteryModel.buildBatteryRead(id, Arrays.asList(powerReading, voltageReading, frequencyReading), now);
+        this.eventProfile = BatteryModel.buildBatteryEvent(id, false, false, "", 0.0, now);
+    }
+
+    public BatteryReadingProfile readProfile(long now, double power, double volts, double freq) throws Exception {
+        final XMLGregorianCalendar xmlTime = ModelCommon.xmlTimeFor(now);
+
+        readProfile.setTimestamp(xmlTime);
+        ModelCommon.updateReading(powerReading, power, xmlTime);
+        ModelCommon.updateReading(voltageReading, volts, xmlTime);
+        ModelCommon.updateReading(frequencyReading, freq, xmlTime);
+
+        return readProfile;
+    }
+
+    public BatteryEventProfile eventProfile(long now, boolean isConnected, boolean isCharging, String mode, double stateOfCharge) throws Exception {
+        final XMLGregorianCalendar xmlTime = ModelCommon.xmlTimeFor(now);
+
+        eventProfile.setTimestamp(xmlTime);
+
+        final BatteryStatus batteryStatus = eventProfile.getBatteryStatus();
+        batteryStatus.setIsConnected(isConnected);
+        batteryStatus.setIsCharging(isCharging);
+        batteryStatus.setMode(mode);
+        batteryStatus.setStateOfCharge((float) stateOfCharge);
+        batteryStatus.setTimestamp(xmlTime);
+
+        return eventProfile;
+    }
+}
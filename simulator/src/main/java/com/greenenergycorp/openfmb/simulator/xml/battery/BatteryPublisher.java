@@ -21,47 +21,57 @@ package com.greenenergycorp.openfmb.simulator.xml.battery;
 import com.greenenergycorp.openfmb.mapping.adapter.MessageObserver;
 import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
 import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.SimClock;
 import com.greenenergycorp.openfmb.simulator.battery.BatteryObserver;
-import com.greenenergycorp.openfmb.simulator.xml.ModelCommon;
-import com.greenenergycorp.openfmb.xml.*;
-
-import java.util.Arrays;
 
 public class BatteryPublisher implements BatteryObserver {
 
     private final MessageObserver messageObserver;
     private final DeviceId deviceId;
-    private final OpenFmbXmlMarshaller marshaller;
+    private final BatteryEncoder encoder;
     private final String readTopic;
     private final String eventTopic;
+    private final SimClock clock;
 
-    public BatteryPublisher(MessageObserver messageObserver, DeviceId deviceId, OpenFmbXmlMarshaller marshaller, String readTopic, String eventTopic) {
+    public BatteryPublisher(MessageObserver messageObserver, DeviceId deviceId, BatteryEncoder encoder, String readTopic, String eventTopic) {
+        this(messageObserver, deviceId, encoder, readTopic, eventTopic, SimClock.WALL);
+    }
+
+    /**
+     * @param clock timestamps updates that do not carry their own time
+     */
+    public BatteryPublisher(MessageObserver messageObserver, DeviceId deviceId, BatteryEncoder encoder, String readTopic, String eventTopic, SimClock clock) {
         this.messageObserver = messageObserver;
         this.deviceId = deviceId;
-        this.marshaller = marshaller;
+        this.encoder = encoder;
         this.readTopic = readTopic;
         this.eventTopic = eventTopic;
+        this.clock = clock;
     }
 
-    public void batteryReadUpdate(double power, double volts, double freq) throws Exception {
-        final long now = System.currentTimeMillis();
+    public BatteryPublisher(MessageObserver messageObserver, DeviceId deviceId, OpenFmbXmlMarshaller marshaller, String readTopic, String eventTopic) {
+        this(messageObserver, deviceId, new MarshallingBatteryEncoder(deviceId, marshaller), readTopic, eventTopic);
+    }
 
-        final BatteryReadingProfile readProfile = BatteryModel.buildBatteryRead(deviceId, Arrays.asList(
-                ModelCommon.buildReading(power, now, UnitSymbolKind.W, UnitMultiplierKind.KILO, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN),
-                ModelCommon.buildReading(volts, now, UnitSymbolKind.V, UnitMultiplierKind.NO_MULTIPLIER, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN),
-                ModelCommon.buildReading(freq, now, UnitSymbolKind.HZ, UnitMultiplierKind.NO_MULTIPLIER, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN)
-        ));
+    public SimClock getClock() {
+        return clock;
+    }
 
-        final byte[] payloadBytes = marshaller.marshal(readProfile);
-        messageObserver.publish(payloadBytes, readTopic, deviceId.getLogicalDeviceId());
+    public void batteryReadUpdate(double power, double volts, double freq) throws Exception {
+        batteryReadUpdate(clock.currentTimeMillis(), power, volts, freq);
     }
 
     public void batteryEventUpdate(boolean isConnected, boolean isCharging, String mode, double stateOfCharge) throws Exception {
-        final long now = System.currentTimeMillis();
+        batteryEventUpdate(clock.currentTimeMillis(), isConnected, isCharging, mode, stateOfCharge);
+    }
 
-        final BatteryEventProfile eventProfile = BatteryModel.buildBatteryEvent(deviceId, isConnected, isCharging, mode, stateOfCharge);
+    public void batteryReadUpdate(long now, double power, double volts, double freq) throws Exception {
+        final byte[] payloadBytes = encoder.encodeRead(now, power, volts, freq);
+        messageObserver.publish(payloadBytes, readTopic, deviceId.getLogicalDeviceId());
+    }
 
-        final byte[] payloadBytes = marshaller.marshal(eventProfile);
+    public void batteryEventUpdate(long now, boolean isConnected, boolean isCharging, String mode, double stateOfCharge) throws Exception {
+        final byte[] payloadBytes = encoder.encodeEvent(now, isConnected, isCharging, mode, stateOfCharge);
         messageObserver.publish(payloadBytes, eventTopic, deviceId.getLogicalDeviceId());
     }
 }
@@ -22,20 +22,28 @@ import com.greenenergycorp.openfmb.mapping.adapter.PayloadObserver;
 import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
 import com.greenenergycorp.openfmb.simulator.battery.BatteryControlObserver;
 import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine;
+import com.greenenergycorp.openfmb.simulator.jfr.ControlEvent;
+import com.greenenergycorp.openfmb.simulator.xml.InboundDispatcher;
+import com.greenenergycorp.openfmb.simulator.xml.codec.PayloadCodec;
+import com.greenenergycorp.openfmb.simulator.xml.codec.XmlPayloadCodec;
 import com.greenenergycorp.openfmb.xml.BatteryControlProfile;
 import com.greenenergycorp.openfmb.xml.SetPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class BatterySimPayloadObserver implements PayloadObserver {
+public class BatterySimPayloadObserver implements PayloadObserver, InboundDispatcher.ProfileHandler<BatteryControlProfile> {
     private final static Logger logger = LoggerFactory.getLogger(BatterySimPayloadObserver.class);
 
-    private final OpenFmbXmlMarshaller openFmbXmlMarshaller;
+    private final PayloadCodec codec;
     private final String logicalDeviceId;
     private final BatteryControlObserver batterySimulator;
 
     public BatterySimPayloadObserver(OpenFmbXmlMarshaller openFmbXmlMarshaller, String logicalDeviceId, BatteryControlObserver batterySimulator) {
-        this.openFmbXmlMarshaller = openFmbXmlMarshaller;
+        this(new XmlPayloadCodec(openFmbXmlMarshaller), logicalDeviceId, batterySimulator);
+    }
+
+    public BatterySimPayloadObserver(PayloadCodec codec, String logicalDeviceId, BatteryControlObserver batterySimulator) {
+        this.codec = codec;
         this.logicalDeviceId = logicalDeviceId;
         this.batterySimulator = batterySimulator;
     }
@@ -43,39 +51,48 @@ public class BatterySimPayloadObserver implements PayloadObserver {
     public void handle(byte[] bytes) {
         try {
 
-            final Object object = openFmbXmlMarshaller.unmarshal(bytes);
+            final Object object = codec.decode(bytes);
             if (object instanceof BatteryControlProfile) {
-                final BatteryControlProfile controlProfile = (BatteryControlProfile) object;
+                handleProfile((BatteryControlProfile) object);
+            }
 
-                if (controlProfile.getLogicalDeviceID().equals(logicalDeviceId)) {
-                    if (controlProfile.getBatterySystemControl().isIsIslanded()) {
-                        batterySimulator.setModeControl(BatteryMachine.BatteryMode.ISLANDED);
-                    }
+        } catch (Throwable ex) {
+            logger.warn("Error handling setpoint: " + ex);
+        }
+    }
 
-                    for (final SetPoint sp : controlProfile.getBatterySystemControl().getSetPoints()) {
-                        if (sp.getControlType() != null) {
+    public void handleProfile(BatteryControlProfile controlProfile) {
+        if (controlProfile.getLogicalDeviceID().equals(logicalDeviceId)) {
+            if (controlProfile.getBatterySystemControl().isIsIslanded()) {
+                final ControlEvent event = new ControlEvent();
+                event.begin();
+                batterySimulator.setModeControl(BatteryMachine.BatteryMode.ISLANDED);
+                event.record(logicalDeviceId, "Islanded", BatteryMachine.BatteryMode.ISLANDED.getNumber());
+            }
 
-                            if (sp.getControlType().equals("SetMode")) {
-                                final int modeInt = sp.getValue().intValue();
-                                final BatteryMachine.BatteryMode batteryMode = BatteryMachine.BatteryMode.fromInt(modeInt);
-                                if (batteryMode != null) {
-                                    batterySimulator.setModeControl(batteryMode);
-                                }
-                            }
+            for (final SetPoint sp : controlProfile.getBatterySystemControl().getSetPoints()) {
+                if (sp.getControlType() != null) {
 
-                            if (sp.getControlType().equals("SetRealPower")) {
-                                batterySimulator.setPowerSetpoint(sp.getValue().doubleValue());
-                            }
+                    if (sp.getControlType().equals("SetMode")) {
+                        final int modeInt = sp.getValue().intValue();
+                        final BatteryMachine.BatteryMode batteryMode = BatteryMachine.BatteryMode.fromInt(modeInt);
+                        if (batteryMode != null) {
+                            final ControlEvent event = new ControlEvent();
+                            event.begin();
+                            batterySimulator.setModeControl(batteryMode);
+                            event.record(logicalDeviceId, "SetMode", modeInt);
                         }
                     }
 
+                    if (sp.getControlType().equals("SetRealPower")) {
+                        final ControlEvent event = new ControlEvent();
+                        event.begin();
+                        batterySimulator.setPowerSetpoint(sp.getValue().doubleValue());
+                        event.record(logicalDeviceId, "SetRealPower", sp.getValue().doubleValue());
+                    }
                 }
-
-
             }
 
-        } catch (Throwable ex) {
-            logger.warn("Error handling setpoint: " + ex);
         }
     }
 }
\ No newline at end of file
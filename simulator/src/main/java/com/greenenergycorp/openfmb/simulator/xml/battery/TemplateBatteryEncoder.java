@@ -0,0 +1,94 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.battery;
+
+import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine.BatteryMode;
+import com.greenenergycorp.openfmb.simulator.xml.XmlTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class TemplateBatteryEncoder implements BatteryEncoder {
+    private final MarshallingBatteryEncoder marshalling;
+    private final XmlTemplate readTemplate;
+
+    // event templates are compiled per connected/charging combination and mode, since those are not values;
+    // modes outside BatteryMode fall back to the marshaller
+    private final Map<String, XmlTemplate>[] eventTemplates;
+
+    private final float[] readValues = new float[3];
+    private final float[] eventValues = new float[1];
+
+    @SuppressWarnings("unchecked")
+    public TemplateBatteryEncoder(DeviceId deviceId, OpenFmbXmlMarshaller marshaller) {
+        this.marshalling = new MarshallingBatteryEncoder(deviceId, marshaller);
+
+        this.readTemplate = XmlTemplate.build("BatteryReadingProfile " + deviceId.getLogicalDeviceId(), new XmlTemplate.Renderer() {
+            public byte[] marshal(long time, float[] values) throws Exception {
+                return marshalling.encodeRead(time, values[0], values[1], values[2]);
+            }
+        }, 3);
+
+        this.eventTemplates = new Map[4];
+        for (int i = 0; i < eventTemplates.length; i++) {
+            final boolean isConnected = (i & 1) != 0;
+            final boolean isCharging = (i & 2) != 0;
+            eventTemplates[i] = new HashMap<String, XmlTemplate>();
+            for (final BatteryMode batteryMode : BatteryMode.values()) {
+                final String mode = batteryMode.getDescription();
+                eventTemplates[i].put(mode, XmlTemplate.build("BatteryEventProfile " + deviceId.getLogicalDeviceId() + " (" + mode + ")", new XmlTemplate.Renderer() {
+                    public byte[] marshal(long time, float[] values) throws Exception {
+                        return marshalling.encodeEvent(time, isConnected, isCharging, mode, values[0]);
+                    }
+                }, 1));
+            }
+        }
+    }
+
+    private static int eventIndex(boolean isConnected, boolean isCharging) {
+        return (isConnected ? 1 : 0) + (isCharging ? 2 : 0);
+    }
+
+    public synchronized byte[] encodeRead(long now, double power, double volts, double freq) throws Exception {
+        if (readTemplate != null) {
+            readValues[0] = (float) power;
+            readValues[1] = (float) volts;
+            readValues[2] = (float) freq;
+            final byte[] bytes = readTemplate.render(XmlTemplate.timeText(now), readValues);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+        return marshalling.encodeRead(now, power, volts, freq);
+    }
+
+    public synchronized byte[] encodeEvent(long now, boolean isConnected, boolean isCharging, String mode, double stateOfCharge) throws Exception {
+        final XmlTemplate template = eventTemplates[eventIndex(isConnected, isCharging)].get(mode);
+        if (template != null) {
+            eventValues[0] = (float) stateOfCharge;
+            final byte[] bytes = template.render(XmlTemplate.timeText(now), eventValues);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+        return marshalling.encodeEvent(now, isConnected, isCharging, mode, stateOfCharge);
+    }
+}
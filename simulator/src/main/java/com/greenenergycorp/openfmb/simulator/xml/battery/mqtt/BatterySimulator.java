@@ -24,9 +24,28 @@ import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
 import com.greenenergycorp.openfmb.mapping.mqtt.*;
 import com.greenenergycorp.openfmb.simulator.DeviceId;
 import com.greenenergycorp.openfmb.simulator.PropertyUtil;
+import com.greenenergycorp.openfmb.simulator.SimClock;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryActor;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryControlObserver;
 import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryObserver;
+import com.greenenergycorp.openfmb.simulator.jfr.RecordingMessageObserver;
+import com.greenenergycorp.openfmb.simulator.metrics.MeteredObservers;
+import com.greenenergycorp.openfmb.simulator.metrics.MetricsRegistry;
+import com.greenenergycorp.openfmb.simulator.metrics.SimulatorMetrics;
+import com.greenenergycorp.openfmb.simulator.publish.AsyncPublishers;
+import com.greenenergycorp.openfmb.simulator.publish.PublishPipeline;
+import com.greenenergycorp.openfmb.simulator.schedule.OverrunPolicy;
+import com.greenenergycorp.openfmb.simulator.schedule.ThreadMode;
+import com.greenenergycorp.openfmb.simulator.schedule.TickScheduler;
+import com.greenenergycorp.openfmb.simulator.xml.ThreadedPayloadObserver;
+import com.greenenergycorp.openfmb.simulator.xml.battery.BatteryEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.codec.PayloadCodec;
+import com.greenenergycorp.openfmb.simulator.xml.codec.SniffingPayloadCodec;
 import com.greenenergycorp.openfmb.simulator.xml.battery.BatteryPublisher;
 import com.greenenergycorp.openfmb.simulator.xml.battery.BatterySimPayloadObserver;
+import com.greenenergycorp.openfmb.simulator.xml.battery.MarshallingBatteryEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.battery.TemplateBatteryEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,6 +84,11 @@ public class BatterySimulator {
         final double batteryHertz = PropertyUtil.propDoubleOrThrow(simProps, "battery.hertz");
 
         final long intervalMs = PropertyUtil.propLongOrThrow(simProps, "config.intervalMs");
+        final OverrunPolicy overrunPolicy = OverrunPolicy.fromString(simProps.getProperty("config.overrunPolicy", "skip"));
+        final ThreadMode threadMode = ThreadMode.fromString(simProps.getProperty("config.threadMode", "scheduler"));
+        final SimClock clock = SimClock.fromProperties(simProps, "config.");
+        final boolean templateEncoder = Boolean.parseBoolean(simProps.getProperty("config.templateEncoder", "false"));
+        final boolean eventLoop = Boolean.parseBoolean(simProps.getProperty("config.eventLoop", "false"));
 
         final BatteryMachine.BatterySpec batterySpec = new BatteryMachine.BatterySpec(
                 batteryMaxChargeRatekW,
@@ -77,6 +101,10 @@ public class BatterySimulator {
                 batteryHertz);
 
         final OpenFmbXmlMarshaller openFmbXmlMarshaller = new OpenFmbXmlMarshaller();
+        final SniffingPayloadCodec payloadCodec = SniffingPayloadCodec.fromProperties(simProps, openFmbXmlMarshaller);
+        payloadCodec.getCompressionStats().startReporting(60000);
+        final MetricsRegistry metrics = SimulatorMetrics.export(simProps, "config.", "battery " + logicalDeviceId);
+        final PayloadCodec meteredCodec = new MeteredObservers.MeteredPayloadCodec(payloadCodec, metrics);
 
         final String mqttConfigPath = System.getProperty("config.mqtt.path", "mqtt.properties");
 
@@ -92,21 +120,52 @@ public class BatterySimulator {
             }
         }, "mqtt publisher");
 
-        final MessageObserver messageObserver = new MessageObserverAdapter(mqttObserver, new SimpleTopicMapping());
+        final MessageObserver messageObserver = new MeteredObservers.MeteredMessageObserver(new RecordingMessageObserver(new MessageObserverAdapter(mqttObserver, new SimpleTopicMapping())), metrics);
 
-        final BatteryPublisher batteryPublisher = new BatteryPublisher(messageObserver, deviceId, openFmbXmlMarshaller, batteryReadTopic, batteryEventTopic);
+        final BatteryEncoder batteryEncoder = (templateEncoder && payloadCodec.encodesXml()) ?
+                new TemplateBatteryEncoder(deviceId, openFmbXmlMarshaller) :
+                new MarshallingBatteryEncoder(deviceId, meteredCodec);
 
-        final BatteryMachine batterySimulator = new BatteryMachine(batteryPublisher, intervalMs, batterySpec);
+        final BatteryPublisher batteryPublisher = new BatteryPublisher(messageObserver, deviceId, batteryEncoder, batteryReadTopic, batteryEventTopic, clock);
 
-        final PayloadObserver controlObserver = new BatterySimPayloadObserver(openFmbXmlMarshaller, logicalDeviceId, batterySimulator);
+        final PublishPipeline publishPipeline = PublishPipeline.fromProperties(simProps, "config.", threadMode.threadFactory("battery publish"));
+        final BatteryObserver batteryObserver = new MeteredObservers.MeteredBatteryObserver((publishPipeline == null) ? batteryPublisher :
+                new AsyncPublishers.AsyncBatteryObserver(publishPipeline, logicalDeviceId, batteryPublisher), metrics, logicalDeviceId);
+        if (publishPipeline != null) {
+            publishPipeline.startReporting(60000);
+        }
+        SimulatorMetrics.registerPipeline(metrics, publishPipeline);
+
+        final BatteryMachine batterySimulator = new BatteryMachine(logicalDeviceId, batteryObserver, intervalMs, batterySpec, clock);
+
+        final BatteryActor batteryActor = eventLoop ? new BatteryActor(batterySimulator) : null;
+
+        final BatteryControlObserver controlTarget = eventLoop ? batteryActor : batterySimulator;
+
+        // commands are only queued in event loop mode, so there is nothing to gain from a handler thread
+        final PayloadObserver controlObserver = eventLoop ?
+                new BatterySimPayloadObserver(meteredCodec, logicalDeviceId, controlTarget) :
+                ThreadedPayloadObserver.wrap(new BatterySimPayloadObserver(meteredCodec, logicalDeviceId, controlTarget), threadMode, threadMode.threadFactory("battery control"),
+                        Integer.parseInt(simProps.getProperty("config.handlerQueueCapacity", "1024").trim()));
 
         final Map<String, PayloadObserver> controlHandlerMap = new HashMap<String, PayloadObserver>();
         controlHandlerMap.put(batteryControlTopic + "/" + logicalDeviceId, controlObserver);
 
-        mqttAdapterManager.subscribe(controlHandlerMap);
+        mqttAdapterManager.subscribe(MeteredObservers.subscriptions(controlHandlerMap, metrics));
 
         mqttThread.start();
-        batterySimulator.run();
+
+        if (eventLoop) {
+            logger.info("Running battery on a single event loop thread");
+            batteryActor.run(overrunPolicy, 0);
+            return;
+        }
+
+        final TickScheduler scheduler = new TickScheduler(1, "battery tick", overrunPolicy, threadMode);
+        scheduler.register(logicalDeviceId, batterySimulator, intervalMs);
+        scheduler.startOverrunReporting(60000);
+        SimulatorMetrics.registerScheduler(metrics, scheduler);
+        scheduler.awaitTermination();
     }
 
 
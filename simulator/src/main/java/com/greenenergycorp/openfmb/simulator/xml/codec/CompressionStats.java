@@ -0,0 +1,156 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.codec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compression ratio and CPU time per profile type, for payloads deflated on publish and inflated on
+ * receipt.
+ */
+public class CompressionStats {
+    private final static Logger logger = LoggerFactory.getLogger(CompressionStats.class);
+
+    private final ConcurrentHashMap<String, TypeStats> types = new ConcurrentHashMap<String, TypeStats>();
+
+    private ScheduledExecutorService reporter = null;
+
+    public static class TypeStats {
+        private final AtomicLong deflated = new AtomicLong(0);
+        private final AtomicLong deflateRawBytes = new AtomicLong(0);
+        private final AtomicLong deflatedBytes = new AtomicLong(0);
+        private final AtomicLong deflateNanos = new AtomicLong(0);
+        private final AtomicLong inflated = new AtomicLong(0);
+        private final AtomicLong inflateRawBytes = new AtomicLong(0);
+        private final AtomicLong inflatedBytes = new AtomicLong(0);
+        private final AtomicLong inflateNanos = new AtomicLong(0);
+
+        public long getDeflated() {
+            return deflated.get();
+        }
+
+        public long getInflated() {
+            return inflated.get();
+        }
+
+        /**
+         * @return compressed size over original size of everything deflated, or 0 if nothing was
+         */
+        public double getDeflateRatio() {
+            final long raw = deflateRawBytes.get();
+            return raw == 0 ? 0.0 : (double) deflatedBytes.get() / raw;
+        }
+
+        public double getInflateRatio() {
+            final long raw = inflateRawBytes.get();
+            return raw == 0 ? 0.0 : (double) inflatedBytes.get() / raw;
+        }
+
+        public double getMeanDeflateMicros() {
+            final long count = deflated.get();
+            return count == 0 ? 0.0 : deflateNanos.get() / 1000.0 / count;
+        }
+
+        public double getMeanInflateMicros() {
+            final long count = inflated.get();
+            return count == 0 ? 0.0 : inflateNanos.get() / 1000.0 / count;
+        }
+    }
+
+    public void recordDeflate(final String type, final int rawBytes, final int compressedBytes, final long nanos) {
+        final TypeStats stats = statsFor(type);
+        stats.deflated.incrementAndGet();
+        stats.deflateRawBytes.addAndGet(rawBytes);
+        stats.deflatedBytes.addAndGet(compressedBytes);
+        stats.deflateNanos.addAndGet(nanos);
+    }
+
+    public void recordInflate(final String type, final int rawBytes, final int compressedBytes, final long nanos) {
+        final TypeStats stats = statsFor(type);
+        stats.inflated.incrementAndGet();
+        stats.inflateRawBytes.addAndGet(rawBytes);
+        stats.inflatedBytes.addAndGet(compressedBytes);
+        stats.inflateNanos.addAndGet(nanos);
+    }
+
+    private TypeStats statsFor(final String type) {
+        TypeStats stats = types.get(type);
+        if (stats == null) {
+            final TypeStats created = new TypeStats();
+            stats = types.putIfAbsent(type, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @return the stats by profile type, sorted by name
+     */
+    public Map<String, TypeStats> getStats() {
+        return new TreeMap<String, TypeStats>(types);
+    }
+
+    public void logSummary() {
+        for (final Map.Entry<String, TypeStats> entry : getStats().entrySet()) {
+            final TypeStats stats = entry.getValue();
+            final StringBuilder sb = new StringBuilder(entry.getKey()).append(':');
+            if (stats.getDeflated() > 0) {
+                sb.append(String.format(" deflated %d at %.1f%% of original, %.1f us each", stats.getDeflated(), stats.getDeflateRatio() * 100, stats.getMeanDeflateMicros()));
+            }
+            if (stats.getInflated() > 0) {
+                sb.append(String.format(" inflated %d at %.1f%% of original, %.1f us each", stats.getInflated(), stats.getInflateRatio() * 100, stats.getMeanInflateMicros()));
+            }
+            logger.info(sb.toString());
+        }
+    }
+
+    /**
+     * Logs the summary at a fixed interval on a daemon thread. Nothing is logged until a payload has
+     * been deflated or inflated.
+     */
+    public synchronized void startReporting(final long reportIntervalMs) {
+        if (reporter != null) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "compression report");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reporter.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                logSummary();
+            }
+        }, reportIntervalMs, reportIntervalMs, TimeUnit.MILLISECONDS);
+    }
+}
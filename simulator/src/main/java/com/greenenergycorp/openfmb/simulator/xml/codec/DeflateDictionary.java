@@ -0,0 +1,99 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.codec;
+
+import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine;
+import com.greenenergycorp.openfmb.simulator.xml.ModelCommon;
+import com.greenenergycorp.openfmb.simulator.xml.XmlTimestamps;
+import com.greenenergycorp.openfmb.simulator.xml.battery.BatteryModel;
+import com.greenenergycorp.openfmb.simulator.xml.battery.BatteryProfileCache;
+import com.greenenergycorp.openfmb.simulator.xml.recloser.RecloserProfileCache;
+import com.greenenergycorp.openfmb.simulator.xml.solar.SolarProfileCache;
+import com.greenenergycorp.openfmb.xml.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the preset dictionary for deflating payloads from sample profiles of every type the
+ * simulators exchange. Publisher and subscriber must use the same dictionary, so the samples use a
+ * fixed device, fixed values and a fixed timestamp text, and do not depend on the local time zone.
+ * zlib records the dictionary's checksum in each stream, so a mismatch is detected on inflate.
+ */
+public class DeflateDictionary {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final long SAMPLE_TIME = 1451606400000L;
+    private static final String SAMPLE_TIME_TEXT = "2016-01-01T00:00:00.000Z";
+
+    private static byte[] dictionary = null;
+
+    /**
+     * @return the shared dictionary, built on first use
+     */
+    public static synchronized byte[] get(final OpenFmbXmlMarshaller marshaller) throws Exception {
+        if (dictionary == null) {
+            dictionary = build(marshaller);
+        }
+        return dictionary;
+    }
+
+    public static byte[] build(final OpenFmbXmlMarshaller marshaller) throws Exception {
+        final DeviceId id = new DeviceId("DEVICE", "DEVICE", "Device", "Device");
+
+        final List<Object> profiles = new ArrayList<Object>();
+        profiles.add(BatteryModel.buildBatteryControlModeSetpoint(id, BatteryMachine.BatteryMode.LEAVING_ISLANDED.getNumber(), SAMPLE_TIME));
+        profiles.add(BatteryModel.buildBatteryControlPowerSetpoint(id, 0.0, SAMPLE_TIME));
+        profiles.add(resourceRead());
+        profiles.add(new RecloserProfileCache(id).eventProfile(SAMPLE_TIME, true, false));
+        profiles.add(new SolarProfileCache(id).eventProfile(SAMPLE_TIME));
+        profiles.add(new BatteryProfileCache(id).eventProfile(SAMPLE_TIME, true, false, "Standby", 50.0));
+        profiles.add(new RecloserProfileCache(id).readProfile(SAMPLE_TIME, 0.0, 277.0, 60.0));
+        profiles.add(new SolarProfileCache(id).readProfile(SAMPLE_TIME, 0.0));
+        profiles.add(new BatteryProfileCache(id).readProfile(SAMPLE_TIME, 0.0, 277.0, 60.0));
+
+        // deflate finds matches nearest the end of the dictionary most cheaply, so the binary samples
+        // go first and the most frequent profiles, the readings, go last
+        final BinaryPayloadCodec binary = new BinaryPayloadCodec();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (final Object profile : profiles) {
+            out.write(binary.encode(profile));
+        }
+
+        final String timeText = XmlTimestamps.textFor(SAMPLE_TIME);
+        for (final Object profile : profiles) {
+            final String xml = new String(marshaller.marshal(profile), UTF8);
+            out.write(xml.replace(timeText, SAMPLE_TIME_TEXT).getBytes(UTF8));
+        }
+        return out.toByteArray();
+    }
+
+    private static ResourceReadingProfile resourceRead() throws Exception {
+        final ResourceReadingProfile profile = new ResourceReadingProfile();
+        profile.setLogicalDeviceID("DEVICE");
+        profile.setTimestamp(ModelCommon.xmlTimeFor(SAMPLE_TIME));
+        profile.getReadings().add(ModelCommon.buildReading(0.0, SAMPLE_TIME, UnitSymbolKind.W, UnitMultiplierKind.KILO, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN));
+        return profile;
+    }
+}
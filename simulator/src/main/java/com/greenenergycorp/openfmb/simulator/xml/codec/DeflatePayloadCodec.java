@@ -0,0 +1,167 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.codec;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflates the payloads of another codec using a preset dictionary. A compressed payload is the
+ * MARKER byte followed by a zlib stream, whose header carries the checksum of the dictionary.
+ *
+ * Each thread keeps its own Deflater, Inflater and working buffer, which are reset and reused for
+ * every message.
+ */
+public class DeflatePayloadCodec implements PayloadCodec {
+
+    /**
+     * Distinct from the binary codec's marker and, like it, cannot start a UTF-8 document.
+     */
+    public static final byte MARKER = (byte) 0xB2;
+
+    private static final int INITIAL_BUFFER = 8192;
+
+    private static final ThreadLocal<Workspace> workspaces = new ThreadLocal<Workspace>() {
+        @Override
+        protected Workspace initialValue() {
+            return new Workspace();
+        }
+    };
+
+    private final PayloadCodec codec;
+    private final byte[] dictionary;
+    private final int dictionaryId;
+    private final CompressionStats stats;
+
+    /**
+     * @param codec      produces the payloads to deflate, and decodes them once inflated
+     * @param dictionary preset dictionary, which must match the one used at the other end
+     */
+    public DeflatePayloadCodec(PayloadCodec codec, byte[] dictionary, CompressionStats stats) {
+        this.codec = codec;
+        this.dictionary = dictionary;
+        this.stats = stats;
+
+        final java.util.zip.Adler32 adler = new java.util.zip.Adler32();
+        adler.update(dictionary);
+        this.dictionaryId = (int) adler.getValue();
+    }
+
+    public static boolean isCompressed(final byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == MARKER;
+    }
+
+    public CompressionStats getStats() {
+        return stats;
+    }
+
+    public byte[] encode(final Object profile) throws Exception {
+        final byte[] raw = codec.encode(profile);
+        final long start = System.nanoTime();
+        final byte[] compressed = compress(raw);
+        stats.recordDeflate(profile.getClass().getSimpleName(), raw.length, compressed.length, System.nanoTime() - start);
+        return compressed;
+    }
+
+    public Object decode(final byte[] bytes) throws Exception {
+        final long start = System.nanoTime();
+        final byte[] raw = decompress(bytes);
+        final long nanos = System.nanoTime() - start;
+        final Object profile = codec.decode(raw);
+        stats.recordInflate(profile.getClass().getSimpleName(), raw.length, bytes.length, nanos);
+        return profile;
+    }
+
+    public byte[] compress(final byte[] raw) {
+        final Workspace workspace = workspaces.get();
+        final Deflater deflater = workspace.deflater;
+        deflater.reset();
+        deflater.setDictionary(dictionary);
+        deflater.setInput(raw);
+        deflater.finish();
+
+        byte[] buffer = workspace.buffer;
+        int length = 1;
+        buffer[0] = MARKER;
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = workspace.grow();
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+
+        final byte[] compressed = new byte[length];
+        System.arraycopy(buffer, 0, compressed, 0, length);
+        return compressed;
+    }
+
+    public byte[] decompress(final byte[] bytes) throws IOException {
+        if (!isCompressed(bytes)) {
+            throw new IOException("Not a compressed payload");
+        }
+
+        final Workspace workspace = workspaces.get();
+        final Inflater inflater = workspace.inflater;
+        inflater.reset();
+        inflater.setInput(bytes, 1, bytes.length - 1);
+
+        byte[] buffer = workspace.buffer;
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = workspace.grow();
+                }
+                final int n = inflater.inflate(buffer, length, buffer.length - length);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        if (inflater.getAdler() != dictionaryId) {
+                            throw new IOException("Payload was compressed with a different dictionary");
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        throw new IOException("Truncated compressed payload");
+                    }
+                }
+                length += n;
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Corrupt compressed payload: " + ex.getMessage());
+        }
+
+        final byte[] raw = new byte[length];
+        System.arraycopy(buffer, 0, raw, 0, length);
+        return raw;
+    }
+
+    private static class Workspace {
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        private final Inflater inflater = new Inflater();
+        private byte[] buffer = new byte[INITIAL_BUFFER];
+
+        byte[] grow() {
+            final byte[] larger = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, larger, 0, buffer.length);
+            buffer = larger;
+            return buffer;
+        }
+    }
+}
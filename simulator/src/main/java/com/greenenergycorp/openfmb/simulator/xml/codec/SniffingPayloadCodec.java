@@ -0,0 +1,147 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.codec;
+
+import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+
+import java.util.Properties;
+
+/**
+ * Encodes with one codec and decodes whatever arrives, choosing the codec by the payload's leading
+ * content-type marker. Payloads without a marker are taken to be XML, so publishers that only
+ * speak XML keep working alongside ones that send binary.
+ *
+ * Deflated payloads are accepted whatever the outbound setting; the preset dictionary is built the
+ * first time one arrives.
+ */
+public class SniffingPayloadCodec implements PayloadCodec {
+    private final PayloadCodec encoder;
+    private final XmlPayloadCodec xml;
+    private final BinaryPayloadCodec binary;
+    private final CompressionStats compressionStats;
+
+    private volatile DeflatePayloadCodec deflate = null;
+
+    public SniffingPayloadCodec(PayloadCodec encoder, XmlPayloadCodec xml, BinaryPayloadCodec binary) {
+        this(encoder, xml, binary, new CompressionStats());
+    }
+
+    public SniffingPayloadCodec(PayloadCodec encoder, XmlPayloadCodec xml, BinaryPayloadCodec binary, CompressionStats compressionStats) {
+        this.encoder = encoder;
+        this.xml = xml;
+        this.binary = binary;
+        this.compressionStats = compressionStats;
+    }
+
+    /**
+     * Reads config.payloadCodec, and config.compression to deflate outbound payloads.
+     */
+    public static SniffingPayloadCodec fromProperties(final Properties props, final OpenFmbXmlMarshaller marshaller) throws Exception {
+        return fromProperties(props, marshaller, new CompressionStats());
+    }
+
+    /**
+     * @param compressionStats where to record deflate and inflate costs, which may be shared by codecs
+     */
+    public static SniffingPayloadCodec fromProperties(final Properties props, final OpenFmbXmlMarshaller marshaller, final CompressionStats compressionStats) throws Exception {
+        final SniffingPayloadCodec codec = forName(props.getProperty("config.payloadCodec", "xml"), marshaller, compressionStats);
+        if (!Boolean.parseBoolean(props.getProperty("config.compression", "false").trim())) {
+            return codec;
+        }
+        return new SniffingPayloadCodec(codec.getDeflateCodec(), codec.xml, codec.binary, codec.compressionStats);
+    }
+
+    /**
+     * @param name "xml" or "binary", the encoding used for outbound payloads
+     */
+    public static SniffingPayloadCodec forName(final String name, final OpenFmbXmlMarshaller marshaller) {
+        return forName(name, marshaller, new CompressionStats());
+    }
+
+    public static SniffingPayloadCodec forName(final String name, final OpenFmbXmlMarshaller marshaller, final CompressionStats compressionStats) {
+        final XmlPayloadCodec xml = new XmlPayloadCodec(marshaller);
+        final BinaryPayloadCodec binary = new BinaryPayloadCodec();
+        final String normalized = name.trim().toLowerCase();
+        if (normalized.equals("xml")) {
+            return new SniffingPayloadCodec(xml, xml, binary, compressionStats);
+        } else if (normalized.equals("binary")) {
+            return new SniffingPayloadCodec(binary, xml, binary, compressionStats);
+        }
+        throw new IllegalArgumentException("Unknown payload codec: " + name);
+    }
+
+    /**
+     * @return a codec that encodes XML and decodes either encoding
+     */
+    public static SniffingPayloadCodec xml(final OpenFmbXmlMarshaller marshaller) {
+        return forName("xml", marshaller);
+    }
+
+    public PayloadCodec getEncoder() {
+        return encoder;
+    }
+
+    public boolean encodesXml() {
+        return encoder == xml;
+    }
+
+    public boolean compresses() {
+        return encoder instanceof DeflatePayloadCodec;
+    }
+
+    public CompressionStats getCompressionStats() {
+        return compressionStats;
+    }
+
+    private DeflatePayloadCodec getDeflateCodec() throws Exception {
+        DeflatePayloadCodec codec = deflate;
+        if (codec == null) {
+            synchronized (this) {
+                if (deflate == null) {
+                    deflate = compresses() ?
+                            (DeflatePayloadCodec) encoder :
+                            new DeflatePayloadCodec(this, DeflateDictionary.get(xml.getMarshaller()), compressionStats);
+                }
+                codec = deflate;
+            }
+        }
+        return codec;
+    }
+
+    public byte[] encode(final Object profile) throws Exception {
+        return encoder.encode(profile);
+    }
+
+    public Object decode(final byte[] bytes) throws Exception {
+        if (DeflatePayloadCodec.isCompressed(bytes)) {
+            return getDeflateCodec().decode(bytes);
+        }
+        if (BinaryPayloadCodec.isBinary(bytes)) {
+            return binary.decode(bytes);
+        }
+        return xml.decode(bytes);
+    }
+
+    /**
+     * @return true if the payload has no content-type marker, and so is read as XML
+     */
+    public static boolean isXml(final byte[] bytes) {
+        return !BinaryPayloadCodec.isBinary(bytes) && !DeflatePayloadCodec.isCompressed(bytes);
+    }
+}
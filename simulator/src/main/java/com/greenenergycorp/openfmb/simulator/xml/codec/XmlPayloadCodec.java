@@ -0,0 +1,51 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.codec;
+
+import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+import com.greenenergycorp.openfmb.simulator.jfr.MarshalEvent;
+import com.greenenergycorp.openfmb.simulator.jfr.UnmarshalEvent;
+
+public class XmlPayloadCodec implements PayloadCodec {
+    private final OpenFmbXmlMarshaller marshaller;
+
+    public XmlPayloadCodec(OpenFmbXmlMarshaller marshaller) {
+        this.marshaller = marshaller;
+    }
+
+    public OpenFmbXmlMarshaller getMarshaller() {
+        return marshaller;
+    }
+
+    public byte[] encode(final Object profile) throws Exception {
+        final MarshalEvent event = new MarshalEvent();
+        event.begin();
+        final byte[] bytes = marshaller.marshal(profile);
+        event.record("xml", profile, bytes);
+        return bytes;
+    }
+
+    public Object decode(final byte[] bytes) throws Exception {
+        final UnmarshalEvent event = new UnmarshalEvent();
+        event.begin();
+        final Object profile = marshaller.unmarshal(bytes);
+        event.record("xml", profile, bytes);
+        return profile;
+    }
+}
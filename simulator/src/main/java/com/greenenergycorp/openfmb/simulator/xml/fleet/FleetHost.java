@@ -0,0 +1,358 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.fleet;
+
+import com.greenenergycorp.openfmb.mapping.adapter.MessageObserver;
+import com.greenenergycorp.openfmb.mapping.adapter.PayloadObserver;
+import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+import com.greenenergycorp.openfmb.simulator.DailyInterpolatedData;
+import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.Interpolation;
+import com.greenenergycorp.openfmb.simulator.LineValueDataLoader;
+import com.greenenergycorp.openfmb.simulator.PropertyUtil;
+import com.greenenergycorp.openfmb.simulator.SimClock;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryActor;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryObserver;
+import com.greenenergycorp.openfmb.simulator.metrics.MeteredObservers;
+import com.greenenergycorp.openfmb.simulator.metrics.MetricsRegistry;
+import com.greenenergycorp.openfmb.simulator.publish.AsyncPublishers;
+import com.greenenergycorp.openfmb.simulator.publish.PublishPipeline;
+import com.greenenergycorp.openfmb.simulator.recloser.RecloserMachine;
+import com.greenenergycorp.openfmb.simulator.recloser.RecloserObserver;
+import com.greenenergycorp.openfmb.simulator.schedule.ThreadMode;
+import com.greenenergycorp.openfmb.simulator.schedule.TickScheduler;
+import com.greenenergycorp.openfmb.simulator.schedule.Tickable;
+import com.greenenergycorp.openfmb.simulator.solar.SolarObserver;
+import com.greenenergycorp.openfmb.simulator.solar.SolarSimLoop;
+import com.greenenergycorp.openfmb.simulator.xml.InboundDispatcher;
+import com.greenenergycorp.openfmb.simulator.xml.PowerReadings;
+import com.greenenergycorp.openfmb.simulator.xml.ThreadedPayloadObserver;
+import com.greenenergycorp.openfmb.simulator.xml.batch.BatchPayloadObserver;
+import com.greenenergycorp.openfmb.simulator.xml.codec.CompressionStats;
+import com.greenenergycorp.openfmb.simulator.xml.codec.PayloadCodec;
+import com.greenenergycorp.openfmb.simulator.xml.codec.SniffingPayloadCodec;
+import com.greenenergycorp.openfmb.simulator.xml.battery.BatteryEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.battery.BatteryPublisher;
+import com.greenenergycorp.openfmb.simulator.xml.battery.BatterySimPayloadObserver;
+import com.greenenergycorp.openfmb.simulator.xml.battery.MarshallingBatteryEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.battery.TemplateBatteryEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.recloser.MarshallingRecloserEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.recloser.RecloserEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.recloser.RecloserPublisher;
+import com.greenenergycorp.openfmb.simulator.xml.recloser.SystemSubscribers;
+import com.greenenergycorp.openfmb.simulator.xml.recloser.TemplateRecloserEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.solar.MarshallingSolarEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.solar.SolarEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.solar.SolarPublisher;
+import com.greenenergycorp.openfmb.simulator.xml.solar.TemplateSolarEncoder;
+import com.greenenergycorp.openfmb.xml.BatteryControlProfile;
+import com.greenenergycorp.openfmb.xml.RecloserControlProfile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+
+public class FleetHost {
+    private final static Logger logger = LoggerFactory.getLogger(FleetHost.class);
+
+    private final MessageObserver messageObserver;
+    private final OpenFmbXmlMarshaller marshaller;
+    private final ThreadMode threadMode;
+    private final ThreadFactory handlerThreads;
+    private final ThreadFactory eventLoopThreads;
+    private final PublishPipeline publishPipeline;
+    private final MetricsRegistry metrics;
+    private final SimClock clock;
+
+    private final List<FleetTask> tasks = new ArrayList<FleetTask>();
+    private final InboundDispatcher dispatcher;
+    private final Set<String> batchTopics = new HashSet<String>();
+    private final CompressionStats compressionStats = new CompressionStats();
+    private final List<ThreadedPayloadObserver> handlers = new ArrayList<ThreadedPayloadObserver>();
+    private int deviceCount = 0;
+
+    /**
+     * @param publishPipeline if not null, devices hand their updates to the pipeline instead of publishing on the tick thread
+     * @param metrics receives codec timings, per-topic receive counts and the state of every battery and recloser
+     * @param clock the simulated time shared by every device
+     */
+    public FleetHost(MessageObserver messageObserver, OpenFmbXmlMarshaller marshaller, ThreadMode threadMode, PublishPipeline publishPipeline, MetricsRegistry metrics, SimClock clock) {
+        this.publishPipeline = publishPipeline;
+        this.metrics = metrics;
+        this.clock = clock;
+        this.messageObserver = messageObserver;
+        this.marshaller = marshaller;
+        this.threadMode = threadMode;
+        this.handlerThreads = threadMode.threadFactory("fleet handler");
+        // in scheduler mode battery event loops share the tick scheduler instead of owning a thread each
+        this.eventLoopThreads = threadMode.isThreadPerTask() ? threadMode.threadFactory("fleet battery loop") : null;
+        this.dispatcher = new InboundDispatcher(new MeteredObservers.MeteredPayloadCodec(SniffingPayloadCodec.forName("xml", marshaller, compressionStats), metrics));
+    }
+
+    public void addGroup(final FleetManifest.DeviceGroup group) throws Exception {
+        switch (group.getType()) {
+            case SOLAR:
+                addSolarGroup(group);
+                break;
+            case BATTERY:
+                addBatteryGroup(group);
+                break;
+            case RECLOSER:
+                addRecloserGroup(group);
+                break;
+        }
+    }
+
+    private void addSolarGroup(final FleetManifest.DeviceGroup group) throws Exception {
+        final Properties simProps = group.getConfig();
+
+        final double scale = PropertyUtil.propDoubleOrThrow(simProps, "value.scale");
+        final double offset = PropertyUtil.propDoubleOrThrow(simProps, "value.offset");
+        final double jitterChance = PropertyUtil.propDoubleOrThrow(simProps, "value.jitterChance");
+        final double jitterPercent = PropertyUtil.propDoubleOrThrow(simProps, "value.jitterPercent");
+
+        final long intervalMs = PropertyUtil.propLongOrThrow(simProps, "config.intervalMs");
+        final boolean templateEncoder = Boolean.parseBoolean(simProps.getProperty("config.templateEncoder", "false"));
+        final SniffingPayloadCodec payloadCodec = SniffingPayloadCodec.fromProperties(simProps, marshaller, compressionStats);
+        final PayloadCodec meteredCodec = new MeteredObservers.MeteredPayloadCodec(payloadCodec, metrics);
+
+        final String solarReadTopic = PropertyUtil.propOrThrow(simProps, "topic.SolarReadingProfile");
+        final String solarEventTopic = PropertyUtil.propOrThrow(simProps, "topic.SolarEventProfile");
+
+        final String dataFilename = PropertyUtil.propOrThrow(simProps, "data.file");
+
+        final Interpolation interpolation = Interpolation.fromString(simProps.getProperty("data.interpolation", "linear"));
+
+        final DailyInterpolatedData dataSource = new DailyInterpolatedData(LineValueDataLoader.load(dataFilename), interpolation);
+
+        for (int i = 0; i < group.getCount(); i++) {
+            final DeviceId deviceId = group.deviceIdFor(i + 1);
+
+            final SolarEncoder solarEncoder = (templateEncoder && payloadCodec.encodesXml()) ?
+                    new TemplateSolarEncoder(deviceId, marshaller) :
+                    new MarshallingSolarEncoder(deviceId, meteredCodec);
+
+            final SolarPublisher solarPublisher = new SolarPublisher(messageObserver, deviceId, solarEncoder, solarReadTopic, solarEventTopic, clock);
+
+            final SolarObserver solarObserver = (publishPipeline == null) ? solarPublisher :
+                    new AsyncPublishers.AsyncSolarObserver(publishPipeline, deviceId.getLogicalDeviceId(), solarPublisher);
+
+            final SolarSimLoop sim = new SolarSimLoop(deviceId.getLogicalDeviceId(), solarObserver, dataSource, scale, offset, jitterChance, jitterPercent, clock);
+
+            deviceCount++;
+            tasks.add(new FleetTask(deviceId.getLogicalDeviceId(), intervalMs, sim));
+        }
+    }
+
+    private void addBatteryGroup(final FleetManifest.DeviceGroup group) throws Exception {
+        final Properties simProps = group.getConfig();
+
+        final String batteryReadTopic = PropertyUtil.propOrThrow(simProps, "topic.BatteryReadingProfile");
+        final String batteryEventTopic = PropertyUtil.propOrThrow(simProps, "topic.BatteryEventProfile");
+        final String batteryControlTopic = PropertyUtil.propOrThrow(simProps, "topic.BatteryControlProfile");
+
+        final BatteryMachine.BatterySpec batterySpec = new BatteryMachine.BatterySpec(
+                PropertyUtil.propDoubleOrThrow(simProps, "battery.maxChargeRatekW"),
+                PropertyUtil.propDoubleOrThrow(simProps, "battery.maxDischargeRatekW"),
+                PropertyUtil.propDoubleOrThrow(simProps, "battery.energyRatingkWh"),
+                PropertyUtil.propDoubleOrThrow(simProps, "battery.energyMaxkWh"),
+                PropertyUtil.propDoubleOrThrow(simProps, "battery.energyMinkWh"),
+                PropertyUtil.propDoubleOrThrow(simProps, "battery.efficiencyRatio"),
+                PropertyUtil.propDoubleOrThrow(simProps, "battery.voltage"),
+                PropertyUtil.propDoubleOrThrow(simProps, "battery.hertz"));
+
+        final long intervalMs = PropertyUtil.propLongOrThrow(simProps, "config.intervalMs");
+        final boolean templateEncoder = Boolean.parseBoolean(simProps.getProperty("config.templateEncoder", "false"));
+        final SniffingPayloadCodec payloadCodec = SniffingPayloadCodec.fromProperties(simProps, marshaller, compressionStats);
+        final PayloadCodec meteredCodec = new MeteredObservers.MeteredPayloadCodec(payloadCodec, metrics);
+        final boolean eventLoop = Boolean.parseBoolean(simProps.getProperty("config.eventLoop", "false"));
+
+        for (int i = 0; i < group.getCount(); i++) {
+            final DeviceId deviceId = group.deviceIdFor(i + 1);
+
+            final BatteryEncoder batteryEncoder = (templateEncoder && payloadCodec.encodesXml()) ?
+                    new TemplateBatteryEncoder(deviceId, marshaller) :
+                    new MarshallingBatteryEncoder(deviceId, meteredCodec);
+
+            final BatteryPublisher batteryPublisher = new BatteryPublisher(messageObserver, deviceId, batteryEncoder, batteryReadTopic, batteryEventTopic, clock);
+
+            final BatteryObserver batteryObserver = new MeteredObservers.MeteredBatteryObserver((publishPipeline == null) ? batteryPublisher :
+                    new AsyncPublishers.AsyncBatteryObserver(publishPipeline, deviceId.getLogicalDeviceId(), batteryPublisher), metrics, deviceId.getLogicalDeviceId());
+
+            final BatteryMachine machine = new BatteryMachine(deviceId.getLogicalDeviceId(), batteryObserver, intervalMs, batterySpec, clock);
+
+            final BatteryActor actor = eventLoop ? new BatteryActor(machine) : null;
+
+            dispatcher.registerForDevice(batteryControlTopic, deviceId.getLogicalDeviceId(), BatteryControlProfile.class,
+                    new BatterySimPayloadObserver(meteredCodec, deviceId.getLogicalDeviceId(), eventLoop ? actor : machine));
+
+            deviceCount++;
+            tasks.add(new FleetTask(deviceId.getLogicalDeviceId(), intervalMs, machine, actor));
+        }
+    }
+
+    private void addRecloserGroup(final FleetManifest.DeviceGroup group) throws Exception {
+        final Properties simProps = group.getConfig();
+
+        final String recloserEventTopic = PropertyUtil.propOrThrow(simProps, "topic.RecloserEventProfile");
+        final String recloserReadTopic = PropertyUtil.propOrThrow(simProps, "topic.RecloserReadingProfile");
+        final String recloserControlTopic = PropertyUtil.propOrThrow(simProps, "topic.RecloserControlProfile");
+
+        final String batteryReadTopic = PropertyUtil.propOrThrow(simProps, "topic.BatteryReadingProfile");
+        final String resourceReadTopic = PropertyUtil.propOrThrow(simProps, "topic.ResourceReadingProfile");
+        final String solarReadTopic = PropertyUtil.propOrThrow(simProps, "topic.SolarReadingProfile");
+
+        final double voltage = PropertyUtil.propDoubleOrThrow(simProps, "recloser.voltage");
+        final double hertz = PropertyUtil.propDoubleOrThrow(simProps, "recloser.hertz");
+
+        final long intervalMs = PropertyUtil.propLongOrThrow(simProps, "config.intervalMs");
+        final boolean templateEncoder = Boolean.parseBoolean(simProps.getProperty("config.templateEncoder", "false"));
+        final SniffingPayloadCodec payloadCodec = SniffingPayloadCodec.fromProperties(simProps, marshaller, compressionStats);
+        final PayloadCodec meteredCodec = new MeteredObservers.MeteredPayloadCodec(payloadCodec, metrics);
+        final long minPublishIntervalMs = Long.parseLong(simProps.getProperty("config.minPublishIntervalMs", "0"));
+        final String batchTopic = simProps.getProperty("config.batchTopic");
+        if (batchTopic != null) {
+            batchTopics.add(batchTopic);
+        }
+
+        for (int i = 0; i < group.getCount(); i++) {
+            final DeviceId deviceId = group.deviceIdFor(i + 1);
+
+            final RecloserEncoder recloserEncoder = (templateEncoder && payloadCodec.encodesXml()) ?
+                    new TemplateRecloserEncoder(deviceId, marshaller) :
+                    new MarshallingRecloserEncoder(deviceId, meteredCodec);
+
+            final RecloserPublisher recloserPublisher = new RecloserPublisher(messageObserver, deviceId, recloserEncoder, recloserReadTopic, recloserEventTopic, clock);
+
+            final RecloserObserver recloserObserver = new MeteredObservers.MeteredRecloserObserver((publishPipeline == null) ? recloserPublisher :
+                    new AsyncPublishers.AsyncRecloserObserver(publishPipeline, deviceId.getLogicalDeviceId(), recloserPublisher), metrics, deviceId.getLogicalDeviceId());
+
+            final RecloserMachine machine = new RecloserMachine(recloserObserver, voltage, hertz, 0.0, minPublishIntervalMs);
+
+            dispatcher.registerForDevice(recloserControlTopic, deviceId.getLogicalDeviceId(), RecloserControlProfile.class, new SystemSubscribers.RecloserControlSubscriber(machine, meteredCodec, deviceId.getLogicalDeviceId()));
+            dispatcher.register(batteryReadTopic + "/#", PowerReadings.class, new SystemSubscribers.PowerReadSubscriber(machine, PowerReadings.Kind.BATTERY));
+            dispatcher.register(solarReadTopic + "/#", PowerReadings.class, new SystemSubscribers.PowerReadSubscriber(machine, PowerReadings.Kind.SOLAR));
+            dispatcher.register(resourceReadTopic + "/#", PowerReadings.class, new SystemSubscribers.PowerReadSubscriber(machine, PowerReadings.Kind.RESOURCE));
+
+            deviceCount++;
+            tasks.add(new FleetTask(deviceId.getLogicalDeviceId(), intervalMs, machine));
+            if (machine.isCoalescing()) {
+                tasks.add(new FleetTask(deviceId.getLogicalDeviceId() + " flush", minPublishIntervalMs, machine.getFlusher()));
+            }
+        }
+    }
+
+    /**
+     * @param handlerQueueCapacity payloads each handler thread can fall behind by before the client thread waits
+     */
+    public Map<String, PayloadObserver> getSubscriptions(final int handlerQueueCapacity) {
+        final Map<String, PayloadObserver> dispatched = dispatcher.getSubscriptions(threadMode, handlerThreads, handlerQueueCapacity);
+        for (final PayloadObserver observer : dispatched.values()) {
+            if (observer instanceof ThreadedPayloadObserver) {
+                handlers.add((ThreadedPayloadObserver) observer);
+            }
+        }
+        final Map<String, PayloadObserver> subscriptions = MeteredObservers.subscriptions(dispatched, metrics);
+        if (batchTopics.isEmpty()) {
+            return subscriptions;
+        }
+        final Map<String, PayloadObserver> withBatches = new HashMap<String, PayloadObserver>(subscriptions);
+        for (final String batchTopic : batchTopics) {
+            withBatches.putAll(BatchPayloadObserver.withBatchTopic(subscriptions, batchTopic));
+        }
+        return withBatches;
+    }
+
+    /**
+     * @return compression costs of every group, by profile type
+     */
+    public CompressionStats getCompressionStats() {
+        return compressionStats;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    public int getDeviceCount() {
+        return deviceCount;
+    }
+
+    public void start(final TickScheduler scheduler) {
+        final int count = tasks.size();
+        for (int i = 0; i < count; i++) {
+            final FleetTask task = tasks.get(i);
+
+            // spread first ticks across the interval so the fleet does not publish in lockstep
+            final long initialDelayMs = (task.intervalMs * i) / count;
+
+            if (task.actor != null && eventLoopThreads != null) {
+                task.actor.start(scheduler.getPolicy(), initialDelayMs, eventLoopThreads);
+            } else if (task.actor != null) {
+                task.actor.schedule(scheduler, task.logicalDeviceId, initialDelayMs);
+            } else {
+                scheduler.register(task.logicalDeviceId, task.tickable, task.intervalMs, initialDelayMs);
+            }
+        }
+        logger.info("Scheduled " + count + " tasks for " + deviceCount + " devices");
+    }
+
+    /**
+     * Stops the inbound handler threads and the battery event loops. Ticks on the scheduler are
+     * stopped by shutting the scheduler down.
+     */
+    public void stop() {
+        for (final ThreadedPayloadObserver handler : handlers) {
+            handler.close();
+        }
+        handlers.clear();
+        for (final FleetTask task : tasks) {
+            if (task.actor != null) {
+                task.actor.stop();
+            }
+        }
+    }
+
+    private static class FleetTask {
+        private final String logicalDeviceId;
+        private final long intervalMs;
+        private final Tickable tickable;
+        private final BatteryActor actor;
+
+        public FleetTask(String logicalDeviceId, long intervalMs, Tickable tickable) {
+            this(logicalDeviceId, intervalMs, tickable, null);
+        }
+
+        // a task with an actor runs on the actor's own thread rather than the scheduler
+        public FleetTask(String logicalDeviceId, long intervalMs, Tickable tickable, BatteryActor actor) {
+            this.logicalDeviceId = logicalDeviceId;
+            this.intervalMs = intervalMs;
+            this.tickable = tickable;
+            this.actor = actor;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.fleet;
+
+import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.PropertyUtil;
+import com.greenenergycorp.openfmb.simulator.schedule.OverrunPolicy;
+import com.greenenergycorp.openfmb.simulator.schedule.ThreadMode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+public class FleetManifest {
+
+    private final List<DeviceGroup> groups;
+    private final int threads;
+    private final OverrunPolicy overrunPolicy;
+    private final ThreadMode threadMode;
+
+    public FleetManifest(List<DeviceGroup> groups, int threads, OverrunPolicy overrunPolicy, ThreadMode threadMode) {
+        this.groups = groups;
+        this.threads = threads;
+        this.overrunPolicy = overrunPolicy;
+        this.threadMode = threadMode;
+    }
+
+    public List<DeviceGroup> getGroups() {
+        return groups;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public OverrunPolicy getOverrunPolicy() {
+        return overrunPolicy;
+    }
+
+    public ThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    public int getDeviceCount() {
+        int total = 0;
+        for (final DeviceGroup group : groups) {
+            total += group.getCount();
+        }
+        return total;
+    }
+
+    public static FleetManifest fromProperties(final Properties fleetProps) {
+        final String groupList = PropertyUtil.propOrThrow(fleetProps, "fleet.groups");
+
+        final List<DeviceGroup> groups = new ArrayList<DeviceGroup>();
+        for (final String rawName : groupList.split(",")) {
+            final String name = rawName.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            final String prefix = "group." + name + ".";
+
+            final DeviceType type = DeviceType.fromString(PropertyUtil.propOrThrow(fleetProps, prefix + "type"));
+            final String configPath = PropertyUtil.propOrThrow(fleetProps, prefix + "config");
+            final long count = PropertyUtil.propLongOrThrow(fleetProps, prefix + "count");
+            if (count < 1) {
+                throw new IllegalArgumentException("Device count for group " + name + " must be at least 1");
+            }
+
+            final Properties config = PropertyUtil.optionallyLoad(configPath, System.getProperties());
+
+            for (final String key : fleetProps.stringPropertyNames()) {
+                if (key.startsWith(prefix)) {
+                    final String subKey = key.substring(prefix.length());
+                    if (!subKey.equals("type") && !subKey.equals("config") && !subKey.equals("count")) {
+                        config.setProperty(subKey, fleetProps.getProperty(key));
+                    }
+                }
+            }
+
+            groups.add(new DeviceGroup(name, type, config, (int) count));
+        }
+
+        final int threads = Integer.parseInt(fleetProps.getProperty("fleet.threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+
+        final OverrunPolicy overrunPolicy = OverrunPolicy.fromString(fleetProps.getProperty("fleet.overrunPolicy", "skip"));
+
+        final ThreadMode threadMode = ThreadMode.fromString(fleetProps.getProperty("fleet.threadMode", "scheduler"));
+
+        return new FleetManifest(Collections.unmodifiableList(groups), threads, overrunPolicy, threadMode);
+    }
+
+    public enum DeviceType {
+        SOLAR,
+        BATTERY,
+        RECLOSER;
+
+        public static DeviceType fromString(final String s) {
+            for (final DeviceType t : DeviceType.values()) {
+                if (t.name().equalsIgnoreCase(s.trim())) {
+                    return t;
+                }
+            }
+            throw new IllegalArgumentException("Unknown device type: " + s);
+        }
+    }
+
+    public static class DeviceGroup {
+        private final String name;
+        private final DeviceType type;
+        private final Properties config;
+        private final int count;
+
+        public DeviceGroup(String name, DeviceType type, Properties config, int count) {
+            this.name = name;
+            this.type = type;
+            this.config = config;
+            this.count = count;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public DeviceType getType() {
+            return type;
+        }
+
+        public Properties getConfig() {
+            return config;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public DeviceId deviceIdFor(final int index) {
+            final String logicalDeviceId = PropertyUtil.propOrThrow(config, "device.logicalDeviceID");
+            final String mRid = PropertyUtil.propOrThrow(config, "device.mRID");
+            final String name = PropertyUtil.propOrThrow(config, "device.name");
+            final String description = PropertyUtil.propOrThrow(config, "device.description");
+
+            if (count == 1) {
+                return new DeviceId(logicalDeviceId, mRid, name, description);
+            } else {
+                return new DeviceId(logicalDeviceId + "." + index, mRid + "." + index, name, description);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.fleet.mqtt;
+
+import com.greenenergycorp.openfmb.mapping.adapter.MessageObserver;
+import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+import com.greenenergycorp.openfmb.mapping.mqtt.*;
+import com.greenenergycorp.openfmb.simulator.PropertyUtil;
+import com.greenenergycorp.openfmb.simulator.SimClock;
+import com.greenenergycorp.openfmb.simulator.jfr.RecordingMessageObserver;
+import com.greenenergycorp.openfmb.simulator.metrics.MeteredObservers;
+import com.greenenergycorp.openfmb.simulator.metrics.MetricsRegistry;
+import com.greenenergycorp.openfmb.simulator.metrics.SimulatorMetrics;
+import com.greenenergycorp.openfmb.simulator.publish.PublishPipeline;
+import com.greenenergycorp.openfmb.simulator.schedule.TickScheduler;
+import com.greenenergycorp.openfmb.simulator.xml.fleet.FleetHost;
+import com.greenenergycorp.openfmb.simulator.xml.batch.BatchingMessageObserver;
+import com.greenenergycorp.openfmb.simulator.xml.fleet.FleetManifest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Properties;
+
+public class FleetSimulator {
+
+    private final static Logger logger = LoggerFactory.getLogger(FleetSimulator.class);
+
+    public static void main(String[] args) throws Exception {
+
+        final String fleetConfigPath = System.getProperty("config.fleet.path", "fleet.properties");
+
+        final Properties fleetProps = PropertyUtil.optionallyLoad(fleetConfigPath, System.getProperties());
+
+        final FleetManifest manifest = FleetManifest.fromProperties(fleetProps);
+
+        final OpenFmbXmlMarshaller openFmbXmlMarshaller = new OpenFmbXmlMarshaller();
+        final MetricsRegistry metrics = SimulatorMetrics.export(fleetProps, "fleet.", "fleet");
+        final SimClock clock = SimClock.fromProperties(fleetProps, "fleet.");
+
+        final String mqttConfigPath = System.getProperty("config.mqtt.path", "mqtt.properties");
+
+        final MqttConfiguration mqttConfiguration = MqttConfiguration.fromFile(mqttConfigPath);
+
+        final MqttAdapterManager mqttAdapterManager = new MqttAdapterManager(mqttConfiguration, 0);
+
+        final MqttObserver mqttObserver = mqttAdapterManager.getMessageObserver();
+
+        final Thread mqttThread = new Thread(new Runnable() {
+            public void run() {
+                mqttAdapterManager.run();
+            }
+        }, "mqtt publisher");
+
+        final MessageObserver messageObserver = new MeteredObservers.MeteredMessageObserver(new RecordingMessageObserver(new MessageObserverAdapter(mqttObserver, new SimpleTopicMapping())), metrics);
+
+        final PublishPipeline publishPipeline = PublishPipeline.fromProperties(fleetProps, "fleet.", manifest.getThreadMode().threadFactory("fleet publish"));
+
+        final String batchTopic = fleetProps.getProperty("fleet.batch.topic");
+        final BatchingMessageObserver batcher = (batchTopic == null) ? null :
+                new BatchingMessageObserver(messageObserver, batchTopic,
+                        fleetProps.getProperty("fleet.batch.sourceId", "fleet"),
+                        PropertyUtil.propSetOrThrow(fleetProps, "fleet.batch.profiles"),
+                        Integer.parseInt(fleetProps.getProperty("fleet.batch.maxProfiles", "1000")),
+                        Integer.parseInt(fleetProps.getProperty("fleet.batch.maxBytes", "262144")));
+
+        final FleetHost host = new FleetHost((batcher == null) ? messageObserver : batcher, openFmbXmlMarshaller, manifest.getThreadMode(), publishPipeline, metrics, clock);
+
+        for (final FleetManifest.DeviceGroup group : manifest.getGroups()) {
+            logger.info("Adding " + group.getCount() + " " + group.getType() + " device(s) for group " + group.getName());
+            host.addGroup(group);
+        }
+
+        mqttAdapterManager.subscribe(host.getSubscriptions(Integer.parseInt(fleetProps.getProperty("fleet.handlerQueueCapacity", "1024").trim())));
+
+        mqttThread.start();
+
+        final TickScheduler scheduler = new TickScheduler(manifest.getThreads(), "fleet tick", manifest.getOverrunPolicy(), manifest.getThreadMode());
+
+        if (manifest.getThreadMode().isThreadPerTask()) {
+            logger.info("Running " + host.getDeviceCount() + " devices on " + manifest.getThreadMode().name().toLowerCase() + " threads");
+        } else {
+            logger.info("Running " + host.getDeviceCount() + " devices on " + manifest.getThreads() + " threads");
+        }
+        host.start(scheduler);
+        if (batcher != null) {
+            final long flushMs = Long.parseLong(fleetProps.getProperty("fleet.batch.flushMs", "100"));
+            logger.info("Batching profiles on " + batchTopic + ", flushing every " + flushMs + " ms");
+            scheduler.register("batch flush", batcher.getFlusher(), flushMs);
+        }
+        scheduler.startOverrunReporting(10000);
+        SimulatorMetrics.registerScheduler(metrics, scheduler);
+        SimulatorMetrics.registerPipeline(metrics, publishPipeline);
+        if (publishPipeline != null) {
+            publishPipeline.startReporting(10000);
+        }
+        host.getCompressionStats().startReporting(10000);
+
+        scheduler.awaitTermination();
+        host.stop();
+    }
+}
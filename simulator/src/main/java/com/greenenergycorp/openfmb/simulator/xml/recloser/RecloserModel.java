@@ -19,6 +19,7 @@
 package com.greenenergycorp.openfmb.simulator.xml.recloser;
 
 import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.SimClock;
 import com.greenenergycorp.openfmb.simulator.xml.ModelCommon;
 import com.greenenergycorp.openfmb.xml.*;
 
@@ -38,7 +39,10 @@ public class RecloserModel {
     }
 
     public static RecloserReadingProfile buildRecloserRead(final DeviceId id, final List<Reading> readings) throws Exception {
-        final long now = System.currentTimeMillis();
+        return buildRecloserRead(id, readings, SimClock.WALL.currentTimeMillis());
+    }
+
+    public static RecloserReadingProfile buildRecloserRead(final DeviceId id, final List<Reading> readings, final long now) throws Exception {
 
         final RecloserReadingProfile profile = new RecloserReadingProfile();
 
@@ -57,8 +61,15 @@ public class RecloserModel {
             final DeviceId id,
             final boolean isClosed,
             final boolean isBlocked) throws DatatypeConfigurationException {
+        return buildRecloserEvent(id, isClosed, isBlocked, SimClock.WALL.currentTimeMillis());
+    }
+
+    public static RecloserEventProfile buildRecloserEvent(
+            final DeviceId id,
+            final boolean isClosed,
+            final boolean isBlocked,
+            final long now) throws DatatypeConfigurationException {
 
-        final long now = System.currentTimeMillis();
         final XMLGregorianCalendar xmlTime = ModelCommon.xmlTimeFor(now);
 
         final RecloserEventProfile profile = new RecloserEventProfile();
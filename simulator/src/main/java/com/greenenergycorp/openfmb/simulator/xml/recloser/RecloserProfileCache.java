@@ -0,0 +1,72 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.recloser;
+
+import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.xml.ModelCommon;
+import com.greenenergycorp.openfmb.xml.*;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.util.Arrays;
+
+/**
+ * Recloser reading and event profiles for one device. Each call rewrites the readings or the switch
+ * status of the same profile, which is only valid until the next call.
+ */
+public class RecloserProfileCache {
+    private final RecloserReadingProfile readProfile;
+    private final Reading powerReading;
+    private final Reading voltageReading;
+    private final Reading frequencyReading;
+
+    private final RecloserEventProfile eventProfile;
+
+    public RecloserProfileCache(DeviceId id) throws Exception {
+        final long now = System.currentTimeMillis();
+        this.powerReading = ModelCommon.buildReading(0.0, now, UnitSymbolKind.W, UnitMultiplierKind.KILO, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN);
+        this.voltageReading = ModelCommon.buildReading(0.0, now, UnitSymbolKind.V, UnitMultiplierKind.NO_MULTIPLIER, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN);
+        this.frequencyReading = ModelCommon.buildReading(0.0, now, UnitSymbolKind.HZ, UnitMultiplierKind.NO_MULTIPLIER, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN);
+        this.readProfile = RecloserModel.buildRecloserRead(id, Arrays.asList(powerReading, voltageReading, frequencyReading), now);
+        this.eventProfile = RecloserModel.buildRecloserEvent(id, false, false, now);
+    }
+
+    public RecloserReadingProfile readProfile(long now, double power, double voltage, double frequency) throws Exception {
+        final XMLGregorianCalendar xmlTime = ModelCommon.xmlTimeFor(now);
+
+        readProfile.setTimestamp(xmlTime);
+        ModelCommon.updateReading(powerReading, power, xmlTime);
+        ModelCommon.updateReading(voltageReading, voltage, xmlTime);
+        ModelCommon.updateReading(frequencyReading, frequency, xmlTime);
+
+        return readProfile;
+    }
+
+    public RecloserEventProfile eventProfile(long now, boolean isClosed, boolean isBlocked) throws Exception {
+        final XMLGregorianCalendar xmlTime = ModelCommon.xmlTimeFor(now);
+
+        eventProfile.setTimestamp(xmlTime);
+
+        final RecloserStatus recloserStatus = eventProfile.getRecloserStatus();
+        recloserStatus.setIsBlocked(isBlocked);
+        recloserStatus.setSwitchStatus(isClosed ? SwitchStatusKind.CLOSED : SwitchStatusKind.OPEN);
+        recloserStatus.setTimestamp(xmlTime);
+
+        return eventProfile;
+    }
+}
@@ -21,48 +21,57 @@ package com.greenenergycorp.openfmb.simulator.xml.recloser;
 import com.greenenergycorp.openfmb.mapping.adapter.MessageObserver;
 import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
 import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.SimClock;
 import com.greenenergycorp.openfmb.simulator.recloser.RecloserObserver;
-import com.greenenergycorp.openfmb.simulator.xml.ModelCommon;
-import com.greenenergycorp.openfmb.xml.*;
-
-import java.util.Arrays;
 
 public class RecloserPublisher implements RecloserObserver {
 
     private final MessageObserver messageObserver;
     private final DeviceId deviceId;
-    private final OpenFmbXmlMarshaller marshaller;
+    private final RecloserEncoder encoder;
     private final String readTopic;
     private final String eventTopic;
+    private final SimClock clock;
 
-    public RecloserPublisher(MessageObserver messageObserver, DeviceId deviceId, OpenFmbXmlMarshaller marshaller, String readTopic, String eventTopic) {
+    public RecloserPublisher(MessageObserver messageObserver, DeviceId deviceId, RecloserEncoder encoder, String readTopic, String eventTopic) {
+        this(messageObserver, deviceId, encoder, readTopic, eventTopic, SimClock.WALL);
+    }
+
+    /**
+     * @param clock timestamps updates that do not carry their own time
+     */
+    public RecloserPublisher(MessageObserver messageObserver, DeviceId deviceId, RecloserEncoder encoder, String readTopic, String eventTopic, SimClock clock) {
         this.messageObserver = messageObserver;
         this.deviceId = deviceId;
-        this.marshaller = marshaller;
+        this.encoder = encoder;
         this.readTopic = readTopic;
         this.eventTopic = eventTopic;
+        this.clock = clock;
     }
 
-    public void recloserReadUpdate(final double power, final double voltage, final double frequency, final double kvars) throws Exception {
-        final long now = System.currentTimeMillis();
+    public RecloserPublisher(MessageObserver messageObserver, DeviceId deviceId, OpenFmbXmlMarshaller marshaller, String readTopic, String eventTopic) {
+        this(messageObserver, deviceId, new MarshallingRecloserEncoder(deviceId, marshaller), readTopic, eventTopic);
+    }
 
-        final RecloserReadingProfile readProfile = RecloserModel.buildRecloserRead(deviceId, Arrays.asList(
-                ModelCommon.buildReading(power, now, UnitSymbolKind.W, UnitMultiplierKind.KILO, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN),
-                ModelCommon.buildReading(voltage, now, UnitSymbolKind.V, UnitMultiplierKind.NO_MULTIPLIER, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN),
-                ModelCommon.buildReading(frequency, now, UnitSymbolKind.HZ, UnitMultiplierKind.NO_MULTIPLIER, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN)/*,
-                ModelCommon.buildReading(kvars, now, UnitSymbolKind.V_AR, UnitMultiplierKind.NO_MULTIPLIER, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN)*/
-        ));
+    public SimClock getClock() {
+        return clock;
+    }
 
-        final byte[] payloadBytes = marshaller.marshal(readProfile);
-        messageObserver.publish(payloadBytes, readTopic, deviceId.getLogicalDeviceId());
+    public void recloserReadUpdate(final double power, final double voltage, final double frequency, final double kvars) throws Exception {
+        recloserReadUpdate(clock.currentTimeMillis(), power, voltage, frequency, kvars);
     }
 
     public void recloserEventUpdate(final boolean isClosed, final boolean isBlocked) throws Exception {
-        final long now = System.currentTimeMillis();
+        recloserEventUpdate(clock.currentTimeMillis(), isClosed, isBlocked);
+    }
 
-        final RecloserEventProfile eventProfile = RecloserModel.buildRecloserEvent(deviceId, isClosed, isBlocked);
+    public void recloserReadUpdate(final long now, final double power, final double voltage, final double frequency, final double kvars) throws Exception {
+        final byte[] payloadBytes = encoder.encodeRead(now, power, voltage, frequency, kvars);
+        messageObserver.publish(payloadBytes, readTopic, deviceId.getLogicalDeviceId());
+    }
 
-        final byte[] payloadBytes = marshaller.marshal(eventProfile);
+    public void recloserEventUpdate(final long now, final boolean isClosed, final boolean isBlocked) throws Exception {
+        final byte[] payloadBytes = encoder.encodeEvent(now, isClosed, isBlocked);
         messageObserver.publish(payloadBytes, eventTopic, deviceId.getLogicalDeviceId());
 
     }
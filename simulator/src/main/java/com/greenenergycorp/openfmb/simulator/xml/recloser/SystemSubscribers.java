@@ -20,8 +20,13 @@ package com.greenenergycorp.openfmb.simulator.xml.recloser;
 
 import com.greenenergycorp.openfmb.mapping.adapter.PayloadObserver;
 import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+import com.greenenergycorp.openfmb.simulator.jfr.ControlEvent;
 import com.greenenergycorp.openfmb.simulator.recloser.RecloserControlObserver;
 import com.greenenergycorp.openfmb.simulator.recloser.SystemPowerObserver;
+import com.greenenergycorp.openfmb.simulator.xml.InboundDispatcher;
+import com.greenenergycorp.openfmb.simulator.xml.PowerReadings;
+import com.greenenergycorp.openfmb.simulator.xml.codec.PayloadCodec;
+import com.greenenergycorp.openfmb.simulator.xml.codec.XmlPayloadCodec;
 import com.greenenergycorp.openfmb.xml.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,16 +34,20 @@ import org.slf4j.LoggerFactory;
 public class SystemSubscribers {
 
 
-    public static class RecloserControlSubscriber implements PayloadObserver {
+    public static class RecloserControlSubscriber implements PayloadObserver, InboundDispatcher.ProfileHandler<RecloserControlProfile> {
         private final static Logger logger = LoggerFactory.getLogger(RecloserControlSubscriber.class);
 
         private final RecloserControlObserver machine;
-        private final OpenFmbXmlMarshaller marshaller;
+        private final PayloadCodec codec;
         private final String logicalDeviceId;
 
         public RecloserControlSubscriber(RecloserControlObserver machine, OpenFmbXmlMarshaller marshaller, String logicalDeviceId) {
+            this(machine, new XmlPayloadCodec(marshaller), logicalDeviceId);
+        }
+
+        public RecloserControlSubscriber(RecloserControlObserver machine, PayloadCodec codec, String logicalDeviceId) {
             this.machine = machine;
-            this.marshaller = marshaller;
+            this.codec = codec;
             this.logicalDeviceId = logicalDeviceId;
         }
 
@@ -46,129 +55,186 @@ public class SystemSubscribers {
         public void handle(byte[] bytes) {
             try {
 
-                final Object object = marshaller.unmarshal(bytes);
+                final Object object = codec.decode(bytes);
                 if (object instanceof RecloserControlProfile) {
-                    final RecloserControlProfile controlProfile = (RecloserControlProfile) object;
-
-                    if (controlProfile.getLogicalDeviceID().equals(logicalDeviceId)) {
+                    handleProfile((RecloserControlProfile) object);
+                }
+            } catch (Throwable ex) {
+                logger.warn("Error handling setpoint: " + ex);
+            }
+        }
 
-                        if (controlProfile.getRecloserControl() != null && controlProfile.getRecloserControl().getEndDeviceControlType() != null) {
+        public void handleProfile(RecloserControlProfile controlProfile) {
+            if (controlProfile.getLogicalDeviceID().equals(logicalDeviceId)) {
 
-                            final EndDeviceControlType control = controlProfile.getRecloserControl().getEndDeviceControlType();
-                            if (control.getAction().trim().equals("trip")) {
-                                machine.handleOpen();
-                            } else if (control.getAction().trim().equals("close")) {
-                                machine.handleClose();
-                            }
-                        }
+                if (controlProfile.getRecloserControl() != null && controlProfile.getRecloserControl().getEndDeviceControlType() != null) {
 
+                    final EndDeviceControlType control = controlProfile.getRecloserControl().getEndDeviceControlType();
+                    final ControlEvent event = new ControlEvent();
+                    event.begin();
+                    if (control.getAction().trim().equals("trip")) {
+                        machine.handleOpen();
+                        event.record(logicalDeviceId, "trip", Double.NaN);
+                    } else if (control.getAction().trim().equals("close")) {
+                        machine.handleClose();
+                        event.record(logicalDeviceId, "close", Double.NaN);
                     }
                 }
-            } catch (Throwable ex) {
-                logger.warn("Error handling setpoint: " + ex);
+
             }
         }
     }
 
-    public static class BatteryReadSubscriber implements PayloadObserver {
+    public static class BatteryReadSubscriber implements PayloadObserver, InboundDispatcher.ProfileHandler<BatteryReadingProfile> {
         private final static Logger logger = LoggerFactory.getLogger(BatteryReadSubscriber.class);
 
         private final SystemPowerObserver machine;
-        private final OpenFmbXmlMarshaller marshaller;
+        private final PayloadCodec codec;
 
         public BatteryReadSubscriber(SystemPowerObserver machine, OpenFmbXmlMarshaller marshaller) {
+            this(machine, new XmlPayloadCodec(marshaller));
+        }
+
+        public BatteryReadSubscriber(SystemPowerObserver machine, PayloadCodec codec) {
             this.machine = machine;
-            this.marshaller = marshaller;
+            this.codec = codec;
         }
 
 
         public void handle(byte[] bytes) {
             try {
 
-                final Object object = marshaller.unmarshal(bytes);
+                final Object object = codec.decode(bytes);
                 if (object instanceof BatteryReadingProfile) {
-                    final BatteryReadingProfile profile = (BatteryReadingProfile) object;
-
-                    final String logicalDeviceId = profile.getLogicalDeviceID();
-
-                    for (final Reading r: profile.getReadings()) {
-                        if (r.getReadingType().getUnit() == UnitSymbolKind.W) {
-                            final double value = (double) r.getValue();
-                            machine.updateBatteryPower(logicalDeviceId, value);
-                        }
-                    }
+                    handleProfile((BatteryReadingProfile) object);
                 }
             } catch (Throwable ex) {
                 logger.warn("Error handling reading: " + ex);
             }
         }
+
+        public void handleProfile(BatteryReadingProfile profile) {
+            final String logicalDeviceId = profile.getLogicalDeviceID();
+
+            for (final Reading r: profile.getReadings()) {
+                if (r.getReadingType().getUnit() == UnitSymbolKind.W) {
+                    final double value = (double) r.getValue();
+                    machine.updateBatteryPower(logicalDeviceId, value);
+                }
+            }
+        }
     }
 
-    public static class SolarReadSubscriber implements PayloadObserver {
+    public static class SolarReadSubscriber implements PayloadObserver, InboundDispatcher.ProfileHandler<SolarReadingProfile> {
         private final static Logger logger = LoggerFactory.getLogger(SolarReadSubscriber.class);
 
         private final SystemPowerObserver machine;
-        private final OpenFmbXmlMarshaller marshaller;
+        private final PayloadCodec codec;
 
         public SolarReadSubscriber(SystemPowerObserver machine, OpenFmbXmlMarshaller marshaller) {
+            this(machine, new XmlPayloadCodec(marshaller));
+        }
+
+        public SolarReadSubscriber(SystemPowerObserver machine, PayloadCodec codec) {
             this.machine = machine;
-            this.marshaller = marshaller;
+            this.codec = codec;
         }
 
 
         public void handle(byte[] bytes) {
             try {
 
-                final Object object = marshaller.unmarshal(bytes);
+                final Object object = codec.decode(bytes);
                 if (object instanceof SolarReadingProfile) {
-                    final SolarReadingProfile profile = (SolarReadingProfile) object;
-
-                    final String logicalDeviceId = profile.getLogicalDeviceID();
-
-                    for (final Reading r: profile.getReadings()) {
-                        if (r.getReadingType().getUnit() == UnitSymbolKind.W) {
-                            final double value = (double) r.getValue();
-                            machine.updateSolarPower(logicalDeviceId, value);
-                        }
-                    }
+                    handleProfile((SolarReadingProfile) object);
                 }
             } catch (Throwable ex) {
                 logger.warn("Error handling reading: " + ex);
             }
         }
+
+        public void handleProfile(SolarReadingProfile profile) {
+            final String logicalDeviceId = profile.getLogicalDeviceID();
+
+            for (final Reading r: profile.getReadings()) {
+                if (r.getReadingType().getUnit() == UnitSymbolKind.W) {
+                    final double value = (double) r.getValue();
+                    machine.updateSolarPower(logicalDeviceId, value);
+                }
+            }
+        }
     }
 
-    public static class ResourceReadSubscriber implements PayloadObserver {
+    public static class ResourceReadSubscriber implements PayloadObserver, InboundDispatcher.ProfileHandler<ResourceReadingProfile> {
         private final static Logger logger = LoggerFactory.getLogger(ResourceReadSubscriber.class);
 
         private final SystemPowerObserver machine;
-        private final OpenFmbXmlMarshaller marshaller;
+        private final PayloadCodec codec;
 
         public ResourceReadSubscriber(SystemPowerObserver machine, OpenFmbXmlMarshaller marshaller) {
+            this(machine, new XmlPayloadCodec(marshaller));
+        }
+
+        public ResourceReadSubscriber(SystemPowerObserver machine, PayloadCodec codec) {
             this.machine = machine;
-            this.marshaller = marshaller;
+            this.codec = codec;
         }
 
 
         public void handle(byte[] bytes) {
             try {
 
-                final Object object = marshaller.unmarshal(bytes);
+                final Object object = codec.decode(bytes);
                 if (object instanceof ResourceReadingProfile) {
-                    final ResourceReadingProfile profile = (ResourceReadingProfile) object;
-
-                    final String logicalDeviceId = profile.getLogicalDeviceID();
-
-                    for (final Reading r: profile.getReadings()) {
-                        if (r.getReadingType().getUnit() == UnitSymbolKind.W) {
-                            final double value = (double) r.getValue();
-                            machine.updateLoadPower(logicalDeviceId, value);
-                        }
-                    }
+                    handleProfile((ResourceReadingProfile) object);
                 }
             } catch (Throwable ex) {
                 logger.warn("Error handling reading: " + ex);
             }
         }
+
+        public void handleProfile(ResourceReadingProfile profile) {
+            final String logicalDeviceId = profile.getLogicalDeviceID();
+
+            for (final Reading r: profile.getReadings()) {
+                if (r.getReadingType().getUnit() == UnitSymbolKind.W) {
+                    final double value = (double) r.getValue();
+                    machine.updateLoadPower(logicalDeviceId, value);
+                }
+            }
+        }
+    }
+
+    public static class PowerReadSubscriber implements InboundDispatcher.ProfileHandler<PowerReadings> {
+
+        private final SystemPowerObserver machine;
+        private final PowerReadings.Kind kind;
+
+        public PowerReadSubscriber(SystemPowerObserver machine, PowerReadings.Kind kind) {
+            this.machine = machine;
+            this.kind = kind;
+        }
+
+        public void handleProfile(PowerReadings readings) {
+            if (readings.getKind() != kind) {
+                return;
+            }
+
+            final String logicalDeviceId = readings.getLogicalDeviceId();
+
+            for (final double value : readings.getPowers()) {
+                switch (kind) {
+                    case BATTERY:
+                        machine.updateBatteryPower(logicalDeviceId, value);
+                        break;
+                    case SOLAR:
+                        machine.updateSolarPower(logicalDeviceId, value);
+                        break;
+                    case RESOURCE:
+                        machine.updateLoadPower(logicalDeviceId, value);
+                        break;
+                }
+            }
+        }
     }
 }
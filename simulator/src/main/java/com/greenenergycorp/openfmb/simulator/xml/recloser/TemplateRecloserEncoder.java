@@ -0,0 +1,82 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.recloser;
+
+import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.xml.XmlTemplate;
+
+public class TemplateRecloserEncoder implements RecloserEncoder {
+    private final MarshallingRecloserEncoder marshalling;
+    private final XmlTemplate readTemplate;
+
+    // one event template per closed/blocked combination, indexed by eventIndex()
+    private final XmlTemplate[] eventTemplates = new XmlTemplate[4];
+
+    private final float[] readValues = new float[3];
+    private final float[] noValues = new float[0];
+
+    public TemplateRecloserEncoder(DeviceId deviceId, OpenFmbXmlMarshaller marshaller) {
+        this.marshalling = new MarshallingRecloserEncoder(deviceId, marshaller);
+
+        this.readTemplate = XmlTemplate.build("RecloserReadingProfile " + deviceId.getLogicalDeviceId(), new XmlTemplate.Renderer() {
+            public byte[] marshal(long time, float[] values) throws Exception {
+                return marshalling.encodeRead(time, values[0], values[1], values[2], 0.0);
+            }
+        }, 3);
+
+        for (int i = 0; i < eventTemplates.length; i++) {
+            final boolean isClosed = (i & 1) != 0;
+            final boolean isBlocked = (i & 2) != 0;
+            eventTemplates[i] = XmlTemplate.build("RecloserEventProfile " + deviceId.getLogicalDeviceId(), new XmlTemplate.Renderer() {
+                public byte[] marshal(long time, float[] values) throws Exception {
+                    return marshalling.encodeEvent(time, isClosed, isBlocked);
+                }
+            }, 0);
+        }
+    }
+
+    private static int eventIndex(boolean isClosed, boolean isBlocked) {
+        return (isClosed ? 1 : 0) + (isBlocked ? 2 : 0);
+    }
+
+    public synchronized byte[] encodeRead(long now, double power, double voltage, double frequency, double kvars) throws Exception {
+        if (readTemplate != null) {
+            readValues[0] = (float) power;
+            readValues[1] = (float) voltage;
+            readValues[2] = (float) frequency;
+            final byte[] bytes = readTemplate.render(XmlTemplate.timeText(now), readValues);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+        return marshalling.encodeRead(now, power, voltage, frequency, kvars);
+    }
+
+    public synchronized byte[] encodeEvent(long now, boolean isClosed, boolean isBlocked) throws Exception {
+        final XmlTemplate template = eventTemplates[eventIndex(isClosed, isBlocked)];
+        if (template != null) {
+            final byte[] bytes = template.render(XmlTemplate.timeText(now), noValues);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+        return marshalling.encodeEvent(now, isClosed, isBlocked);
+    }
+}
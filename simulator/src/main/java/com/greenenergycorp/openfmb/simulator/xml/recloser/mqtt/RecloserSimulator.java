@@ -24,15 +24,35 @@ import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
 import com.greenenergycorp.openfmb.mapping.mqtt.*;
 import com.greenenergycorp.openfmb.simulator.DeviceId;
 import com.greenenergycorp.openfmb.simulator.PropertyUtil;
+import com.greenenergycorp.openfmb.simulator.SimClock;
 import com.greenenergycorp.openfmb.simulator.recloser.RecloserMachine;
+import com.greenenergycorp.openfmb.simulator.recloser.RecloserObserver;
+import com.greenenergycorp.openfmb.simulator.jfr.RecordingMessageObserver;
+import com.greenenergycorp.openfmb.simulator.metrics.MeteredObservers;
+import com.greenenergycorp.openfmb.simulator.metrics.MetricsRegistry;
+import com.greenenergycorp.openfmb.simulator.metrics.SimulatorMetrics;
+import com.greenenergycorp.openfmb.simulator.publish.AsyncPublishers;
+import com.greenenergycorp.openfmb.simulator.publish.PublishPipeline;
+import com.greenenergycorp.openfmb.simulator.schedule.OverrunPolicy;
+import com.greenenergycorp.openfmb.simulator.schedule.ThreadMode;
+import com.greenenergycorp.openfmb.simulator.schedule.TickScheduler;
+import com.greenenergycorp.openfmb.simulator.xml.InboundDispatcher;
+import com.greenenergycorp.openfmb.simulator.xml.PowerReadings;
+import com.greenenergycorp.openfmb.simulator.xml.batch.BatchPayloadObserver;
+import com.greenenergycorp.openfmb.simulator.xml.recloser.MarshallingRecloserEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.recloser.RecloserEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.codec.PayloadCodec;
+import com.greenenergycorp.openfmb.simulator.xml.codec.SniffingPayloadCodec;
 import com.greenenergycorp.openfmb.simulator.xml.recloser.RecloserPublisher;
 import com.greenenergycorp.openfmb.simulator.xml.recloser.SystemSubscribers;
+import com.greenenergycorp.openfmb.simulator.xml.recloser.TemplateRecloserEncoder;
+import com.greenenergycorp.openfmb.xml.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ThreadFactory;
 
 public class RecloserSimulator {
 
@@ -63,8 +83,18 @@ public class RecloserSimulator {
         final double hertz = PropertyUtil.propDoubleOrThrow(simProps, "recloser.hertz");
 
         final long intervalMs = PropertyUtil.propLongOrThrow(simProps, "config.intervalMs");
+        final long minPublishIntervalMs = Long.parseLong(simProps.getProperty("config.minPublishIntervalMs", "0"));
+        final OverrunPolicy overrunPolicy = OverrunPolicy.fromString(simProps.getProperty("config.overrunPolicy", "skip"));
+        final ThreadMode threadMode = ThreadMode.fromString(simProps.getProperty("config.threadMode", "scheduler"));
+        final SimClock clock = SimClock.fromProperties(simProps, "config.");
+        final boolean templateEncoder = Boolean.parseBoolean(simProps.getProperty("config.templateEncoder", "false"));
+        final String batchTopic = simProps.getProperty("config.batchTopic");
 
         final OpenFmbXmlMarshaller openFmbXmlMarshaller = new OpenFmbXmlMarshaller();
+        final SniffingPayloadCodec payloadCodec = SniffingPayloadCodec.fromProperties(simProps, openFmbXmlMarshaller);
+        payloadCodec.getCompressionStats().startReporting(60000);
+        final MetricsRegistry metrics = SimulatorMetrics.export(simProps, "config.", "recloser " + logicalDeviceId);
+        final PayloadCodec meteredCodec = new MeteredObservers.MeteredPayloadCodec(payloadCodec, metrics);
 
         final String mqttConfigPath = System.getProperty("config.mqtt.path", "mqtt.properties");
 
@@ -80,27 +110,53 @@ public class RecloserSimulator {
             }
         }, "mqtt publisher");
 
-        final MessageObserver messageObserver = new MessageObserverAdapter(mqttObserver, new SimpleTopicMapping());
+        final MessageObserver messageObserver = new MeteredObservers.MeteredMessageObserver(new RecordingMessageObserver(new MessageObserverAdapter(mqttObserver, new SimpleTopicMapping())), metrics);
 
-        final RecloserPublisher recloserPublisher = new RecloserPublisher(messageObserver, deviceId, openFmbXmlMarshaller, recloserReadTopic, recloserEventTopic);
+        final RecloserEncoder recloserEncoder = (templateEncoder && payloadCodec.encodesXml()) ?
+                new TemplateRecloserEncoder(deviceId, openFmbXmlMarshaller) :
+                new MarshallingRecloserEncoder(deviceId, meteredCodec);
 
-        final RecloserMachine machine = new RecloserMachine(recloserPublisher, voltage, hertz, 0.0);
+        final RecloserPublisher recloserPublisher = new RecloserPublisher(messageObserver, deviceId, recloserEncoder, recloserReadTopic, recloserEventTopic, clock);
 
-        final Map<String, PayloadObserver> controlHandlerMap = new HashMap<String, PayloadObserver>();
-        controlHandlerMap.put(recloserControlTopic + "/" + deviceId.getLogicalDeviceId(), new SystemSubscribers.RecloserControlSubscriber(machine, openFmbXmlMarshaller, logicalDeviceId));
-        controlHandlerMap.put(batteryReadTopic + "/#", new SystemSubscribers.BatteryReadSubscriber(machine, openFmbXmlMarshaller));
-        controlHandlerMap.put(solarReadTopic + "/#", new SystemSubscribers.SolarReadSubscriber(machine, openFmbXmlMarshaller));
-        controlHandlerMap.put(resourceReadTopic + "/#", new SystemSubscribers.ResourceReadSubscriber(machine, openFmbXmlMarshaller));
+        final PublishPipeline publishPipeline = PublishPipeline.fromProperties(simProps, "config.", threadMode.threadFactory("recloser publish"));
+        final RecloserObserver recloserObserver = new MeteredObservers.MeteredRecloserObserver((publishPipeline == null) ? recloserPublisher :
+                new AsyncPublishers.AsyncRecloserObserver(publishPipeline, logicalDeviceId, recloserPublisher), metrics, logicalDeviceId);
 
-        mqttAdapterManager.subscribe(controlHandlerMap);
+        final RecloserMachine machine = new RecloserMachine(recloserObserver, voltage, hertz, 0.0, minPublishIntervalMs);
+
+        final ThreadFactory handlerThreads = threadMode.threadFactory("recloser handler");
+        final int handlerQueueCapacity = Integer.parseInt(simProps.getProperty("config.handlerQueueCapacity", "1024").trim());
+
+        final InboundDispatcher dispatcher = new InboundDispatcher(meteredCodec);
+        dispatcher.registerForDevice(recloserControlTopic, logicalDeviceId, RecloserControlProfile.class, new SystemSubscribers.RecloserControlSubscriber(machine, meteredCodec, logicalDeviceId));
+        dispatcher.register(batteryReadTopic + "/#", PowerReadings.class, new SystemSubscribers.PowerReadSubscriber(machine, PowerReadings.Kind.BATTERY));
+        dispatcher.register(solarReadTopic + "/#", PowerReadings.class, new SystemSubscribers.PowerReadSubscriber(machine, PowerReadings.Kind.SOLAR));
+        dispatcher.register(resourceReadTopic + "/#", PowerReadings.class, new SystemSubscribers.PowerReadSubscriber(machine, PowerReadings.Kind.RESOURCE));
+
+        final Map<String, PayloadObserver> subscriptions = MeteredObservers.subscriptions(dispatcher.getSubscriptions(threadMode, handlerThreads, handlerQueueCapacity), metrics);
+        if (batchTopic != null) {
+            logger.info("Unpacking batched profiles from " + batchTopic);
+            mqttAdapterManager.subscribe(BatchPayloadObserver.withBatchTopic(subscriptions, batchTopic));
+        } else {
+            mqttAdapterManager.subscribe(subscriptions);
+        }
 
         mqttThread.start();
 
         logger.info("Pushing updates every " + intervalMs + " ms");
-        while (true) {
-            machine.push();
-            Thread.sleep(intervalMs);
+        final TickScheduler scheduler = new TickScheduler(1, "recloser tick", overrunPolicy, threadMode);
+        scheduler.register(logicalDeviceId, machine, intervalMs);
+        if (machine.isCoalescing()) {
+            logger.info("Coalescing power updates, publishing at most every " + minPublishIntervalMs + " ms");
+            scheduler.register(logicalDeviceId + " flush", machine.getFlusher(), minPublishIntervalMs);
+        }
+        scheduler.startOverrunReporting(60000);
+        SimulatorMetrics.registerScheduler(metrics, scheduler);
+        SimulatorMetrics.registerPipeline(metrics, publishPipeline);
+        if (publishPipeline != null) {
+            publishPipeline.startReporting(60000);
         }
+        scheduler.awaitTermination();
 
     }
 }
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.solar;
+
+import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.xml.codec.PayloadCodec;
+import com.greenenergycorp.openfmb.simulator.xml.codec.XmlPayloadCodec;
+
+public class MarshallingSolarEncoder implements SolarEncoder {
+    private final DeviceId deviceId;
+    private final PayloadCodec codec;
+
+    private SolarProfileCache profiles = null;
+
+    public MarshallingSolarEncoder(DeviceId deviceId, PayloadCodec codec) {
+        this.deviceId = deviceId;
+        this.codec = codec;
+    }
+
+    public MarshallingSolarEncoder(DeviceId deviceId, OpenFmbXmlMarshaller marshaller) {
+        this(deviceId, new XmlPayloadCodec(marshaller));
+    }
+
+    private SolarProfileCache profiles() throws Exception {
+        if (profiles == null) {
+            profiles = new SolarProfileCache(deviceId);
+        }
+        return profiles;
+    }
+
+    public synchronized byte[] encodeRead(long now, double power) throws Exception {
+        return codec.encode(profiles().readProfile(now, power));
+    }
+
+    public synchronized byte[] encodeEvent(long now) throws Exception {
+        return codec.encode(profiles().eventProfile(now));
+    }
+}
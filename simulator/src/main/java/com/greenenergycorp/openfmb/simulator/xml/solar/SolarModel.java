@@ -19,9 +19,12 @@
 package com.greenenergycorp.openfmb.simulator.xml.solar;
 
 import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.SimClock;
 import com.greenenergycorp.openfmb.simulator.xml.ModelCommon;
 import com.greenenergycorp.openfmb.xml.*;
 
+import javax.xml.datatype.XMLGregorianCalendar;
+
 public class SolarModel {
 
     public static SolarInverter buildSolarDescription(DeviceId id) {
@@ -33,8 +36,10 @@ public class SolarModel {
     }
 
     public static SolarReadingProfile buildSolarRead(DeviceId id, double power) throws Exception {
+        return buildSolarRead(id, power, SimClock.WALL.currentTimeMillis());
+    }
 
-        final long now = System.currentTimeMillis();
+    public static SolarReadingProfile buildSolarRead(DeviceId id, double power, long now) throws Exception {
 
         final SolarReadingProfile profile = new SolarReadingProfile();
 
@@ -56,19 +61,23 @@ public class SolarModel {
     }
 
     public static SolarEventProfile buildSolarEvent(DeviceId id) throws Exception {
+        return buildSolarEvent(id, SimClock.WALL.currentTimeMillis());
+    }
 
-        final long now = System.currentTimeMillis();
+    public static SolarEventProfile buildSolarEvent(DeviceId id, long now) throws Exception {
+
+        final XMLGregorianCalendar xmlTime = ModelCommon.xmlTimeFor(now);
 
         final SolarEventProfile profile = new SolarEventProfile();
 
         profile.setLogicalDeviceID(id.getLogicalDeviceId());
-        profile.setTimestamp(ModelCommon.xmlTimeFor(now));
+        profile.setTimestamp(xmlTime);
         profile.setSolarInverter(buildSolarDescription(id));
 
         final SolarInverterStatus status = new SolarInverterStatus();
         status.setIsConnected(true);
         status.setValue("");
-        status.setTimestamp(ModelCommon.xmlTimeFor(now));
+        status.setTimestamp(xmlTime);
         status.setQualityFlag(new byte[]{0, 0});
 
         profile.setSolarInverterStatus(status);
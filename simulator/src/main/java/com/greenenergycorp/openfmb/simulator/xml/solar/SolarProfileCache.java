@@ -0,0 +1,61 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.solar;
+
+import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.xml.ModelCommon;
+import com.greenenergycorp.openfmb.xml.*;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+/**
+ * Solar reading and event profiles for one inverter. Only the power reading and the timestamps change
+ * between calls; the returned profile is only valid until the next call.
+ */
+public class SolarProfileCache {
+    private final SolarReadingProfile readProfile;
+    private final Reading powerReading;
+
+    private final SolarEventProfile eventProfile;
+
+    public SolarProfileCache(DeviceId id) throws Exception {
+        final long now = System.currentTimeMillis();
+        this.readProfile = SolarModel.buildSolarRead(id, 0.0, now);
+        this.powerReading = readProfile.getReadings().get(0);
+        this.eventProfile = SolarModel.buildSolarEvent(id, now);
+    }
+
+    public SolarReadingProfile readProfile(long now, double power) throws Exception {
+        final XMLGregorianCalendar xmlTime = ModelCommon.xmlTimeFor(now);
+
+        readProfile.setTimestamp(xmlTime);
+        ModelCommon.updateReading(powerReading, power, xmlTime);
+
+        return readProfile;
+    }
+
+    public SolarEventProfile eventProfile(long now) throws Exception {
+        final XMLGregorianCalendar xmlTime = ModelCommon.xmlTimeFor(now);
+
+        eventProfile.setTimestamp(xmlTime);
+        eventProfile.getSolarInverterStatus().setTimestamp(xmlTime);
+
+        return eventProfile;
+    }
+}
@@ -21,34 +21,56 @@ package com.greenenergycorp.openfmb.simulator.xml.solar;
 import com.greenenergycorp.openfmb.mapping.adapter.MessageObserver;
 import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
 import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.SimClock;
 import com.greenenergycorp.openfmb.simulator.solar.SolarObserver;
-import com.greenenergycorp.openfmb.xml.SolarEventProfile;
-import com.greenenergycorp.openfmb.xml.SolarReadingProfile;
 
 public class SolarPublisher implements SolarObserver {
     private final MessageObserver messageObserver;
     private final DeviceId deviceId;
-    private final OpenFmbXmlMarshaller marshaller;
+    private final SolarEncoder encoder;
     private final String readTopic;
     private final String eventTopic;
+    private final SimClock clock;
 
-    public SolarPublisher(MessageObserver messageObserver, DeviceId deviceId, OpenFmbXmlMarshaller marshaller, String readTopic, String eventTopic) {
+    public SolarPublisher(MessageObserver messageObserver, DeviceId deviceId, SolarEncoder encoder, String readTopic, String eventTopic) {
+        this(messageObserver, deviceId, encoder, readTopic, eventTopic, SimClock.WALL);
+    }
+
+    /**
+     * @param clock timestamps updates that do not carry their own time
+     */
+    public SolarPublisher(MessageObserver messageObserver, DeviceId deviceId, SolarEncoder encoder, String readTopic, String eventTopic, SimClock clock) {
         this.messageObserver = messageObserver;
         this.deviceId = deviceId;
-        this.marshaller = marshaller;
+        this.encoder = encoder;
         this.readTopic = readTopic;
         this.eventTopic = eventTopic;
+        this.clock = clock;
+    }
+
+    public SolarPublisher(MessageObserver messageObserver, DeviceId deviceId, OpenFmbXmlMarshaller marshaller, String readTopic, String eventTopic) {
+        this(messageObserver, deviceId, new MarshallingSolarEncoder(deviceId, marshaller), readTopic, eventTopic);
+    }
+
+    public SimClock getClock() {
+        return clock;
     }
 
     public void solarReadUpdate(final double outputPower) throws Exception {
-        final SolarReadingProfile read = SolarModel.buildSolarRead(deviceId, outputPower);
-        final byte[] readBytes = marshaller.marshal(read);
-        messageObserver.publish(readBytes, readTopic, deviceId.getLogicalDeviceId());
+        solarReadUpdate(clock.currentTimeMillis(), outputPower);
     }
 
     public void solarEventUpdate() throws Exception {
-        final SolarEventProfile event = SolarModel.buildSolarEvent(deviceId);
-        final byte[] eventBytes = marshaller.marshal(event);
+        solarEventUpdate(clock.currentTimeMillis());
+    }
+
+    public void solarReadUpdate(final long now, final double outputPower) throws Exception {
+        final byte[] readBytes = encoder.encodeRead(now, outputPower);
+        messageObserver.publish(readBytes, readTopic, deviceId.getLogicalDeviceId());
+    }
+
+    public void solarEventUpdate(final long now) throws Exception {
+        final byte[] eventBytes = encoder.encodeEvent(now);
         messageObserver.publish(eventBytes, eventTopic, deviceId.getLogicalDeviceId());
     }
 
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.solar;
+
+import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.xml.XmlTemplate;
+
+public class TemplateSolarEncoder implements SolarEncoder {
+    private static final float[] noValues = new float[0];
+
+    private final MarshallingSolarEncoder marshalling;
+    private final XmlTemplate readTemplate;
+    private final XmlTemplate eventTemplate;
+
+    private final float[] readValues = new float[1];
+
+    public TemplateSolarEncoder(DeviceId deviceId, OpenFmbXmlMarshaller marshaller) {
+        this.marshalling = new MarshallingSolarEncoder(deviceId, marshaller);
+
+        this.readTemplate = XmlTemplate.build("SolarReadingProfile " + deviceId.getLogicalDeviceId(), new XmlTemplate.Renderer() {
+            public byte[] marshal(long time, float[] values) throws Exception {
+                return marshalling.encodeRead(time, values[0]);
+            }
+        }, 1);
+
+        this.eventTemplate = XmlTemplate.build("SolarEventProfile " + deviceId.getLogicalDeviceId(), new XmlTemplate.Renderer() {
+            public byte[] marshal(long time, float[] values) throws Exception {
+                return marshalling.encodeEvent(time);
+            }
+        }, 0);
+    }
+
+    public synchronized byte[] encodeRead(long now, double power) throws Exception {
+        if (readTemplate != null) {
+            readValues[0] = (float) power;
+            final byte[] bytes = readTemplate.render(XmlTemplate.timeText(now), readValues);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+        return marshalling.encodeRead(now, power);
+    }
+
+    public synchronized byte[] encodeEvent(long now) throws Exception {
+        if (eventTemplate != null) {
+            final byte[] bytes = eventTemplate.render(XmlTemplate.timeText(now), noValues);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+        return marshalling.encodeEvent(now);
+    }
+}
@@ -23,11 +23,27 @@ import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
 import com.greenenergycorp.openfmb.mapping.mqtt.*;
 import com.greenenergycorp.openfmb.simulator.DailyInterpolatedData;
 import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.Interpolation;
 import com.greenenergycorp.openfmb.simulator.LineValueDataLoader;
 import com.greenenergycorp.openfmb.simulator.PropertyUtil;
+import com.greenenergycorp.openfmb.simulator.SimClock;
+import com.greenenergycorp.openfmb.simulator.jfr.RecordingMessageObserver;
+import com.greenenergycorp.openfmb.simulator.metrics.MeteredObservers;
+import com.greenenergycorp.openfmb.simulator.metrics.MetricsRegistry;
+import com.greenenergycorp.openfmb.simulator.metrics.SimulatorMetrics;
+import com.greenenergycorp.openfmb.simulator.publish.AsyncPublishers;
+import com.greenenergycorp.openfmb.simulator.publish.PublishPipeline;
+import com.greenenergycorp.openfmb.simulator.schedule.OverrunPolicy;
+import com.greenenergycorp.openfmb.simulator.schedule.ThreadMode;
+import com.greenenergycorp.openfmb.simulator.schedule.TickScheduler;
 import com.greenenergycorp.openfmb.simulator.solar.SolarObserver;
 import com.greenenergycorp.openfmb.simulator.solar.SolarSimLoop;
+import com.greenenergycorp.openfmb.simulator.xml.solar.MarshallingSolarEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.solar.SolarEncoder;
+import com.greenenergycorp.openfmb.simulator.xml.codec.PayloadCodec;
+import com.greenenergycorp.openfmb.simulator.xml.codec.SniffingPayloadCodec;
 import com.greenenergycorp.openfmb.simulator.xml.solar.SolarPublisher;
+import com.greenenergycorp.openfmb.simulator.xml.solar.TemplateSolarEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,19 +70,28 @@ public class SolarSimulator {
         final double jitterPercent = PropertyUtil.propDoubleOrThrow(simProps, "value.jitterPercent");
 
         final long intervalMs = PropertyUtil.propLongOrThrow(simProps, "config.intervalMs");
+        final OverrunPolicy overrunPolicy = OverrunPolicy.fromString(simProps.getProperty("config.overrunPolicy", "skip"));
+        final ThreadMode threadMode = ThreadMode.fromString(simProps.getProperty("config.threadMode", "scheduler"));
+        final SimClock clock = SimClock.fromProperties(simProps, "config.");
+        final boolean templateEncoder = Boolean.parseBoolean(simProps.getProperty("config.templateEncoder", "false"));
 
         final String solarReadTopic = PropertyUtil.propOrThrow(simProps, "topic.SolarReadingProfile");
         final String solarEventTopic = PropertyUtil.propOrThrow(simProps, "topic.SolarEventProfile");
 
         final String dataFilename = PropertyUtil.propOrThrow(simProps, "data.file");
+        final Interpolation interpolation = Interpolation.fromString(simProps.getProperty("data.interpolation", "linear"));
 
         final DeviceId deviceId = new DeviceId(logicalDeviceId, mRid, name, description);
 
         final double[] dayData = LineValueDataLoader.load(dataFilename);
 
-        final DailyInterpolatedData dataSource = new DailyInterpolatedData(dayData);
+        final DailyInterpolatedData dataSource = new DailyInterpolatedData(dayData, interpolation);
 
         final OpenFmbXmlMarshaller openFmbXmlMarshaller = new OpenFmbXmlMarshaller();
+        final SniffingPayloadCodec payloadCodec = SniffingPayloadCodec.fromProperties(simProps, openFmbXmlMarshaller);
+        payloadCodec.getCompressionStats().startReporting(60000);
+        final MetricsRegistry metrics = SimulatorMetrics.export(simProps, "config.", "solar " + logicalDeviceId);
+        final PayloadCodec meteredCodec = new MeteredObservers.MeteredPayloadCodec(payloadCodec, metrics);
 
         final String mqttConfigPath = System.getProperty("config.mqtt.path", "mqtt.properties");
 
@@ -84,11 +109,29 @@ public class SolarSimulator {
 
         mqttThread.start();
 
-        final MessageObserver messageObserver = new MessageObserverAdapter(mqttObserver, new SimpleTopicMapping());
+        final MessageObserver messageObserver = new MeteredObservers.MeteredMessageObserver(new RecordingMessageObserver(new MessageObserverAdapter(mqttObserver, new SimpleTopicMapping())), metrics);
 
-        final SolarObserver solarPublisher = new SolarPublisher(messageObserver, deviceId, openFmbXmlMarshaller, solarReadTopic, solarEventTopic);
+        final SolarEncoder solarEncoder = (templateEncoder && payloadCodec.encodesXml()) ?
+                new TemplateSolarEncoder(deviceId, openFmbXmlMarshaller) :
+                new MarshallingSolarEncoder(deviceId, meteredCodec);
 
-        SolarSimLoop.loop(solarPublisher, dataSource, intervalMs, scale, offset, jitterChance, jitterPercent);
+        final SolarPublisher solarPublisher = new SolarPublisher(messageObserver, deviceId, solarEncoder, solarReadTopic, solarEventTopic, clock);
+
+        final PublishPipeline publishPipeline = PublishPipeline.fromProperties(simProps, "config.", threadMode.threadFactory("solar publish"));
+        final SolarObserver solarObserver = (publishPipeline == null) ? solarPublisher :
+                new AsyncPublishers.AsyncSolarObserver(publishPipeline, logicalDeviceId, solarPublisher);
+
+        final SolarSimLoop sim = new SolarSimLoop(logicalDeviceId, solarObserver, dataSource, scale, offset, jitterChance, jitterPercent, clock);
+
+        final TickScheduler scheduler = new TickScheduler(1, "solar tick", overrunPolicy, threadMode);
+        scheduler.register(logicalDeviceId, sim, intervalMs);
+        scheduler.startOverrunReporting(60000);
+        SimulatorMetrics.registerScheduler(metrics, scheduler);
+        SimulatorMetrics.registerPipeline(metrics, publishPipeline);
+        if (publishPipeline != null) {
+            publishPipeline.startReporting(60000);
+        }
+        scheduler.awaitTermination();
     }
 
 }
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DailyInterpolatedDataTest {
+
+    private static final long HOUR = TimeUtil.millisecondsInAnHour;
+
+    private static final double[] PROFILE = {
+            3, 1, 4, 1, 5, 9, 2, 6, 5, 3, 5, 8,
+            9, 7, 9, 3, 2, 3, 8, 4, 6, 2, 6, 4
+    };
+
+    // one point per hour, valued at the hour, so the linear profile reads back the wall-clock hour until 23:00
+    private static final double[] HOURS = new double[24];
+
+    static {
+        for (int i = 0; i < 24; i++) {
+            HOURS[i] = i;
+        }
+    }
+
+    private TimeZone defaultZone;
+
+    @Before
+    public void setUp() {
+        defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(defaultZone);
+    }
+
+    private static long localTime(int year, int month, int day, int hour, int minute) {
+        final Calendar c = Calendar.getInstance();
+        c.clear();
+        c.set(year, month, day, hour, minute, 0);
+        return c.getTimeInMillis();
+    }
+
+    private static long utcTime(int year, int month, int day, int hour, int minute) {
+        final Calendar c = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        c.clear();
+        c.set(year, month, day, hour, minute, 0);
+        return c.getTimeInMillis();
+    }
+
+    // slope in value per hour, from the left or the right of time
+    private static double slope(final DailyInterpolatedData data, final long time, final boolean left) {
+        final long h = 1000;
+        final double hours = (double) h / HOUR;
+        return left ? (data.atTime(time) - data.atTime(time - h)) / hours : (data.atTime(time + h) - data.atTime(time)) / hours;
+    }
+
+    @Test
+    public void splinePassesThroughEveryPoint() {
+        final DailyInterpolatedData data = new DailyInterpolatedData(PROFILE, Interpolation.SPLINE);
+        final long midnight = localTime(2016, Calendar.JUNE, 1, 0, 0);
+        for (int i = 0; i < PROFILE.length; i++) {
+            assertEquals(PROFILE[i], data.atTime(midnight + i * HOUR), 1e-9);
+        }
+    }
+
+    @Test
+    public void splineIsSmoothAtEveryPoint() {
+        final DailyInterpolatedData data = new DailyInterpolatedData(PROFILE, Interpolation.SPLINE);
+        final long midnight = localTime(2016, Calendar.JUNE, 1, 0, 0);
+        for (int i = 1; i < PROFILE.length; i++) {
+            final long knot = midnight + i * HOUR;
+            assertEquals(slope(data, knot, true), slope(data, knot, false), 1e-2);
+        }
+    }
+
+    @Test
+    public void splineWrapsSmoothlyAcrossMidnight() {
+        final DailyInterpolatedData data = new DailyInterpolatedData(PROFILE, Interpolation.SPLINE);
+        final long midnight = localTime(2016, Calendar.JUNE, 2, 0, 0);
+
+        assertEquals(PROFILE[0], data.atTime(midnight - 1), 1e-5);
+        assertEquals(PROFILE[0], data.atTime(midnight), 1e-9);
+        assertEquals(slope(data, midnight, true), slope(data, midnight, false), 1e-2);
+    }
+
+    @Test
+    public void splineFollowsASmoothCurve() {
+        final double[] values = new double[24];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.sin(2 * Math.PI * i / values.length);
+        }
+        final DailyInterpolatedData data = new DailyInterpolatedData(values, Interpolation.SPLINE);
+        final long midnight = localTime(2016, Calendar.JUNE, 1, 0, 0);
+        for (int i = 0; i < values.length; i++) {
+            final double between = Math.sin(2 * Math.PI * (i + 0.5) / values.length);
+            assertEquals(between, data.atTime(midnight + i * HOUR + HOUR / 2), 1e-4);
+        }
+    }
+
+    @Test
+    public void linearHasAKinkWhereTheSplineDoesNot() {
+        final DailyInterpolatedData data = new DailyInterpolatedData(PROFILE);
+        final long knot = localTime(2016, Calendar.JUNE, 1, 5, 0);
+        assertEquals(PROFILE[5] - PROFILE[4], slope(data, knot, true), 1e-6);
+        assertEquals(PROFILE[6] - PROFILE[5], slope(data, knot, false), 1e-6);
+    }
+
+    @Test
+    public void springForwardSkipsAnHour() {
+        // 2016-03-13: 02:00 EST becomes 03:00 EDT, so the day is 23 hours long
+        final DailyInterpolatedData data = new DailyInterpolatedData(HOURS);
+        assertEquals(1.5, data.atTime(localTime(2016, Calendar.MARCH, 13, 1, 30)), 1e-6);
+        assertEquals(1.5, data.atTime(utcTime(2016, Calendar.MARCH, 13, 6, 30)), 1e-6);
+        assertEquals(3.0, data.atTime(utcTime(2016, Calendar.MARCH, 13, 7, 0)), 1e-6);
+        assertEquals(3.5, data.atTime(localTime(2016, Calendar.MARCH, 13, 3, 30)), 1e-6);
+        assertEquals(22.5, data.atTime(localTime(2016, Calendar.MARCH, 13, 22, 30)), 1e-6);
+        // the last hour wraps back towards the first point
+        assertEquals(11.5, data.atTime(localTime(2016, Calendar.MARCH, 13, 23, 30)), 1e-6);
+        assertEquals(0.0, data.atTime(localTime(2016, Calendar.MARCH, 14, 0, 0)), 1e-6);
+    }
+
+    @Test
+    public void fallBackRepeatsAnHour() {
+        // 2016-11-06: 02:00 EDT becomes 01:00 EST, so the day is 25 hours long
+        final DailyInterpolatedData data = new DailyInterpolatedData(HOURS);
+        assertEquals(0.5, data.atTime(localTime(2016, Calendar.NOVEMBER, 6, 0, 30)), 1e-6);
+        // 01:30 EDT, then 01:30 EST an hour later
+        assertEquals(1.5, data.atTime(utcTime(2016, Calendar.NOVEMBER, 6, 5, 30)), 1e-6);
+        assertEquals(1.5, data.atTime(utcTime(2016, Calendar.NOVEMBER, 6, 6, 30)), 1e-6);
+        assertEquals(2.5, data.atTime(utcTime(2016, Calendar.NOVEMBER, 6, 7, 30)), 1e-6);
+        assertEquals(22.5, data.atTime(localTime(2016, Calendar.NOVEMBER, 6, 22, 30)), 1e-6);
+        // the last hour wraps back towards the first point
+        assertEquals(11.5, data.atTime(localTime(2016, Calendar.NOVEMBER, 6, 23, 30)), 1e-6);
+        assertEquals(0.0, data.atTime(localTime(2016, Calendar.NOVEMBER, 7, 0, 0)), 1e-6);
+    }
+
+    @Test
+    public void lookupsAcrossDaysInAnyOrderAgree() {
+        final DailyInterpolatedData data = new DailyInterpolatedData(PROFILE, Interpolation.SPLINE);
+        final long[] times = {
+                localTime(2016, Calendar.NOVEMBER, 6, 13, 15),
+                localTime(2016, Calendar.MARCH, 13, 13, 15),
+                localTime(2016, Calendar.JUNE, 1, 13, 15),
+                localTime(2016, Calendar.NOVEMBER, 6, 13, 15)
+        };
+        final double expected = new DailyInterpolatedData(PROFILE, Interpolation.SPLINE).atTime(times[2]);
+        for (final long time : times) {
+            assertEquals(expected, data.atTime(time), 1e-9);
+        }
+        assertTrue(expected != PROFILE[13]);
+    }
+}
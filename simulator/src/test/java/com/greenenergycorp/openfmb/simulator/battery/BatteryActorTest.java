@@ -0,0 +1,106 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.battery;
+
+import com.greenenergycorp.openfmb.simulator.schedule.OverrunPolicy;
+import com.greenenergycorp.openfmb.simulator.schedule.TickScheduler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class BatteryActorTest {
+
+    private static final BatteryMachine.BatterySpec SPEC = new BatteryMachine.BatterySpec(250.0, 250.0, 500.0, 450.0, 50.0, 0.9, 277.0, 60.0);
+
+    private TickScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new TickScheduler(1, "actor test", OverrunPolicy.SKIP);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    private static class CountingObserver implements BatteryObserver {
+        private final CountDownLatch reads;
+
+        CountingObserver(int expectedReads) {
+            this.reads = new CountDownLatch(expectedReads);
+        }
+
+        public void batteryReadUpdate(double power, double volts, double frequency) {
+            reads.countDown();
+        }
+
+        public void batteryEventUpdate(boolean isConnected, boolean isCharging, String mode, double stateOfCharge) {
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void scheduledActorTicksOnTheScheduler() throws Exception {
+        final CountingObserver observer = new CountingObserver(3);
+        final BatteryActor actor = new BatteryActor(new BatteryMachine("battery1", observer, 10, SPEC));
+
+        actor.schedule(scheduler, "battery1", 0);
+
+        assertTrue(observer.reads.await(5, TimeUnit.SECONDS));
+        assertNotNull(actor.getPacer());
+        assertEquals(1, scheduler.getHandles().size());
+        actor.stop();
+        assertEquals(0, scheduler.getHandles().size());
+    }
+
+    @Test(timeout = 10000)
+    public void scheduledActorAppliesCommandsBetweenTicks() throws Exception {
+        final BatteryActor actor = new BatteryActor(new BatteryMachine("battery1", new CountingObserver(0), 60000, SPEC));
+
+        // the first tick is a minute away, so only the drain task can apply the commands
+        actor.schedule(scheduler, "battery1", 60000);
+        actor.setModeControl(BatteryMachine.BatteryMode.PROGRAM_PQ);
+        actor.setPowerSetpoint(10.0);
+
+        while (actor.getCommandsApplied() < 2) {
+            Thread.sleep(1);
+        }
+        assertEquals(2, actor.getCommandsApplied());
+    }
+
+    @Test(timeout = 10000)
+    public void commandsQueuedBeforeSchedulingAreApplied() throws Exception {
+        final BatteryActor actor = new BatteryActor(new BatteryMachine("battery1", new CountingObserver(0), 60000, SPEC));
+
+        actor.setModeControl(BatteryMachine.BatteryMode.PROGRAM_PQ);
+        actor.schedule(scheduler, "battery1", 60000);
+
+        while (actor.getCommandsApplied() < 1) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, actor.getCommandsApplied());
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.battery;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatteryMachineTest {
+
+    // charges at up to 100 kW, discharges at up to 40 kW
+    private static final BatteryMachine.BatterySpec SPEC = new BatteryMachine.BatterySpec(100.0, 40.0, 500.0, 450.0, 50.0, 0.9, 277.0, 60.0);
+
+    private static class LastObserver implements BatteryObserver {
+        private double power;
+        private boolean charging;
+
+        public void batteryReadUpdate(double power, double volts, double frequency) {
+            this.power = power;
+        }
+
+        public void batteryEventUpdate(boolean isConnected, boolean isCharging, String mode, double stateOfCharge) {
+            this.charging = isCharging;
+        }
+    }
+
+    private LastObserver observer;
+    private BatteryMachine machine;
+
+    @Before
+    public void setUp() {
+        observer = new LastObserver();
+        machine = new BatteryMachine("battery1", observer, 1000, SPEC);
+        machine.setModeControl(BatteryMachine.BatteryMode.PROGRAM_PQ);
+    }
+
+    @Test
+    public void chargingIsClampedAtTheChargeRate() {
+        machine.setPowerSetpoint(1000.0);
+        assertEquals(100.0, observer.power, 0.0);
+        assertTrue(observer.charging);
+    }
+
+    @Test
+    public void dischargingIsClampedAtTheDischargeRate() {
+        machine.setPowerSetpoint(-1000.0);
+        assertEquals(-40.0, observer.power, 0.0);
+        assertFalse(observer.charging);
+    }
+
+    @Test
+    public void setpointsWithinTheRatesAreKept() {
+        machine.setPowerSetpoint(80.0);
+        assertEquals(80.0, observer.power, 0.0);
+        machine.setPowerSetpoint(-30.0);
+        assertEquals(-30.0, observer.power, 0.0);
+    }
+}
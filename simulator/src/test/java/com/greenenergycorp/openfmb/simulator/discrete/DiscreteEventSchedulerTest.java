@@ -0,0 +1,171 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.discrete;
+
+import com.greenenergycorp.openfmb.simulator.DailyInterpolatedData;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine;
+import com.greenenergycorp.openfmb.simulator.schedule.Tickable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DiscreteEventSchedulerTest {
+
+    private static final long START = 1464753600000L;
+
+    private static final double[] SOLAR_PROFILE = {
+            0, 0, 0, 0, 0, 0.02, 0.10, 0.25, 0.42, 0.58, 0.71, 0.80,
+            0.83, 0.80, 0.71, 0.58, 0.42, 0.25, 0.10, 0.02, 0, 0, 0, 0
+    };
+
+    @Test
+    public void eventsRunInTimeOrderAndFifoOnTies() {
+        final DiscreteEventScheduler scheduler = new DiscreteEventScheduler(START, 1);
+        final List<String> order = new ArrayList<String>();
+        scheduler.schedule(START + 20, record(order, "c"));
+        scheduler.schedule(START + 10, record(order, "a"));
+        scheduler.schedule(START + 20, record(order, "d"));
+        scheduler.schedule(START + 10, record(order, "b"));
+
+        assertEquals(4, scheduler.runUntil(START + 20));
+        assertEquals("[a, b, c, d]", order.toString());
+    }
+
+    @Test
+    public void clockIsSetToEachEventTime() {
+        final DiscreteEventScheduler scheduler = new DiscreteEventScheduler(START, 1);
+        final List<Long> times = new ArrayList<Long>();
+        for (final long offset : new long[] { 5, 1, 3 }) {
+            scheduler.schedule(START + offset, new Runnable() {
+                public void run() {
+                    times.add(scheduler.getClock().currentTimeMillis() - START);
+                }
+            });
+        }
+        scheduler.runUntil(START + 10);
+        assertEquals("[1, 3, 5]", times.toString());
+    }
+
+    @Test
+    public void runUntilStopsAtTheEndAndLeavesTheClockThere() {
+        final DiscreteEventScheduler scheduler = new DiscreteEventScheduler(START, 1);
+        final List<String> order = new ArrayList<String>();
+        scheduler.schedule(START + 100, record(order, "a"));
+        scheduler.schedule(START + 101, record(order, "b"));
+
+        assertEquals(1, scheduler.runUntil(START + 100));
+        assertEquals(START + 100, scheduler.now());
+        assertEquals(1, scheduler.getPending());
+
+        assertEquals(0, scheduler.runUntil(START + 100));
+        assertEquals(1, scheduler.runUntil(START + 1000));
+        assertEquals(START + 1000, scheduler.now());
+        assertEquals(2, scheduler.getExecuted());
+        assertFalse(scheduler.step());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEventsInThePast() {
+        final DiscreteEventScheduler scheduler = new DiscreteEventScheduler(START, 1);
+        scheduler.runUntil(START + 10);
+        scheduler.schedule(START + 9, new Runnable() {
+            public void run() {
+            }
+        });
+    }
+
+    @Test
+    public void periodicTicksFollowThePeriod() {
+        final DiscreteEventScheduler scheduler = new DiscreteEventScheduler(START, 1);
+        final List<Long> ticks = new ArrayList<Long>();
+        scheduler.schedulePeriodic(new Tickable() {
+            public void tick() {
+                ticks.add(scheduler.now() - START);
+            }
+        }, 1000, 500);
+
+        scheduler.runUntil(START + 3500);
+        assertEquals("[500, 1500, 2500, 3500]", ticks.toString());
+        assertEquals(1, scheduler.getPending());
+    }
+
+    @Test
+    public void randomsReplayWithTheSameSeed() {
+        final DiscreteEventScheduler first = new DiscreteEventScheduler(START, 42);
+        final DiscreteEventScheduler second = new DiscreteEventScheduler(START, 42);
+        for (int i = 0; i < 3; i++) {
+            final Random a = first.newRandom();
+            final Random b = second.newRandom();
+            for (int j = 0; j < 10; j++) {
+                assertEquals(a.nextLong(), b.nextLong());
+            }
+        }
+    }
+
+    @Test
+    public void microgridReplaysWithTheSameSeed() {
+        final List<Double> first = runMicrogrid(7);
+        final List<Double> second = runMicrogrid(7);
+        assertEquals(first, second);
+
+        // the noise comes from the seed, so another seed takes a different path
+        assertFalse(first.equals(runMicrogrid(8)));
+    }
+
+    /**
+     * Runs two islanded days and samples the battery and recloser every simulated hour.
+     */
+    private static List<Double> runMicrogrid(final long seed) {
+        final DiscreteEventScheduler scheduler = new DiscreteEventScheduler(START, seed);
+        final BatteryMachine.BatterySpec spec = new BatteryMachine.BatterySpec(250, 250, 250, 237.5, 37.5, 0.8, 277, 60);
+        final SimulatedMicrogrid grid = new SimulatedMicrogrid(scheduler, 5, "battery", spec, 2000, 277, 60, 2000);
+        final DailyInterpolatedData profile = new DailyInterpolatedData(SOLAR_PROFILE);
+        for (int i = 0; i < 10; i++) {
+            grid.addSolar("solar " + i, profile, 5.0, 0.0, 0.1, 0.05, 2000);
+        }
+        for (int day = 0; day < 2; day++) {
+            final long islandStart = START + TimeUnit.DAYS.toMillis(day) + TimeUnit.HOURS.toMillis(10);
+            grid.openRecloserAt(islandStart);
+            grid.closeRecloserAt(islandStart + TimeUnit.HOURS.toMillis(4));
+        }
+
+        final List<Double> samples = new ArrayList<Double>();
+        for (int hour = 1; hour <= 48; hour++) {
+            scheduler.runUntil(START + TimeUnit.HOURS.toMillis(hour));
+            samples.add(grid.getBatteryStateOfCharge());
+            samples.add(grid.getBatteryPower());
+            samples.add(grid.getRecloserPower());
+        }
+        samples.add((double) scheduler.getExecuted());
+        return samples;
+    }
+
+    private static Runnable record(final List<String> order, final String name) {
+        return new Runnable() {
+            public void run() {
+                order.add(name);
+            }
+        };
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void valuesBelow128AreExact() {
+        for (long v = 0; v < 128; v++) {
+            assertEquals(v, LatencyHistogram.indexFor(v));
+            assertEquals(v, LatencyHistogram.upperBoundOf((int) v));
+        }
+    }
+
+    @Test
+    public void firstLogBucketsAreTwoWide() {
+        assertEquals(128, LatencyHistogram.indexFor(128));
+        assertEquals(128, LatencyHistogram.indexFor(129));
+        assertEquals(129, LatencyHistogram.indexFor(130));
+        assertEquals(129, LatencyHistogram.upperBoundOf(128));
+        assertEquals(131, LatencyHistogram.upperBoundOf(129));
+    }
+
+    @Test
+    public void bucketsAreContiguousUpToLongMax() {
+        final int last = LatencyHistogram.indexFor(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(last));
+
+        for (int i = 128; i <= last; i++) {
+            final long lower = LatencyHistogram.upperBoundOf(i - 1) + 1;
+            final long upper = LatencyHistogram.upperBoundOf(i);
+            assertTrue(upper >= lower);
+            assertEquals(i, LatencyHistogram.indexFor(lower));
+            assertEquals(i, LatencyHistogram.indexFor(upper));
+            // the bucket width is at most 1/64 of its lower edge
+            assertTrue((double) (upper - lower) <= lower / 64.0);
+        }
+    }
+
+    @Test
+    public void powersOfTwoStartABucket() {
+        for (int bit = 7; bit < 63; bit++) {
+            final long value = 1L << bit;
+            final int index = LatencyHistogram.indexFor(value);
+            assertEquals(value - 1, LatencyHistogram.upperBoundOf(index - 1));
+        }
+    }
+
+    @Test
+    public void percentilesAreNeverUnderstated() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 10000; v++) {
+            histogram.record(v * 1000);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000000, histogram.getMaxNanos());
+        assertEquals(5000500.0, histogram.getMeanNanos(), 0.0);
+
+        final long p50 = histogram.getPercentileNanos(50);
+        assertTrue(p50 >= 5000000 && p50 <= 5000000 * 65 / 64);
+        final long p99 = histogram.getPercentileNanos(99);
+        assertTrue(p99 >= 9900000 && p99 <= 9900000 * 65 / 64);
+        assertEquals(10000000, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void negativeValuesCountAsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(50));
+        assertEquals(0.0, histogram.getMeanNanos(), 0.0);
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentRecordsAreAllCounted() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < 100000; i++) {
+                        histogram.record(i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400000, histogram.getCount());
+        assertEquals(99999, histogram.getMaxNanos());
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.metrics;
+
+import org.junit.Test;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void namesExpandTimersWithoutReadingGauges() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final AtomicInteger reads = new AtomicInteger(0);
+        registry.counter("received", "topic", "a/b");
+        registry.timer("handle", "topic", "a/b");
+        registry.gauge("depth", "topic", "a/b", new MetricsRegistry.Gauge() {
+            public double getValue() {
+                return reads.incrementAndGet();
+            }
+        });
+        registry.counter("received", "topic", "c/d");
+
+        final SortedMap<String, Class<? extends Number>> names = registry.names("topic", "a/b");
+        assertEquals(5, names.size());
+        assertEquals(Long.class, names.get("received"));
+        assertEquals(Long.class, names.get("handle_count"));
+        assertEquals(Double.class, names.get("handle_sum_us"));
+        assertEquals(Double.class, names.get("handle_max_us"));
+        assertEquals(Double.class, names.get("depth"));
+        assertEquals(0, reads.get());
+    }
+
+    @Test
+    public void valueReadsOneMetric() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("received", "topic", "a/b").add(3);
+        registry.timer("handle", "topic", "a/b").record(2000);
+        registry.counter("errors").increment();
+
+        assertEquals(3L, registry.value("received", "topic", "a/b"));
+        assertEquals(1L, registry.value("handle_count", "topic", "a/b"));
+        assertEquals(2.0, registry.value("handle_max_us", "topic", "a/b"));
+        assertEquals(1L, registry.value("errors", null, null));
+        assertNull(registry.value("received", "topic", "c/d"));
+        assertNull(registry.value("handle", "topic", "a/b"));
+    }
+
+    @Test
+    public void listenerIsToldOfEachLabelValueOnce() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("errors");
+        registry.counter("received", "topic", "a/b");
+
+        final List<String> added = new ArrayList<String>();
+        registry.addListener(new MetricsRegistry.Listener() {
+            public void labelAdded(String label, String value) {
+                added.add(label + "=" + value);
+            }
+        });
+        assertEquals(2, added.size());
+        assertTrue(added.contains("null=null"));
+        assertTrue(added.contains("topic=a/b"));
+
+        registry.timer("handle", "topic", "a/b");
+        registry.counter("received", "topic", "c/d");
+        registry.counter("received", "topic", "c/d");
+        assertEquals(3, added.size());
+        assertEquals("topic=c/d", added.get(2));
+    }
+
+    @Test
+    public void mbeanInfoDoesNotReadValues() throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final AtomicInteger reads = new AtomicInteger(0);
+        registry.gauge("battery_soc_percent", "device", "battery1", new MetricsRegistry.Gauge() {
+            public double getValue() {
+                return 50 + reads.incrementAndGet();
+            }
+        });
+        final MetricsMBean mbean = new MetricsMBean(registry, "device", "battery1", "test");
+
+        final MBeanInfo info = mbean.getMBeanInfo();
+        assertEquals(1, info.getAttributes().length);
+        final MBeanAttributeInfo attribute = info.getAttributes()[0];
+        assertEquals("battery_soc_percent", attribute.getName());
+        assertEquals(Double.class.getName(), attribute.getType());
+        assertEquals(0, reads.get());
+
+        assertEquals(51.0, mbean.getAttribute("battery_soc_percent"));
+        assertEquals(1, reads.get());
+    }
+
+    @Test
+    public void registersAnMBeanPerLabelValue() throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("errors");
+        final ObjectName base = MetricsMBean.register(registry, "registry test");
+        registry.counter("decode", "profile", "BatteryReadingProfile");
+        registry.counter("received", "type", "x");
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(0L, server.getAttribute(base, "errors"));
+        assertEquals(0L, server.getAttribute(new ObjectName(base + ",profile=\"BatteryReadingProfile\""), "decode"));
+        assertTrue(server.isRegistered(new ObjectName(base + ",label_type=\"x\"")));
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.publish;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PublishPipelineTest {
+
+    private static final ThreadFactory DAEMONS = new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, "publish test");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private final List<String> published = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch gate = new CountDownLatch(1);
+
+    private PublishPipeline pipeline;
+
+    @After
+    public void tearDown() throws Exception {
+        gate.countDown();
+        if (pipeline != null) {
+            pipeline.shutdown(1000);
+        }
+    }
+
+    private PublishPipeline.PublishTask record(final String name) {
+        return new PublishPipeline.PublishTask() {
+            public void publish() {
+                published.add(name);
+            }
+        };
+    }
+
+    // occupies the single worker until the gate opens, so the queue can be filled deterministically
+    private void occupyWorker() throws Exception {
+        pipeline.submit("device", new PublishPipeline.PublishTask() {
+            public void publish() throws Exception {
+                started.countDown();
+                gate.await();
+                published.add("first");
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    private void awaitPublished(int count) throws InterruptedException {
+        while (published.size() < count) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void tasksForOneKeyArePublishedInOrder() throws Exception {
+        pipeline = new PublishPipeline(3, 4, FullQueuePolicy.BLOCK, DAEMONS);
+        final int keys = 8;
+        final int perKey = 2000;
+        final List<List<Integer>> seen = new ArrayList<List<Integer>>();
+        final Thread[] producers = new Thread[keys];
+        for (int k = 0; k < keys; k++) {
+            final List<Integer> forKey = Collections.synchronizedList(new ArrayList<Integer>());
+            seen.add(forKey);
+            final String key = "device" + k;
+            producers[k] = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < perKey; i++) {
+                        final int n = i;
+                        pipeline.submit(key, new PublishPipeline.PublishTask() {
+                            public void publish() {
+                                forKey.add(n);
+                            }
+                        });
+                    }
+                }
+            });
+            producers[k].start();
+        }
+        for (final Thread producer : producers) {
+            producer.join();
+        }
+        pipeline.shutdown(10000);
+
+        for (final List<Integer> forKey : seen) {
+            assertEquals(perKey, forKey.size());
+            for (int i = 0; i < perKey; i++) {
+                assertEquals(i, (int) forKey.get(i));
+            }
+        }
+        assertEquals(keys * perKey, pipeline.getPublished());
+        assertEquals(0, pipeline.getDropped());
+    }
+
+    @Test(timeout = 10000)
+    public void callerRunsWaitsForQueuedTasks() throws Exception {
+        pipeline = new PublishPipeline(1, 1, FullQueuePolicy.CALLER_RUNS, DAEMONS);
+        occupyWorker();
+        pipeline.submit("device", record("queued"));
+
+        final Thread opener = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                gate.countDown();
+            }
+        });
+        opener.start();
+
+        // the queue is full, so this runs here, but only after the two tasks ahead of it
+        pipeline.submit("device", record("caller"));
+
+        assertEquals(3, published.size());
+        assertEquals("first", published.get(0));
+        assertEquals("queued", published.get(1));
+        assertEquals("caller", published.get(2));
+        assertEquals(1, pipeline.getCallerRuns());
+    }
+
+    @Test(timeout = 10000)
+    public void dropNewestKeepsTasksThatMustNotBeDropped() throws Exception {
+        pipeline = new PublishPipeline(1, 1, FullQueuePolicy.DROP_NEWEST, DAEMONS);
+        occupyWorker();
+        pipeline.submit("device", record("queued"));
+        pipeline.submit("device", record("dropped"));
+        assertEquals(1, pipeline.getDropped());
+
+        final Thread control = new Thread(new Runnable() {
+            public void run() {
+                pipeline.submit("device", record("control"), false);
+            }
+        });
+        control.start();
+        gate.countDown();
+        control.join();
+        awaitPublished(3);
+
+        assertEquals("first", published.get(0));
+        assertEquals("queued", published.get(1));
+        assertEquals("control", published.get(2));
+        assertEquals(1, pipeline.getDropped());
+    }
+
+    @Test(timeout = 10000)
+    public void dropOldestSkipsTasksThatMustNotBeDropped() throws Exception {
+        pipeline = new PublishPipeline(1, 2, FullQueuePolicy.DROP_OLDEST, DAEMONS);
+        occupyWorker();
+        pipeline.submit("device", record("control"), false);
+        pipeline.submit("device", record("stale"));
+        pipeline.submit("device", record("fresh"));
+        assertEquals(1, pipeline.getDropped());
+
+        gate.countDown();
+        awaitPublished(3);
+
+        assertEquals("first", published.get(0));
+        assertEquals("control", published.get(1));
+        assertEquals("fresh", published.get(2));
+    }
+
+    @Test(timeout = 10000)
+    public void dropOldestWaitsWhenNothingCanBeDropped() throws Exception {
+        pipeline = new PublishPipeline(1, 1, FullQueuePolicy.DROP_OLDEST, DAEMONS);
+        occupyWorker();
+        pipeline.submit("device", record("control"), false);
+
+        final Thread next = new Thread(new Runnable() {
+            public void run() {
+                pipeline.submit("device", record("next"));
+            }
+        });
+        next.start();
+        next.join(200);
+        assertTrue(next.isAlive());
+
+        gate.countDown();
+        next.join();
+        awaitPublished(3);
+
+        assertEquals("control", published.get(1));
+        assertEquals("next", published.get(2));
+        assertEquals(0, pipeline.getDropped());
+    }
+
+    @Test(timeout = 10000)
+    public void blockedSubmitIsTimedSeparatelyFromQueueWait() throws Exception {
+        pipeline = new PublishPipeline(1, 1, FullQueuePolicy.BLOCK, DAEMONS);
+        occupyWorker();
+        pipeline.submit("device", record("queued"));
+
+        final Thread blocked = new Thread(new Runnable() {
+            public void run() {
+                pipeline.submit("device", record("blocked"));
+            }
+        });
+        blocked.start();
+        blocked.join(200);
+        assertTrue(blocked.isAlive());
+        assertEquals(0, pipeline.getBlocked());
+
+        gate.countDown();
+        blocked.join();
+        awaitPublished(3);
+
+        assertEquals("blocked", published.get(2));
+        assertEquals(1, pipeline.getBlocked());
+        assertTrue(pipeline.getMaxBlockedMicros() >= 150000);
+    }
+
+    @Test(timeout = 10000)
+    public void blockedSubmitReturnsWhenPipelineShutsDown() throws Exception {
+        pipeline = new PublishPipeline(1, 1, FullQueuePolicy.BLOCK, DAEMONS);
+        occupyWorker();
+        pipeline.submit("device", record("queued"));
+
+        final Thread blocked = new Thread(new Runnable() {
+            public void run() {
+                pipeline.submit("device", record("blocked"));
+            }
+        });
+        blocked.start();
+        blocked.join(200);
+        assertTrue(blocked.isAlive());
+
+        pipeline.shutdown(100);
+        blocked.join(5000);
+
+        assertFalse(blocked.isAlive());
+        assertEquals(1, pipeline.getDropped());
+        pipeline = null;
+    }
+
+    @Test(timeout = 10000)
+    public void submitAfterShutdownIsDropped() throws Exception {
+        pipeline = new PublishPipeline(1, 4, FullQueuePolicy.BLOCK, DAEMONS);
+        pipeline.shutdown(1000);
+        pipeline.submit("device", record("late"));
+
+        assertEquals(1, pipeline.getDropped());
+        assertEquals(0, published.size());
+        pipeline = null;
+    }
+}
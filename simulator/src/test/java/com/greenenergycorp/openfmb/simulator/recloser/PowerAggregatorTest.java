@@ -0,0 +1,125 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.recloser;
+
+import com.greenenergycorp.openfmb.simulator.recloser.PowerAggregator.Category;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+
+public class PowerAggregatorTest {
+
+    @Test
+    public void latestValueReplacesPrevious() {
+        final PowerAggregator aggregator = new PowerAggregator();
+        aggregator.update(Category.BATTERY, "battery1", 10.0);
+        aggregator.update(Category.BATTERY, "battery1", -4.0);
+
+        assertEquals(-4.0, aggregator.getPower(Category.BATTERY, "battery1"), 0.0);
+        assertEquals(-4.0, aggregator.getTotal(Category.BATTERY), 0.0);
+        assertEquals(-4.0, aggregator.getTotal(), 0.0);
+        assertEquals(1, aggregator.getDeviceCount());
+    }
+
+    @Test
+    public void categoriesAreTotalledSeparately() {
+        final PowerAggregator aggregator = new PowerAggregator();
+        aggregator.update(Category.BATTERY, "device1", 5.0);
+        aggregator.update(Category.LOAD, "device1", 20.0);
+        aggregator.update(Category.SOLAR, "solar1", -12.5);
+        aggregator.update(Category.SOLAR, "solar2", -7.5);
+
+        assertEquals(5.0, aggregator.getTotal(Category.BATTERY), 0.0);
+        assertEquals(20.0, aggregator.getTotal(Category.LOAD), 0.0);
+        assertEquals(-20.0, aggregator.getTotal(Category.SOLAR), 0.0);
+        assertEquals(5.0, aggregator.getTotal(), 0.0);
+        assertEquals(4, aggregator.getDeviceCount());
+    }
+
+    @Test
+    public void unknownDeviceReportsZero() {
+        final PowerAggregator aggregator = new PowerAggregator();
+        assertEquals(0.0, aggregator.getPower(Category.LOAD, "missing"), 0.0);
+        assertEquals(0.0, aggregator.getTotal(), 0.0);
+        assertEquals(0, aggregator.getDeviceCount());
+    }
+
+    @Test
+    public void totalsDoNotDriftOverManyUpdates() {
+        final PowerAggregator aggregator = new PowerAggregator();
+        for (int i = 0; i < 100000; i++) {
+            aggregator.update(Category.LOAD, "load1", (i % 2 == 0) ? 0.1 : 0.7);
+            aggregator.update(Category.LOAD, "load2", (i % 3) * 0.3);
+        }
+        assertEquals(aggregator.getPower(Category.LOAD, "load1") + aggregator.getPower(Category.LOAD, "load2"),
+                aggregator.getTotal(Category.LOAD), 0.0);
+        // the last round left load1 at 0.7 and load2 at 0.0
+        assertEquals(0.7, aggregator.getTotal(), 0.0);
+    }
+
+    @Test
+    public void devicesBeyondTheFirstChunkKeepTheirValues() {
+        final PowerAggregator aggregator = new PowerAggregator();
+        final int devices = 3000;
+        for (int i = 0; i < devices; i++) {
+            aggregator.update(Category.SOLAR, "solar" + i, -1.0);
+        }
+        for (int i = 0; i < devices; i++) {
+            assertEquals(-1.0, aggregator.getPower(Category.SOLAR, "solar" + i), 0.0);
+        }
+        assertEquals(-devices, aggregator.getTotal(), 0.0);
+        assertEquals(devices, aggregator.getDeviceCount());
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentUpdatesSumToLatestValues() throws Exception {
+        final PowerAggregator aggregator = new PowerAggregator();
+        final int threads = 8;
+        final int devicesPerThread = 500;
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int round = 0; round < 20; round++) {
+                        for (int d = 0; d < devicesPerThread; d++) {
+                            aggregator.update(Category.BATTERY, "battery" + id + "." + d, round);
+                        }
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(threads * devicesPerThread, aggregator.getDeviceCount());
+        assertEquals(19.0 * threads * devicesPerThread, aggregator.getTotal(Category.BATTERY), 0.0);
+    }
+}
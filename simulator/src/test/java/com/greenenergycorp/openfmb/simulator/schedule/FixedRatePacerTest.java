@@ -0,0 +1,100 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.schedule;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class FixedRatePacerTest {
+
+    private static long ms(final long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    public void waitsForTheRestOfThePeriod() {
+        final FixedRatePacer pacer = new FixedRatePacer(100, OverrunPolicy.SKIP, 0);
+
+        assertEquals(ms(70), pacer.completeTick(ms(30)));
+        assertEquals(1, pacer.getTicks());
+        assertEquals(0, pacer.getOverruns());
+    }
+
+    @Test
+    public void deadlinesDoNotDriftWithWorkTime() {
+        final FixedRatePacer pacer = new FixedRatePacer(100, OverrunPolicy.SKIP, 0);
+
+        // each tick starts on its deadline and takes 40 ms, so the wait always brings it back on schedule
+        for (int tick = 0; tick < 10; tick++) {
+            assertEquals(ms(60), pacer.completeTick(ms(tick * 100 + 40)));
+        }
+        assertEquals(10, pacer.getTicks());
+        assertEquals(0, pacer.getOverruns());
+    }
+
+    @Test
+    public void firstTickWaitsForItsDeadline() {
+        final FixedRatePacer pacer = new FixedRatePacer(100, OverrunPolicy.SKIP, ms(500));
+
+        assertEquals(ms(200), pacer.delayToFirstTick(ms(300)));
+        assertEquals(0, pacer.delayToFirstTick(ms(600)));
+    }
+
+    @Test
+    public void skipDropsMissedTicksAndStaysInPhase() {
+        final FixedRatePacer pacer = new FixedRatePacer(100, OverrunPolicy.SKIP, 0);
+
+        // due at 100, finished at 250: the ticks at 100 and 200 are missed, the next is at 300
+        assertEquals(ms(50), pacer.completeTick(ms(250)));
+        assertEquals(1, pacer.getOverruns());
+        assertEquals(2, pacer.getSkipped());
+        assertEquals(150, pacer.getMaxLatenessMs());
+
+        assertEquals(ms(90), pacer.completeTick(ms(310)));
+        assertEquals(1, pacer.getOverruns());
+    }
+
+    @Test
+    public void skipOnAnExactMultipleOfThePeriodWaitsForTheNextDeadline() {
+        final FixedRatePacer pacer = new FixedRatePacer(100, OverrunPolicy.SKIP, 0);
+
+        assertEquals(ms(100), pacer.completeTick(ms(200)));
+        assertEquals(2, pacer.getSkipped());
+    }
+
+    @Test
+    public void catchUpRunsMissedTicksBackToBack() {
+        final FixedRatePacer pacer = new FixedRatePacer(100, OverrunPolicy.CATCH_UP, 0);
+
+        assertEquals(0, pacer.completeTick(ms(250)));
+        assertEquals(0, pacer.completeTick(ms(250)));
+        assertEquals(ms(50), pacer.completeTick(ms(250)));
+        assertEquals(2, pacer.getOverruns());
+        assertEquals(0, pacer.getSkipped());
+        assertEquals(150, pacer.getMaxLatenessMs());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositivePeriod() {
+        new FixedRatePacer(0, OverrunPolicy.SKIP);
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml;
+
+import com.greenenergycorp.openfmb.xml.*;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PowerReadingsTest {
+
+    private static Reading reading(double value, UnitSymbolKind unit) throws Exception {
+        return ModelCommon.buildReading(value, 0L, unit, UnitMultiplierKind.KILO, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN);
+    }
+
+    @Test
+    public void keepsOnlyPowerReadingsInOrder() throws Exception {
+        final BatteryReadingProfile profile = new BatteryReadingProfile();
+        profile.setLogicalDeviceID("battery1");
+        profile.getReadings().add(reading(10.0, UnitSymbolKind.W));
+        profile.getReadings().add(reading(277.0, UnitSymbolKind.V));
+        profile.getReadings().add(reading(-4.5, UnitSymbolKind.W));
+
+        final PowerReadings readings = PowerReadings.fromProfile(profile);
+        assertEquals(PowerReadings.Kind.BATTERY, readings.getKind());
+        assertEquals("battery1", readings.getLogicalDeviceId());
+        assertEquals(2, readings.getPowers().length);
+        assertEquals(10.0, readings.getPowers()[0], 0.0);
+        assertEquals(-4.5, readings.getPowers()[1], 0.0);
+    }
+
+    @Test
+    public void skipsReadingsWithoutReadingType() throws Exception {
+        final SolarReadingProfile profile = new SolarReadingProfile();
+        profile.setLogicalDeviceID("solar1");
+        final Reading untyped = reading(1.0, UnitSymbolKind.W);
+        untyped.setReadingType(null);
+        profile.getReadings().add(untyped);
+        profile.getReadings().add(reading(-20.0, UnitSymbolKind.W));
+
+        final PowerReadings readings = PowerReadings.fromProfile(profile);
+        assertEquals(1, readings.getPowers().length);
+        assertEquals(-20.0, readings.getPowers()[0], 0.0);
+    }
+
+    @Test
+    public void ignoresOtherProfiles() {
+        assertNull(PowerReadings.fromProfile(new RecloserEventProfile()));
+    }
+}
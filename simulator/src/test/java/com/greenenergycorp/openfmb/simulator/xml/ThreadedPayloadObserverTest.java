@@ -0,0 +1,149 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml;
+
+import com.greenenergycorp.openfmb.mapping.adapter.PayloadObserver;
+import com.greenenergycorp.openfmb.simulator.schedule.ThreadMode;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ThreadedPayloadObserverTest {
+
+    @Test(timeout = 5000)
+    public void timedObserverIsGivenTheArrivalTime() throws Exception {
+        final BlockingQueue<Long> arrivals = new LinkedBlockingQueue<Long>();
+        final ThreadedPayloadObserver threaded = new ThreadedPayloadObserver(new ThreadedPayloadObserver.TimedPayloadObserver() {
+            public void handle(byte[] bytes, long receivedNanos) {
+                arrivals.add(receivedNanos);
+            }
+
+            public void handle(byte[] bytes) {
+                fail("untimed handle called");
+            }
+        }, ThreadMode.PLATFORM.threadFactory("test handler"), 16);
+
+        final long before = System.nanoTime();
+        threaded.handle(new byte[] { 1 });
+        final long after = System.nanoTime();
+
+        final long received = arrivals.poll(2, TimeUnit.SECONDS);
+        assertTrue(received >= before);
+        assertTrue(received <= after);
+    }
+
+    @Test(timeout = 5000)
+    public void plainObserverStillReceivesPayloadsInOrder() throws Exception {
+        final BlockingQueue<byte[]> payloads = new LinkedBlockingQueue<byte[]>();
+        final ThreadedPayloadObserver threaded = new ThreadedPayloadObserver(new PayloadObserver() {
+            public void handle(byte[] bytes) {
+                payloads.add(bytes);
+            }
+        }, ThreadMode.PLATFORM.threadFactory("test handler"), 16);
+
+        for (int i = 0; i < 10; i++) {
+            threaded.handle(new byte[] { (byte) i });
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, payloads.poll(2, TimeUnit.SECONDS)[0]);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void fullQueueHoldsUpTheCaller() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger handled = new AtomicInteger(0);
+        final ThreadedPayloadObserver threaded = new ThreadedPayloadObserver(new PayloadObserver() {
+            public void handle(byte[] bytes) {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                handled.incrementAndGet();
+            }
+        }, ThreadMode.PLATFORM.threadFactory("test handler"), 2);
+
+        // one payload held by the handler and two queued
+        for (int i = 0; i < 3; i++) {
+            threaded.handle(new byte[] { (byte) i });
+        }
+
+        final CountDownLatch fourthQueued = new CountDownLatch(1);
+        final Thread caller = new Thread(new Runnable() {
+            public void run() {
+                threaded.handle(new byte[] { 3 });
+                fourthQueued.countDown();
+            }
+        });
+        caller.start();
+        assertFalse(fourthQueued.await(300, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(fourthQueued.await(2, TimeUnit.SECONDS));
+        while (handled.get() < 4) {
+            Thread.sleep(10);
+        }
+        threaded.close();
+    }
+
+    @Test(timeout = 5000)
+    public void closeStopsTheHandlerAndReleasesWaitingCallers() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final AtomicInteger handled = new AtomicInteger(0);
+        final ThreadedPayloadObserver threaded = new ThreadedPayloadObserver(new PayloadObserver() {
+            public void handle(byte[] bytes) {
+                handled.incrementAndGet();
+                blocked.countDown();
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, ThreadMode.PLATFORM.threadFactory("test handler"), 1);
+
+        threaded.handle(new byte[] { 0 });
+        assertTrue(blocked.await(2, TimeUnit.SECONDS));
+        threaded.handle(new byte[] { 1 });
+
+        final CountDownLatch returned = new CountDownLatch(1);
+        final Thread caller = new Thread(new Runnable() {
+            public void run() {
+                threaded.handle(new byte[] { 2 });
+                returned.countDown();
+            }
+        });
+        caller.start();
+        assertFalse(returned.await(200, TimeUnit.MILLISECONDS));
+
+        threaded.close();
+        assertFalse(threaded.isOpen());
+        assertTrue(returned.await(2, TimeUnit.SECONDS));
+        threaded.handle(new byte[] { 3 });
+        Thread.sleep(100);
+        assertEquals(1, handled.get());
+    }
+}
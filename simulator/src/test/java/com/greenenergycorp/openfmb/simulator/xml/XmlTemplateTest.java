@@ -0,0 +1,170 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml;
+
+import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.battery.BatteryMachine.BatteryMode;
+import com.greenenergycorp.openfmb.simulator.xml.battery.BatteryProfileCache;
+import com.greenenergycorp.openfmb.simulator.xml.recloser.RecloserProfileCache;
+import com.greenenergycorp.openfmb.simulator.xml.solar.SolarProfileCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+public class XmlTemplateTest {
+
+    private static final long NOW = 1464782400123L;
+
+    private static final long[] TIMES = {
+            NOW,
+            NOW - (NOW % 1000),
+            NOW - (NOW % 1000) + 100,
+            NOW + 1000L * 60 * 60 * 24 * 182
+    };
+
+    private static final float[] VALUES = {0.0f, -0.0f, 1.0f, -250.0f, 123456.79f, 0.00001f, 59.98765f, 277.1234f, 1.0e10f};
+
+    private final DeviceId deviceId = new DeviceId("device1", "mrid1", "name1", "description1");
+
+    private OpenFmbXmlMarshaller marshaller;
+
+    @Before
+    public void setUp() throws Exception {
+        marshaller = new OpenFmbXmlMarshaller();
+    }
+
+    private void assertMatchesMarshaller(XmlTemplate.Renderer renderer, int valueCount) throws Exception {
+        final XmlTemplate template = XmlTemplate.build("test", renderer, valueCount);
+        assertNotNull(template);
+
+        final float[] values = new float[valueCount];
+        for (final long time : TIMES) {
+            for (int v = 0; v < VALUES.length; v++) {
+                for (int i = 0; i < valueCount; i++) {
+                    values[i] = VALUES[(v + i) % VALUES.length];
+                }
+                assertArrayEquals(renderer.marshal(time, values), template.render(XmlTemplate.timeText(time), values));
+            }
+        }
+    }
+
+    @Test
+    public void solarReadingMatchesMarshaller() throws Exception {
+        final SolarProfileCache profiles = new SolarProfileCache(deviceId);
+        assertMatchesMarshaller(new XmlTemplate.Renderer() {
+            public byte[] marshal(long time, float[] values) throws Exception {
+                return marshaller.marshal(profiles.readProfile(time, values[0]));
+            }
+        }, 1);
+    }
+
+    @Test
+    public void solarEventMatchesMarshaller() throws Exception {
+        final SolarProfileCache profiles = new SolarProfileCache(deviceId);
+        assertMatchesMarshaller(new XmlTemplate.Renderer() {
+            public byte[] marshal(long time, float[] values) throws Exception {
+                return marshaller.marshal(profiles.eventProfile(time));
+            }
+        }, 0);
+    }
+
+    @Test
+    public void batteryReadingMatchesMarshaller() throws Exception {
+        final BatteryProfileCache profiles = new BatteryProfileCache(deviceId);
+        assertMatchesMarshaller(new XmlTemplate.Renderer() {
+            public byte[] marshal(long time, float[] values) throws Exception {
+                return marshaller.marshal(profiles.readProfile(time, values[0], values[1], values[2]));
+            }
+        }, 3);
+    }
+
+    @Test
+    public void batteryEventMatchesMarshallerForEveryMode() throws Exception {
+        final BatteryProfileCache profiles = new BatteryProfileCache(deviceId);
+        for (int i = 0; i < 4; i++) {
+            final boolean isConnected = (i & 1) != 0;
+            final boolean isCharging = (i & 2) != 0;
+            for (final BatteryMode mode : BatteryMode.values()) {
+                assertMatchesMarshaller(new XmlTemplate.Renderer() {
+                    public byte[] marshal(long time, float[] values) throws Exception {
+                        return marshaller.marshal(profiles.eventProfile(time, isConnected, isCharging, mode.getDescription(), values[0]));
+                    }
+                }, 1);
+            }
+        }
+    }
+
+    @Test
+    public void recloserReadingMatchesMarshaller() throws Exception {
+        final RecloserProfileCache profiles = new RecloserProfileCache(deviceId);
+        assertMatchesMarshaller(new XmlTemplate.Renderer() {
+            public byte[] marshal(long time, float[] values) throws Exception {
+                return marshaller.marshal(profiles.readProfile(time, values[0], values[1], values[2]));
+            }
+        }, 3);
+    }
+
+    @Test
+    public void recloserEventMatchesMarshaller() throws Exception {
+        final RecloserProfileCache profiles = new RecloserProfileCache(deviceId);
+        for (int i = 0; i < 4; i++) {
+            final boolean isClosed = (i & 1) != 0;
+            final boolean isBlocked = (i & 2) != 0;
+            assertMatchesMarshaller(new XmlTemplate.Renderer() {
+                public byte[] marshal(long time, float[] values) throws Exception {
+                    return marshaller.marshal(profiles.eventProfile(time, isClosed, isBlocked));
+                }
+            }, 0);
+        }
+    }
+
+    @Test
+    public void renderRejectsValuesWithoutText() throws Exception {
+        final XmlTemplate template = XmlTemplate.compile("<a>T</a><b>1.5</b>".getBytes("UTF-8"), new String[]{"T", "1.5"});
+        assertEquals("<a>now</a><b>2.0</b>", new String(template.render("now", new float[]{2.0f}), "UTF-8"));
+        assertNull(template.render("now", new float[]{Float.NaN}));
+        assertNull(template.render("now", new float[]{Float.POSITIVE_INFINITY}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compileRejectsMissingSentinel() {
+        XmlTemplate.compile("<a>T</a>".getBytes(), new String[]{"T", "1.5"});
+    }
+
+    @Test
+    public void eachRenderReturnsItsOwnArray() throws Exception {
+        final XmlTemplate template = XmlTemplate.compile("<a>T</a><b>1.5</b>".getBytes("UTF-8"), new String[]{"T", "1.5"});
+        final byte[] first = template.render("now", new float[]{2.0f});
+        final byte[] second = template.render("now", new float[]{3.0f});
+        assertNotSame(first, second);
+        assertEquals("<a>now</a><b>2.0</b>", new String(first, "UTF-8"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void renderRejectsTheWrongNumberOfValues() throws Exception {
+        final XmlTemplate template = XmlTemplate.compile("<a>T</a><b>1.5</b>".getBytes("UTF-8"), new String[]{"T", "1.5"});
+        template.render("now", new float[]{2.0f, 3.0f});
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml;
+
+import com.greenenergycorp.openfmb.mapping.data.xml.CommonMapping;
+import org.junit.Test;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class XmlTimestampsTest {
+
+    private static final long[] TIMES = {
+            0L,
+            1464782400000L,
+            1464782400999L,
+            localTime(2016, Calendar.MARCH, 13, 1, 59),
+            localTime(2016, Calendar.MARCH, 13, 3, 0),
+            localTime(2016, Calendar.NOVEMBER, 6, 1, 30),
+            localTime(2016, Calendar.DECEMBER, 31, 23, 59)
+    };
+
+    private static long localTime(int year, int month, int day, int hour, int minute) {
+        final Calendar c = new GregorianCalendar();
+        c.clear();
+        c.set(year, month, day, hour, minute, 0);
+        return c.getTimeInMillis();
+    }
+
+    @Test
+    public void matchesCommonMappingLexically() throws Exception {
+        for (final long time : TIMES) {
+            assertEquals("at " + time, CommonMapping.xmlTimeFor(time).toXMLFormat(), XmlTimestamps.timeFor(time).toXMLFormat());
+        }
+    }
+
+    @Test
+    public void textMatchesTheConvertedValue() throws Exception {
+        for (final long time : TIMES) {
+            assertEquals("at " + time, XmlTimestamps.timeFor(time).toXMLFormat(), XmlTimestamps.textFor(time));
+        }
+    }
+
+    @Test
+    public void callsInTheSameMillisecondReturnSeparateCopies() throws Exception {
+        final XMLGregorianCalendar first = XmlTimestamps.timeFor(TIMES[1]);
+        final XMLGregorianCalendar second = XmlTimestamps.timeFor(TIMES[1]);
+        assertNotSame(first, second);
+
+        final String before = second.toXMLFormat();
+        first.setYear(1999);
+
+        assertEquals(before, second.toXMLFormat());
+        assertEquals(before, XmlTimestamps.timeFor(TIMES[1]).toXMLFormat());
+        assertEquals(before, XmlTimestamps.textFor(TIMES[1]));
+    }
+}
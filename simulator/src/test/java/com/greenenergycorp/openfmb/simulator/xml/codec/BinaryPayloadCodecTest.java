@@ -0,0 +1,144 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.codec;
+
+import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+import com.greenenergycorp.openfmb.simulator.xml.ModelCommon;
+import com.greenenergycorp.openfmb.xml.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryPayloadCodecTest {
+
+    private final BinaryPayloadCodec codec = new BinaryPayloadCodec();
+    private OpenFmbXmlMarshaller marshaller;
+
+    @Before
+    public void setUp() throws Exception {
+        marshaller = new OpenFmbXmlMarshaller();
+    }
+
+    // the marshalled XML covers every field of the profile, so equal XML means nothing was lost
+    private void assertRoundTrips(final Object profile) throws Exception {
+        final byte[] encoded = codec.encode(profile);
+        assertTrue(BinaryPayloadCodec.isBinary(encoded));
+
+        final Object decoded = codec.decode(encoded);
+        assertEquals(profile.getClass(), decoded.getClass());
+        assertEquals(new String(marshaller.marshal(profile), "UTF-8"), new String(marshaller.marshal(decoded), "UTF-8"));
+        assertArrayEquals(encoded, codec.encode(decoded));
+    }
+
+    @Test
+    public void everyProfileTypeRoundTrips() throws Exception {
+        for (final Object profile : SampleProfiles.all()) {
+            assertRoundTrips(profile);
+        }
+    }
+
+    @Test
+    public void missingOptionalPartsRoundTrip() throws Exception {
+        final BatteryEventProfile event = new BatteryEventProfile();
+        event.setLogicalDeviceID("battery");
+        assertRoundTrips(event);
+
+        final RecloserEventProfile recloser = new RecloserEventProfile();
+        recloser.setLogicalDeviceID("recloser");
+        recloser.setTimestamp(ModelCommon.xmlTimeFor(SampleProfiles.NOW));
+        final RecloserStatus status = new RecloserStatus();
+        recloser.setRecloserStatus(status);
+        assertRoundTrips(recloser);
+
+        final ResourceReadingProfile resource = new ResourceReadingProfile();
+        final Reading untyped = new Reading();
+        untyped.setValue(1.5f);
+        resource.getReadings().add(untyped);
+        assertRoundTrips(resource);
+
+        final RecloserControlProfile control = new RecloserControlProfile();
+        control.setRecloserControl(new RecloserControl());
+        assertRoundTrips(control);
+    }
+
+    @Test
+    public void decodedTimestampsAreSeparateInstances() throws Exception {
+        final BatteryReadingProfile decoded = (BatteryReadingProfile) codec.decode(codec.encode(SampleProfiles.all().get(0)));
+        decoded.getTimestamp().setYear(1999);
+        assertEquals(2016, decoded.getReadings().get(0).getTimePeriod().getStart().getYear());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOversizedString() throws Exception {
+        final char[] chars = new char[Short.MAX_VALUE + 1];
+        Arrays.fill(chars, 'x');
+        final SolarEventProfile profile = new SolarEventProfile();
+        profile.setLogicalDeviceID(new String(chars));
+        codec.encode(profile);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOversizedQualityFlag() throws Exception {
+        final ResourceReadingProfile profile = SampleProfiles.resourceRead();
+        profile.getReadings().get(0).setQualityFlag(new byte[Short.MAX_VALUE + 1]);
+        codec.encode(profile);
+    }
+
+    @Test
+    public void acceptsLongestString() throws Exception {
+        final char[] chars = new char[Short.MAX_VALUE];
+        Arrays.fill(chars, 'x');
+        final SolarEventProfile profile = new SolarEventProfile();
+        profile.setLogicalDeviceID(new String(chars));
+        assertEquals(profile.getLogicalDeviceID(), ((SolarEventProfile) codec.decode(codec.encode(profile))).getLogicalDeviceID());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedPayload() throws Exception {
+        final byte[] encoded = codec.encode(SampleProfiles.all().get(0));
+        codec.decode(Arrays.copyOf(encoded, encoded.length - 3));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsXml() throws Exception {
+        codec.decode(marshaller.marshal(SampleProfiles.resourceRead()));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherVersions() throws Exception {
+        final byte[] encoded = codec.encode(SampleProfiles.resourceRead());
+        encoded[1] = BinaryPayloadCodec.VERSION + 1;
+        codec.decode(encoded);
+    }
+
+    @Test
+    public void nullOrdinalDecodesAsNull() throws Exception {
+        final RecloserEventProfile profile = new RecloserEventProfile();
+        profile.setRecloserStatus(new RecloserStatus());
+        final RecloserEventProfile decoded = (RecloserEventProfile) codec.decode(codec.encode(profile));
+        assertNull(decoded.getRecloserStatus().getSwitchStatus());
+    }
+}
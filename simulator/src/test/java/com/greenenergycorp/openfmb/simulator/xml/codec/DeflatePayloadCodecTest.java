@@ -0,0 +1,139 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.codec;
+
+import com.greenenergycorp.openfmb.mapping.data.xml.OpenFmbXmlMarshaller;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeflatePayloadCodecTest {
+
+    private OpenFmbXmlMarshaller marshaller;
+    private byte[] dictionary;
+    private CompressionStats stats;
+
+    @Before
+    public void setUp() throws Exception {
+        marshaller = new OpenFmbXmlMarshaller();
+        dictionary = DeflateDictionary.build(marshaller);
+        stats = new CompressionStats();
+    }
+
+    private void assertRoundTrips(final PayloadCodec inner) throws Exception {
+        final DeflatePayloadCodec codec = new DeflatePayloadCodec(inner, dictionary, stats);
+        for (final Object profile : SampleProfiles.all()) {
+            final byte[] raw = inner.encode(profile);
+            final byte[] compressed = codec.encode(profile);
+            assertTrue(DeflatePayloadCodec.isCompressed(compressed));
+            assertArrayEquals(raw, codec.decompress(compressed));
+
+            final Object decoded = codec.decode(compressed);
+            assertEquals(profile.getClass(), decoded.getClass());
+            assertEquals(new String(marshaller.marshal(profile), "UTF-8"), new String(marshaller.marshal(decoded), "UTF-8"));
+        }
+    }
+
+    @Test
+    public void xmlProfilesRoundTrip() throws Exception {
+        assertRoundTrips(new XmlPayloadCodec(marshaller));
+    }
+
+    @Test
+    public void binaryProfilesRoundTrip() throws Exception {
+        assertRoundTrips(new BinaryPayloadCodec());
+    }
+
+    @Test
+    public void dictionaryShrinksXml() throws Exception {
+        final XmlPayloadCodec xml = new XmlPayloadCodec(marshaller);
+        final DeflatePayloadCodec codec = new DeflatePayloadCodec(xml, dictionary, stats);
+        for (final Object profile : SampleProfiles.all()) {
+            assertTrue(codec.encode(profile).length * 2 < xml.encode(profile).length);
+        }
+    }
+
+    @Test
+    public void statsAreRecordedByProfileType() throws Exception {
+        final DeflatePayloadCodec codec = new DeflatePayloadCodec(new XmlPayloadCodec(marshaller), dictionary, stats);
+        codec.decode(codec.encode(SampleProfiles.resourceRead()));
+        codec.encode(SampleProfiles.resourceRead());
+
+        final CompressionStats.TypeStats resource = stats.getStats().get("ResourceReadingProfile");
+        assertEquals(2, resource.getDeflated());
+        assertEquals(1, resource.getInflated());
+        assertTrue(resource.getDeflateRatio() > 0.0 && resource.getDeflateRatio() < 1.0);
+    }
+
+    @Test
+    public void payloadsLargerThanTheWorkingBufferRoundTrip() throws Exception {
+        final DeflatePayloadCodec codec = new DeflatePayloadCodec(new BinaryPayloadCodec(), dictionary, stats);
+        // random bytes do not compress, so both directions outgrow the initial buffer
+        final byte[] raw = new byte[100000];
+        new Random(7).nextBytes(raw);
+        final byte[] compressed = codec.compress(raw);
+        assertTrue(compressed.length > raw.length / 2);
+        assertArrayEquals(raw, codec.decompress(compressed));
+
+        // and a small payload on the same thread still works with the grown buffer
+        final byte[] small = "small".getBytes("UTF-8");
+        assertArrayEquals(small, codec.decompress(codec.compress(small)));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsPayloadFromAnotherDictionary() throws Exception {
+        final byte[] other = Arrays.copyOf(dictionary, dictionary.length);
+        other[0] ^= 1;
+        final DeflatePayloadCodec sender = new DeflatePayloadCodec(new BinaryPayloadCodec(), other, stats);
+        final DeflatePayloadCodec receiver = new DeflatePayloadCodec(new BinaryPayloadCodec(), dictionary, stats);
+        receiver.decompress(sender.compress("payload".getBytes("UTF-8")));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedPayload() throws Exception {
+        final DeflatePayloadCodec codec = new DeflatePayloadCodec(new XmlPayloadCodec(marshaller), dictionary, stats);
+        final byte[] compressed = codec.encode(SampleProfiles.resourceRead());
+        codec.decompress(Arrays.copyOf(compressed, compressed.length / 2));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUncompressedPayload() throws Exception {
+        final DeflatePayloadCodec codec = new DeflatePayloadCodec(new XmlPayloadCodec(marshaller), dictionary, stats);
+        codec.decompress(marshaller.marshal(SampleProfiles.resourceRead()));
+    }
+
+    @Test
+    public void sniffingCodecDecodesEveryEncoding() throws Exception {
+        final SniffingPayloadCodec sniffing = SniffingPayloadCodec.forName("xml", marshaller, stats);
+        final DeflatePayloadCodec deflate = new DeflatePayloadCodec(new BinaryPayloadCodec(), DeflateDictionary.get(marshaller), stats);
+        final Object profile = SampleProfiles.resourceRead();
+        final String expected = new String(marshaller.marshal(profile), "UTF-8");
+
+        assertEquals(expected, new String(marshaller.marshal(sniffing.decode(marshaller.marshal(profile))), "UTF-8"));
+        assertEquals(expected, new String(marshaller.marshal(sniffing.decode(new BinaryPayloadCodec().encode(profile))), "UTF-8"));
+        assertEquals(expected, new String(marshaller.marshal(sniffing.decode(deflate.encode(profile))), "UTF-8"));
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2016 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.greenenergycorp.openfmb.simulator.xml.codec;
+
+import com.greenenergycorp.openfmb.simulator.DeviceId;
+import com.greenenergycorp.openfmb.simulator.xml.ModelCommon;
+import com.greenenergycorp.openfmb.simulator.xml.battery.BatteryModel;
+import com.greenenergycorp.openfmb.simulator.xml.recloser.RecloserModel;
+import com.greenenergycorp.openfmb.simulator.xml.solar.SolarModel;
+import com.greenenergycorp.openfmb.xml.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One of each profile type the codecs carry, built the way the simulators build them.
+ */
+class SampleProfiles {
+
+    static final long NOW = 1464782400123L;
+
+    static final DeviceId DEVICE = new DeviceId("DEMO.MGRID.DEVICE.1", "MRID-1", "Device", "Sample device");
+
+    private static List<Reading> readings(double power, double voltage, double frequency) throws Exception {
+        final List<Reading> readings = new ArrayList<Reading>();
+        readings.add(ModelCommon.buildReading(power, NOW, UnitSymbolKind.W, UnitMultiplierKind.KILO, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN));
+        readings.add(ModelCommon.buildReading(voltage, NOW, UnitSymbolKind.V, UnitMultiplierKind.NO_MULTIPLIER, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN));
+        readings.add(ModelCommon.buildReading(frequency, NOW, UnitSymbolKind.HZ, UnitMultiplierKind.NO_MULTIPLIER, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN));
+        return readings;
+    }
+
+    static ResourceReadingProfile resourceRead() throws Exception {
+        final ResourceReadingProfile profile = new ResourceReadingProfile();
+        profile.setLogicalDeviceID(DEVICE.getLogicalDeviceId());
+        profile.setTimestamp(ModelCommon.xmlTimeFor(NOW));
+        profile.getReadings().add(ModelCommon.buildReading(-42.25, NOW, UnitSymbolKind.W, UnitMultiplierKind.KILO, FlowDirectionKind.TOTAL, PhaseCodeKind.ABCN));
+        return profile;
+    }
+
+    static RecloserControlProfile recloserTrip() throws Exception {
+        final RecloserControlProfile profile = new RecloserControlProfile();
+        profile.setLogicalDeviceID(DEVICE.getLogicalDeviceId());
+        profile.setTimestamp(ModelCommon.xmlTimeFor(NOW));
+        final EndDeviceControlType controlType = new EndDeviceControlType();
+        controlType.setAction("trip");
+        final RecloserControl control = new RecloserControl();
+        control.setEndDeviceControlType(controlType);
+        profile.setRecloserControl(control);
+        return profile;
+    }
+
+    static List<Object> all() throws Exception {
+        final List<Object> profiles = new ArrayList<Object>();
+        profiles.add(BatteryModel.buildBatteryRead(DEVICE, readings(125.5, 277.0, 60.0), NOW));
+        profiles.add(BatteryModel.buildBatteryEvent(DEVICE, true, true, "Programmed P/Q", 55.5, NOW));
+        profiles.add(BatteryModel.buildBatteryControlIsIslanded(DEVICE, NOW));
+        profiles.add(BatteryModel.buildBatteryControlPowerSetpoint(DEVICE, -80.0, NOW));
+        profiles.add(BatteryModel.buildBatteryControlModeSetpoint(DEVICE, 12, NOW));
+        profiles.add(SolarModel.buildSolarRead(DEVICE, -12.5, NOW));
+        profiles.add(SolarModel.buildSolarEvent(DEVICE, NOW));
+        profiles.add(RecloserModel.buildRecloserRead(DEVICE, readings(3.5, 480.0, 59.98), NOW));
+        profiles.add(RecloserModel.buildRecloserEvent(DEVICE, false, true, NOW));
+        profiles.add(resourceRead());
+        profiles.add(recloserTrip());
+        return profiles;
+    }
+}